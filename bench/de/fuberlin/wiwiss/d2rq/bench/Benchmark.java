@@ -0,0 +1,29 @@
+package de.fuberlin.wiwiss.d2rq.bench;
+
+/**
+ * A piece of code whose speed is measured by {@link BenchmarkRunner}.
+ */
+public abstract class Benchmark {
+	private final String name;
+
+	public Benchmark(String name) {
+		this.name = name;
+	}
+
+	public String name() {
+		return name;
+	}
+
+	/**
+	 * Prepares the input data; not measured.
+	 */
+	public void setUp() {}
+
+	/**
+	 * Runs the operation once. The result is consumed by the runner
+	 * so that the JIT cannot remove the work as dead code.
+	 */
+	public abstract Object run();
+
+	public void tearDown() {}
+}
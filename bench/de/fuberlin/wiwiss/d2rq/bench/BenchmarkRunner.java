@@ -0,0 +1,123 @@
+package de.fuberlin.wiwiss.d2rq.bench;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Runs {@link Benchmark}s and reports their throughput.
+ * Each benchmark is first run for a number of warmup iterations
+ * whose results are discarded, so that the JIT has compiled the
+ * hot paths, and then for a number of measured iterations of
+ * fixed length. The mean and standard deviation of the measured
+ * iterations are reported.
+ * 
+ * Usage: <tt>BenchmarkRunner [-w warmupIterations] [-i iterations]
+ * [-t millisPerIteration] [namePrefix ...]</tt>
+ */
+public class BenchmarkRunner {
+	private int warmupIterations = 5;
+	private int iterations = 10;
+	private long iterationMillis = 1000;
+	
+	/**
+	 * Prevents dead code elimination of the benchmark results
+	 */
+	private int sink = 0;
+
+	public static void main(String[] args) {
+		BenchmarkRunner runner = new BenchmarkRunner();
+		List prefixes = new ArrayList();
+		for (int i = 0; i < args.length; i++) {
+			if ("-w".equals(args[i]) && i + 1 < args.length) {
+				runner.warmupIterations = Integer.parseInt(args[++i]);
+			} else if ("-i".equals(args[i]) && i + 1 < args.length) {
+				runner.iterations = Integer.parseInt(args[++i]);
+			} else if ("-t".equals(args[i]) && i + 1 < args.length) {
+				runner.iterationMillis = Long.parseLong(args[++i]);
+			} else {
+				prefixes.add(args[i]);
+			}
+		}
+		System.out.println(pad("Benchmark", 40) + pad("ops/s", 14) + pad("+/-", 12) + "us/op");
+		Iterator it = PipelineBenchmarks.all().iterator();
+		while (it.hasNext()) {
+			Benchmark benchmark = (Benchmark) it.next();
+			if (matches(benchmark.name(), prefixes)) {
+				runner.run(benchmark);
+			}
+		}
+		System.exit(0);
+	}
+
+	public void run(Benchmark benchmark) {
+		benchmark.setUp();
+		try {
+			for (int i = 0; i < warmupIterations; i++) {
+				iteration(benchmark);
+			}
+			double[] results = new double[iterations];
+			for (int i = 0; i < iterations; i++) {
+				results[i] = iteration(benchmark);
+			}
+			double mean = 0;
+			for (int i = 0; i < results.length; i++) {
+				mean += results[i];
+			}
+			mean /= results.length;
+			double variance = 0;
+			for (int i = 0; i < results.length; i++) {
+				variance += (results[i] - mean) * (results[i] - mean);
+			}
+			double deviation = Math.sqrt(variance / Math.max(1, results.length - 1));
+			System.out.println(pad(benchmark.name(), 40) + pad(format(mean), 14) + 
+					pad(format(deviation), 12) + format(1000000 / mean));
+		} finally {
+			benchmark.tearDown();
+		}
+		if (sink == 42) {
+			System.out.println();
+		}
+	}
+
+	/**
+	 * @return Operations per second
+	 */
+	private double iteration(Benchmark benchmark) {
+		long ops = 0;
+		long start = System.nanoTime();
+		long end = start + iterationMillis * 1000000;
+		long now;
+		do {
+			Object result = benchmark.run();
+			sink += (result == null) ? 0 : System.identityHashCode(result);
+			ops++;
+			now = System.nanoTime();
+		} while (now < end);
+		return ops * 1000000000.0 / (now - start);
+	}
+
+	private static boolean matches(String name, List prefixes) {
+		if (prefixes.isEmpty()) return true;
+		Iterator it = prefixes.iterator();
+		while (it.hasNext()) {
+			if (name.startsWith((String) it.next())) return true;
+		}
+		return false;
+	}
+
+	private static String format(double d) {
+		if (d >= 100) {
+			return Long.toString(Math.round(d));
+		}
+		return Double.toString(Math.round(d * 100) / 100.0);
+	}
+
+	private static String pad(String s, int width) {
+		StringBuffer result = new StringBuffer(s);
+		while (result.length() < width) {
+			result.append(' ');
+		}
+		return result.append(' ').toString();
+	}
+}
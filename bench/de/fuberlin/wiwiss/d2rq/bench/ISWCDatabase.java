@@ -0,0 +1,247 @@
+package de.fuberlin.wiwiss.d2rq.bench;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.regex.Matcher;
+
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.Resource;
+import com.hp.hpl.jena.util.FileManager;
+import com.hp.hpl.jena.vocabulary.RDF;
+
+import de.fuberlin.wiwiss.d2rq.D2RQException;
+import de.fuberlin.wiwiss.d2rq.GraphD2RQ;
+import de.fuberlin.wiwiss.d2rq.map.Mapping;
+import de.fuberlin.wiwiss.d2rq.parser.MapParser;
+import de.fuberlin.wiwiss.d2rq.vocab.D2RQ;
+
+/**
+ * Loads the ISWC example database from its MySQL dump into an
+ * in-memory HSQLDB instance, and sets up the ISWC example mapping
+ * to use it. The dump is translated on the fly: identifiers keep
+ * their case, MySQL-specific column types and table options are
+ * replaced or dropped, and multi-row INSERTs are split up.
+ */
+public class ISWCDatabase {
+	public static final String DUMP_FILE = "doc/example/iswc-mysql.sql";
+	public static final String MAPPING_FILE = "doc/example/mapping-iswc.n3";
+	public static final String BASE_URI = "http://test/";
+	private static final String JDBC_URL = "jdbc:hsqldb:mem:iswcbench";
+	private static final String DRIVER = "org.hsqldb.jdbcDriver";
+
+	private static GraphD2RQ graph = null;
+
+	/**
+	 * @return A graph for the ISWC mapping on a freshly loaded database;
+	 * 		the same instance on every call
+	 */
+	public static synchronized GraphD2RQ graph() {
+		if (graph == null) {
+			load();
+			graph = new GraphD2RQ(mapping());
+			graph.connect();
+		}
+		return graph;
+	}
+
+	/**
+	 * @return The ISWC mapping, changed to use the HSQLDB database
+	 */
+	public static Mapping mapping() {
+		Model mapModel = FileManager.get().loadModel(MAPPING_FILE, BASE_URI, "N3");
+		Resource database = (Resource) mapModel.listSubjectsWithProperty(
+				RDF.type, D2RQ.Database).next();
+		mapModel.removeAll(database, null, null);
+		database.addProperty(RDF.type, D2RQ.Database);
+		database.addProperty(D2RQ.jdbcDriver, DRIVER);
+		database.addProperty(D2RQ.jdbcDSN, JDBC_URL);
+		database.addProperty(D2RQ.username, "sa");
+		return new MapParser(mapModel, BASE_URI).parse();
+	}
+
+	private static void load() {
+		try {
+			Class.forName(DRIVER);
+			Connection connection = DriverManager.getConnection(JDBC_URL, "sa", "");
+			Statement statement = connection.createStatement();
+			Iterator it = translate(read(DUMP_FILE)).iterator();
+			while (it.hasNext()) {
+				statement.execute((String) it.next());
+			}
+			statement.close();
+			connection.close();
+		} catch (ClassNotFoundException ex) {
+			throw new D2RQException("HSQLDB driver not found: " + ex.getMessage());
+		} catch (SQLException ex) {
+			throw new D2RQException(ex);
+		} catch (IOException ex) {
+			throw new D2RQException(ex);
+		}
+	}
+
+	private static String read(String filename) throws IOException {
+		Reader in = new InputStreamReader(new FileInputStream(filename), "utf-8");
+		StringBuffer result = new StringBuffer();
+		char[] buffer = new char[8192];
+		int count;
+		while ((count = in.read(buffer)) != -1) {
+			result.append(buffer, 0, count);
+		}
+		in.close();
+		return result.toString();
+	}
+
+	/**
+	 * @return HSQLDB statements for the CREATE TABLE and INSERT
+	 * 		statements in a MySQL dump
+	 */
+	static List translate(String dump) {
+		List result = new ArrayList();
+		Iterator it = splitOutsideQuotes(dump, ';').iterator();
+		while (it.hasNext()) {
+			String statement = stripComments((String) it.next()).trim();
+			if (statement.startsWith("CREATE TABLE")) {
+				result.add(translateCreateTable(statement));
+			} else if (statement.startsWith("INSERT INTO")) {
+				result.addAll(translateInsert(statement));
+			}
+			// ALTER TABLE for foreign keys, SET etc. are not needed
+		}
+		return result;
+	}
+
+	private static String translateCreateTable(String statement) {
+		StringBuffer result = new StringBuffer();
+		String[] lines = statement.split("\n");
+		for (int i = 0; i < lines.length; i++) {
+			String line = lines[i].trim();
+			if (line.startsWith("KEY ") || line.startsWith("UNIQUE KEY ")) continue;
+			if (line.startsWith(")")) {
+				line = ")";
+			}
+			line = line.replaceAll("\\bint\\(\\d+\\)", "INTEGER");
+			line = line.replaceAll("\\btinyint\\(\\d+\\)", "TINYINT");
+			line = line.replaceAll("\\b(medium|long)?text\\b", "LONGVARCHAR");
+			line = line.replaceAll("\\bdatetime\\b", "TIMESTAMP");
+			line = line.replaceAll(" default (NULL|'[^']*')", "");
+			line = line.replaceAll("PRIMARY KEY +\\(", "PRIMARY KEY (");
+			result.append(line);
+			result.append('\n');
+		}
+		// Remove the comma before the closing parenthesis left by dropped KEY lines
+		return quoteIdentifiers(result.toString()).replaceAll(",\\s*\\)\\s*$", ")");
+	}
+
+	private static List translateInsert(String statement) {
+		int values = statement.indexOf(" VALUES ");
+		String head = quoteIdentifiers(statement.substring(0, values));
+		List result = new ArrayList();
+		String rows = statement.substring(values + " VALUES ".length()).trim();
+		Iterator it = splitOutsideQuotes(rows, ',').iterator();
+		StringBuffer row = new StringBuffer();
+		int depth = 0;
+		while (it.hasNext()) {
+			// Commas inside rows split them too; reassemble by parenthesis depth
+			String part = (String) it.next();
+			if (row.length() > 0) row.append(',');
+			row.append(part);
+			depth += count(part, '(') - count(part, ')');
+			if (depth == 0) {
+				result.add(head + " VALUES " + translateStrings(row.toString().trim()));
+				row.setLength(0);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Turns MySQL's backslash escapes in string literals into SQL-92
+	 * string literals.
+	 */
+	private static String translateStrings(String values) {
+		StringBuffer result = new StringBuffer();
+		boolean inString = false;
+		for (int i = 0; i < values.length(); i++) {
+			char c = values.charAt(i);
+			if (inString && c == '\\' && i + 1 < values.length()) {
+				char next = values.charAt(++i);
+				switch (next) {
+				case 'n': result.append('\n'); break;
+				case 'r': result.append('\r'); break;
+				case 't': result.append('\t'); break;
+				case '\'': result.append("''"); break;
+				default: result.append(next);
+				}
+				continue;
+			}
+			if (c == '\'') {
+				inString = !inString;
+			}
+			result.append(c);
+		}
+		return result.toString();
+	}
+
+	private static String quoteIdentifiers(String sql) {
+		return sql.replaceAll("`", Matcher.quoteReplacement("\""));
+	}
+
+	private static String stripComments(String sql) {
+		StringBuffer result = new StringBuffer();
+		String[] lines = sql.split("\n");
+		for (int i = 0; i < lines.length; i++) {
+			if (lines[i].trim().startsWith("--")) continue;
+			result.append(lines[i]);
+			result.append('\n');
+		}
+		return result.toString();
+	}
+
+	/**
+	 * Splits at a separator character, ignoring separators in
+	 * single-quoted strings with MySQL backslash escapes.
+	 */
+	private static List splitOutsideQuotes(String s, char separator) {
+		List result = new ArrayList();
+		boolean inString = false;
+		int start = 0;
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (inString && c == '\\') {
+				i++;
+			} else if (c == '\'') {
+				inString = !inString;
+			} else if (c == separator && !inString) {
+				result.add(s.substring(start, i));
+				start = i + 1;
+			}
+		}
+		result.add(s.substring(start));
+		return result;
+	}
+
+	private static int count(String s, char c) {
+		int result = 0;
+		boolean inString = false;
+		for (int i = 0; i < s.length(); i++) {
+			char d = s.charAt(i);
+			if (inString && d == '\\') {
+				i++;
+			} else if (d == '\'') {
+				inString = !inString;
+			} else if (d == c && !inString) {
+				result++;
+			}
+		}
+		return result;
+	}
+}
@@ -0,0 +1,225 @@
+package de.fuberlin.wiwiss.d2rq.bench;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.query.Query;
+import com.hp.hpl.jena.query.QueryExecution;
+import com.hp.hpl.jena.query.QueryExecutionFactory;
+import com.hp.hpl.jena.query.QueryFactory;
+import com.hp.hpl.jena.query.ResultSet;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.sparql.algebra.Algebra;
+import com.hp.hpl.jena.sparql.algebra.Op;
+
+import de.fuberlin.wiwiss.d2rq.GraphD2RQ;
+import de.fuberlin.wiwiss.d2rq.algebra.Relation;
+import de.fuberlin.wiwiss.d2rq.algebra.TripleRelation;
+import de.fuberlin.wiwiss.d2rq.engine.GraphPatternTranslator;
+import de.fuberlin.wiwiss.d2rq.engine.NodeRelation;
+import de.fuberlin.wiwiss.d2rq.optimizer.D2RQTreeOptimizer;
+import de.fuberlin.wiwiss.d2rq.sql.QueryExecutionIterator;
+import de.fuberlin.wiwiss.d2rq.sql.ResultRow;
+import de.fuberlin.wiwiss.d2rq.sql.SelectStatementBuilder;
+import de.fuberlin.wiwiss.d2rq.values.Pattern;
+
+/**
+ * Benchmarks for the stages of the SPARQL-to-SQL pipeline, run
+ * against the ISWC example database in HSQLDB (see {@link ISWCDatabase}).
+ */
+public class PipelineBenchmarks {
+	private static final String PREFIXES = 
+		"PREFIX dc: <http://purl.org/dc/elements/1.1/>\n" +
+		"PREFIX foaf: <http://xmlns.com/foaf/0.1/>\n" +
+		"PREFIX iswc: <http://annotation.semanticweb.org/iswc/iswc.daml#>\n" +
+		"PREFIX rdfs: <http://www.w3.org/2000/01/rdf-schema#>\n";
+
+	/**
+	 * Representative basic graph patterns: a single pattern,
+	 * a three-way join, and a lookup of a known resource
+	 */
+	private static final String[][] QUERIES = {
+		{"titles", "SELECT ?paper ?title WHERE { ?paper dc:title ?title }"},
+		{"authors", "SELECT ?title ?name WHERE { ?paper dc:title ?title . " +
+				"?paper dc:creator ?author . ?author foaf:name ?name }"},
+		{"resource", "SELECT ?p ?o WHERE { <" + ISWCDatabase.BASE_URI + "persons/1> ?p ?o }"},
+		{"filter", "SELECT ?name WHERE { ?person foaf:name ?name . " +
+				"?person rdfs:label ?label FILTER (?label = \"Andy Seaborne\") }"}
+	};
+
+	private static final Node dcTitle = Node.createURI("http://purl.org/dc/elements/1.1/title");
+	private static final Node dcCreator = Node.createURI("http://purl.org/dc/elements/1.1/creator");
+	private static final Node foafName = Node.createURI("http://xmlns.com/foaf/0.1/name");
+	private static final Node foafMbox = Node.createURI("http://xmlns.com/foaf/0.1/mbox");
+	private static final Node paper = Node.createVariable("paper");
+	private static final Node author = Node.createVariable("author");
+
+	public static List all() {
+		List result = new ArrayList();
+		List authorPattern = new ArrayList();
+		authorPattern.add(new Triple(paper, dcTitle, Node.createVariable("title")));
+		authorPattern.add(new Triple(paper, dcCreator, author));
+		authorPattern.add(new Triple(author, foafName, Node.createVariable("name")));
+		List titlePattern = authorPattern.subList(0, 1);
+		result.add(translate("translate.titles", titlePattern));
+		result.add(translate("translate.authors", authorPattern));
+		for (int i = 0; i < QUERIES.length; i++) {
+			result.add(optimize("optimize." + QUERIES[i][0], PREFIXES + QUERIES[i][1]));
+		}
+		result.add(selectStatement("sql.build.titles", titlePattern));
+		result.add(selectStatement("sql.build.authors", authorPattern));
+		result.add(readRows("sql.execute.authors", authorPattern));
+		result.add(makeValue("pattern.makeValue"));
+		result.add(valueExpression("pattern.valueExpression"));
+		for (int i = 0; i < QUERIES.length; i++) {
+			result.add(execute("sparql." + QUERIES[i][0], PREFIXES + QUERIES[i][1]));
+		}
+		return result;
+	}
+
+	private static Benchmark translate(String name, final List triplePatterns) {
+		return new Benchmark(name) {
+			private GraphD2RQ graph;
+			public void setUp() {
+				graph = ISWCDatabase.graph();
+			}
+			public Object run() {
+				return new GraphPatternTranslator(triplePatterns, graph.tripleRelations(),
+						graph.getConfiguration().getUseAllOptimizations()).translate();
+			}
+		};
+	}
+
+	private static Benchmark optimize(String name, final String sparql) {
+		return new Benchmark(name) {
+			private GraphD2RQ graph;
+			private Op op;
+			public void setUp() {
+				graph = ISWCDatabase.graph();
+				op = Algebra.compile(QueryFactory.create(sparql));
+			}
+			public Object run() {
+				return D2RQTreeOptimizer.optimize(op, graph);
+			}
+		};
+	}
+
+	private static Benchmark selectStatement(String name, final List triplePatterns) {
+		return new Benchmark(name) {
+			private Relation relation;
+			public void setUp() {
+				relation = firstRelation(triplePatterns);
+			}
+			public Object run() {
+				return new SelectStatementBuilder(relation).getSQLStatement();
+			}
+		};
+	}
+
+	private static Benchmark readRows(String name, final List triplePatterns) {
+		return new Benchmark(name) {
+			private Relation relation;
+			public void setUp() {
+				relation = firstRelation(triplePatterns);
+			}
+			public Object run() {
+				QueryExecutionIterator it = new QueryExecutionIterator(
+						new SelectStatementBuilder(relation), relation.database());
+				ResultRow last = null;
+				while (it.hasNext()) {
+					last = it.nextRow();
+				}
+				it.close();
+				return last;
+			}
+		};
+	}
+
+	private static Benchmark makeValue(String name) {
+		return new Benchmark(name) {
+			private Pattern pattern = new Pattern(
+					ISWCDatabase.BASE_URI + "persons/@@persons.PerID@@/@@persons.Email@@");
+			private ResultRow row;
+			public void setUp() {
+				row = personRow(pattern);
+			}
+			public Object run() {
+				return pattern.makeValue(row);
+			}
+		};
+	}
+
+	private static Benchmark valueExpression(String name) {
+		return new Benchmark(name) {
+			private Pattern pattern = new Pattern(
+					ISWCDatabase.BASE_URI + "persons/@@persons.PerID@@/@@persons.Email@@");
+			private String value = ISWCDatabase.BASE_URI + "persons/5/andy.seaborne@hp.com";
+			public Object run() {
+				return pattern.valueExpression(value);
+			}
+		};
+	}
+
+	private static Benchmark execute(String name, final String sparql) {
+		return new Benchmark(name) {
+			private Model model;
+			private Query query;
+			public void setUp() {
+				model = ModelFactory.createModelForGraph(ISWCDatabase.graph());
+				query = QueryFactory.create(sparql);
+			}
+			public Object run() {
+				QueryExecution execution = QueryExecutionFactory.create(query, model);
+				ResultSet results = execution.execSelect();
+				Object last = null;
+				while (results.hasNext()) {
+					last = results.next();
+				}
+				execution.close();
+				return last;
+			}
+		};
+	}
+
+	private static Relation firstRelation(List triplePatterns) {
+		GraphD2RQ graph = ISWCDatabase.graph();
+		List relations = new GraphPatternTranslator(triplePatterns, graph.tripleRelations(),
+				graph.getConfiguration().getUseAllOptimizations()).translate();
+		return ((NodeRelation) relations.get(0)).baseRelation();
+	}
+
+	/**
+	 * @return A result row from the persons table, with the original
+	 * 		table name instead of an alias, that produces
+	 * 		a value for the pattern
+	 */
+	private static ResultRow personRow(Pattern pattern) {
+		Relation persons = null;
+		Iterator it = ISWCDatabase.graph().tripleRelations().iterator();
+		while (persons == null && it.hasNext()) {
+			TripleRelation relation = ((TripleRelation) it.next()).selectTriple(
+					new Triple(Node.ANY, foafMbox, Node.ANY));
+			if (relation != null) {
+				persons = relation.baseRelation();
+			}
+		}
+		SelectStatementBuilder select = new SelectStatementBuilder(
+				persons.project(pattern.projectionSpecs()));
+		QueryExecutionIterator rows = new QueryExecutionIterator(select, persons.database());
+		try {
+			while (rows.hasNext()) {
+				ResultRow row = rows.nextRow();
+				if (pattern.makeValue(row) != null) {
+					return row;
+				}
+			}
+		} finally {
+			rows.close();
+		}
+		throw new IllegalStateException("No row produces a value for " + pattern);
+	}
+}
@@ -18,6 +18,8 @@ import com.hp.hpl.jena.util.FileManager;
 
 import de.fuberlin.wiwiss.d2rq.D2RQException;
 import de.fuberlin.wiwiss.d2rq.ModelD2RQ;
+import de.fuberlin.wiwiss.d2rq.dump.NTriplesDump;
+import de.fuberlin.wiwiss.d2rq.dump.ParallelNTriplesDump;
 import de.fuberlin.wiwiss.d2rq.map.Database;
 import de.fuberlin.wiwiss.d2rq.map.Mapping;
 import de.fuberlin.wiwiss.d2rq.mapgen.MappingGenerator;
@@ -52,6 +54,8 @@ public class dump_rdf {
 		ArgDecl baseArg = new ArgDecl(true, "b", "base");
 		ArgDecl formatArg = new ArgDecl(true, "f", "format");
 		ArgDecl outfileArg = new ArgDecl(true, "o", "out", "outfile");
+		ArgDecl threadsArg = new ArgDecl(true, "t", "threads");
+		ArgDecl partitionsArg = new ArgDecl(true, "partitions");
 		cmd.add(userArg);
 		cmd.add(passArg);
 		cmd.add(driverArg);
@@ -61,6 +65,8 @@ public class dump_rdf {
 		cmd.add(baseArg);
 		cmd.add(formatArg);
 		cmd.add(outfileArg);
+		cmd.add(threadsArg);
+		cmd.add(partitionsArg);
 		cmd.process(args);
 
 		RDFDump dump = new RDFDump();
@@ -91,6 +97,12 @@ public class dump_rdf {
 		if (cmd.contains(outfileArg)) {
 			dump.setOutputFile(cmd.getArg(outfileArg).getValue());
 		}
+		if (cmd.contains(threadsArg)) {
+			dump.setThreads(Integer.parseInt(cmd.getArg(threadsArg).getValue()));
+		}
+		if (cmd.contains(partitionsArg)) {
+			dump.setPartitions(Integer.parseInt(cmd.getArg(partitionsArg).getValue()));
+		}
 		if (cmd.numItems() > 0 || !dump.hasParameter()) {
 			usage();
 			return;
@@ -127,7 +139,11 @@ public class dump_rdf {
 		System.out.println("    -m mapURL       URL of a D2RQ mapping file (optional)");
 		System.out.println("    -b baseURI      Base URI for generated RDF (optional)");
 		System.out.println("    -f format       One of N-TRIPLE (default), RDF/XML, RDF/XML-ABBREV, N3");
+		System.out.println("                    N-TRIPLE output is streamed and needs little memory");
 		System.out.println("    -o outfile      Output file name (default: stdout)");
+		System.out.println("    --threads n     Run n SQL queries at the same time (N-TRIPLE only, default: 1)");
+		System.out.println("    --partitions k  Split tables with a numeric primary key into k key ranges");
+		System.out.println("                    (default: same as --threads)");
 		System.out.println();
 	}
 	
@@ -141,6 +157,8 @@ public class dump_rdf {
 		private String format = "N-TRIPLE";
 		private String outputFile = null;
 		private Integer fetchSize = null;
+		private int threads = 1;
+		private int partitions = -1;
 		
 		private boolean hasParameter = false;
 		void setUser(String user) {
@@ -179,10 +197,27 @@ public class dump_rdf {
 			this.outputFile = outputFile;
 			this.hasParameter = true;
 		}
+		void setThreads(int threads) {
+			this.threads = threads;
+		}
+		void setPartitions(int partitions) {
+			this.partitions = partitions;
+		}
 		boolean hasParameter() {
 			return this.hasParameter;
 		}
 		void doDump() throws DumpParameterException {
+			if (this.threads < 1) {
+				throw new DumpParameterException("Number of threads must be at least 1");
+			}
+			if (this.threads > 1 && !isNTriples()) {
+				throw new DumpParameterException("Multiple threads are only supported for N-TRIPLE output");
+			}
+			if (this.partitions == -1) {
+				this.partitions = this.threads;
+			} else if (this.partitions < 1) {
+				throw new DumpParameterException("Number of partitions must be at least 1");
+			}
 			Model mapModel = makeMapModel();
 			
 			// Override the d2rq:resultSizeLimit given in the mapping and set fetchSize
@@ -198,8 +233,27 @@ public class dump_rdf {
 					if (db.getFetchSize() == Database.NO_FETCH_SIZE)
 						db.setFetchSize(db.getJDBCDSN() != null && db.getJDBCDSN().contains(":mysql:") ? Integer.MIN_VALUE : DEFAULT_DUMP_FETCH_SIZE);
 				}
+				if (db.getConnectionPoolSize() < this.threads) {
+					db.setConnectionPoolSize(this.threads);
+				}
 			}		
 			
+			if (isNTriples()) {
+				// Stream rows straight to the output, bypassing Jena's writers
+				mapping.validate();
+				PrintStream out = makeDestinationStream();
+				try {
+					NTriplesDump dump = (this.threads == 1) 
+							? new NTriplesDump(mapping)
+							: new ParallelNTriplesDump(mapping, this.threads, this.partitions);
+					dump.write(out);
+				} finally {
+					closeDatabases(mapping);
+				}
+				out.flush();
+				return;
+			}
+			
 			Model d2rqModel = new ModelD2RQ(mapping);
 			String absoluteBaseURI = MapParser.absolutizeURI(baseURI());
 			PrintStream out = makeDestinationStream();
@@ -219,6 +273,19 @@ public class dump_rdf {
 			}
 			d2rqModel.close();
 		}
+		private boolean isNTriples() {
+			return "N-TRIPLE".equals(this.format) || "N-TRIPLES".equals(this.format)
+					|| "NT".equals(this.format);
+		}
+		private void closeDatabases(Mapping mapping) {
+			Iterator it = mapping.databases().iterator();
+			while (it.hasNext()) {
+				Database db = (Database) it.next();
+				if (db.isConnected()) {
+					db.connectedDB().close();
+				}
+			}
+		}
 		private Model makeMapModel() throws DumpParameterException {
 			if (hasMappingFile()) {
 				return FileManager.get().loadModel(this.mapURL, baseURI(), null);
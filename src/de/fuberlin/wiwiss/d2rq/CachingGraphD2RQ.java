@@ -1,64 +1,109 @@
 package de.fuberlin.wiwiss.d2rq;
 
-import java.util.LinkedHashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.Iterator;
 
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
 import com.hp.hpl.jena.graph.TripleMatch;
 import com.hp.hpl.jena.rdf.model.Model;
 import com.hp.hpl.jena.util.iterator.ExtendedIterator;
-import com.hp.hpl.jena.util.iterator.WrappedIterator;
+import com.hp.hpl.jena.util.iterator.NullIterator;
+
+import de.fuberlin.wiwiss.d2rq.find.DescribeQuery;
+import de.fuberlin.wiwiss.d2rq.map.Configuration;
+import de.fuberlin.wiwiss.d2rq.map.Mapping;
 
 
 /**
  * A GraphD2RQ that caches the results of the most recently performed
- * queries on an LRU basis.
- * 
+ * queries in a {@link TripleCache}. The cache is bounded by the total
+ * number of cached triples and can be shared by concurrent threads.
+ * Its limits are taken from the <tt>d2rq:cacheMaxTriples</tt>,
+ * <tt>d2rq:cacheMaxEntryTriples</tt> and <tt>d2rq:cacheTimeToLive</tt>
+ * settings of the mapping's {@link Configuration}.
+ *
  * @author Holger Knublauch (holger@topquadrant.com)
  * @version $Id: CachingGraphD2RQ.java,v 1.1 2006/09/11 23:22:25 cyganiak Exp $
  */
 public class CachingGraphD2RQ extends GraphD2RQ {
+	public static final long DEFAULT_MAX_TRIPLES = Configuration.DEFAULT_CACHE_MAX_TRIPLES;
+	public static final long DEFAULT_MAX_ENTRY_TRIPLES = Configuration.DEFAULT_CACHE_MAX_ENTRY_TRIPLES;
 
-	/**
-	 * Cache of recently queried triple matches
-	 * (TripleMatch -> List<Triple>) 
-	 */
-	private LinkedHashMap queryCache = new LinkedHashMap(100, 0.75f, true) {
-		
-		private static final int MAX_ENTRIES = 10000;
+	private final TripleCache cache;
 
-	    protected boolean removeEldestEntry(Map.Entry eldest) {
-	        return size() > MAX_ENTRIES;
-	    }
+	private final TripleCache.Loader loader = new TripleCache.Loader() {
+		public ExtendedIterator load(Triple pattern) {
+			return CachingGraphD2RQ.super.graphBaseFind(pattern);
+		}
 	};
-	
+
 	public CachingGraphD2RQ(Model mapModel, String baseURIForData) throws D2RQException {
 		super(mapModel, baseURIForData);
+		this.cache = createCache(getConfiguration());
+	}
+
+	/**
+	 * @param mapping A D2RQ mapping; its configuration sets the cache limits
+	 */
+	public CachingGraphD2RQ(Mapping mapping) throws D2RQException {
+		super(mapping);
+		this.cache = createCache(mapping.configuration());
 	}
-	
+
+	/**
+	 * @param mapping A D2RQ mapping
+	 * @param maxTriples Maximum number of triples in the cache
+	 * @param maxEntryTriples Query results with more triples are not cached
+	 * @param timeToLive Milliseconds after which cached results expire,
+	 * 		or {@link TripleCache#NO_EXPIRY}
+	 */
+	public CachingGraphD2RQ(Mapping mapping, long maxTriples, long maxEntryTriples, long timeToLive)
+			throws D2RQException {
+		super(mapping);
+		this.cache = new TripleCache(maxTriples, maxEntryTriples, timeToLive);
+	}
+
+	private static TripleCache createCache(Configuration configuration) {
+		return new TripleCache(configuration.getCacheMaxTriples(),
+				configuration.getCacheMaxEntryTriples(),
+				configuration.getCacheTimeToLive() == Configuration.NO_CACHE_EXPIRY
+						? TripleCache.NO_EXPIRY : configuration.getCacheTimeToLive() * 1000L);
+	}
+
 	/**
 	 * Clears the current cache.  This can be used in case the
 	 * database has been changed.
 	 */
 	public void clearCache() {
-		queryCache.clear();
+		cache.clear();
 	}
 
-	
 	/**
-	 * Overloaded to reuse and update the cache.
+	 * @return The cache, for access to its statistics
 	 */
-	public ExtendedIterator graphBaseFind(TripleMatch m) {
+	public TripleCache cache() {
+		return cache;
+	}
 
-		List cached = (List) queryCache.get(m);
-		if(cached != null) {
-            return WrappedIterator.create(cached.iterator());
+	/**
+	 * Overloaded to reuse and update the cache, which holds
+	 * the results of single triple patterns.
+	 */
+	public ExtendedIterator describe(Node resource, boolean includeIncoming) {
+		checkOpen();
+		ExtendedIterator result = NullIterator.emptyIterator();
+		Iterator it = DescribeQuery.triplePatterns(resource, includeIncoming).iterator();
+		while (it.hasNext()) {
+			result = result.andThen(cache.find((Triple) it.next(), loader));
 		}
-		
-		ExtendedIterator it = super.graphBaseFind(m);
-		
-		final List list = it.toList();
-		queryCache.put(m, list);
-		return WrappedIterator.create(list.iterator());
+		return result;
+	}
+
+	/**
+	 * Overloaded to reuse and update the cache.
+	 */
+	public ExtendedIterator graphBaseFind(TripleMatch m) {
+		checkOpen();
+		return cache.find(m.asTriple(), loader);
 	}
 }
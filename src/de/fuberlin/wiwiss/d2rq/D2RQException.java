@@ -77,6 +77,10 @@ public class D2RQException extends JenaException {
 	public static final int PROPERTYBRIDGE_DUPLICATE_ORDER = 62;
 	public static final int PROPERTYBRIDGE_DUPLICATE_ORDERDESC = 63;
 	public static final int DATABASE_ALREADY_CONNECTED = 64;
+	public static final int D2RQ_DB_CONNECTION_TIMEOUT = 65;
+	public static final int DATABASE_INVALID_CONNECTION_POOL_SIZE = 66;
+	public static final int DATABASE_INVALID_CONNECTION_POOL_TIMEOUT = 67;
+	public static final int CONFIGURATION_INVALID_CACHE_SETTING = 68;
 	
 	private int code;
 	
@@ -2,12 +2,10 @@ package de.fuberlin.wiwiss.d2rq;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -27,18 +25,22 @@ import com.hp.hpl.jena.vocabulary.RDF;
 import com.hp.hpl.jena.vocabulary.RDFS;
 
 import de.fuberlin.wiwiss.d2rq.algebra.Relation;
-import de.fuberlin.wiwiss.d2rq.algebra.RelationalOperators;
 import de.fuberlin.wiwiss.d2rq.algebra.TripleRelation;
 import de.fuberlin.wiwiss.d2rq.engine.D2RQDatasetGraph;
+import de.fuberlin.wiwiss.d2rq.engine.PlanCache;
 import de.fuberlin.wiwiss.d2rq.engine.QueryEngineD2RQ;
+import de.fuberlin.wiwiss.d2rq.find.ClassMapInventory;
+import de.fuberlin.wiwiss.d2rq.find.DescribeQuery;
 import de.fuberlin.wiwiss.d2rq.find.FindQuery;
 import de.fuberlin.wiwiss.d2rq.map.Configuration;
 import de.fuberlin.wiwiss.d2rq.map.Database;
 import de.fuberlin.wiwiss.d2rq.map.Mapping;
 import de.fuberlin.wiwiss.d2rq.nodes.FixedNodeMaker;
 import de.fuberlin.wiwiss.d2rq.nodes.NodeMaker;
+import de.fuberlin.wiwiss.d2rq.nodes.URIMakerIndex;
 import de.fuberlin.wiwiss.d2rq.parser.MapParser;
 import de.fuberlin.wiwiss.d2rq.pp.PrettyPrinter;
+import de.fuberlin.wiwiss.d2rq.sql.ExecutionStatistics;
 
 /**
  * A D2RQ virtual read-only graph backed by a non-RDF database.
@@ -61,6 +63,7 @@ public class GraphD2RQ extends GraphBase implements Graph {
 	private final Capabilities capabilities = new D2RQCapabilities();
 	private final Mapping mapping;
 	private final D2RQDatasetGraph dataset = new D2RQDatasetGraph(this);
+	private final PlanCache planCache;
 
 	/**
 	 * Creates a new D2RQ graph from a Jena model containing a D2RQ
@@ -83,6 +86,7 @@ public class GraphD2RQ extends GraphBase implements Graph {
 	public GraphD2RQ(Mapping mapping) throws D2RQException {
 		this.mapping = mapping;
 		this.mapping.validate();
+		this.planCache = new PlanCache(mapping.configuration().getPlanCacheSize());
 		getPrefixMapping().setNsPrefixes(mapping.getPrefixMapping());
 	}
 
@@ -124,13 +128,33 @@ public class GraphD2RQ extends GraphBase implements Graph {
 		if (this.log.isDebugEnabled()) {
 			this.log.debug("Find: " + PrettyPrinter.toString(t, getPrefixMapping()));
 		}
-		return new FindQuery(t, this.mapping.compiledPropertyBridges(), this.mapping.configuration().getServeVocabulary(), this.mapping.getHasDynamicProperties(), this.mapping.getVocabularyModel()).iterator();
+		return new FindQuery(t, this.mapping.compiledPropertyBridges(), this.mapping.configuration().getServeVocabulary(), this.mapping.getHasDynamicProperties(), this.mapping.getVocabularyModel(),
+				ExecutionStatistics.global(), this.mapping.configuration().getParallelQueries()).iterator();
     }
 
 	/**
-	 * Connects all databases. This is done automatically if
-	 * needed. The method can be used to test the connections
-	 * earlier.
+	 * Finds the triples that describe a resource, that is, those that
+	 * have the resource as subject and, if asked for, those that have
+	 * it as object or predicate. Runs fewer SQL queries than one
+	 * {@link #find(Node, Node, Node)} for each of these patterns.
+	 * @param resource A URI or blank node
+	 * @param includeIncoming Also find triples that have the resource
+	 * 		as object or predicate?
+	 * @return An iterator over the triples, possibly with duplicates
+	 */
+	public ExtendedIterator describe(Node resource, boolean includeIncoming) {
+		checkOpen();
+		if (this.log.isDebugEnabled()) {
+			this.log.debug("Describe: " + PrettyPrinter.toString(resource, getPrefixMapping()));
+		}
+		return new DescribeQuery(resource, includeIncoming, this.mapping.compiledPropertyBridges(), this.mapping.configuration().getServeVocabulary(), this.mapping.getHasDynamicProperties(), this.mapping.getVocabularyModel(),
+				ExecutionStatistics.global(), this.mapping.configuration().getParallelQueries()).iterator();
+	}
+
+	/**
+	 * Connects all databases, and opens a first connection in each
+	 * connection pool. This is done automatically if needed. The
+	 * method can be used to test the connections earlier.
 	 * @throws D2RQException on connection failure
 	 */
 	public void connect() {
@@ -138,6 +162,7 @@ public class GraphD2RQ extends GraphBase implements Graph {
 		while (it.hasNext()) {
 			Database db = (Database) it.next();
 			db.connectedDB().connection();
+			db.connectedDB().returnConnection(db.connectedDB().checkOutConnection());
 		}
 	}
 	
@@ -146,8 +171,8 @@ public class GraphD2RQ extends GraphBase implements Graph {
     /**
      * TODO This section was done as a quick hack for D2R Server 0.3 and really shouldn't be here
      */
-    private Map classMapInventoryBridges = new HashMap();
-    private Map classMapNodeMakers = new HashMap();
+    private Map classMapInventories = new HashMap();	// class map name => ClassMapInventory
+    private URIMakerIndex classMapNodeMakers = new URIMakerIndex();
     
     public void initInventory(String inventoryBaseURI) {
 		Iterator it = this.mapping.classMapResources().iterator();
@@ -155,7 +180,7 @@ public class GraphD2RQ extends GraphBase implements Graph {
 			Resource classMapResource = (Resource) it.next();
 			NodeMaker resourceMaker = this.mapping.classMap(classMapResource).nodeMaker();
 			Node classMap = classMapResource.asNode();
-			this.classMapNodeMakers.put(toClassMapName(classMap), resourceMaker);
+			this.classMapNodeMakers.add(resourceMaker, toClassMapName(classMap));
 			List inventoryBridges = new ArrayList();
 			Iterator bridgeIt = this.mapping.classMap(classMapResource).compiledPropertyBridges().iterator();
 			while (bridgeIt.hasNext()) {
@@ -175,7 +200,8 @@ public class GraphD2RQ extends GraphBase implements Graph {
 				inventoryBridges.add(new TripleRelation(relation, 
 						resourceMaker, typeNodeMaker, resourceNodeMaker));
 			}
-			this.classMapInventoryBridges.put(toClassMapName(classMap), inventoryBridges);
+			this.classMapInventories.put(toClassMapName(classMap), new ClassMapInventory(
+					this.mapping.classMap(classMapResource).relation(), resourceMaker, inventoryBridges));
 		}
     }
 
@@ -184,42 +210,116 @@ public class GraphD2RQ extends GraphBase implements Graph {
     }
     
     public Collection classMapNames() {
-    	return this.classMapInventoryBridges.keySet();
+    	return this.classMapInventories.keySet();
     }
     
     public Model classMapInventory(String classMapName) {
-    	List inventoryBridges = (List) this.classMapInventoryBridges.get(classMapName);
-    	if (inventoryBridges == null) {
+    	ExtendedIterator triples = classMapInventoryTriples(classMapName);
+    	if (triples == null) {
     		return null;
     	}
     	Model result = ModelFactory.createDefaultModel();
     	result.setNsPrefixes(this.getPrefixMapping());
-    	result.getGraph().getBulkUpdateHandler().add(
-    			new FindQuery(Triple.ANY, inventoryBridges).iterator());
+    	result.getGraph().getBulkUpdateHandler().add(triples);
     	return result;
     }
 
-    public Collection classMapNamesForResource(Node resource) {
-    	if (!resource.isURI()) {
-    		return Collections.EMPTY_LIST;
+    /**
+     * Like {@link #classMapInventory(String)}, but returns the triples
+     * as they are read from the database, so that long lists of
+     * instances can be written out without keeping them in memory.
+     * The triples are not checked for duplicates.
+     * @return An iterator over {@link Triple}s, or <tt>null</tt> if there
+     * 		is no class map of that name
+     */
+    public ExtendedIterator classMapInventoryTriples(String classMapName) {
+    	ClassMapInventory inventory = (ClassMapInventory) this.classMapInventories.get(classMapName);
+    	if (inventory == null) {
+    		return null;
     	}
-    	List results = new ArrayList();
-    	Iterator it = this.classMapNodeMakers.entrySet().iterator();
-    	while (it.hasNext()) {
-			Entry entry = (Entry) it.next();
-			String classMapName = (String) entry.getKey();
-			NodeMaker nodeMaker = (NodeMaker) entry.getValue();
-			if (!nodeMaker.selectNode(resource, RelationalOperators.DUMMY).equals(NodeMaker.EMPTY)) {
-				results.add(classMapName);
-			}
-		}
-    	return results;
+    	return inventory.triples();
+    }
+
+    /**
+     * Reads one page of the instances of a class map, see
+     * {@link ClassMapInventory#page(String, int)}.
+     * @param after The key value of the last instance on the previous
+     * 		page, or <tt>null</tt> for the first page
+     * @return The page, or <tt>null</tt> if there is no class map of that name
+     * @throws IllegalArgumentException if <tt>after</tt> is not a valid key,
+     * 		see {@link #isValidClassMapKey(String, String)}
+     */
+    public ClassMapInventory.Page classMapInventoryPage(String classMapName, String after, int pageSize) {
+    	ClassMapInventory inventory = (ClassMapInventory) this.classMapInventories.get(classMapName);
+    	if (inventory == null) {
+    		return null;
+    	}
+    	return inventory.page(after, pageSize);
+    }
+
+    /**
+     * @return <tt>false</tt> if the value can't be a key of the class map's
+     * 		instances, see {@link ClassMapInventory#isValidKey(String)}
+     */
+    public boolean isValidClassMapKey(String classMapName, String value) {
+    	ClassMapInventory inventory = (ClassMapInventory) this.classMapInventories.get(classMapName);
+    	return inventory == null || inventory.isValidKey(value);
+    }
+
+    public Collection classMapNamesForResource(Node resource) {
+    	return this.classMapNodeMakers.matches(resource);
     }
     
     public Collection tripleRelations() {
     	return mapping.compiledPropertyBridges();
     }
     
+    /**
+     * @return The mapping this graph was created from
+     */
+    public Mapping getMapping() {
+    	return this.mapping;
+    }
+
+    /**
+     * @return The optimized plans of recently executed SPARQL queries
+     */
+    public PlanCache planCache() {
+    	return this.planCache;
+    }
+
+    /**
+     * Forgets the table statistics of all databases and the plans
+     * made with them. To be called when the data in the databases
+     * may have changed substantially, e.g. after a reload.
+     */
+    public void refreshStatistics() {
+		Iterator it = this.mapping.databases().iterator();
+		while (it.hasNext()) {
+			Database db = (Database) it.next();
+			if (db.isConnected()) {
+				db.connectedDB().tableStatistics().invalidate();
+			}
+		}
+		this.planCache.clear();
+    }
+
+    /**
+     * @return A number that changes whenever the table statistics
+     * 		of any of the databases change
+     */
+    public long statisticsVersion() {
+    	long result = 0;
+		Iterator it = this.mapping.databases().iterator();
+		while (it.hasNext()) {
+			Database db = (Database) it.next();
+			if (db.isConnected()) {
+				result += db.connectedDB().tableStatistics().version();
+			}
+		}
+		return result;
+    }
+
     public Configuration getConfiguration() {
     	return this.mapping.configuration();
     }
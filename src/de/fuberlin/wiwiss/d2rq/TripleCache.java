@@ -0,0 +1,248 @@
+package de.fuberlin.wiwiss.d2rq;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.util.iterator.ExtendedIterator;
+import com.hp.hpl.jena.util.iterator.WrappedIterator;
+
+/**
+ * A cache for the results of find queries, keyed on the triple pattern.
+ * The cache is bounded by the total number of triples in all cached
+ * results, and evicts the least recently used results first. Results
+ * can optionally expire after a fixed time.
+ *
+ * If several threads miss on the same pattern at the same time, only
+ * the first one runs the query; the others wait for its result.
+ * Results with more triples than the maximum entry size are not cached
+ * and are streamed to the caller instead of being materialized.
+ *
+ * All methods are thread-safe.
+ */
+public class TripleCache {
+	public static final long NO_EXPIRY = -1;
+
+	/**
+	 * Runs a find query on a cache miss.
+	 */
+	public interface Loader {
+		ExtendedIterator load(Triple pattern);
+	}
+
+	private final long maxTriples;
+	private final long maxEntryTriples;
+	private final long timeToLiveMillis;
+
+	/**
+	 * Triple pattern => Entry, in access order
+	 */
+	private final LinkedHashMap entries = new LinkedHashMap(100, 0.75f, true);
+
+	/**
+	 * Triple pattern => Load, for queries currently in progress
+	 */
+	private final Map loads = new HashMap();
+
+	private long weight = 0;
+	private long generation = 0;
+	private long hits = 0;
+	private long misses = 0;
+	private long evictions = 0;
+	private long expirations = 0;
+
+	/**
+	 * @param maxTriples Maximum number of triples in all cached results together
+	 * @param maxEntryTriples Results with more triples are not cached
+	 * @param timeToLive Milliseconds after which a cached result expires,
+	 * 		or {@link #NO_EXPIRY}
+	 */
+	public TripleCache(long maxTriples, long maxEntryTriples, long timeToLive) {
+		this.maxTriples = maxTriples;
+		this.maxEntryTriples = Math.min(maxEntryTriples, maxTriples);
+		this.timeToLiveMillis = timeToLive;
+	}
+
+	/**
+	 * Answers a find query from the cache, or runs it using the loader
+	 * and caches the result.
+	 */
+	public ExtendedIterator find(Triple pattern, Loader loader) {
+		Load load;
+		long loadGeneration;
+		synchronized (this) {
+			Entry entry = (Entry) entries.get(pattern);
+			if (entry != null) {
+				if (!isExpired(entry)) {
+					hits++;
+					return WrappedIterator.create(entry.triples.iterator());
+				}
+				remove(pattern);
+				expirations++;
+			}
+			misses++;
+			load = (Load) loads.get(pattern);
+			if (load != null) {
+				loadGeneration = -1;
+			} else {
+				load = new Load();
+				loads.put(pattern, load);
+				loadGeneration = generation;
+			}
+		}
+		if (loadGeneration == -1) {
+			// Someone else is running the same query; wait for their result
+			List result = load.await();
+			if (result != null) {
+				return WrappedIterator.create(result.iterator());
+			}
+			return loader.load(pattern);
+		}
+		List buffer = new ArrayList();
+		List result = null;
+		try {
+			ExtendedIterator it = loader.load(pattern);
+			while (buffer.size() <= maxEntryTriples && it.hasNext()) {
+				buffer.add(it.next());
+			}
+			if (buffer.size() > maxEntryTriples) {
+				// Too large to cache; stream the rest
+				return WrappedIterator.create(buffer.iterator()).andThen(it);
+			}
+			it.close();
+			result = Collections.unmodifiableList(buffer);
+			return WrappedIterator.create(result.iterator());
+		} finally {
+			// Also on errors, so that waiting threads don't hang
+			finishLoad(pattern, load, loadGeneration, result);
+		}
+	}
+
+	/**
+	 * Removes all cached results. Queries in progress will not
+	 * add their results to the cache.
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		weight = 0;
+		generation++;
+	}
+
+	/**
+	 * @return The number of cached results
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * @return The number of triples in all cached results
+	 */
+	public synchronized long weight() {
+		return weight;
+	}
+
+	public synchronized long hits() {
+		return hits;
+	}
+
+	public synchronized long misses() {
+		return misses;
+	}
+
+	/**
+	 * @return The number of results removed to make room for new ones
+	 */
+	public synchronized long evictions() {
+		return evictions;
+	}
+
+	/**
+	 * @return The number of results removed because they were too old
+	 */
+	public synchronized long expirations() {
+		return expirations;
+	}
+
+	private void finishLoad(Triple pattern, Load load, long loadGeneration, List result) {
+		synchronized (this) {
+			loads.remove(pattern);
+			if (result != null && loadGeneration == generation) {
+				put(pattern, result);
+			}
+		}
+		load.complete(result);
+	}
+
+	private void put(Triple pattern, List triples) {
+		remove(pattern);
+		entries.put(pattern, new Entry(triples));
+		weight += weightOf(triples);
+		Iterator it = entries.values().iterator();
+		while (weight > maxTriples && it.hasNext()) {
+			Entry eldest = (Entry) it.next();
+			it.remove();
+			weight -= weightOf(eldest.triples);
+			evictions++;
+		}
+	}
+
+	private void remove(Triple pattern) {
+		Entry entry = (Entry) entries.remove(pattern);
+		if (entry != null) {
+			weight -= weightOf(entry.triples);
+		}
+	}
+
+	private boolean isExpired(Entry entry) {
+		return timeToLiveMillis != NO_EXPIRY
+				&& System.currentTimeMillis() - entry.loaded > timeToLiveMillis;
+	}
+
+	/**
+	 * Empty results count as one triple so that they are bounded too.
+	 */
+	private static long weightOf(List triples) {
+		return Math.max(1, triples.size());
+	}
+
+	private static class Entry {
+		final List triples;
+		final long loaded = System.currentTimeMillis();
+		Entry(List triples) {
+			this.triples = triples;
+		}
+	}
+
+	/**
+	 * A query in progress that other threads can wait for.
+	 */
+	private static class Load {
+		private boolean done = false;
+		private List result = null;
+		synchronized void complete(List result) {
+			this.result = result;
+			this.done = true;
+			notifyAll();
+		}
+		/**
+		 * @return The result, or <tt>null</tt> if it was too large or the load failed
+		 */
+		synchronized List await() {
+			while (!done) {
+				try {
+					wait();
+				} catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+					return null;
+				}
+			}
+			return result;
+		}
+	}
+}
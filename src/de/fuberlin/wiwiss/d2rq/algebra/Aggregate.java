@@ -0,0 +1,105 @@
+package de.fuberlin.wiwiss.d2rq.algebra;
+
+import java.util.Collections;
+import java.util.Set;
+
+import de.fuberlin.wiwiss.d2rq.sql.ConnectedDB;
+
+/**
+ * An aggregate function in the SELECT clause of a grouped SQL query,
+ * such as <code>COUNT(*)</code> or <code>SUM(table.column)</code>.
+ * Its value is only known after grouping, so unlike a
+ * {@link ProjectionSpec} it has no expression that could be used
+ * in conditions. The SQL query names the column of each aggregate
+ * by its position, see {@link de.fuberlin.wiwiss.d2rq.sql.SelectStatementBuilder#aggregateColumn(int)}.
+ */
+public class Aggregate {
+	public static final String COUNT = "COUNT";
+	public static final String SUM = "SUM";
+
+	/**
+	 * @return <code>COUNT(*)</code>
+	 */
+	public static Aggregate count() {
+		return new Aggregate(COUNT, null, false);
+	}
+
+	/**
+	 * @return <code>COUNT(DISTINCT attribute)</code>
+	 */
+	public static Aggregate countDistinct(Attribute attribute) {
+		return new Aggregate(COUNT, attribute, true);
+	}
+
+	/**
+	 * @return <code>SUM(attribute)</code>
+	 */
+	public static Aggregate sum(Attribute attribute) {
+		return new Aggregate(SUM, attribute, false);
+	}
+
+	private final String function;
+	private final Attribute attribute;
+	private final boolean distinct;
+
+	private Aggregate(String function, Attribute attribute, boolean distinct) {
+		this.function = function;
+		this.attribute = attribute;
+		this.distinct = distinct;
+	}
+
+	public String function() {
+		return function;
+	}
+
+	/**
+	 * @return The aggregated attribute, or <tt>null</tt> for <code>COUNT(*)</code>
+	 */
+	public Attribute attribute() {
+		return attribute;
+	}
+
+	public boolean isDistinct() {
+		return distinct;
+	}
+
+	public Aggregate renameAttributes(ColumnRenamer renamer) {
+		if (attribute == null) return this;
+		return new Aggregate(function, renamer.applyTo(attribute), distinct);
+	}
+
+	public Set requiredAttributes() {
+		return (attribute == null) ? Collections.EMPTY_SET : Collections.singleton(attribute);
+	}
+
+	/**
+	 * @return The aggregate function call, without a column alias
+	 */
+	public String toSQL(ConnectedDB database, AliasMap aliases) {
+		StringBuffer result = new StringBuffer(function);
+		result.append("(");
+		if (distinct) {
+			result.append("DISTINCT ");
+		}
+		result.append((attribute == null) ? "*" : attribute.toSQL(database, aliases));
+		result.append(")");
+		return result.toString();
+	}
+
+	public boolean equals(Object other) {
+		if (!(other instanceof Aggregate)) return false;
+		Aggregate otherAggregate = (Aggregate) other;
+		return function.equals(otherAggregate.function) && distinct == otherAggregate.distinct
+				&& (attribute == null ? otherAggregate.attribute == null : attribute.equals(otherAggregate.attribute));
+	}
+
+	public int hashCode() {
+		return function.hashCode() ^ (distinct ? 1 : 0)
+				^ (attribute == null ? 0 : attribute.hashCode()) ^ 3316;
+	}
+
+	public String toString() {
+		return "Aggregate(" + function + "(" + (distinct ? "DISTINCT " : "")
+				+ (attribute == null ? "*" : attribute.toString()) + "))";
+	}
+}
@@ -0,0 +1,117 @@
+package de.fuberlin.wiwiss.d2rq.algebra;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import de.fuberlin.wiwiss.d2rq.expr.Expression;
+
+/**
+ * An optional part of a {@link Relation}, to be added to its SQL
+ * query as <code>LEFT OUTER JOIN (SELECT ...) AS alias ON condition</code>.
+ *
+ * The optional part is a relation of its own, written as a derived
+ * table. Each of its projected attributes is available in the outer
+ * relation as a column of the derived table, see {@link #outerAttribute(Attribute)}.
+ * The join condition must refer to those columns and to the columns
+ * of a single table of the outer relation, the <em>anchor</em>. This
+ * keeps the SQL valid on engines that only allow the <code>ON</code>
+ * clause to refer to the table directly before the join.
+ */
+public class LeftJoin implements Comparable {
+	private final RelationName alias;
+	private final Relation relation;
+	private final Expression condition;
+	private final Map outerAttributes;
+
+	/**
+	 * @param alias Name of the derived table
+	 * @param relation The optional relation; all its projections must be {@link Attribute}s
+	 * @param condition The join condition, in terms of the outer attributes
+	 */
+	public LeftJoin(RelationName alias, Relation relation, Expression condition) {
+		this.alias = alias;
+		this.relation = relation;
+		this.condition = condition;
+		this.outerAttributes = outerAttributes(alias, relation.projections());
+	}
+
+	/**
+	 * Names the columns of a derived table <tt>c0</tt>, <tt>c1</tt>, ...,
+	 * in the order of the attributes whose values they hold. Names that
+	 * are made from the qualified attribute names could collide, and
+	 * could exceed the identifier length limit of the database.
+	 * @param alias Name of the derived table
+	 * @param attributes The {@link Attribute}s projected by the derived table
+	 * @return A map from the attributes to the derived table's columns
+	 */
+	public static Map outerAttributes(RelationName alias, Collection attributes) {
+		List sorted = new ArrayList(attributes);
+		Collections.sort(sorted);
+		Map result = new HashMap();
+		for (int i = 0; i < sorted.size(); i++) {
+			result.put(sorted.get(i), new Attribute(alias, "c" + i));
+		}
+		return result;
+	}
+
+	public RelationName alias() {
+		return alias;
+	}
+
+	public Relation relation() {
+		return relation;
+	}
+
+	public Expression condition() {
+		return condition;
+	}
+
+	/**
+	 * @return The table of the outer relation that the join condition
+	 * 		refers to, or <tt>null</tt> if it refers to none or to several
+	 */
+	public RelationName anchor() {
+		Set tables = new HashSet();
+		Iterator it = condition.attributes().iterator();
+		while (it.hasNext()) {
+			tables.add(((Attribute) it.next()).relationName());
+		}
+		tables.remove(alias);
+		return (tables.size() == 1) ? (RelationName) tables.iterator().next() : null;
+	}
+
+	/**
+	 * @param attribute An attribute projected by the optional relation
+	 * @return The corresponding column of the derived table
+	 */
+	public Attribute outerAttribute(Attribute attribute) {
+		return (Attribute) outerAttributes.get(attribute);
+	}
+
+	/**
+	 * @return A map from the optional relation's attributes to the
+	 * 		derived table's columns
+	 */
+	public Map outerAttributes() {
+		return Collections.unmodifiableMap(outerAttributes);
+	}
+
+	public LeftJoin renameColumns(ColumnRenamer renamer) {
+		return new LeftJoin(alias, relation, renamer.applyTo(condition));
+	}
+
+	public int compareTo(Object other) {
+		return alias.compareTo(((LeftJoin) other).alias);
+	}
+
+	public String toString() {
+		return "LeftJoin(" + alias + " ON " + condition + ")";
+	}
+}
@@ -42,6 +42,7 @@ public abstract class Relation implements RelationalOperators {
 		public boolean orderDesc() { return false; }
 		public int limit() { return Relation.NO_LIMIT; }
 		public int limitInverse() { return Relation.NO_LIMIT; }
+		public int offset() { return 0; }
 	};
 	public static Relation TRUE = new Relation() {
 		public ConnectedDB database() { return null; }
@@ -65,6 +66,7 @@ public abstract class Relation implements RelationalOperators {
 		public boolean orderDesc() { return false; }
 		public int limit() { return Relation.NO_LIMIT; }
 		public int limitInverse() { return Relation.NO_LIMIT; }
+		public int offset() { return 0; }
 	};
 
 	// TODO Can we remove this, and maybe pass the database around in an ARQ Context object?
@@ -85,9 +87,9 @@ public abstract class Relation implements RelationalOperators {
 	public abstract Set joinConditions();
 
 	/**
-	 * Returns the leftjoin conditions that must hold between the tables
-	 * in the relation.
-	 * @return A set of {@link Join}s 
+	 * Returns the optional parts of the relation, which are added
+	 * to the SQL query as left outer joins.
+	 * @return A set of {@link LeftJoin}s 
 	 */
 	public abstract Set leftJoinConditions();
 	
@@ -130,6 +132,12 @@ public abstract class Relation implements RelationalOperators {
 	 */
 	public abstract int limitInverse();
 
+	/**
+	 * The offset clause for the SQL result set
+	 * @return number of records to skip
+	 */
+	public abstract int offset();
+
 	public Set allKnownAttributes() {
 		Set results = new HashSet();
 		results.addAll(condition().attributes());
@@ -1,6 +1,7 @@
 package de.fuberlin.wiwiss.d2rq.algebra;
 
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Set;
 
 import de.fuberlin.wiwiss.d2rq.expr.Expression;
@@ -18,6 +19,7 @@ public class RelationImpl extends Relation {
 	private boolean orderDesc;
 	private int limit;
 	private int limitInverse;
+	private int offset;
 	
 	public RelationImpl(ConnectedDB database, AliasMap aliases,
 			Expression condition, Set joinConditions, Set projections,
@@ -38,6 +40,14 @@ public class RelationImpl extends Relation {
 	public RelationImpl(ConnectedDB database, AliasMap aliases,
 			Expression condition, Set joinConditions, Set projections, Set leftJoinConditions,
 			boolean isUnique, Attribute order, boolean orderDesc, int limit, int limitInverse) {
+		this(database, aliases, condition, joinConditions, projections, leftJoinConditions,
+				isUnique, order, orderDesc, limit, limitInverse, 0);
+	}
+
+	public RelationImpl(ConnectedDB database, AliasMap aliases,
+			Expression condition, Set joinConditions, Set projections, Set leftJoinConditions,
+			boolean isUnique, Attribute order, boolean orderDesc, int limit, int limitInverse, 
+			int offset) {
 		this.database = database;
 		this.aliases = aliases;
 		this.condition = condition;
@@ -49,6 +59,7 @@ public class RelationImpl extends Relation {
 		this.orderDesc = orderDesc;
 		this.limit = limit;
 		this.limitInverse = limitInverse;
+		this.offset = offset;
 	}
 	
 	public Set leftJoinConditions() {
@@ -87,6 +98,10 @@ public class RelationImpl extends Relation {
 	    return limitInverse;
 	}
 
+	public int offset() {
+	    return offset;
+	}
+
 	public Attribute order() {
 	    return order;
 	}
@@ -103,20 +118,25 @@ public class RelationImpl extends Relation {
 			return Relation.EMPTY;
 		}
 		return new RelationImpl(database, aliases, condition.and(selectCondition),
-				joinConditions, projections, isUnique, order, orderDesc, limit, limitInverse);
+				joinConditions, projections, leftJoinConditions, isUnique, order, orderDesc, limit, limitInverse, offset);
 	}
 	
 	public Relation renameColumns(ColumnRenamer renames) {
+		Set renamedLeftJoins = new HashSet();
+		Iterator it = leftJoinConditions.iterator();
+		while (it.hasNext()) {
+			renamedLeftJoins.add(((LeftJoin) it.next()).renameColumns(renames));
+		}
 		return new RelationImpl(database, renames.applyTo(aliases),
 				renames.applyTo(condition), renames.applyToJoinSet(joinConditions),
-				renames.applyToProjectionSet(projections), isUnique, order != null ? renames.applyTo(order) : null, orderDesc, limit, limitInverse);
+				renames.applyToProjectionSet(projections), renamedLeftJoins, isUnique, order != null ? renames.applyTo(order) : null, orderDesc, limit, limitInverse, offset);
 	}
 
 	public Relation project(Set projectionSpecs) {
 		Set newProjections = new HashSet(projectionSpecs);
 		newProjections.retainAll(projections);
 		return new RelationImpl(database, aliases, condition, joinConditions, 
-				newProjections, isUnique, order, orderDesc, limit, limitInverse);
+				newProjections, leftJoinConditions, isUnique, order, orderDesc, limit, limitInverse, offset);
 	}
 	
 	public String toString() {
@@ -133,6 +153,11 @@ public class RelationImpl extends Relation {
 			result.append(joinConditions);
 			result.append("\n");
 		}
+		if (!leftJoinConditions.isEmpty()) {
+			result.append("    left joins: ");
+			result.append(leftJoinConditions);
+			result.append("\n");
+		}
 		if (!condition.isTrue()) {
 			result.append("    condition: ");
 			result.append(condition);
@@ -158,6 +183,11 @@ public class RelationImpl extends Relation {
     	    result.append("    limitInverse: ");
     	    result.append(limitInverse);
     	    result.append("\n");
+    	}
+    	if (offset!=0) {
+    	    result.append("    offset: ");
+    	    result.append(offset);
+    	    result.append("\n");
     	}		
 		result.append(")");
 		return result.toString();
@@ -0,0 +1,189 @@
+package de.fuberlin.wiwiss.d2rq.algebra;
+
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import com.hp.hpl.jena.datatypes.RDFDatatype;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.vocabulary.RDF;
+
+import de.fuberlin.wiwiss.d2rq.expr.Expression;
+import de.fuberlin.wiwiss.d2rq.nodes.FixedNodeMaker;
+import de.fuberlin.wiwiss.d2rq.nodes.NodeMaker;
+import de.fuberlin.wiwiss.d2rq.nodes.NodeSetFilter;
+import de.fuberlin.wiwiss.d2rq.nodes.URIMakerIndex;
+import de.fuberlin.wiwiss.d2rq.values.BlankNodeID;
+import de.fuberlin.wiwiss.d2rq.values.Pattern;
+
+/**
+ * An immutable collection of {@link TripleRelation}s that can quickly
+ * find the relations that might match a triple pattern, without
+ * calling {@link TripleRelation#selectTriple(Triple)} on all of them.
+ *
+ * The relations are indexed by their fixed predicate, by their fixed
+ * object if the predicate is <tt>rdf:type</tt>, and by the URI
+ * patterns and fixed URIs of their subject and object, see
+ * {@link URIMakerIndex}. Relations that cannot be indexed in some
+ * position, for example because a URI is taken from a column, are
+ * candidates for every pattern in that position.
+ *
+ * {@link #candidates(Triple)} may return relations that do not
+ * match, so callers still have to use <tt>selectTriple</tt>, but
+ * it never leaves out a relation that matches. The candidates are
+ * in the same order as in the collection.
+ */
+public class TripleRelationIndex extends AbstractCollection {
+
+	/**
+	 * Returns the relations of a collection that might match a triple
+	 * pattern. Uses the index if the collection is a TripleRelationIndex,
+	 * and returns all relations otherwise.
+	 * @param tripleRelations A collection of {@link TripleRelation}s
+	 * @param pattern A triple pattern
+	 * @return A collection of {@link TripleRelation}s
+	 */
+	public static Collection candidates(Collection tripleRelations, Triple pattern) {
+		if (tripleRelations instanceof TripleRelationIndex) {
+			return ((TripleRelationIndex) tripleRelations).candidates(pattern);
+		}
+		return tripleRelations;
+	}
+
+	private final List relations;
+	private final Map byPredicate = new HashMap();		// Node => BitSet
+	private final BitSet anyPredicate = new BitSet();
+	private final Map byType = new HashMap();			// Node => BitSet
+	private final BitSet anyType = new BitSet();
+	private final URIMakerIndex subjects = new URIMakerIndex();	// values are Integers
+	private final URIMakerIndex objects = new URIMakerIndex();	// values are Integers
+
+	/**
+	 * @param tripleRelations A collection of {@link TripleRelation}s
+	 */
+	public TripleRelationIndex(Collection tripleRelations) {
+		this.relations = Collections.unmodifiableList(new ArrayList(tripleRelations));
+		for (int i = 0; i < relations.size(); i++) {
+			TripleRelation relation = (TripleRelation) relations.get(i);
+			Node predicate = fixedNode(relation.nodeMaker(TripleRelation.PREDICATE));
+			if (predicate == null) {
+				anyPredicate.set(i);
+			} else {
+				bitSet(byPredicate, predicate).set(i);
+			}
+			if (predicate == null || predicate.equals(RDF.Nodes.type)) {
+				Node type = fixedNode(relation.nodeMaker(TripleRelation.OBJECT));
+				if (type == null) {
+					anyType.set(i);
+				} else {
+					bitSet(byType, type).set(i);
+				}
+			}
+			subjects.add(relation.nodeMaker(TripleRelation.SUBJECT), new Integer(i));
+			objects.add(relation.nodeMaker(TripleRelation.OBJECT), new Integer(i));
+		}
+	}
+
+	/**
+	 * @param pattern A triple pattern, possibly with variables
+	 * 		and {@link Node#ANY}
+	 * @return A list of {@link TripleRelation}s that includes
+	 * 		all relations that match the pattern
+	 */
+	public List candidates(Triple pattern) {
+		BitSet best = null;
+		Node p = pattern.getPredicate();
+		Node o = pattern.getObject();
+		if (p.isConcrete()) {
+			best = narrower(best, union(lookup(byPredicate, p), anyPredicate));
+			if (p.equals(RDF.Nodes.type) && o.isConcrete()) {
+				best = narrower(best, union(lookup(byType, o), anyType));
+			}
+		}
+		if (pattern.getSubject().isURI()) {
+			best = narrower(best, lookup(subjects, pattern.getSubject().getURI()));
+		}
+		if (o.isURI()) {
+			best = narrower(best, lookup(objects, o.getURI()));
+		}
+		if (best == null) return relations;
+		List result = new ArrayList(best.cardinality());
+		for (int i = best.nextSetBit(0); i >= 0; i = best.nextSetBit(i + 1)) {
+			result.add(relations.get(i));
+		}
+		return result;
+	}
+
+	public Iterator iterator() {
+		return relations.iterator();
+	}
+
+	public int size() {
+		return relations.size();
+	}
+
+	private BitSet narrower(BitSet best, BitSet candidates) {
+		if (best == null || candidates.cardinality() < best.cardinality()) {
+			return candidates;
+		}
+		return best;
+	}
+
+	private BitSet union(BitSet indexed, BitSet any) {
+		BitSet result = (BitSet) any.clone();
+		if (indexed != null) {
+			result.or(indexed);
+		}
+		return result;
+	}
+
+	private BitSet lookup(Map index, Node node) {
+		return (BitSet) index.get(node);
+	}
+
+	private BitSet lookup(URIMakerIndex index, String uri) {
+		BitSet result = new BitSet();
+		Iterator it = index.candidates(uri).iterator();
+		while (it.hasNext()) {
+			result.set(((Integer) it.next()).intValue());
+		}
+		return result;
+	}
+
+	private BitSet bitSet(Map index, Node node) {
+		BitSet result = (BitSet) index.get(node);
+		if (result == null) {
+			result = new BitSet();
+			index.put(node, result);
+		}
+		return result;
+	}
+
+	private Node fixedNode(NodeMaker nodeMaker) {
+		if (!(nodeMaker instanceof FixedNodeMaker)) return null;
+		FixedNodeDescription description = new FixedNodeDescription();
+		nodeMaker.describeSelf(description);
+		return description.node;
+	}
+
+	private static class FixedNodeDescription implements NodeSetFilter {
+		private Node node = null;
+		public void limitTo(Node node) { this.node = node; }
+		public void limitToEmptySet() { }
+		public void limitToURIs() { }
+		public void limitToBlankNodes() { }
+		public void limitToLiterals(String language, RDFDatatype datatype) { }
+		public void limitValues(String constant) { }
+		public void limitValuesToAttribute(Attribute attribute) { }
+		public void limitValuesToBlankNodeID(BlankNodeID id) { }
+		public void limitValuesToPattern(Pattern pattern) { }
+		public void limitValuesToExpression(Expression expression) { }
+	}
+}
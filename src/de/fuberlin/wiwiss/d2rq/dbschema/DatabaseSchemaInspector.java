@@ -242,6 +242,71 @@ public class DatabaseSchemaInspector {
 		}
 	}	
 	
+	/**
+	 * Estimates the number of rows in a table from the table statistics
+	 * that the database keeps for its indexes.
+	 * @return The estimate, or -1 if the driver doesn't report it
+	 */
+	public long rowCount(RelationName tableName) {
+		try {
+			ResultSet rs = this.schema.getIndexInfo(
+					null, schemaName(tableName), tableName(tableName), false, true);
+			long result = -1;
+			while (rs.next()) {
+				if (rs.getShort("TYPE") == DatabaseMetaData.tableIndexStatistic) {
+					result = rs.getLong("CARDINALITY");
+					break;
+				}
+			}
+			rs.close();
+			return (result > 0) ? result : -1;
+		} catch (SQLException ex) {
+			throw new D2RQException("Database exception (unable to read table statistics of " + tableName + ")", ex);
+		}
+	}
+
+	/**
+	 * Estimates the number of distinct values in a column, from the
+	 * statistics of an index on just that column.
+	 * @param rowCount The number of rows in the table, which is the
+	 * 		answer if the column has a unique index
+	 * @return The estimate, or -1 if the database doesn't tell
+	 */
+	public long distinctValues(Attribute column, long rowCount) {
+		try {
+			Map columnCounts = new HashMap();	// index name => Integer
+			Map cardinalities = new HashMap();	// index name => Long, if on the column
+			Map unique = new HashMap();			// index name => Boolean
+			ResultSet rs = this.schema.getIndexInfo(
+					null, schemaName(column.relationName()), column.tableName(), false, true);
+			while (rs.next()) {
+				if (rs.getShort("TYPE") == DatabaseMetaData.tableIndexStatistic) continue;
+				String index = rs.getString("INDEX_NAME");
+				Integer count = (Integer) columnCounts.get(index);
+				columnCounts.put(index, new Integer(count == null ? 1 : count.intValue() + 1));
+				if (column.attributeName().equals(rs.getString("COLUMN_NAME"))) {
+					cardinalities.put(index, new Long(rs.getLong("CARDINALITY")));
+					unique.put(index, new Boolean(!rs.getBoolean("NON_UNIQUE")));
+				}
+			}
+			rs.close();
+			long result = -1;
+			Iterator it = cardinalities.keySet().iterator();
+			while (it.hasNext()) {
+				String index = (String) it.next();
+				if (((Integer) columnCounts.get(index)).intValue() != 1) continue;
+				if (((Boolean) unique.get(index)).booleanValue()) {
+					return rowCount;
+				}
+				result = Math.max(result, ((Long) cardinalities.get(index)).longValue());
+			}
+			return (result > 0) ? result : -1;
+		} catch (SQLException ex) {
+			throw new D2RQException("Database exception (unable to read index statistics of " + 
+					column.relationName() + ")", ex);
+		}
+	}
+	
 	/**
 	 * Returns a list of imported or exported (foreign) keys for a table.
 	 * @param tableName The table we are interested in
@@ -0,0 +1,245 @@
+package de.fuberlin.wiwiss.d2rq.dbschema;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import de.fuberlin.wiwiss.d2rq.D2RQException;
+import de.fuberlin.wiwiss.d2rq.algebra.Attribute;
+import de.fuberlin.wiwiss.d2rq.algebra.RelationName;
+import de.fuberlin.wiwiss.d2rq.sql.ConnectedDB;
+
+/**
+ * Row counts and distinct value counts of the tables and columns
+ * of a database, used to estimate the size of query results.
+ * The numbers are retrieved through the {@link DatabaseSchemaInspector}
+ * when first needed, and kept for a limited time, or until
+ * {@link #invalidate()} is called. The numbers are estimates and
+ * may be out of date.
+ *
+ * If the database doesn't report the number of rows of a table, they
+ * are counted with <tt>SELECT COUNT(*)</tt> on one of the
+ * {@link ConnectedDB#queryThreads()}, if a connection is free. The
+ * caller doesn't wait for the count; until it is done, the table has no statistics and the
+ * result is {@link #UNKNOWN}, which makes the planner fall back to
+ * its default order. An expired number is still returned while it
+ * is being retrieved again.
+ *
+ * The {@link #version()} changes whenever a number changes or the
+ * statistics are invalidated, so that plans made with the old
+ * numbers can be recognized.
+ */
+public class TableStatistics {
+	private static final Log log = LogFactory.getLog(TableStatistics.class);
+
+	/**
+	 * Returned if there are no statistics for a table or column
+	 */
+	public static final long UNKNOWN = -1;
+
+	/**
+	 * Milliseconds a number is kept before it is retrieved again
+	 */
+	public static final long DEFAULT_TIME_TO_LIVE = 10 * 60 * 1000;
+
+	private final ConnectedDB db;
+	private final long timeToLive;
+	private final Map rowCounts = new HashMap();		// RelationName => Statistic
+	private final Map distinctValues = new HashMap();	// Attribute => Statistic
+	private long version = 0;
+
+	public TableStatistics(ConnectedDB db) {
+		this(db, DEFAULT_TIME_TO_LIVE);
+	}
+
+	/**
+	 * @param timeToLive Milliseconds a number is kept before it is
+	 * 		retrieved again
+	 */
+	public TableStatistics(ConnectedDB db, long timeToLive) {
+		this.db = db;
+		this.timeToLive = timeToLive;
+	}
+
+	/**
+	 * @return The estimated number of rows in the table, or {@link #UNKNOWN}
+	 */
+	public long rowCount(RelationName table) {
+		Statistic statistic = statistic(rowCounts, table);
+		if (statistic.startRetrieval()) {
+			long result = UNKNOWN;
+			boolean count = false;
+			try {
+				synchronized (db) {
+					// The metadata connection is shared between threads
+					DatabaseSchemaInspector inspector = db.schemaInspector();
+					if (inspector != null) {
+						result = inspector.rowCount(table);
+						count = (result == UNKNOWN);
+					}
+				}
+			} catch (D2RQException ex) {
+				log.warn("No statistics for table " + table + ": " + ex.getMessage());
+			}
+			if (count) {
+				countRowsLater(table, statistic);
+			} else {
+				set(statistic, result);
+			}
+		}
+		return statistic.value();
+	}
+
+	/**
+	 * @return The estimated number of distinct values in the column,
+	 * 		or {@link #UNKNOWN}
+	 */
+	public long distinctValues(Attribute column) {
+		long rows = rowCount(column.relationName());
+		if (rows == UNKNOWN) return UNKNOWN;
+		Statistic statistic = statistic(distinctValues, column);
+		if (statistic.startRetrieval()) {
+			long result = UNKNOWN;
+			try {
+				synchronized (db) {
+					result = db.schemaInspector().distinctValues(column, rows);
+				}
+			} catch (D2RQException ex) {
+				log.warn("No statistics for column " + column + ": " + ex.getMessage());
+			}
+			set(statistic, result);
+		}
+		return statistic.value();
+	}
+
+	/**
+	 * Forgets all numbers, so they are retrieved again when next needed
+	 */
+	public synchronized void invalidate() {
+		rowCounts.clear();
+		distinctValues.clear();
+		version++;
+	}
+
+	/**
+	 * @return A number that changes whenever any of the numbers changes
+	 */
+	public synchronized long version() {
+		return version;
+	}
+
+	private void set(Statistic statistic, long value) {
+		if (statistic.set(value, timeToLive)) {
+			synchronized (this) {
+				version++;
+			}
+		}
+	}
+
+	private synchronized Statistic statistic(Map statistics, Object key) {
+		Statistic result = (Statistic) statistics.get(key);
+		if (result == null) {
+			result = new Statistic();
+			statistics.put(key, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Counts the rows of the table on another thread. If there is
+	 * no free thread or connection, the count is tried again on the
+	 * next request.
+	 */
+	private void countRowsLater(final RelationName table, final Statistic statistic) {
+		boolean started = db.queryThreads().tryExecute(new Runnable() {
+			public void run() {
+				// Queries must not wait for the connection of a background count
+				Connection connection;
+				try {
+					connection = db.tryCheckOutConnection();
+				} catch (D2RQException ex) {
+					log.warn("No statistics for table " + table + ": " + ex.getMessage());
+					connection = null;
+				}
+				if (connection == null) {
+					statistic.cancelRetrieval();
+					return;
+				}
+				long result = UNKNOWN;
+				try {
+					result = countRows(connection, table);
+				} catch (D2RQException ex) {
+					log.warn("No statistics for table " + table + ": " + ex.getMessage());
+				} finally {
+					db.returnConnection(connection);
+				}
+				set(statistic, result);
+			}
+		});
+		if (!started) {
+			statistic.cancelRetrieval();
+		}
+	}
+
+	private long countRows(Connection connection, RelationName table) {
+		try {
+			Statement stmt = connection.createStatement();
+			try {
+				ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM " +
+						db.getSyntax().quoteRelationName(table));
+				rs.next();
+				return rs.getLong(1);
+			} finally {
+				stmt.close();
+			}
+		} catch (SQLException ex) {
+			throw new D2RQException("Database exception (unable to count rows of " + table + ")", ex);
+		}
+	}
+
+	/**
+	 * A number that is retrieved by the first thread that asks for it
+	 * after it has expired. Other threads get the old number in the
+	 * meantime, or {@link #UNKNOWN}.
+	 */
+	private static class Statistic {
+		private long value = UNKNOWN;
+		private long expires = 0;
+		private boolean retrieving = false;
+
+		/**
+		 * @return <tt>true</tt> if the caller must retrieve the number
+		 * 		and then call {@link #set(long, long)}
+		 */
+		synchronized boolean startRetrieval() {
+			if (retrieving || System.currentTimeMillis() < expires) return false;
+			retrieving = true;
+			return true;
+		}
+
+		synchronized void cancelRetrieval() {
+			retrieving = false;
+		}
+
+		/**
+		 * @return <tt>true</tt> if the number has changed
+		 */
+		synchronized boolean set(long value, long timeToLive) {
+			boolean changed = (this.value != value);
+			this.value = value;
+			this.expires = System.currentTimeMillis() + timeToLive;
+			this.retrieving = false;
+			return changed;
+		}
+
+		synchronized long value() {
+			return value;
+		}
+	}
+}
@@ -0,0 +1,206 @@
+package de.fuberlin.wiwiss.d2rq.dump;
+
+import java.io.BufferedWriter;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.impl.NTripleWriter;
+import com.hp.hpl.jena.util.iterator.ExtendedIterator;
+
+import de.fuberlin.wiwiss.d2rq.D2RQException;
+import de.fuberlin.wiwiss.d2rq.algebra.CompatibleRelationGroup;
+import de.fuberlin.wiwiss.d2rq.algebra.JoinOptimizer;
+import de.fuberlin.wiwiss.d2rq.algebra.Relation;
+import de.fuberlin.wiwiss.d2rq.algebra.TripleRelation;
+import de.fuberlin.wiwiss.d2rq.find.TripleMaker;
+import de.fuberlin.wiwiss.d2rq.map.Mapping;
+import de.fuberlin.wiwiss.d2rq.sql.QueryExecutionIterator;
+import de.fuberlin.wiwiss.d2rq.sql.ResultRow;
+import de.fuberlin.wiwiss.d2rq.sql.SelectStatementBuilder;
+
+/**
+ * Writes all triples of a D2RQ mapping as N-Triples, without going
+ * through a Jena {@link Model}. The compiled property bridges are
+ * grouped into {@link CompatibleRelationGroup}s, and each group is
+ * dumped by a single SQL query whose result rows are turned into
+ * N-Triples lines as they are read. Memory use does not depend on
+ * the size of the database.
+ *
+ * The output is the same as that of Jena's N-TRIPLE writer on a
+ * {@link de.fuberlin.wiwiss.d2rq.ModelD2RQ}, except for the order
+ * of the triples.
+ */
+public class NTriplesDump {
+	private static final Log log = LogFactory.getLog(NTriplesDump.class);
+
+	private final Mapping mapping;
+	private long tripleCount = 0;
+	private OutputStream destination = null;
+
+	public NTriplesDump(Mapping mapping) {
+		this.mapping = mapping;
+	}
+
+	/**
+	 * Writes the vocabulary model (if served by the mapping) and
+	 * all triples produced from the database.
+	 * @param out The destination; is flushed, but not closed
+	 * @throws D2RQException if the output could not be written, e.g.
+	 * 		because the disk is full
+	 */
+	public void write(OutputStream out) {
+		destination = out;
+		PrintWriter writer;
+		try {
+			writer = new PrintWriter(new BufferedWriter(
+					new OutputStreamWriter(out, "utf-8"), 64 * 1024));
+		} catch (UnsupportedEncodingException ex) {
+			throw new RuntimeException("Can't happen -- utf-8 is always supported");
+		}
+		if (mapping.configuration().getServeVocabulary() && mapping.getVocabularyModel() != null) {
+			ExtendedIterator it = mapping.getVocabularyModel().getGraph().find(Node.ANY, Node.ANY, Node.ANY);
+			try {
+				while (it.hasNext()) {
+					writeTriple((Triple) it.next(), writer);
+					addToTripleCount(1);
+				}
+			} finally {
+				it.close();
+			}
+		}
+		checkError(writer);
+		writeGroups(writer);
+		checkError(writer);
+	}
+
+	/**
+	 * Writes the triples produced from the database, one group
+	 * after another.
+	 */
+	protected void writeGroups(PrintWriter writer) {
+		Iterator it = groups().iterator();
+		while (it.hasNext()) {
+			CompatibleRelationGroup group = (CompatibleRelationGroup) it.next();
+			addToTripleCount(writeGroup(group.baseRelation(), group.tripleMakers(), writer));
+			checkError(writer);
+		}
+	}
+
+	/**
+	 * Flushes the writer and fails if it, or the stream it writes to,
+	 * has encountered an error. <tt>PrintWriter</tt> and
+	 * <tt>PrintStream</tt> never throw <tt>IOException</tt>s, so a full
+	 * disk or a closed pipe would otherwise go unnoticed.
+	 */
+	protected void checkError(PrintWriter writer) {
+		if (writer.checkError() 
+				|| (destination instanceof PrintStream && ((PrintStream) destination).checkError())) {
+			throw new D2RQException("Error writing N-Triples output");
+		}
+	}
+
+	/**
+	 * @return The number of triples written so far
+	 */
+	public synchronized long tripleCount() {
+		return tripleCount;
+	}
+
+	protected synchronized void addToTripleCount(long count) {
+		tripleCount += count;
+	}
+
+	/**
+	 * @return The compiled property bridges of the mapping, grouped
+	 * 		so that each group can be dumped with a single query
+	 */
+	public Collection groups() {
+		Collection optimized = new ArrayList();
+		Iterator it = mapping.compiledPropertyBridges().iterator();
+		while (it.hasNext()) {
+			TripleRelation relation = (TripleRelation) it.next();
+			optimized.add(new JoinOptimizer(relation).optimize());
+		}
+		return CompatibleRelationGroup.groupTripleRelations(optimized);
+	}
+
+	/**
+	 * Runs the query for one relation and writes the triples
+	 * produced from each result row. Can be called concurrently
+	 * with different writers.
+	 * @return The number of triples written
+	 */
+	protected long writeGroup(Relation relation, Collection tripleMakers, PrintWriter writer) {
+		if (relation.equals(Relation.EMPTY) || relation.limit() == 0) {
+			return 0;
+		}
+		TripleMaker[] makers = (TripleMaker[]) tripleMakers.toArray(new TripleMaker[tripleMakers.size()]);
+		if (relation.isTrivial()) {
+			return writeRow(ResultRow.NO_ATTRIBUTES, makers, writer);
+		}
+		SelectStatementBuilder select = new SelectStatementBuilder(relation);
+		if (log.isDebugEnabled()) {
+			log.debug("Dumping " + makers.length + " property bridges: " + select.getSQLStatement());
+		}
+		QueryExecutionIterator rows = new QueryExecutionIterator(select, relation.database());
+		long count = 0;
+		try {
+			while (rows.hasNext()) {
+				count += writeRow(rows.nextRow(), makers, writer);
+			}
+		} finally {
+			rows.close();
+		}
+		return count;
+	}
+
+	private int writeRow(ResultRow row, TripleMaker[] makers, PrintWriter writer) {
+		int count = 0;
+		for (int i = 0; i < makers.length; i++) {
+			Triple t = makers[i].makeTriple(row);
+			if (t != null) {
+				writeTriple(t, writer);
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Writes one line. The line is passed to the writer's
+	 * <tt>write</tt> methods in several pieces, the last one
+	 * being the terminating <tt>" .\n"</tt>.
+	 */
+	private void writeTriple(Triple t, PrintWriter writer) {
+		NodeWriter.writeNode(t.getSubject(), writer);
+		writer.write(' ');
+		NodeWriter.writeNode(t.getPredicate(), writer);
+		writer.write(' ');
+		NodeWriter.writeNode(t.getObject(), writer);
+		writer.write(" .\n");
+	}
+
+	/**
+	 * Gives access to the node formatting of Jena's N-Triples writer
+	 * so that the output is identical.
+	 */
+	private static class NodeWriter extends NTripleWriter {
+		private static final Model model = ModelFactory.createDefaultModel();
+		static void writeNode(Node node, PrintWriter writer) {
+			writeNode(model.asRDFNode(node), writer);
+		}
+	}
+}
@@ -0,0 +1,274 @@
+package de.fuberlin.wiwiss.d2rq.dump;
+
+import java.io.CharArrayWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.math.BigInteger;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import de.fuberlin.wiwiss.d2rq.D2RQException;
+import de.fuberlin.wiwiss.d2rq.algebra.Attribute;
+import de.fuberlin.wiwiss.d2rq.algebra.CompatibleRelationGroup;
+import de.fuberlin.wiwiss.d2rq.algebra.Relation;
+import de.fuberlin.wiwiss.d2rq.algebra.RelationName;
+import de.fuberlin.wiwiss.d2rq.expr.AttributeExpr;
+import de.fuberlin.wiwiss.d2rq.expr.Constant;
+import de.fuberlin.wiwiss.d2rq.expr.Expression;
+import de.fuberlin.wiwiss.d2rq.expr.GreaterThan;
+import de.fuberlin.wiwiss.d2rq.expr.Negation;
+import de.fuberlin.wiwiss.d2rq.map.Mapping;
+import de.fuberlin.wiwiss.d2rq.sql.ConnectedDB;
+
+/**
+ * An {@link NTriplesDump} that runs several SQL queries at the same time.
+ * Each {@link CompatibleRelationGroup} becomes a task for a fixed number
+ * of worker threads. Groups that read from a single table with a
+ * numeric single-column primary key can also be split into several
+ * primary key ranges, so that one large table is read by several
+ * cursors. Groups whose rows are made distinct in SQL are split only
+ * if they select the key column; otherwise a row could be found in
+ * several ranges, and would be written more than once.
+ *
+ * Each worker collects complete N-Triples lines in a buffer of its own
+ * and appends the buffer to the shared output whenever it fills up.
+ * Lines of different tasks are therefore interleaved in the output,
+ * but never broken up.
+ */
+public class ParallelNTriplesDump extends NTriplesDump {
+	private static final Log log = LogFactory.getLog(ParallelNTriplesDump.class);
+	private static final int CHUNK_SIZE = 64 * 1024;
+
+	private final int threads;
+	private final int partitions;
+	private final LinkedList tasks = new LinkedList();
+	private RuntimeException failure = null;
+
+	/**
+	 * @param mapping The mapping to dump
+	 * @param threads Number of queries to run at the same time
+	 * @param partitions Number of primary key ranges for splitting
+	 * 		each single-table group; 1 to never split
+	 */
+	public ParallelNTriplesDump(Mapping mapping, int threads, int partitions) {
+		super(mapping);
+		if (threads < 1 || partitions < 1) {
+			throw new IllegalArgumentException("Need at least one thread and partition");
+		}
+		this.threads = threads;
+		this.partitions = partitions;
+	}
+
+	protected void writeGroups(final PrintWriter writer) {
+		Iterator it = groups().iterator();
+		while (it.hasNext()) {
+			CompatibleRelationGroup group = (CompatibleRelationGroup) it.next();
+			Iterator it2 = partition(group.baseRelation()).iterator();
+			while (it2.hasNext()) {
+				tasks.add(new Task((Relation) it2.next(), group.tripleMakers()));
+			}
+		}
+		log.info("Dumping " + tasks.size() + " queries using " + threads + " threads");
+		Thread[] workers = new Thread[Math.min(threads, Math.max(1, tasks.size()))];
+		for (int i = 0; i < workers.length; i++) {
+			workers[i] = new Thread("D2RQ dump worker " + (i + 1)) {
+				public void run() {
+					PrintWriter chunked = new PrintWriter(new ChunkWriter(writer));
+					try {
+						Task task;
+						while ((task = nextTask()) != null) {
+							try {
+								addToTripleCount(writeGroup(task.relation, task.tripleMakers, chunked));
+								chunked.flush();
+								checkError(writer);
+							} catch (RuntimeException ex) {
+								fail(ex);
+							}
+						}
+					} finally {
+						// Keep the lines written so far even if a task failed
+						chunked.flush();
+					}
+				}
+			};
+			workers[i].start();
+		}
+		for (int i = 0; i < workers.length; i++) {
+			try {
+				workers[i].join();
+			} catch (InterruptedException ex) {
+				fail(new D2RQException("Interrupted while waiting for dump workers"));
+			}
+		}
+		synchronized (this) {
+			if (failure != null) {
+				throw failure;
+			}
+		}
+	}
+
+	/**
+	 * Splits a relation into primary key ranges if possible.
+	 * @return A list of {@link Relation}s that together produce
+	 * 		the same rows as the argument
+	 */
+	protected List partition(Relation relation) {
+		List result = new ArrayList();
+		Attribute key = partitionKey(relation);
+		if (key == null) {
+			result.add(relation);
+			return result;
+		}
+		long[] range = keyRange(relation.database(), relation.aliases().originalOf(key));
+		// BigInteger because max - min overflows a long for wide BIGINT keys
+		BigInteger min = (range == null) ? null : BigInteger.valueOf(range[0]);
+		BigInteger span = (range == null) ? null : BigInteger.valueOf(range[1]).subtract(min);
+		if (span == null || span.compareTo(BigInteger.valueOf(partitions)) < 0) {
+			result.add(relation);
+			return result;
+		}
+		BigInteger width = span.divide(BigInteger.valueOf(partitions)).add(BigInteger.ONE);
+		for (int i = 0; i < partitions; i++) {
+			BigInteger lower = min.add(width.multiply(BigInteger.valueOf(i)));
+			Expression condition;
+			if (i == 0) {
+				condition = lessThan(key, lower.add(width));
+			} else if (i == partitions - 1) {
+				condition = new Negation(lessThan(key, lower));
+			} else {
+				condition = new Negation(lessThan(key, lower)).and(lessThan(key, lower.add(width)));
+			}
+			result.add(relation.select(condition));
+		}
+		return result;
+	}
+
+	/**
+	 * @return An expression that is true if the column is less than the value
+	 */
+	private Expression lessThan(Attribute column, BigInteger value) {
+		return GreaterThan.create(new Constant(value.toString(), column), new AttributeExpr(column));
+	}
+
+	/**
+	 * @return The primary key column of the relation's only table, if
+	 * 		the relation can be split by ranges of that column
+	 */
+	private Attribute partitionKey(Relation relation) {
+		if (partitions == 1 || relation.equals(Relation.EMPTY) || relation.isTrivial()
+				|| relation.limit() != Relation.NO_LIMIT || relation.tables().size() != 1) {
+			return null;
+		}
+		ConnectedDB db = relation.database();
+		RelationName table = (RelationName) relation.tables().iterator().next();
+		List keys;
+		synchronized (db) {
+			keys = db.schemaInspector().primaryKeyColumns(relation.aliases().originalOf(table));
+		}
+		if (keys.size() != 1) {
+			return null;
+		}
+		Attribute key = (Attribute) keys.get(0);
+		if (db.columnType(key) != ConnectedDB.NUMERIC_COLUMN) {
+			return null;
+		}
+		Attribute result = new Attribute(table, key.attributeName());
+		// With SELECT DISTINCT, the same row could come from two ranges
+		// unless the key is part of it
+		if (!relation.isUnique() && !relation.projections().contains(result)) {
+			return null;
+		}
+		return result;
+	}
+
+	/**
+	 * @return The minimum and maximum value of a column, or <tt>null</tt> if
+	 * 		the table is empty or the values are not integers
+	 */
+	private long[] keyRange(ConnectedDB db, Attribute column) {
+		String sql = "SELECT MIN(" + db.getSyntax().quoteAttribute(column) + "), MAX(" +
+				db.getSyntax().quoteAttribute(column) + ") FROM " +
+				db.getSyntax().quoteRelationName(column.relationName());
+		Connection connection = db.checkOutConnection();
+		Statement statement = null;
+		try {
+			statement = connection.createStatement();
+			ResultSet rs = statement.executeQuery(sql);
+			if (!rs.next()) return null;
+			String min = rs.getString(1);
+			String max = rs.getString(2);
+			rs.close();
+			if (min == null || max == null) return null;
+			return new long[]{Long.parseLong(min), Long.parseLong(max)};
+		} catch (NumberFormatException ex) {
+			return null;
+		} catch (SQLException ex) {
+			throw new D2RQException(ex.getMessage() + ": " + sql);
+		} finally {
+			if (statement != null) try { statement.close(); } catch (SQLException ignore) {}
+			db.returnConnection(connection);
+		}
+	}
+
+	private synchronized Task nextTask() {
+		if (failure != null || tasks.isEmpty()) return null;
+		return (Task) tasks.removeFirst();
+	}
+
+	private synchronized void fail(RuntimeException ex) {
+		if (failure == null) {
+			failure = ex;
+		}
+	}
+
+	private static class Task {
+		final Relation relation;
+		final Collection tripleMakers;
+		Task(Relation relation, Collection tripleMakers) {
+			this.relation = relation;
+			this.tripleMakers = tripleMakers;
+		}
+	}
+
+	/**
+	 * Buffers output and passes it on to a shared writer in chunks
+	 * that end with a complete line.
+	 */
+	private static class ChunkWriter extends Writer {
+		private final Writer shared;
+		private final CharArrayWriter buffer = new CharArrayWriter(CHUNK_SIZE + 1024);
+		ChunkWriter(Writer shared) {
+			this.shared = shared;
+		}
+		public void write(char[] chars, int offset, int length) {
+			buffer.write(chars, offset, length);
+			if (length > 0 && chars[offset + length - 1] == '\n' && buffer.size() >= CHUNK_SIZE) {
+				flush();
+			}
+		}
+		public void flush() {
+			synchronized (shared) {
+				try {
+					buffer.writeTo(shared);
+				} catch (IOException ex) {
+					throw new D2RQException(ex);
+				}
+			}
+			buffer.reset();
+		}
+		public void close() {
+			flush();
+		}
+	}
+}
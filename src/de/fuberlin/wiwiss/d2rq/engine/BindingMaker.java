@@ -1,7 +1,11 @@
 package de.fuberlin.wiwiss.d2rq.engine;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -9,20 +13,47 @@ import com.hp.hpl.jena.graph.Node;
 import com.hp.hpl.jena.sparql.core.Var;
 import com.hp.hpl.jena.sparql.engine.binding.Binding;
 import com.hp.hpl.jena.sparql.engine.binding.BindingMap;
+
+import de.fuberlin.wiwiss.d2rq.algebra.Attribute;
+import de.fuberlin.wiwiss.d2rq.algebra.ProjectionSpec;
+import de.fuberlin.wiwiss.d2rq.expr.AttributeNotNull;
+import de.fuberlin.wiwiss.d2rq.expr.Conjunction;
+import de.fuberlin.wiwiss.d2rq.expr.Expression;
 import de.fuberlin.wiwiss.d2rq.nodes.NodeMaker;
 import de.fuberlin.wiwiss.d2rq.sql.ResultRow;
 
 /**
  * Produces {@link Binding}s from {@link ResultRow}s.
  * 
+ * Some variables can be optional. They come in groups, one for the optional
+ * part of each left join. If any variable of a group has no value in a row,
+ * then the whole group is left unbound, as the row didn't match that
+ * optional part.
+ * 
  * @author Richard Cyganiak (richard@cyganiak.de)
  * @version $Id: BindingMaker.java,v 1.4 2009/03/26 11:01:42 dorgon Exp $
  */
 public class BindingMaker {
 	private final Map variableNamesToNodeMakers;
+	private final List optionalGroups;
+	private final Set optionalVariableNames = new HashSet();
 	
 	public BindingMaker(Map variableNamesToNodeMakers) {
+		this(variableNamesToNodeMakers, Collections.EMPTY_LIST);
+	}
+	
+	/**
+	 * @param variableNamesToNodeMakers A map from variable names to {@link NodeMaker}s
+	 * @param optionalGroups A list of sets of names of variables that
+	 * 		are bound or unbound together
+	 */
+	public BindingMaker(Map variableNamesToNodeMakers, List optionalGroups) {
 		this.variableNamesToNodeMakers = variableNamesToNodeMakers;
+		this.optionalGroups = optionalGroups;
+		Iterator it = optionalGroups.iterator();
+		while (it.hasNext()) {
+			optionalVariableNames.addAll((Set) it.next());
+		}
 	}
 	
 	public BindingMaker(NodeRelation nodeRelation) {
@@ -33,28 +64,101 @@ public class BindingMaker {
 			variableNamesToNodeMakers.put(variableName, 
 					nodeRelation.nodeMaker(variableName));
 		}
+		optionalGroups = Collections.EMPTY_LIST;
 	}
 	
 	public Binding makeBinding(ResultRow row) {
 		BindingMap result = new BindingMap();
+		Map optionalNodes = new HashMap();
 		Iterator it = variableNamesToNodeMakers.keySet().iterator();
 		while (it.hasNext()) {
 			String variableName = (String) it.next();
 			NodeMaker nodeMaker = (NodeMaker) variableNamesToNodeMakers.get(variableName);
 			Node node = nodeMaker.makeNode(row);
+			if (optionalVariableNames.contains(variableName)) {
+				optionalNodes.put(variableName, node);
+				continue;
+			}
 			if (node == null) {
 				return null;
 			}
 			result.add(Var.alloc(variableName), node);
 		}
+		it = optionalGroups.iterator();
+		while (it.hasNext()) {
+			Set group = (Set) it.next();
+			if (!isComplete(group, optionalNodes)) continue;
+			Iterator it2 = group.iterator();
+			while (it2.hasNext()) {
+				String variableName = (String) it2.next();
+				result.add(Var.alloc(variableName), (Node) optionalNodes.get(variableName));
+			}
+		}
 		return result;
 	}
 	
+	private boolean isComplete(Set group, Map optionalNodes) {
+		Iterator it = group.iterator();
+		while (it.hasNext()) {
+			if (optionalNodes.get(it.next()) == null) return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Returns a condition that holds for the rows that have values for all
+	 * non-optional variables. The other rows don't make bindings, so the
+	 * condition can be added to the SQL query to skip them early.
+	 */
+	public Expression bindingCondition()
+	{
+		List notNull = new ArrayList();
+		Iterator it = variableNamesToNodeMakers.keySet().iterator();
+		while (it.hasNext()) {
+			String variableName = (String) it.next();
+			if (optionalVariableNames.contains(variableName)) continue;
+			NodeMaker nodeMaker = (NodeMaker) variableNamesToNodeMakers.get(variableName);
+			Iterator it2 = nodeMaker.projectionSpecs().iterator();
+			while (it2.hasNext()) {
+				Iterator it3 = ((ProjectionSpec) it2.next()).requiredAttributes().iterator();
+				while (it3.hasNext()) {
+					notNull.add(AttributeNotNull.create((Attribute) it3.next()));
+				}
+			}
+		}
+		return Conjunction.create(notNull);
+	}
+	
 	public Set variableNames()
 	{
 		return variableNamesToNodeMakers.keySet();
 	}
 	
+	/**
+	 * @return The names of the variables that may be unbound
+	 */
+	public Set optionalVariableNames()
+	{
+		return optionalVariableNames;
+	}
+	
+	/**
+	 * @return A list of sets of names of variables that are bound or
+	 * 		unbound together
+	 */
+	public List optionalGroups()
+	{
+		return optionalGroups;
+	}
+	
+	/**
+	 * @return A copy of the map from variable names to {@link NodeMaker}s
+	 */
+	public Map nodeMakers()
+	{
+		return new HashMap(variableNamesToNodeMakers);
+	}
+	
 	
 	public NodeMaker nodeMaker(Var var)
 	{
@@ -68,6 +172,9 @@ public class BindingMaker {
 			String variableName = (String) it.next();
 			result.append("    ");
 			result.append(variableName);
+			if (optionalVariableNames.contains(variableName)) {
+				result.append(" (optional)");
+			}
 			result.append(" => ");
 			result.append(variableNamesToNodeMakers.get(variableName));
 			result.append("\n");
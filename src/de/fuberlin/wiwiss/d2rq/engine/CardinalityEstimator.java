@@ -0,0 +1,89 @@
+package de.fuberlin.wiwiss.d2rq.engine;
+
+import java.util.Iterator;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+
+import de.fuberlin.wiwiss.d2rq.algebra.Attribute;
+import de.fuberlin.wiwiss.d2rq.algebra.Relation;
+import de.fuberlin.wiwiss.d2rq.algebra.RelationName;
+import de.fuberlin.wiwiss.d2rq.algebra.TripleRelation;
+import de.fuberlin.wiwiss.d2rq.dbschema.TableStatistics;
+
+/**
+ * Estimates how many triples a {@link TripleRelation} produces for a
+ * triple pattern, from the {@link TableStatistics} of its database.
+ *
+ * The tables of a relation are assumed to be joined along foreign keys,
+ * so the relation has as many rows as its largest table. Each node of
+ * the pattern that is not a variable selects the rows whose columns
+ * make that node, which are estimated as the rows divided by the
+ * number of distinct values of those columns. The estimate doesn't
+ * depend on the node, so the parameters of a {@link ParameterizedOp}
+ * are estimated like the constants they replace.
+ */
+public class CardinalityEstimator {
+
+	/**
+	 * Returned if there are no statistics for some table of the relation
+	 */
+	public static final double UNKNOWN = -1;
+
+	/**
+	 * Fraction of rows assumed to match a constant if the number of
+	 * distinct values of a column is unknown
+	 */
+	public static final double DEFAULT_SELECTIVITY = 0.1;
+
+	/**
+	 * @param tripleRelation A triple relation of the mapping that matches
+	 * 		the pattern, not yet restricted to it, so that the columns
+	 * 		that make its nodes are known
+	 * @param pattern The triple pattern
+	 * @return The estimated number of matching triples, or {@link #UNKNOWN}
+	 */
+	public double estimate(TripleRelation tripleRelation, Triple pattern) {
+		Relation relation = tripleRelation.baseRelation();
+		if (relation.isTrivial()) return 1;
+		if (relation.condition().isFalse()) return 0;
+		if (relation.database() == null) return UNKNOWN;
+		TableStatistics statistics = relation.database().tableStatistics();
+		long rows = 0;
+		Iterator it = relation.tables().iterator();
+		while (it.hasNext()) {
+			RelationName table = relation.aliases().originalOf((RelationName) it.next());
+			long tableRows = statistics.rowCount(table);
+			if (tableRows == TableStatistics.UNKNOWN) return UNKNOWN;
+			rows = Math.max(rows, tableRows);
+		}
+		double result = rows;
+		result *= selectivity(pattern.getSubject(), tripleRelation, TripleRelation.SUBJECT, rows, statistics);
+		result *= selectivity(pattern.getPredicate(), tripleRelation, TripleRelation.PREDICATE, rows, statistics);
+		result *= selectivity(pattern.getObject(), tripleRelation, TripleRelation.OBJECT, rows, statistics);
+		return result;
+	}
+
+	private double selectivity(Node node, TripleRelation tripleRelation, String position,
+			long rows, TableStatistics statistics) {
+		if (Node.ANY.equals(node) || rows == 0) return 1;
+		if (node.isVariable() && !ParameterizedOp.isParameter(node)) return 1;
+		Relation relation = tripleRelation.baseRelation();
+		long distinct = 0;
+		boolean hasColumns = false;
+		Iterator it = tripleRelation.nodeMaker(position).projectionSpecs().iterator();
+		while (it.hasNext()) {
+			Object spec = it.next();
+			if (!(spec instanceof Attribute)) continue;
+			hasColumns = true;
+			long columnDistinct = statistics.distinctValues(
+					relation.aliases().originalOf((Attribute) spec));
+			if (columnDistinct == TableStatistics.UNKNOWN) continue;
+			distinct = Math.max(distinct, columnDistinct);
+		}
+		// A node that is fixed in the mapping is the same in all rows
+		if (!hasColumns) return 1;
+		if (distinct == 0) return DEFAULT_SELECTIVITY;
+		return 1.0 / distinct;
+	}
+}
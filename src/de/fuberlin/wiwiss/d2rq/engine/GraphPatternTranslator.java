@@ -3,18 +3,39 @@ package de.fuberlin.wiwiss.d2rq.engine;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
+import com.hp.hpl.jena.graph.Node;
 import com.hp.hpl.jena.graph.Triple;
 
 import de.fuberlin.wiwiss.d2rq.algebra.Relation;
 import de.fuberlin.wiwiss.d2rq.algebra.TripleRelation;
+import de.fuberlin.wiwiss.d2rq.algebra.TripleRelationIndex;
 
+/**
+ * Translates a basic graph pattern into {@link NodeRelation}s, one for
+ * each combination of {@link TripleRelation}s that can produce matches
+ * for all of its triple patterns.
+ *
+ * The number of combinations grows with the product of the candidates
+ * of all triple patterns. To keep it down, candidates that can't be
+ * joined with any candidate of a triple pattern that shares a variable
+ * are dropped first. Then the triple patterns are joined starting with
+ * the one that is estimated to produce the fewest triples, see
+ * {@link CardinalityEstimator}, and each following triple pattern
+ * shares a variable with an earlier one where possible, so incompatible
+ * combinations are recognized early.
+ */
 public class GraphPatternTranslator {
 	private final List triplePatterns;
 	private final Collection tripleRelations;
 	boolean useAllOptimizations;
+	private final CardinalityEstimator estimator = new CardinalityEstimator();
 	
 	public GraphPatternTranslator(List triplePatterns, Collection tripleRelations, boolean useAllOptimizations) 
 	{
@@ -30,26 +51,13 @@ public class GraphPatternTranslator {
 		if (triplePatterns.isEmpty()) {
 			return Collections.singletonList(NodeRelation.TRUE);
 		}
-		Iterator it = triplePatterns.iterator();
-		List candidateLists = new ArrayList(triplePatterns.size());
-		int index = 1;
-		while (it.hasNext()) {
-			Triple triplePattern = (Triple) it.next();
-			// use always index
-			// index is now unique over one sparq-query-execution
-			CandidateList candidates = new CandidateList(
-					triplePattern, triplePatterns.size() > 1, index);
-			if (candidates.isEmpty()) {
-				return Collections.EMPTY_LIST;
-			}
-			candidateLists.add(candidates);
-			// inc value
-			index++;
+		List candidateLists = joinPlan();
+		if (candidateLists == null) {
+			return Collections.EMPTY_LIST;
 		}
-		Collections.sort(candidateLists);
 		List joiners = new ArrayList();
 		joiners.add(TripleRelationJoiner.create(this.useAllOptimizations));
-		it = candidateLists.iterator();
+		Iterator it = candidateLists.iterator();
 		while (it.hasNext()) {
 			CandidateList candidates = (CandidateList) it.next();
 			List nextJoiners = new ArrayList();
@@ -71,16 +79,118 @@ public class GraphPatternTranslator {
 		return results;
 	}
 
-	private class CandidateList implements Comparable {
+	/**
+	 * Finds the candidates of each triple pattern, drops those that
+	 * can't be joined, and puts the triple patterns into join order
+	 * @return The {@link CandidateList}s in join order, or <tt>null</tt>
+	 * 		if a triple pattern has no candidates
+	 */
+	List joinPlan() {
+		Iterator it = triplePatterns.iterator();
+		List candidateLists = new ArrayList(triplePatterns.size());
+		int index = 1;
+		while (it.hasNext()) {
+			Triple triplePattern = (Triple) it.next();
+			// use always index
+			// index is now unique over one sparq-query-execution
+			CandidateList candidates = new CandidateList(
+					triplePattern, triplePatterns.size() > 1, index);
+			if (candidates.isEmpty()) {
+				return null;
+			}
+			candidateLists.add(candidates);
+			// inc value
+			index++;
+		}
+		if (!pruneCandidates(candidateLists)) {
+			return null;
+		}
+		return joinOrder(candidateLists);
+	}
+
+	/**
+	 * Removes candidates that can't be joined with any candidate of another
+	 * triple pattern that shares a variable with theirs, until there is
+	 * nothing left to remove. With just two triple patterns, this would
+	 * do the same work as joining them.
+	 * @return <tt>false</tt> if a triple pattern has no candidates left
+	 */
+	private boolean pruneCandidates(List candidateLists) {
+		if (candidateLists.size() < 3) return true;
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			Iterator it = candidateLists.iterator();
+			while (it.hasNext()) {
+				CandidateList candidates = (CandidateList) it.next();
+				Iterator it2 = candidateLists.iterator();
+				while (it2.hasNext()) {
+					CandidateList other = (CandidateList) it2.next();
+					if (other == candidates || !candidates.sharesVariableWith(other.variables())) continue;
+					if (candidates.retainJoinable(other)) {
+						changed = true;
+					}
+					if (candidates.isEmpty()) return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Orders the triple patterns for joining. Starts with the cheapest,
+	 * and continues with the cheapest one that shares a variable with
+	 * the ones before, or the cheapest one overall if there is none.
+	 * @return The {@link CandidateList}s in the new order
+	 */
+	private List joinOrder(List candidateLists) {
+		List remaining = new ArrayList(candidateLists);
+		List result = new ArrayList(candidateLists.size());
+		Set joinedVariables = new HashSet();
+		while (!remaining.isEmpty()) {
+			CandidateList next = null;
+			boolean nextIsConnected = false;
+			Iterator it = remaining.iterator();
+			while (it.hasNext()) {
+				CandidateList candidates = (CandidateList) it.next();
+				boolean connected = candidates.sharesVariableWith(joinedVariables);
+				if (next == null || (connected && !nextIsConnected) 
+						|| (connected == nextIsConnected && candidates.compareTo(next) < 0)) {
+					next = candidates;
+					nextIsConnected = connected;
+				}
+			}
+			remaining.remove(next);
+			result.add(next);
+			joinedVariables.addAll(next.variables());
+		}
+		return result;
+	}
+
+	class CandidateList implements Comparable {
 		private final Triple triplePattern;
-		private final List candidates;
+		private List candidates;
+		private final Map originals = new IdentityHashMap();	// candidate => TripleRelation from the mapping
+		private final int index;
+		private final Set variables = new HashSet();
+		private double estimate = Double.NaN;
 		CandidateList(Triple triplePattern, boolean useIndex, int index) {
 			this.triplePattern = triplePattern;
-			List matches = findMatchingTripleRelations(triplePattern);
-			if (useIndex) {
-				candidates = prefixTripleRelations(matches, index);
-			} else {
-				candidates = matches;
+			this.index = index;
+			addIfVariable(triplePattern.getSubject());
+			addIfVariable(triplePattern.getPredicate());
+			addIfVariable(triplePattern.getObject());
+			candidates = new ArrayList();
+			Iterator it = TripleRelationIndex.candidates(tripleRelations, triplePattern).iterator();
+			while (it.hasNext()) {
+				TripleRelation tripleRelation = (TripleRelation) it.next();
+				TripleRelation selected = tripleRelation.selectTriple(triplePattern);
+				if (selected == null) continue;
+				if (useIndex) {
+					selected = selected.withPrefix(index);
+				}
+				candidates.add(selected);
+				originals.put(selected, tripleRelation);
 			}
 		}
 		boolean isEmpty() {
@@ -92,35 +202,83 @@ public class GraphPatternTranslator {
 		List all() {
 			return candidates;
 		}
+		Set variables() {
+			return variables;
+		}
+		boolean sharesVariableWith(Set variableNames) {
+			Iterator it = variables.iterator();
+			while (it.hasNext()) {
+				if (variableNames.contains(it.next())) return true;
+			}
+			return false;
+		}
+		/**
+		 * @return The estimated number of matching triples, with
+		 * 		{@link Double#MAX_VALUE} for unknown
+		 */
+		double estimate() {
+			if (Double.isNaN(estimate)) {
+				estimate = 0;
+				Iterator it = candidates.iterator();
+				while (it.hasNext()) {
+					double candidateEstimate = estimator.estimate(
+							(TripleRelation) originals.get(it.next()), triplePattern);
+					if (candidateEstimate == CardinalityEstimator.UNKNOWN) {
+						estimate = Double.MAX_VALUE;
+						break;
+					}
+					estimate += candidateEstimate;
+				}
+			}
+			return estimate;
+		}
+		/**
+		 * Keeps only candidates that can be joined with a candidate of the other list
+		 * @return <tt>true</tt> if candidates were removed
+		 */
+		boolean retainJoinable(CandidateList other) {
+			List retained = new ArrayList(candidates.size());
+			Iterator it = candidates.iterator();
+			while (it.hasNext()) {
+				TripleRelation candidate = (TripleRelation) it.next();
+				TripleRelationJoiner joiner = TripleRelationJoiner.create(false).join(triplePattern, candidate);
+				if (joiner == null) continue;
+				Iterator it2 = other.candidates.iterator();
+				while (it2.hasNext()) {
+					if (joiner.join(other.triplePattern, (TripleRelation) it2.next()) != null) {
+						retained.add(candidate);
+						break;
+					}
+				}
+			}
+			if (retained.size() == candidates.size()) return false;
+			candidates = retained;
+			estimate = Double.NaN;
+			return true;
+		}
+		/**
+		 * Orders by estimated number of triples, then by number of candidates
+		 */
 		public int compareTo(Object other) {
 			CandidateList otherList = (CandidateList) other;
+			if (estimate() < otherList.estimate()) {
+				return -1;
+			}
+			if (estimate() > otherList.estimate()) {
+				return 1;
+			}
 			if (candidates.size() < otherList.candidates.size()) {
 				return -1;
 			}
 			if (candidates.size() > otherList.candidates.size()) {
 				return 1;
 			}
-			return 0;
+			return index - otherList.index;
 		}
-		private List findMatchingTripleRelations(Triple triplePattern) {
-			List results = new ArrayList();
-			Iterator it = tripleRelations.iterator();
-			while (it.hasNext()) {
-				TripleRelation tripleRelation = (TripleRelation) it.next();
-				TripleRelation selected = tripleRelation.selectTriple(triplePattern);
-				if (selected == null) continue;
-				results.add(selected);
-			}
-			return results;
-		}
-		private List prefixTripleRelations(List tripleRelations, int index) {
-			List results = new ArrayList(tripleRelations.size());
-			Iterator it = tripleRelations.iterator();
-			while (it.hasNext()) {
-				TripleRelation tripleRelation = (TripleRelation) it.next();
-				results.add(tripleRelation.withPrefix(index));
+		private void addIfVariable(Node node) {
+			if (node.isVariable()) {
+				variables.add(node.getName());
 			}
-			return results;
 		}
 		public String toString() {
 			return "CandidateList(" + triplePattern + ")[" + candidates + "]";
@@ -1,28 +1,43 @@
 package de.fuberlin.wiwiss.d2rq.engine;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import com.hp.hpl.jena.sparql.algebra.Op;
-import com.hp.hpl.jena.sparql.algebra.op.OpBGP;
 import com.hp.hpl.jena.sparql.algebra.op.OpExt;
+import com.hp.hpl.jena.sparql.algebra.op.OpProject;
+import com.hp.hpl.jena.sparql.core.Var;
 import com.hp.hpl.jena.sparql.engine.ExecutionContext;
 import com.hp.hpl.jena.sparql.engine.QueryIterator;
+import com.hp.hpl.jena.sparql.expr.ExprList;
 import com.hp.hpl.jena.sparql.serializer.SerializationContext;
 import com.hp.hpl.jena.sparql.sse.writers.WriterOp;
 import com.hp.hpl.jena.sparql.util.IndentedWriter;
 import com.hp.hpl.jena.sparql.util.NodeIsomorphismMap;
 
 import de.fuberlin.wiwiss.d2rq.algebra.Relation;
+import de.fuberlin.wiwiss.d2rq.algebra.RelationImpl;
+import de.fuberlin.wiwiss.d2rq.nodes.NodeMaker;
 import de.fuberlin.wiwiss.d2rq.optimizer.iterators.RelationToBindingsD2RQIterator;
 
 public class OpD2RQ extends OpExt
 {
 	private static final String tagD2RQ = "d2rq"; 	
-	protected final OpBGP original;
+	protected final Op original;
 	protected final Relation relation;
 	protected final Collection bindingMakers;
 	
-	public OpD2RQ(OpBGP original, Relation relation, Collection bindingMakers) 
+	/**
+	 * @param original The operator that is evaluated by this OpD2RQ, usually an OpBGP
+	 */
+	public OpD2RQ(Op original, Relation relation, Collection bindingMakers) 
 	{
 		super(tagD2RQ);
 		this.original = original;
@@ -35,10 +50,77 @@ public class OpD2RQ extends OpExt
 		return RelationToBindingsD2RQIterator.create(relation, bindingMakers, input, execCxt);
 	}
 
+	/**
+	 * Evaluates this op as the right side of a left-join
+	 * @param input The bindings of the left side
+	 * @param filter The condition of the left-join, or <tt>null</tt>
+	 */
+	public QueryIterator evalOptional(QueryIterator input, ExprList filter, ExecutionContext execCxt) 
+	{
+		return RelationToBindingsD2RQIterator.createOptional(relation, bindingMakers, input, filter, execCxt);
+	}
+
+	/**
+	 * Restricts the solutions to some of the variables, for use under
+	 * a DISTINCT. The SQL query then selects only the columns needed
+	 * for these variables, and the database eliminates duplicates.
+	 * 
+	 * @param vars A list of {@link Var}s
+	 * @return An OpD2RQ that makes only these variables, or <tt>null</tt>
+	 * 		if that's not possible
+	 */
+	public OpD2RQ project(List vars)
+	{
+		if (bindingMakers.size() != 1 || relation.isTrivial()) return null;
+		if (relation.order() != null || relation.limit() != Relation.NO_LIMIT 
+				|| relation.offset() != 0) return null;
+		BindingMaker bindingMaker = (BindingMaker) bindingMakers.iterator().next();
+		Set names = new HashSet();
+		Iterator it = vars.iterator();
+		while (it.hasNext()) {
+			names.add(((Var) it.next()).getName());
+		}
+		// The start binding selects the rows by the parameters of a ParameterizedOp
+		it = bindingMaker.variableNames().iterator();
+		while (it.hasNext()) {
+			String name = (String) it.next();
+			if (ParameterizedOp.isParameter(Var.alloc(name))) {
+				names.add(name);
+			}
+		}
+		if (names.containsAll(bindingMaker.variableNames())) return null;
+		Map nodeMakers = new HashMap();
+		Set projections = new HashSet();
+		it = bindingMaker.variableNames().iterator();
+		while (it.hasNext()) {
+			String name = (String) it.next();
+			if (!names.contains(name)) continue;
+			NodeMaker nodeMaker = bindingMaker.nodeMaker(Var.alloc(name));
+			nodeMakers.put(name, nodeMaker);
+			projections.addAll(nodeMaker.projectionSpecs());
+		}
+		List optionalGroups = new ArrayList();
+		it = bindingMaker.optionalGroups().iterator();
+		while (it.hasNext()) {
+			Set group = new HashSet((Set) it.next());
+			group.retainAll(names);
+			if (!group.isEmpty()) {
+				optionalGroups.add(group);
+			}
+		}
+		// Rows that don't bind the dropped variables must still be skipped 
+		Relation r = relation.select(bindingMaker.bindingCondition()).project(projections);
+		r = new RelationImpl(r.database(), r.aliases(), r.condition(), r.joinConditions(), 
+				r.projections(), r.leftJoinConditions(), false, r.order(), r.orderDesc(), 
+				r.limit(), r.limitInverse(), r.offset());
+		return new OpD2RQ(new OpProject(original, vars), r, 
+				Collections.singleton(new BindingMaker(nodeMakers, optionalGroups)));
+	}
+
 	public boolean equalTo(Op other, NodeIsomorphismMap labelMap) {
 		if (!(other instanceof OpD2RQ)) return false;
 		OpD2RQ other2 = (OpD2RQ) other;
-        return original.getPattern().equiv(other2.original.getPattern(), labelMap);
+        return original.equalTo(other2.original, labelMap);
 	}
 
 	public int hashCode() {
@@ -74,7 +156,7 @@ public class OpD2RQ extends OpExt
 
 	public void outputArgs(IndentedWriter out, SerializationContext sCxt) {
 		int line = out.getRow() ;
-		WriterOp.output(out, this, sCxt) ;
+		WriterOp.output(out, original, sCxt) ;
 		if ( line != out.getRow() )
 			out.ensureStartOfLine() ;
 	}
@@ -0,0 +1,182 @@
+package de.fuberlin.wiwiss.d2rq.engine;
+
+import java.math.BigDecimal;
+import java.util.Iterator;
+import java.util.List;
+
+import com.hp.hpl.jena.datatypes.xsd.XSDDatatype;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.sparql.algebra.Op;
+import com.hp.hpl.jena.sparql.algebra.op.OpExt;
+import com.hp.hpl.jena.sparql.core.Var;
+import com.hp.hpl.jena.sparql.engine.ExecutionContext;
+import com.hp.hpl.jena.sparql.engine.QueryIterator;
+import com.hp.hpl.jena.sparql.engine.binding.Binding;
+import com.hp.hpl.jena.sparql.engine.binding.BindingMap;
+import com.hp.hpl.jena.sparql.engine.iterator.QueryIter;
+import com.hp.hpl.jena.sparql.engine.iterator.QueryIterNullIterator;
+import com.hp.hpl.jena.sparql.engine.iterator.QueryIterRepeatApply;
+import com.hp.hpl.jena.sparql.expr.aggregate.Aggregator;
+import com.hp.hpl.jena.sparql.serializer.SerializationContext;
+import com.hp.hpl.jena.sparql.sse.writers.WriterOp;
+import com.hp.hpl.jena.sparql.util.IndentedWriter;
+import com.hp.hpl.jena.sparql.util.NodeIsomorphismMap;
+
+import de.fuberlin.wiwiss.d2rq.algebra.Relation;
+import de.fuberlin.wiwiss.d2rq.algebra.RelationName;
+import de.fuberlin.wiwiss.d2rq.sql.ExecutionStatistics;
+import de.fuberlin.wiwiss.d2rq.sql.QueryExecutionIterator;
+import de.fuberlin.wiwiss.d2rq.sql.ResultRow;
+import de.fuberlin.wiwiss.d2rq.sql.SelectStatementBuilder;
+
+/**
+ * Evaluates a SPARQL GROUP BY with aggregates as a single SQL query
+ * with <code>GROUP BY</code>, see {@link OpD2RQGrouper}. Each result
+ * row makes one solution, with the group variables made by a
+ * {@link BindingMaker} and the aggregate variables bound to
+ * xsd:integer literals.
+ */
+public class OpD2RQGroup extends OpExt {
+	private static final String tagD2RQGroup = "d2rq-group";
+	private final Op original;
+	private final Relation relation;
+	private final RelationName alias;
+	private final List groupBy;
+	private final BindingMaker bindingMaker;
+	private final List aggregateVars;
+	private final List aggregators;
+	private final List aggregates;
+
+	/**
+	 * @param original The operator that is evaluated by this op, an OpGroupAgg
+	 * @param relation The relation whose rows are grouped
+	 * @param alias Name of the relation's derived table in the SQL query
+	 * @param groupBy {@link de.fuberlin.wiwiss.d2rq.algebra.Attribute}s
+	 * 		of the derived table to group by
+	 * @param bindingMaker Makes the group variables from the attributes in <tt>groupBy</tt>
+	 * @param aggregateVars The {@link Var}s that hold the aggregate values
+	 * @param aggregators The ARQ {@link Aggregator} of each aggregate variable
+	 * @param aggregates The {@link de.fuberlin.wiwiss.d2rq.algebra.Aggregate} of each aggregate variable
+	 */
+	public OpD2RQGroup(Op original, Relation relation, RelationName alias, List groupBy,
+			BindingMaker bindingMaker, List aggregateVars, List aggregators, List aggregates) {
+		super(tagD2RQGroup);
+		this.original = original;
+		this.relation = relation;
+		this.alias = alias;
+		this.groupBy = groupBy;
+		this.bindingMaker = bindingMaker;
+		this.aggregateVars = aggregateVars;
+		this.aggregators = aggregators;
+		this.aggregates = aggregates;
+	}
+
+	public QueryIterator eval(QueryIterator input, final ExecutionContext execCxt) {
+		return new QueryIterRepeatApply(input, execCxt) {
+			protected QueryIterator nextStage(Binding parent) {
+				if (relation.condition().isFalse()) {
+					return new QueryIterNullIterator(execCxt);
+				}
+				return new GroupIterator(parent, execCxt);
+			}
+		};
+	}
+
+	/**
+	 * Runs the SQL query and makes the solutions that are compatible
+	 * with a parent binding, one row at a time
+	 */
+	private class GroupIterator extends QueryIter {
+		private final Binding parent;
+		private final QueryExecutionIterator rows;
+		private Binding next = null;
+
+		GroupIterator(Binding parent, ExecutionContext execCxt) {
+			super(execCxt);
+			this.parent = parent;
+			ExecutionStatistics statistics = (ExecutionStatistics) execCxt.getContext().get(
+					QueryEngineD2RQ.STATISTICS, ExecutionStatistics.global());
+			this.rows = new QueryExecutionIterator(
+					new SelectStatementBuilder(relation, alias, groupBy, aggregates),
+					relation.database(), statistics);
+		}
+
+		protected boolean hasNextBinding() {
+			while (next == null && rows.hasNext()) {
+				next = makeBinding(parent, rows.nextRow());
+			}
+			return next != null;
+		}
+
+		protected Binding moveToNextBinding() {
+			Binding result = next;
+			next = null;
+			return result;
+		}
+
+		protected void closeIterator() {
+			rows.close();
+		}
+	}
+
+	private Binding makeBinding(Binding parent, ResultRow row) {
+		Binding groupBinding = bindingMaker.makeBinding(row);
+		if (groupBinding == null) return null;
+		Binding result = new BindingMap(parent);
+		Iterator it = groupBinding.vars();
+		while (it.hasNext()) {
+			Var var = (Var) it.next();
+			if (!bind(result, parent, var, groupBinding.get(var))) return null;
+		}
+		for (int i = 0; i < aggregateVars.size(); i++) {
+			String value = row.get(SelectStatementBuilder.aggregateColumn(i));
+			Node node = (value == null)
+					? ((Aggregator) aggregators.get(i)).getValueEmpty()
+					: Node.createLiteral(new BigDecimal(value).toBigInteger().toString(),
+							null, XSDDatatype.XSDinteger);
+			if (node == null) continue;
+			if (!bind(result, parent, (Var) aggregateVars.get(i), node)) return null;
+		}
+		return result;
+	}
+
+	/**
+	 * @return <tt>false</tt> if the parent already has a different value
+	 */
+	private boolean bind(Binding result, Binding parent, Var var, Node value) {
+		Node parentValue = parent.get(var);
+		if (parentValue == null) {
+			result.add(var, value);
+			return true;
+		}
+		return parentValue.equals(value);
+	}
+
+	public boolean equalTo(Op other, NodeIsomorphismMap labelMap) {
+		if (!(other instanceof OpD2RQGroup)) return false;
+		return original.equalTo(((OpD2RQGroup) other).original, labelMap);
+	}
+
+	public int hashCode() {
+		return original.hashCode() ^ relation.hashCode() ^ aggregates.hashCode();
+	}
+
+	public OpExt copy() {
+		return this;	// We are immutable
+	}
+
+	public Op effectiveOp() {
+		return original;
+	}
+
+	public String getSubTag() {
+		return tagD2RQGroup;
+	}
+
+	public void outputArgs(IndentedWriter out, SerializationContext sCxt) {
+		int line = out.getRow();
+		WriterOp.output(out, original, sCxt);
+		if (line != out.getRow())
+			out.ensureStartOfLine();
+	}
+}
@@ -0,0 +1,204 @@
+package de.fuberlin.wiwiss.d2rq.engine;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.hp.hpl.jena.sparql.algebra.Op;
+import com.hp.hpl.jena.sparql.algebra.op.OpGroupAgg;
+import com.hp.hpl.jena.sparql.core.Var;
+import com.hp.hpl.jena.sparql.expr.E_Aggregator;
+import com.hp.hpl.jena.sparql.expr.ExprVar;
+import com.hp.hpl.jena.sparql.expr.aggregate.AggCount;
+import com.hp.hpl.jena.sparql.expr.aggregate.AggCountDistinct;
+import com.hp.hpl.jena.sparql.expr.aggregate.AggCountVar;
+import com.hp.hpl.jena.sparql.expr.aggregate.AggCountVarDistinct;
+import com.hp.hpl.jena.sparql.expr.aggregate.AggSum;
+import com.hp.hpl.jena.sparql.expr.aggregate.Aggregator;
+
+import de.fuberlin.wiwiss.d2rq.algebra.Aggregate;
+import de.fuberlin.wiwiss.d2rq.algebra.Attribute;
+import de.fuberlin.wiwiss.d2rq.algebra.ColumnRenamer;
+import de.fuberlin.wiwiss.d2rq.algebra.ColumnRenamerMap;
+import de.fuberlin.wiwiss.d2rq.algebra.LeftJoin;
+import de.fuberlin.wiwiss.d2rq.algebra.Relation;
+import de.fuberlin.wiwiss.d2rq.algebra.RelationName;
+import de.fuberlin.wiwiss.d2rq.nodes.FixedNodeMaker;
+import de.fuberlin.wiwiss.d2rq.nodes.NodeMaker;
+import de.fuberlin.wiwiss.d2rq.nodes.TypedNodeMaker;
+import de.fuberlin.wiwiss.d2rq.sql.ConnectedDB;
+import de.fuberlin.wiwiss.d2rq.values.Column;
+
+/**
+ * Turns a SPARQL GROUP BY with aggregates over an {@link OpD2RQ} into
+ * an {@link OpD2RQGroup}, whose SQL query groups and aggregates the
+ * rows in the database:
+ * <code>SELECT g, COUNT(*) FROM (SELECT DISTINCT ...) AS GROUPED GROUP BY g</code>.
+ * The derived table has one row for each solution of the OpD2RQ.
+ *
+ * The OpD2RQ must have a single binding maker and no limits or
+ * ordering. The group variables must be plain variables, and their
+ * nodes must be made from the columns in a way that different values
+ * make different nodes, see {@link TypedNodeMaker#isInjective()}.
+ * The supported aggregates are <code>COUNT(*)</code>,
+ * <code>COUNT(?x)</code>, <code>COUNT(DISTINCT ?x)</code>
+ * and <code>SUM(?x)</code> over integer literals from a numeric column.
+ * Otherwise {@link #grouped()} returns <tt>null</tt> and the grouping
+ * is done by ARQ.
+ */
+public class OpD2RQGrouper {
+	private static final RelationName ALIAS = new RelationName(null, "GROUPED");
+	private final OpGroupAgg original;
+	private final OpD2RQ subOp;
+	private BindingMaker bindingMaker;
+	private Relation relation;
+	private ColumnRenamer renamer;
+
+	/**
+	 * @param original The group to be replaced
+	 * @param subOp Its transformed sub-operator
+	 */
+	public OpD2RQGrouper(OpGroupAgg original, OpD2RQ subOp) {
+		this.original = original;
+		this.subOp = subOp;
+	}
+
+	/**
+	 * @return An equivalent operator that groups in SQL, or
+	 * 		<tt>null</tt> if that's not possible
+	 */
+	public Op grouped() {
+		if (subOp.getBindingMakers().size() != 1) return null;
+		relation = subOp.getRelation();
+		if (relation.isTrivial() || relation.database() == null) return null;
+		if (relation.order() != null || relation.limit() != Relation.NO_LIMIT
+				|| relation.limitInverse() != Relation.NO_LIMIT || relation.offset() != 0) return null;
+		Iterator it = relation.projections().iterator();
+		while (it.hasNext()) {
+			if (!(it.next() instanceof Attribute)) return null;
+		}
+		renamer = new ColumnRenamerMap(LeftJoin.outerAttributes(ALIAS, relation.projections()));
+		bindingMaker = (BindingMaker) subOp.getBindingMakers().iterator().next();
+
+		if (!original.getGroupVars().getExprs().isEmpty()) return null;
+		List groupBy = new ArrayList();
+		Map nodeMakers = new HashMap();
+		it = original.getGroupVars().getVars().iterator();
+		while (it.hasNext()) {
+			Var var = (Var) it.next();
+			if (!isRequiredAndInjective(var.getName())) return null;
+			NodeMaker nodeMaker = bindingMaker.nodeMaker(var);
+			Iterator it2 = nodeMaker.projectionSpecs().iterator();
+			while (it2.hasNext()) {
+				Attribute attribute = renamer.applyTo((Attribute) it2.next());
+				if (!groupBy.contains(attribute)) {
+					groupBy.add(attribute);
+				}
+			}
+			nodeMakers.put(var.getName(), nodeMaker.renameAttributes(renamer));
+		}
+		// Without GROUP BY, SQL would return a row even if there are no solutions
+		if (groupBy.isEmpty() && !original.getGroupVars().isEmpty()) return null;
+
+		List aggregateVars = new ArrayList();
+		List aggregators = new ArrayList();
+		List aggregates = new ArrayList();
+		it = original.getAggregators().iterator();
+		while (it.hasNext()) {
+			E_Aggregator aggregator = (E_Aggregator) it.next();
+			Aggregate aggregate = toSQL(aggregator.getAggregator());
+			if (aggregate == null) return null;
+			aggregateVars.add(aggregator.asVar());
+			aggregators.add(aggregator.getAggregator());
+			aggregates.add(aggregate.renameAttributes(renamer));
+		}
+		if (aggregates.isEmpty()) return null;
+
+		return new OpD2RQGroup(original.copy(subOp.effectiveOp()),
+				relation.select(bindingMaker.bindingCondition()), ALIAS, groupBy,
+				new BindingMaker(nodeMakers), aggregateVars, aggregators, aggregates);
+	}
+
+	/**
+	 * @return The SQL aggregate, in terms of the attributes of the
+	 * 		relation, or <tt>null</tt> if there's none
+	 */
+	private Aggregate toSQL(Aggregator aggregator) {
+		if (aggregator.equalsAsExpr(AggCount.get().create())) {
+			return Aggregate.count();
+		}
+		if (aggregator.equalsAsExpr(AggCountDistinct.get().create())) {
+			return hasDistinctRows() ? Aggregate.count() : null;
+		}
+		Iterator it = bindingMaker.variableNames().iterator();
+		while (it.hasNext()) {
+			String name = (String) it.next();
+			Var var = Var.alloc(name);
+			if (aggregator.equalsAsExpr(new AggCountVar(var).create())) {
+				// Every row binds the variable
+				return bindingMaker.optionalVariableNames().contains(name)
+						? null : Aggregate.count();
+			}
+			if (aggregator.equalsAsExpr(new AggCountVarDistinct(var).create())) {
+				if (!isRequiredAndInjective(name)) return null;
+				Set specs = bindingMaker.nodeMaker(var).projectionSpecs();
+				if (specs.size() != 1) return null;
+				return Aggregate.countDistinct((Attribute) specs.iterator().next());
+			}
+			if (aggregator.equalsAsExpr(new AggSum(new ExprVar(var)).create())) {
+				Attribute column = integerColumn(name);
+				return (column == null) ? null : Aggregate.sum(column);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Checks that the variable is made from the columns of each row,
+	 * and that different values make different nodes
+	 */
+	private boolean isRequiredAndInjective(String name) {
+		if (!bindingMaker.variableNames().contains(name)) return false;
+		if (bindingMaker.optionalVariableNames().contains(name)) return false;
+		NodeMaker nodeMaker = bindingMaker.nodeMaker(Var.alloc(name));
+		if (!relation.projections().containsAll(nodeMaker.projectionSpecs())) return false;
+		if (nodeMaker instanceof FixedNodeMaker) return true;
+		return (nodeMaker instanceof TypedNodeMaker) && ((TypedNodeMaker) nodeMaker).isInjective();
+	}
+
+	/**
+	 * Checks that the rows of the derived table are the distinct solutions
+	 */
+	private boolean hasDistinctRows() {
+		if (!bindingMaker.optionalGroups().isEmpty()) return false;
+		if (!relation.isUnique() && !relation.database().allowDistinct()) return false;
+		Set specs = new HashSet();
+		Iterator it = bindingMaker.variableNames().iterator();
+		while (it.hasNext()) {
+			String name = (String) it.next();
+			if (!isRequiredAndInjective(name)) return false;
+			specs.addAll(bindingMaker.nodeMaker(Var.alloc(name)).projectionSpecs());
+		}
+		return specs.containsAll(relation.projections());
+	}
+
+	/**
+	 * @return The numeric column that the variable's integer literals are
+	 * 		made from, or <tt>null</tt> if there's none
+	 */
+	private Attribute integerColumn(String name) {
+		if (bindingMaker.optionalVariableNames().contains(name)) return null;
+		NodeMaker nodeMaker = bindingMaker.nodeMaker(Var.alloc(name));
+		if (!(nodeMaker instanceof TypedNodeMaker)) return null;
+		TypedNodeMaker typedNodeMaker = (TypedNodeMaker) nodeMaker;
+		if (!typedNodeMaker.isIntegerLiteral() || !(typedNodeMaker.valueMaker() instanceof Column)) return null;
+		Attribute column = ((Column) typedNodeMaker.valueMaker()).attribute();
+		if (!relation.projections().contains(column)) return null;
+		int columnType = relation.database().columnType(relation.aliases().originalOf(column));
+		return (columnType == ConnectedDB.NUMERIC_COLUMN) ? column : null;
+	}
+}
@@ -0,0 +1,149 @@
+package de.fuberlin.wiwiss.d2rq.engine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.hp.hpl.jena.sparql.algebra.Op;
+import com.hp.hpl.jena.sparql.algebra.op.OpLeftJoin;
+import com.hp.hpl.jena.sparql.core.Var;
+import com.hp.hpl.jena.sparql.expr.ExprList;
+
+import de.fuberlin.wiwiss.d2rq.algebra.AliasMap;
+import de.fuberlin.wiwiss.d2rq.algebra.Attribute;
+import de.fuberlin.wiwiss.d2rq.algebra.ColumnRenamer;
+import de.fuberlin.wiwiss.d2rq.algebra.ColumnRenamerMap;
+import de.fuberlin.wiwiss.d2rq.algebra.LeftJoin;
+import de.fuberlin.wiwiss.d2rq.algebra.Relation;
+import de.fuberlin.wiwiss.d2rq.algebra.RelationImpl;
+import de.fuberlin.wiwiss.d2rq.algebra.RelationName;
+import de.fuberlin.wiwiss.d2rq.expr.AttributeNotNull;
+import de.fuberlin.wiwiss.d2rq.expr.Conjunction;
+import de.fuberlin.wiwiss.d2rq.expr.Expression;
+import de.fuberlin.wiwiss.d2rq.nodes.NodeMaker;
+
+/**
+ * Combines the two {@link OpD2RQ}s of a SPARQL OPTIONAL into a single
+ * OpD2RQ whose SQL query has a <code>LEFT OUTER JOIN</code>.
+ *
+ * The right side becomes a derived table (see {@link LeftJoin}), joined
+ * on the variables that both sides share. Its variables become a group of optional
+ * variables of the combined {@link BindingMaker}.
+ *
+ * Only simple cases are handled: both sides must be on the same
+ * database, each must have a single binding maker, neither may use
+ * limits or ordering, the right side may not have optional parts of
+ * its own, and the join condition must refer to a single table of the
+ * left side. Otherwise {@link #leftJoined()} returns <tt>null</tt> and
+ * the left join is evaluated by ARQ.
+ */
+public class OpD2RQLeftJoiner {
+	private final OpLeftJoin original;
+	private final OpD2RQ left;
+	private final OpD2RQ right;
+
+	/**
+	 * @param original The left join to be replaced; must not have a filter
+	 * @param left Its transformed left side
+	 * @param right Its transformed right side
+	 */
+	public OpD2RQLeftJoiner(OpLeftJoin original, OpD2RQ left, OpD2RQ right) {
+		this.original = original;
+		this.left = left;
+		this.right = right;
+	}
+
+	/**
+	 * @return An OpD2RQ equivalent to the left join, or <tt>null</tt>
+	 * 		if it cannot be expressed in SQL
+	 */
+	public Op leftJoined() {
+		if (original.getExprs() != null && !original.getExprs().isEmpty()) return null;
+		if (left.getBindingMakers().size() != 1 || right.getBindingMakers().size() != 1) return null;
+		Relation l = left.getRelation();
+		Relation r = right.getRelation();
+		if (l.database() == null || l.database() != r.database()) return null;
+		if (l.isTrivial() || r.isTrivial()) return null;
+		if (!r.leftJoinConditions().isEmpty()) return null;
+		if (hasLimitOrOrder(l) || hasLimitOrOrder(r)) return null;
+		Iterator it = r.projections().iterator();
+		while (it.hasNext()) {
+			if (!(it.next() instanceof Attribute)) return null;
+		}
+		BindingMaker leftMaker = (BindingMaker) left.getBindingMakers().iterator().next();
+		BindingMaker rightMaker = (BindingMaker) right.getBindingMakers().iterator().next();
+		it = rightMaker.variableNames().iterator();
+		while (it.hasNext()) {
+			NodeMaker nodeMaker = rightMaker.nodeMaker(Var.alloc((String) it.next()));
+			if (!r.projections().containsAll(nodeMaker.projectionSpecs())) return null;
+		}
+		Set shared = new HashSet(leftMaker.variableNames());
+		shared.retainAll(rightMaker.variableNames());
+		if (shared.isEmpty()) return null;
+		// A left join on an optional variable would need to match NULLs
+		if (!Collections.disjoint(shared, leftMaker.optionalVariableNames())) return null;
+
+		RelationName alias = new RelationName(null, "OPT" + (l.leftJoinConditions().size() + 1));
+		LeftJoin renaming = new LeftJoin(alias, r, Expression.TRUE);
+		ColumnRenamer renamer = new ColumnRenamerMap(renaming.outerAttributes());
+
+		NamesToNodeMakersMap joinedNodes = new NamesToNodeMakersMap();
+		it = shared.iterator();
+		while (it.hasNext()) {
+			String name = (String) it.next();
+			joinedNodes.add(name, leftMaker.nodeMaker(Var.alloc(name)), l.aliases());
+			joinedNodes.add(name, rightMaker.nodeMaker(Var.alloc(name))
+					.renameAttributes(renamer), AliasMap.NO_ALIASES);
+		}
+		Expression condition = joinedNodes.constraint();
+		if (condition.isFalse()) {
+			// The optional part can never match
+			return left;
+		}
+
+		// Rows of the optional part that don't make all nodes are not matches
+		List notNull = new ArrayList();
+		it = r.projections().iterator();
+		while (it.hasNext()) {
+			notNull.add(AttributeNotNull.create((Attribute) it.next()));
+		}
+		LeftJoin leftJoin = new LeftJoin(alias, r.select(Conjunction.create(notNull)), condition);
+		if (leftJoin.anchor() == null || !l.tables().contains(leftJoin.anchor())) return null;
+		it = l.leftJoinConditions().iterator();
+		while (it.hasNext()) {
+			if (!leftJoin.anchor().equals(((LeftJoin) it.next()).anchor())) return null;
+		}
+
+		Map nodeMakers = leftMaker.nodeMakers();
+		Set optionalNames = new HashSet();
+		it = rightMaker.variableNames().iterator();
+		while (it.hasNext()) {
+			String name = (String) it.next();
+			if (shared.contains(name)) continue;
+			NodeMaker nodeMaker = rightMaker.nodeMaker(Var.alloc(name));
+			nodeMakers.put(name, nodeMaker.renameAttributes(renamer));
+			optionalNames.add(name);
+		}
+		List optionalGroups = new ArrayList(leftMaker.optionalGroups());
+		optionalGroups.add(optionalNames);
+		Set projections = new HashSet(l.projections());
+		projections.addAll(renaming.outerAttributes().values());
+		Set leftJoins = new HashSet(l.leftJoinConditions());
+		leftJoins.add(leftJoin);
+		Relation joined = new RelationImpl(l.database(), l.aliases(), l.condition(),
+				l.joinConditions(), projections, leftJoins, l.isUnique() && r.isUnique(),
+				null, false, Relation.NO_LIMIT, Relation.NO_LIMIT);
+		return new OpD2RQ(
+				OpLeftJoin.create(left.effectiveOp(), right.effectiveOp(), (ExprList) null), joined,
+				Collections.singleton(new BindingMaker(nodeMakers, optionalGroups)));
+	}
+
+	private boolean hasLimitOrOrder(Relation relation) {
+		return relation.limit() != Relation.NO_LIMIT || relation.limitInverse() != Relation.NO_LIMIT
+				|| relation.order() != null;
+	}
+}
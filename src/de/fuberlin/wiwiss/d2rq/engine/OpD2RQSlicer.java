@@ -0,0 +1,168 @@
+package de.fuberlin.wiwiss.d2rq.engine;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import com.hp.hpl.jena.query.Query;
+import com.hp.hpl.jena.query.SortCondition;
+import com.hp.hpl.jena.sparql.algebra.Op;
+import com.hp.hpl.jena.sparql.algebra.op.Op1;
+import com.hp.hpl.jena.sparql.algebra.op.OpDistinct;
+import com.hp.hpl.jena.sparql.algebra.op.OpOrder;
+import com.hp.hpl.jena.sparql.algebra.op.OpProject;
+import com.hp.hpl.jena.sparql.algebra.op.OpReduced;
+import com.hp.hpl.jena.sparql.algebra.op.OpSlice;
+import com.hp.hpl.jena.sparql.core.Var;
+
+import de.fuberlin.wiwiss.d2rq.algebra.Attribute;
+import de.fuberlin.wiwiss.d2rq.algebra.Relation;
+import de.fuberlin.wiwiss.d2rq.algebra.RelationImpl;
+import de.fuberlin.wiwiss.d2rq.nodes.NodeMaker;
+import de.fuberlin.wiwiss.d2rq.nodes.TypedNodeMaker;
+import de.fuberlin.wiwiss.d2rq.sql.SQLSyntax;
+import de.fuberlin.wiwiss.d2rq.values.Column;
+
+/**
+ * Moves the LIMIT and OFFSET of a SPARQL query, and the ORDER BY
+ * beneath them, into the SQL query of an {@link OpD2RQ}.
+ *
+ * Handles an {@link OpSlice} over an OpD2RQ, with an optional
+ * {@link OpOrder} directly above the OpD2RQ, and any number of
+ * {@link OpProject}s, {@link OpDistinct}s and {@link OpReduced}s in
+ * between. Each SQL row must make exactly one solution, so there
+ * must be a single binding maker, and under a DISTINCT the OpD2RQ
+ * must already be projected to the selected variables, see
+ * {@link OpD2RQ#project(List)}.
+ *
+ * The ORDER BY must be on a single variable whose values are sorted
+ * by the database as in SPARQL, see {@link TypedNodeMaker#isOrderedLikeColumn(int)}.
+ * The OpOrder stays in place and sorts the returned rows again.
+ * If the database can't skip rows, then the SQL query returns
+ * LIMIT + OFFSET rows and an OpSlice skips the first OFFSET of them.
+ */
+public class OpD2RQSlicer {
+	private final OpSlice original;
+	private final Op subOp;
+
+	/**
+	 * @param original The slice to be replaced
+	 * @param subOp Its transformed sub-operator
+	 */
+	public OpD2RQSlicer(OpSlice original, Op subOp) {
+		this.original = original;
+		this.subOp = subOp;
+	}
+
+	/**
+	 * @return An equivalent operator whose OpD2RQ applies the limit
+	 * 		and offset, or <tt>null</tt> if that's not possible
+	 */
+	public Op sliced() {
+		long start = (original.getStart() == Query.NOLIMIT) ? 0 : original.getStart();
+		long length = original.getLength();
+		if (length == Query.NOLIMIT || start + length > Integer.MAX_VALUE) return null;
+		int offset = (int) start;
+		int limit = (int) length;
+
+		List modifiers = new ArrayList();
+		List projections = new ArrayList();
+		boolean distinct = false;
+		Op op = subOp;
+		while (op instanceof OpProject || op instanceof OpDistinct || op instanceof OpReduced) {
+			if (op instanceof OpProject && distinct) {
+				projections.add(((OpProject) op).getVars());
+			}
+			if (op instanceof OpDistinct || op instanceof OpReduced) {
+				distinct = true;
+			}
+			modifiers.add(op);
+			op = ((Op1) op).getSubOp();
+		}
+		OpOrder order = null;
+		if (op instanceof OpOrder) {
+			order = (OpOrder) op;
+			op = order.getSubOp();
+		}
+		if (!(op instanceof OpD2RQ)) return null;
+		OpD2RQ opD2RQ = (OpD2RQ) op;
+		if (opD2RQ.getBindingMakers().size() != 1) return null;
+		BindingMaker bindingMaker = (BindingMaker) opD2RQ.getBindingMakers().iterator().next();
+		Relation relation = opD2RQ.getRelation();
+		if (relation.isTrivial() || relation.database() == null) return null;
+		if (relation.order() != null || relation.limit() != Relation.NO_LIMIT
+				|| relation.offset() != 0) return null;
+		if (distinct && !isProjectedTo(bindingMaker, projections)) return null;
+
+		Attribute orderBy = null;
+		boolean orderDesc = false;
+		if (order != null) {
+			orderBy = orderColumn(order, bindingMaker, relation);
+			if (orderBy == null) return null;
+			orderDesc = ((SortCondition) order.getConditions().get(0)).getDirection() == Query.ORDER_DESCENDING;
+		}
+		SQLSyntax syntax = relation.database().getSyntax();
+		// A limit in the WHERE clause would be applied before sorting
+		if (orderBy != null && !syntax.getRowNumLimitAsExpression(limit).isTrue()) return null;
+		boolean skipInSQL = syntax.getOffsetAsQueryAppendage(offset) != null;
+
+		Relation r = relation.select(bindingMaker.bindingCondition());
+		r = new RelationImpl(r.database(), r.aliases(), r.condition(), r.joinConditions(),
+				r.projections(), r.leftJoinConditions(), r.isUnique(), orderBy, orderDesc,
+				skipInSQL ? limit : limit + offset, r.limitInverse(), skipInSQL ? offset : 0);
+		Op effective = opD2RQ.effectiveOp();
+		if (order != null) {
+			effective = order.copy(effective);
+		}
+		Op result = new OpD2RQ(new OpSlice(effective, start, length), r, opD2RQ.getBindingMakers());
+		if (order != null) {
+			result = order.copy(result);
+		}
+		for (int i = modifiers.size() - 1; i >= 0; i--) {
+			result = ((Op1) modifiers.get(i)).copy(result);
+		}
+		if (!skipInSQL && offset > 0) {
+			result = new OpSlice(result, offset, Query.NOLIMIT);
+		}
+		return result;
+	}
+
+	/**
+	 * Checks that the binding maker makes no variables except those
+	 * of the projections, so that distinct rows make distinct solutions
+	 */
+	private boolean isProjectedTo(BindingMaker bindingMaker, List projections) {
+		Iterator it = projections.iterator();
+		while (it.hasNext()) {
+			Set names = new HashSet();
+			Iterator it2 = ((List) it.next()).iterator();
+			while (it2.hasNext()) {
+				names.add(((Var) it2.next()).getName());
+			}
+			if (!names.containsAll(bindingMaker.variableNames())) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return The column to sort by in SQL, or <tt>null</tt> if the
+	 * 		order can't be expressed in SQL
+	 */
+	private Attribute orderColumn(OpOrder order, BindingMaker bindingMaker, Relation relation) {
+		if (order.getConditions().size() != 1) return null;
+		SortCondition condition = (SortCondition) order.getConditions().get(0);
+		if (!condition.getExpression().isVariable()) return null;
+		String name = condition.getExpression().getVarName();
+		if (bindingMaker.optionalVariableNames().contains(name)) return null;
+		NodeMaker nodeMaker = bindingMaker.nodeMaker(Var.alloc(name));
+		if (!(nodeMaker instanceof TypedNodeMaker)) return null;
+		TypedNodeMaker typedNodeMaker = (TypedNodeMaker) nodeMaker;
+		if (!(typedNodeMaker.valueMaker() instanceof Column)) return null;
+		Attribute column = ((Column) typedNodeMaker.valueMaker()).attribute();
+		if (!relation.projections().contains(column)) return null;
+		int columnType = relation.database().columnType(relation.aliases().originalOf(column));
+		return typedNodeMaker.isOrderedLikeColumn(columnType) ? column : null;
+	}
+}
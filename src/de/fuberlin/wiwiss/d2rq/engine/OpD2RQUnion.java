@@ -0,0 +1,136 @@
+package de.fuberlin.wiwiss.d2rq.engine;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import com.hp.hpl.jena.sparql.algebra.Op;
+import com.hp.hpl.jena.sparql.algebra.op.OpExt;
+import com.hp.hpl.jena.sparql.engine.ExecutionContext;
+import com.hp.hpl.jena.sparql.engine.QueryIterator;
+import com.hp.hpl.jena.sparql.expr.ExprList;
+import com.hp.hpl.jena.sparql.serializer.SerializationContext;
+import com.hp.hpl.jena.sparql.sse.writers.WriterOp;
+import com.hp.hpl.jena.sparql.util.IndentedWriter;
+import com.hp.hpl.jena.sparql.util.NodeIsomorphismMap;
+
+import de.fuberlin.wiwiss.d2rq.optimizer.iterators.RelationToBindingsD2RQIterator;
+import de.fuberlin.wiwiss.d2rq.sql.UnionStatementBuilder;
+
+/**
+ * The union of several {@link OpD2RQ}s on the same database, evaluated
+ * with a single SQL <code>UNION ALL</code> query instead of one query
+ * per OpD2RQ. A column of the query tells which OpD2RQ produced each
+ * row, so the row is turned into bindings by the right
+ * {@link BindingMaker}s. See {@link UnionStatementBuilder}.
+ */
+public class OpD2RQUnion extends OpExt {
+	private static final String tagD2RQUnion = "d2rq-union";
+
+	/**
+	 * Combines two operators into an OpD2RQUnion, if both are {@link OpD2RQ}s
+	 * or OpD2RQUnions whose queries can be combined
+	 *
+	 * @param original The operator that is evaluated by the union
+	 * @return An OpD2RQUnion, or <tt>null</tt> if not possible
+	 */
+	public static OpD2RQUnion create(Op original, Op left, Op right) {
+		List branches = new ArrayList();
+		if (!addBranches(left, branches) || !addBranches(right, branches)) return null;
+		return create(original, branches);
+	}
+
+	/**
+	 * @param original The operator that is evaluated by the union
+	 * @param branches A list of {@link OpD2RQ}s
+	 * @return An OpD2RQUnion, or <tt>null</tt> if their queries can't be combined
+	 */
+	public static OpD2RQUnion create(Op original, List branches) {
+		List relations = new ArrayList();
+		Iterator it = branches.iterator();
+		while (it.hasNext()) {
+			relations.add(((OpD2RQ) it.next()).getRelation());
+		}
+		if (!UnionStatementBuilder.canCombine(relations)) return null;
+		return new OpD2RQUnion(original, branches);
+	}
+
+	private static boolean addBranches(Op op, List branches) {
+		if (op instanceof OpD2RQ) {
+			branches.add(op);
+			return true;
+		}
+		if (op instanceof OpD2RQUnion) {
+			branches.addAll(((OpD2RQUnion) op).branches);
+			return true;
+		}
+		return false;
+	}
+
+	private final Op original;
+	private final List branches;
+	private final List relations = new ArrayList();
+	private final List bindingMakers = new ArrayList();
+
+	private OpD2RQUnion(Op original, List branches) {
+		super(tagD2RQUnion);
+		this.original = original;
+		this.branches = branches;
+		Iterator it = branches.iterator();
+		while (it.hasNext()) {
+			OpD2RQ branch = (OpD2RQ) it.next();
+			relations.add(branch.getRelation());
+			bindingMakers.add(branch.getBindingMakers());
+		}
+	}
+
+	public QueryIterator eval(QueryIterator input, ExecutionContext execCxt) {
+		return RelationToBindingsD2RQIterator.createUnion(
+				relations, bindingMakers, input, false, null, execCxt);
+	}
+
+	/**
+	 * Evaluates this op as the right side of a left-join
+	 * @param input The bindings of the left side
+	 * @param filter The condition of the left-join, or <tt>null</tt>
+	 */
+	public QueryIterator evalOptional(QueryIterator input, ExprList filter, ExecutionContext execCxt) {
+		return RelationToBindingsD2RQIterator.createUnion(
+				relations, bindingMakers, input, true, filter, execCxt);
+	}
+
+	/**
+	 * @return The {@link OpD2RQ}s whose union this is
+	 */
+	public List getBranches() {
+		return branches;
+	}
+
+	public boolean equalTo(Op other, NodeIsomorphismMap labelMap) {
+		if (!(other instanceof OpD2RQUnion)) return false;
+		return original.equalTo(((OpD2RQUnion) other).original, labelMap);
+	}
+
+	public int hashCode() {
+		return original.hashCode() ^ branches.hashCode();
+	}
+
+	public OpExt copy() {
+		return this;	// We are immutable
+	}
+
+	public Op effectiveOp() {
+		return original;
+	}
+
+	public String getSubTag() {
+		return tagD2RQUnion;
+	}
+
+	public void outputArgs(IndentedWriter out, SerializationContext sCxt) {
+		int line = out.getRow();
+		WriterOp.output(out, original, sCxt);
+		if (line != out.getRow())
+			out.ensureStartOfLine();
+	}
+}
@@ -0,0 +1,205 @@
+package de.fuberlin.wiwiss.d2rq.engine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import com.hp.hpl.jena.sparql.algebra.Op;
+import com.hp.hpl.jena.sparql.algebra.op.OpExt;
+import com.hp.hpl.jena.sparql.algebra.op.OpJoin;
+import com.hp.hpl.jena.sparql.algebra.op.OpLeftJoin;
+import com.hp.hpl.jena.sparql.algebra.op.OpUnion;
+import com.hp.hpl.jena.sparql.engine.ExecutionContext;
+import com.hp.hpl.jena.sparql.engine.QueryIterator;
+import com.hp.hpl.jena.sparql.engine.binding.Binding;
+import com.hp.hpl.jena.sparql.engine.iterator.QueryIter;
+import com.hp.hpl.jena.sparql.engine.iterator.QueryIterPlainWrapper;
+import com.hp.hpl.jena.sparql.engine.main.OpExecutor;
+import com.hp.hpl.jena.sparql.engine.main.OpExecutorFactory;
+import com.hp.hpl.jena.util.iterator.NiceIterator;
+
+import de.fuberlin.wiwiss.d2rq.algebra.Relation;
+import de.fuberlin.wiwiss.d2rq.find.ParallelIterator;
+import de.fuberlin.wiwiss.d2rq.optimizer.iterators.RelationToBindingsD2RQIterator;
+import de.fuberlin.wiwiss.d2rq.sql.ConnectedDB;
+import de.fuberlin.wiwiss.d2rq.sql.ConnectionPool;
+import de.fuberlin.wiwiss.d2rq.sql.ThreadPool;
+
+/**
+ * Executes joins and left-joins whose right side is an {@link OpD2RQ}
+ * or {@link OpD2RQUnion} by feeding the results of the left side into it. The OpD2RQ
+ * then runs one SQL query per batch of left bindings, restricted to
+ * the values of the shared variables, instead of reading its entire
+ * relation and joining the two sides in memory.
+ *
+ * If <tt>d2rq:parallelQueries</tt> is greater than 1, the branches of
+ * a union of OpD2RQs and OpD2RQUnions that couldn't be combined into
+ * a single SQL query are run at the same time, see {@link ParallelIterator}.
+ * The parent bindings are fed to the branches in chunks, so the input
+ * is never read into memory as a whole.
+ *
+ * All other operators are executed as in ARQ.
+ */
+public class OpExecutorD2RQ extends OpExecutor {
+	public static final OpExecutorFactory FACTORY = new OpExecutorFactory() {
+		public OpExecutor create(ExecutionContext execCxt) {
+			return new OpExecutorD2RQ(execCxt);
+		}
+	};
+
+	protected OpExecutorD2RQ(ExecutionContext execCxt) {
+		super(execCxt);
+	}
+
+	protected QueryIterator execute(OpJoin opJoin, QueryIterator input) {
+		if (!isBindJoinable(opJoin.getRight())) {
+			return super.execute(opJoin, input);
+		}
+		QueryIterator left = executeOp(opJoin.getLeft(), input);
+		return ((OpExt) opJoin.getRight()).eval(left, execCxt);
+	}
+
+	protected QueryIterator execute(OpLeftJoin opLeftJoin, QueryIterator input) {
+		if (!isBindJoinable(opLeftJoin.getRight())) {
+			return super.execute(opLeftJoin, input);
+		}
+		QueryIterator left = executeOp(opLeftJoin.getLeft(), input);
+		if (opLeftJoin.getRight() instanceof OpD2RQUnion) {
+			return ((OpD2RQUnion) opLeftJoin.getRight()).evalOptional(left, opLeftJoin.getExprs(), execCxt);
+		}
+		return ((OpD2RQ) opLeftJoin.getRight()).evalOptional(left, opLeftJoin.getExprs(), execCxt);
+	}
+
+	protected QueryIterator execute(OpUnion opUnion, QueryIterator input) {
+		Integer threads = (Integer) execCxt.getContext().get(QueryEngineD2RQ.PARALLEL_QUERIES);
+		List branches = flattenUnion(opUnion);
+		if (threads == null || threads.intValue() <= 1 || !isSQLOnly(branches)) {
+			return super.execute(opUnion, input);
+		}
+		ConnectedDB database = sharedDatabase(branches);
+		if (database == null) {
+			return super.execute(opUnion, input);
+		}
+		return new ParallelUnionIterator(branches, input, threads.intValue(),
+				database.queryThreads(), database.pool(), execCxt);
+	}
+
+	/**
+	 * Branches that only run SQL queries can be evaluated on other threads
+	 */
+	private boolean isSQLOnly(List ops) {
+		if (ops.size() < 2) return false;
+		Iterator it = ops.iterator();
+		while (it.hasNext()) {
+			Object op = it.next();
+			if (!(op instanceof OpD2RQ) && !(op instanceof OpD2RQUnion)) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return The database of all the branches, or <tt>null</tt> if
+	 * 		they are on different databases
+	 */
+	private ConnectedDB sharedDatabase(List ops) {
+		ConnectedDB result = null;
+		Iterator it = ops.iterator();
+		while (it.hasNext()) {
+			Object op = it.next();
+			List relations = (op instanceof OpD2RQUnion)
+					? ((OpD2RQUnion) op).getBranches() : Collections.singletonList(op);
+			Iterator it2 = relations.iterator();
+			while (it2.hasNext()) {
+				ConnectedDB database = ((OpD2RQ) it2.next()).getRelation().database();
+				if (database == null || (result != null && !result.equals(database))) return null;
+				result = database;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * A limit or offset must apply to the whole relation, not to
+	 * each batch of left bindings
+	 */
+	private boolean isBindJoinable(Op op) {
+		if (op instanceof OpD2RQUnion) return true;
+		if (!(op instanceof OpD2RQ)) return false;
+		Relation relation = ((OpD2RQ) op).getRelation();
+		return relation.limit() == Relation.NO_LIMIT && relation.offset() == 0;
+	}
+
+	/**
+	 * Runs the branches of a union at the same time, on chunks of
+	 * parent bindings. Each chunk is as large as a batch of a
+	 * {@link RelationToBindingsD2RQIterator}, so each branch runs one
+	 * SQL query per chunk, and only one chunk is held in memory.
+	 */
+	private static class ParallelUnionIterator extends QueryIter {
+		private final List branches;
+		private final QueryIterator input;
+		private final int threadCount;
+		private final ThreadPool threads;
+		private final ConnectionPool connections;
+		private ParallelIterator current = null;
+
+		ParallelUnionIterator(List branches, QueryIterator input, int threadCount,
+				ThreadPool threads, ConnectionPool connections, ExecutionContext execCxt) {
+			super(execCxt);
+			this.branches = branches;
+			this.input = input;
+			this.threadCount = threadCount;
+			this.threads = threads;
+			this.connections = connections;
+		}
+
+		protected boolean hasNextBinding() {
+			while (current == null || !current.hasNext()) {
+				if (current != null) {
+					current.close();
+					current = null;
+				}
+				if (!input.hasNext()) return false;
+				List parents = new ArrayList();
+				while (parents.size() < RelationToBindingsD2RQIterator.DEFAULT_BATCH_SIZE
+						&& input.hasNext()) {
+					parents.add(input.nextBinding());
+				}
+				current = evalBranches(parents);
+			}
+			return true;
+		}
+
+		protected Binding moveToNextBinding() {
+			return (Binding) current.next();
+		}
+
+		protected void closeIterator() {
+			if (current != null) {
+				current.close();
+				current = null;
+			}
+			input.close();
+		}
+
+		private ParallelIterator evalBranches(List parents) {
+			ExecutionContext execCxt = getExecContext();
+			List sources = new ArrayList();
+			Iterator it = branches.iterator();
+			while (it.hasNext()) {
+				// ARQ's ExecutionContext is not thread-safe, so each branch gets its own
+				ExecutionContext branchCxt = new ExecutionContext(execCxt.getContext(),
+						execCxt.getActiveGraph(), execCxt.getDataset(), execCxt.getExecutor());
+				final QueryIterator branch = ((OpExt) it.next()).eval(
+						new QueryIterPlainWrapper(parents.iterator(), branchCxt), branchCxt);
+				sources.add(new NiceIterator() {
+					public boolean hasNext() { return branch.hasNext(); }
+					public Object next() { return branch.nextBinding(); }
+					public void close() { branch.close(); }
+				});
+			}
+			return new ParallelIterator(sources, threadCount, threads, connections);
+		}
+	}
+}
@@ -0,0 +1,160 @@
+package de.fuberlin.wiwiss.d2rq.engine;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.sparql.algebra.Op;
+import com.hp.hpl.jena.sparql.algebra.op.Op1;
+import com.hp.hpl.jena.sparql.algebra.op.OpBGP;
+import com.hp.hpl.jena.sparql.algebra.op.OpDistinct;
+import com.hp.hpl.jena.sparql.algebra.op.OpFilter;
+import com.hp.hpl.jena.sparql.algebra.op.OpJoin;
+import com.hp.hpl.jena.sparql.algebra.op.OpLeftJoin;
+import com.hp.hpl.jena.sparql.algebra.op.OpOrder;
+import com.hp.hpl.jena.sparql.algebra.op.OpProject;
+import com.hp.hpl.jena.sparql.algebra.op.OpReduced;
+import com.hp.hpl.jena.sparql.algebra.op.OpSequence;
+import com.hp.hpl.jena.sparql.algebra.op.OpSlice;
+import com.hp.hpl.jena.sparql.algebra.op.OpUnion;
+import com.hp.hpl.jena.sparql.core.BasicPattern;
+import com.hp.hpl.jena.sparql.core.Var;
+import com.hp.hpl.jena.sparql.engine.binding.Binding;
+import com.hp.hpl.jena.sparql.engine.binding.BindingMap;
+import com.hp.hpl.jena.vocabulary.RDF;
+
+/**
+ * An algebra expression whose constants have been replaced with
+ * parameter variables, and the values of these variables. Queries
+ * that differ only in these constants, e.g. those made from the same
+ * template, have the same parameterized expression, and can share
+ * a {@link PlanCache} entry.
+ *
+ * The subjects and objects of triple patterns with a fixed predicate
+ * are replaced, except the classes in <tt>rdf:type</tt> patterns,
+ * as they select the class maps. Equal constants become the same
+ * variable. The values go into the start binding of the query;
+ * from there, {@link OpExecutorD2RQ} feeds them into the SQL queries
+ * like the values of the left side of a join. Therefore, only the
+ * constants of operators that are evaluated with the start binding
+ * are replaced: not those on the right side of joins and left-joins,
+ * where the optional variables are not pushed into SQL, and not those
+ * under GROUP BY, which is done without the start binding. An
+ * {@link OpD2RQ} that is projected for a DISTINCT keeps the parameter
+ * variables, see {@link OpD2RQ#project(List)}.
+ *
+ * The replacement does not change the results, because a variable that
+ * is bound to a node before the pattern is evaluated matches the same
+ * triples as the node itself. The parameter variables are hidden from
+ * the results by the projection of the query, so queries that select
+ * all variables must not be parameterized.
+ */
+public class ParameterizedOp {
+	private static final String PREFIX = "/param";
+
+	/**
+	 * @return <tt>true</tt> if the node is one of the variables
+	 * 		that replace constants
+	 */
+	public static boolean isParameter(Node node) {
+		return node.isVariable() && node.getName().startsWith(PREFIX);
+	}
+
+	private final Map variables = new HashMap();	// Node => Var
+	private final List parameterVars = new ArrayList();
+	private final BindingMap parameters = new BindingMap();
+	private final Op op;
+
+	/**
+	 * @param op An unoptimized algebra expression
+	 */
+	public ParameterizedOp(Op op) {
+		this.op = parameterize(op);
+	}
+
+	/**
+	 * @return The expression with parameter variables in place of constants
+	 */
+	public Op getOp() {
+		return op;
+	}
+
+	/**
+	 * @return The values of the parameter variables
+	 */
+	public Binding getParameters() {
+		return parameters;
+	}
+
+	/**
+	 * @return <tt>true</tt> if any constants have been replaced
+	 */
+	public boolean hasParameters() {
+		return !parameterVars.isEmpty();
+	}
+
+	private Op parameterize(Op op) {
+		if (op instanceof OpBGP) {
+			return parameterize((OpBGP) op);
+		}
+		if (op instanceof OpJoin) {
+			OpJoin join = (OpJoin) op;
+			return OpJoin.create(parameterize(join.getLeft()), join.getRight());
+		}
+		if (op instanceof OpLeftJoin) {
+			OpLeftJoin leftJoin = (OpLeftJoin) op;
+			return OpLeftJoin.create(parameterize(leftJoin.getLeft()), leftJoin.getRight(),
+					leftJoin.getExprs());
+		}
+		if (op instanceof OpUnion) {
+			OpUnion union = (OpUnion) op;
+			return union.copy(parameterize(union.getLeft()), parameterize(union.getRight()));
+		}
+		if (op instanceof OpSequence) {
+			List elements = new ArrayList();
+			Iterator it = ((OpSequence) op).getElements().iterator();
+			while (it.hasNext()) {
+				elements.add(parameterize((Op) it.next()));
+			}
+			return ((OpSequence) op).copy(elements);
+		}
+		if (op instanceof OpFilter || op instanceof OpProject || op instanceof OpDistinct
+				|| op instanceof OpReduced || op instanceof OpSlice || op instanceof OpOrder) {
+			return ((Op1) op).copy(parameterize(((Op1) op).getSubOp()));
+		}
+		return op;
+	}
+
+	private Op parameterize(OpBGP bgp) {
+		BasicPattern pattern = new BasicPattern();
+		Iterator it = bgp.getPattern().iterator();
+		while (it.hasNext()) {
+			Triple triple = (Triple) it.next();
+			Node predicate = triple.getPredicate();
+			if (!predicate.isURI()) {
+				pattern.add(triple);
+				continue;
+			}
+			Node object = RDF.Nodes.type.equals(predicate)
+					? triple.getObject() : parameterize(triple.getObject());
+			pattern.add(new Triple(parameterize(triple.getSubject()), predicate, object));
+		}
+		return new OpBGP(pattern);
+	}
+
+	private Node parameterize(Node node) {
+		if (!node.isURI() && !node.isLiteral()) return node;
+		Var result = (Var) variables.get(node);
+		if (result == null) {
+			result = Var.alloc(PREFIX + parameterVars.size());
+			variables.put(node, result);
+			parameterVars.add(result);
+			parameters.add(result, node);
+		}
+		return result;
+	}
+}
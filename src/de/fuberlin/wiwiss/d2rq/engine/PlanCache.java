@@ -0,0 +1,187 @@
+package de.fuberlin.wiwiss.d2rq.engine;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.hp.hpl.jena.sparql.algebra.Op;
+
+import de.fuberlin.wiwiss.d2rq.optimizer.D2RQTreeOptimizer;
+
+/**
+ * Remembers the optimized operator trees of recently executed
+ * queries, so that repeated queries skip {@link D2RQTreeOptimizer}
+ * and the translation of their graph patterns into SQL relations.
+ * The optimized trees, including their {@link OpD2RQ}s, are not
+ * modified during execution and can be shared by concurrent queries.
+ *
+ * The cache is meant for the parameterized expressions of a
+ * {@link ParameterizedOp}, so that queries that differ only in
+ * their constants share a plan. They are matched by their written
+ * form. (The <tt>equals</tt> method of ARQ's operators is not used
+ * because some operators, e.g. left joins, ignore parts of their
+ * expression in it.)
+ *
+ * Each plan remembers the version of the table statistics it was made
+ * with, see {@link de.fuberlin.wiwiss.d2rq.GraphD2RQ#statisticsVersion()}.
+ * If the statistics have changed since, the plan is dropped and made
+ * again, as the best join order may have changed.
+ *
+ * The least recently used plan is dropped when the cache is full.
+ * All methods are thread-safe. Larger caches are split into segments
+ * with a lock each, so that concurrent queries rarely wait for each
+ * other; the least recently used plan is then dropped per segment.
+ */
+public class PlanCache {
+	private static final int MAX_SEGMENTS = 16;
+	private static final int MIN_SEGMENT_SIZE = 64;
+
+	private final int maxSize;
+	private final Segment[] segments;
+
+	/**
+	 * @param maxSize Maximum number of plans; 0 to cache nothing
+	 */
+	public PlanCache(int maxSize) {
+		this.maxSize = maxSize;
+		int count = Math.max(1, Math.min(MAX_SEGMENTS, maxSize / MIN_SEGMENT_SIZE));
+		this.segments = new Segment[count];
+		for (int i = 0; i < count; i++) {
+			segments[i] = new Segment(maxSize / count + (i < maxSize % count ? 1 : 0));
+		}
+	}
+
+	/**
+	 * @param op An unoptimized algebra expression
+	 * @param useAllOptimizations The optimization setting the plan was made with
+	 * @param statisticsVersion The current version of the table statistics
+	 * @return The optimized expression, or <tt>null</tt> if not cached
+	 * 		or made with other statistics
+	 */
+	public Op get(Op op, boolean useAllOptimizations, long statisticsVersion) {
+		if (maxSize == 0) {
+			return null;
+		}
+		Object key = key(op, useAllOptimizations);
+		return segment(key).get(key, statisticsVersion);
+	}
+
+	public void put(Op op, boolean useAllOptimizations, long statisticsVersion, Op optimized) {
+		if (maxSize == 0) return;
+		Object key = key(op, useAllOptimizations);
+		segment(key).put(key, new Plan(optimized, statisticsVersion));
+	}
+
+	public void clear() {
+		for (int i = 0; i < segments.length; i++) {
+			segments[i].clear();
+		}
+	}
+
+	public int size() {
+		int result = 0;
+		for (int i = 0; i < segments.length; i++) {
+			result += segments[i].size();
+		}
+		return result;
+	}
+
+	public int maxSize() {
+		return maxSize;
+	}
+
+	public long hits() {
+		long result = 0;
+		for (int i = 0; i < segments.length; i++) {
+			result += segments[i].hits();
+		}
+		return result;
+	}
+
+	public long misses() {
+		long result = 0;
+		for (int i = 0; i < segments.length; i++) {
+			result += segments[i].misses();
+		}
+		return result;
+	}
+
+	/**
+	 * @return The share of lookups that found a plan, between 0 and 1;
+	 * 		0 if there were no lookups
+	 */
+	public double hitRate() {
+		long hits = hits();
+		long misses = misses();
+		if (hits + misses == 0) return 0;
+		return (double) hits / (hits + misses);
+	}
+
+	private Segment segment(Object key) {
+		return segments[(key.hashCode() & Integer.MAX_VALUE) % segments.length];
+	}
+
+	private Object key(Op op, boolean useAllOptimizations) {
+		return Arrays.asList(new Object[]{op.toString(), Boolean.valueOf(useAllOptimizations)});
+	}
+
+	private static class Plan {
+		final Op op;
+		final long statisticsVersion;
+		Plan(Op op, long statisticsVersion) {
+			this.op = op;
+			this.statisticsVersion = statisticsVersion;
+		}
+	}
+
+	/**
+	 * A part of the cache, with its own lock and least recently used order
+	 */
+	private static class Segment {
+		private final Map plans;
+		private long hits = 0;
+		private long misses = 0;
+
+		Segment(final int maxSize) {
+			this.plans = new LinkedHashMap(16, 0.75f, true) {
+				protected boolean removeEldestEntry(Map.Entry eldest) {
+					return size() > maxSize;
+				}
+			};
+		}
+
+		synchronized Op get(Object key, long statisticsVersion) {
+			Plan plan = (Plan) plans.get(key);
+			if (plan != null && plan.statisticsVersion != statisticsVersion) {
+				plans.remove(key);
+				plan = null;
+			}
+			if (plan == null) {
+				misses++;
+				return null;
+			}
+			hits++;
+			return plan.op;
+		}
+
+		synchronized void put(Object key, Plan plan) {
+			plans.put(key, plan);
+		}
+
+		synchronized void clear() {
+			plans.clear();
+		}
+
+		synchronized int size() {
+			return plans.size();
+		}
+
+		synchronized long hits() {
+			return hits;
+		}
+
+		synchronized long misses() {
+			return misses;
+		}
+	}
+}
@@ -1,9 +1,15 @@
 package de.fuberlin.wiwiss.d2rq.engine;
 
+import java.util.Iterator;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
 import com.hp.hpl.jena.query.Query;
 import com.hp.hpl.jena.sparql.algebra.AlgebraGenerator;
 import com.hp.hpl.jena.sparql.algebra.Op;
 import com.hp.hpl.jena.sparql.core.DatasetGraph;
+import com.hp.hpl.jena.sparql.core.Var;
 import com.hp.hpl.jena.sparql.engine.ExecutionContext;
 import com.hp.hpl.jena.sparql.engine.Plan;
 import com.hp.hpl.jena.sparql.engine.QueryEngineBase;
@@ -11,15 +17,19 @@ import com.hp.hpl.jena.sparql.engine.QueryEngineFactory;
 import com.hp.hpl.jena.sparql.engine.QueryEngineRegistry;
 import com.hp.hpl.jena.sparql.engine.QueryIterator;
 import com.hp.hpl.jena.sparql.engine.binding.Binding;
+import com.hp.hpl.jena.sparql.engine.binding.BindingMap;
 import com.hp.hpl.jena.sparql.engine.binding.BindingRoot;
 import com.hp.hpl.jena.sparql.engine.iterator.QueryIterRoot;
 import com.hp.hpl.jena.sparql.engine.iterator.QueryIteratorCheck;
+import com.hp.hpl.jena.sparql.engine.iterator.QueryIteratorWrapper;
 import com.hp.hpl.jena.sparql.engine.main.QC;
 import com.hp.hpl.jena.sparql.engine.main.QueryEngineMain;
 import com.hp.hpl.jena.sparql.util.Context;
+import com.hp.hpl.jena.sparql.util.Symbol;
 
 import de.fuberlin.wiwiss.d2rq.GraphD2RQ;
 import de.fuberlin.wiwiss.d2rq.optimizer.D2RQTreeOptimizer;
+import de.fuberlin.wiwiss.d2rq.sql.ExecutionStatistics;
 
 /**
  * TODO: @@@ QueryEngineD2RQ and the whole package is work in progress
@@ -28,7 +38,29 @@ import de.fuberlin.wiwiss.d2rq.optimizer.D2RQTreeOptimizer;
  * @version $Id: QueryEngineD2RQ.java,v 1.5 2009/02/09 12:21:30 fatorange Exp $
  */
 public class QueryEngineD2RQ extends QueryEngineMain {
+	private static final Log log = LogFactory.getLog(QueryEngineD2RQ.class);
+
+	/**
+	 * Context key under which the {@link ExecutionStatistics} of
+	 * the current query are stored
+	 */
+	public static final Symbol STATISTICS = 
+		Symbol.create("http://www.wiwiss.fu-berlin.de/suhl/bizer/D2RQ/0.1#statistics");
+	
+	/**
+	 * Context key under which the maximum number of independent
+	 * SQL queries that run at the same time is stored, as an Integer;
+	 * see {@link de.fuberlin.wiwiss.d2rq.map.Configuration#getParallelQueries()}
+	 */
+	public static final Symbol PARALLEL_QUERIES = 
+		Symbol.create("http://www.wiwiss.fu-berlin.de/suhl/bizer/D2RQ/0.1#parallelQueries");
+	
 	private GraphD2RQ graph;
+	private ExecutionStatistics statistics;
+	private boolean parameterize = false;
+
+	/** values of the parameters of the plan, or <tt>null</tt> */
+	private Binding parameters = null;
 	
 	public QueryEngineD2RQ(GraphD2RQ graph, Query query) {
 		this(graph, query, null);
@@ -37,26 +69,79 @@ public class QueryEngineD2RQ extends QueryEngineMain {
 	public QueryEngineD2RQ(GraphD2RQ graph, Query query, Context context) {
 		super(query, new D2RQDatasetGraph(graph), BindingRoot.create(), context);
 		this.graph = graph;
+		// Without a projection, the parameters would show in the results
+		this.parameterize = !query.isQueryResultStar();
+		initStatistics(query.toString());
 	}
 
 	public QueryEngineD2RQ(GraphD2RQ graph, Op op, Context context) {
 		super(op, new D2RQDatasetGraph(graph), BindingRoot.create(), context);
 		this.graph = graph;
+		initStatistics(op.toString());
+	}
+
+	private void initStatistics(String description) {
+		this.statistics = new ExecutionStatistics(description);
+		this.context.set(STATISTICS, statistics);
+		this.context.set(PARALLEL_QUERIES, new Integer(graph.getConfiguration().getParallelQueries()));
+		QC.setFactory(this.context, OpExecutorD2RQ.FACTORY);
+	}
+	
+	/**
+	 * @return The work done by the SQL queries of this query so far
+	 */
+	public ExecutionStatistics statistics() {
+		return statistics;
 	}
 
+	/**
+	 * Replaces the constants of the query with parameters, see
+	 * {@link ParameterizedOp}, and finds or makes the optimized plan
+	 * for the parameterized expression. The values of the parameters
+	 * are added to the start binding in {@link #eval}.
+	 */
 	protected Op modifyOp(Op op) {
-	    Op optimizedOp;
-	     
-	    optimizedOp = D2RQTreeOptimizer.optimize(op, graph);
+		if (parameterize) {
+			ParameterizedOp parameterized = new ParameterizedOp(op);
+			if (parameterized.hasParameters()) {
+				op = parameterized.getOp();
+				parameters = parameterized.getParameters();
+			}
+		}
+		boolean useAllOptimizations = graph.getConfiguration().getUseAllOptimizations();
+		Op optimizedOp = graph.planCache().get(op, useAllOptimizations, graph.statisticsVersion());
+		if (optimizedOp == null) {
+			optimizedOp = D2RQTreeOptimizer.optimize(op, graph);
+			// The optimizer may have retrieved statistics it was missing
+			graph.planCache().put(op, useAllOptimizations, graph.statisticsVersion(), optimizedOp);
+		}
 		return optimizedOp;
 	}
 	
 	public QueryIterator eval(Op op, DatasetGraph dataset, Binding input, Context context) {
+		if (parameters != null) {
+			BindingMap binding = new BindingMap(input);
+			Iterator it = parameters.vars();
+			while (it.hasNext()) {
+				Var var = (Var) it.next();
+				binding.add(var, parameters.get(var));
+			}
+			input = binding;
+		}
 //		ExecutionContext execCxt = new ExecutionContext(context, dataset.getDefaultGraph(), dataset, getFactory()) ;
 //        QueryIterator qIter1 = QueryIterRoot.create(input, execCxt) ;
 //		QueryIterator qIter = QC.compile(op, qIter1, execCxt);
 //		return QueryIteratorCheck.check(qIter, execCxt);
-		return super.eval(op, dataset, input, context);
+		QueryIterator result = super.eval(op, dataset, input, context);
+		if (!log.isDebugEnabled()) {
+			return result;
+		}
+		return new QueryIteratorWrapper(result) {
+			protected void closeIterator() {
+				super.closeIterator();
+				log.debug("Executed: " + statistics);
+			}
+		};
 	}
 
 	// Factory stuff
@@ -95,6 +95,10 @@ public class Conjunction extends Expression {
 		return result.toString();
 	}
 
+	public String toParameterizedSQL(ConnectedDB database, AliasMap aliases, List parameters) {
+		return toSortedParameterizedSQL(this.expressions, " AND ", database, aliases, parameters);
+	}
+
 	public String toString() {
 		List fragments = new ArrayList(this.expressions.size());
 		Iterator it = this.expressions.iterator();
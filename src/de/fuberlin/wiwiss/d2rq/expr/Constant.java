@@ -1,12 +1,14 @@
 package de.fuberlin.wiwiss.d2rq.expr;
 
 import java.util.Collections;
+import java.util.List;
 import java.util.Set;
 
 import de.fuberlin.wiwiss.d2rq.algebra.AliasMap;
 import de.fuberlin.wiwiss.d2rq.algebra.Attribute;
 import de.fuberlin.wiwiss.d2rq.algebra.ColumnRenamer;
 import de.fuberlin.wiwiss.d2rq.sql.ConnectedDB;
+import de.fuberlin.wiwiss.d2rq.sql.StatementParameter;
 
 /**
  * A constant-valued expression.
@@ -66,6 +68,30 @@ public class Constant extends Expression {
 		return database.quoteValue(value, aliases.originalOf(attributeForTrackingType));
 	}
 
+	/**
+	 * Writes a placeholder if the constant's type is known from its
+	 * attribute and the value can be bound as that type. Values of
+	 * text columns that don't hold character strings, such as
+	 * <tt>uuid</tt> columns, are written as quoted literals because
+	 * the database may not compare them to a bound string.
+	 */
+	public String toParameterizedSQL(ConnectedDB database, AliasMap aliases, List parameters) {
+		if (attributeForTrackingType == null) {
+			return toSQL(database, aliases);
+		}
+		Attribute attribute = aliases.originalOf(attributeForTrackingType);
+		int columnType = database.columnType(attribute);
+		if (columnType == ConnectedDB.TEXT_COLUMN && !database.isCharacterColumn(attribute)) {
+			return toSQL(database, aliases);
+		}
+		StatementParameter parameter = StatementParameter.create(value, columnType);
+		if (parameter == null) {
+			return toSQL(database, aliases);
+		}
+		parameters.add(parameter);
+		return "?";
+	}
+
 	public String toString() {
 		if (attributeForTrackingType == null) {
 			return "Constant(" + value + ")";
@@ -95,6 +95,10 @@ public class Disjunction extends Expression {
 		return result.toString();
 	}
 
+	public String toParameterizedSQL(ConnectedDB database, AliasMap aliases, List parameters) {
+		return toSortedParameterizedSQL(this.expressions, " OR ", database, aliases, parameters);
+	}
+
 	public String toString() {
 		List fragments = new ArrayList(this.expressions.size());
 		Iterator it = this.expressions.iterator();
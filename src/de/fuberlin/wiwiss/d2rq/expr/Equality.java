@@ -1,6 +1,7 @@
 package de.fuberlin.wiwiss.d2rq.expr;
 
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import de.fuberlin.wiwiss.d2rq.algebra.AliasMap;
@@ -72,6 +73,11 @@ public class Equality extends Expression {
 		return expr1.toSQL(database, aliases) + " = " + expr2.toSQL(database, aliases);
 	}
 	
+	public String toParameterizedSQL(ConnectedDB database, AliasMap aliases, List parameters) {
+		return expr1.toParameterizedSQL(database, aliases, parameters) + " = " + 
+				expr2.toParameterizedSQL(database, aliases, parameters);
+	}
+	
 	public String toString() {
 		return "Equality(" + expr1 + ", " + expr2 + ")";
 	}
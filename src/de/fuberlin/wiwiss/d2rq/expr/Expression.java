@@ -1,13 +1,17 @@
 package de.fuberlin.wiwiss.d2rq.expr;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 
 import de.fuberlin.wiwiss.d2rq.algebra.AliasMap;
 import de.fuberlin.wiwiss.d2rq.algebra.ColumnRenamer;
 import de.fuberlin.wiwiss.d2rq.sql.ConnectedDB;
+import de.fuberlin.wiwiss.d2rq.sql.StatementParameter;
 
 
 /**
@@ -44,6 +48,20 @@ public abstract class Expression {
 	
 	public abstract String toSQL(ConnectedDB database, AliasMap aliases);
 
+	/**
+	 * Like {@link #toSQL(ConnectedDB, AliasMap)}, but constants may be
+	 * written as <code>?</code> placeholders for use in a prepared
+	 * statement. The placeholders' values are appended, in order of
+	 * appearance, to the list as {@link StatementParameter}s.
+	 * Expressions that contain constants or other expressions override
+	 * this; the default is to write the constant SQL form.
+	 * 
+	 * @param parameters A list that collects {@link StatementParameter}s
+	 */
+	public String toParameterizedSQL(ConnectedDB database, AliasMap aliases, List parameters) {
+		return toSQL(database, aliases);
+	}
+
 	public Expression and(Expression other) {
 		List list = new ArrayList(2);
 		list.add(this);
@@ -51,6 +69,41 @@ public abstract class Expression {
 		return Conjunction.create(list);
 	}
 
+	/**
+	 * Writes the expressions in parameterized form, sorts the SQL fragments
+	 * and joins them with an operator, as done by {@link Conjunction}
+	 * and {@link Disjunction}. Each fragment's parameters are moved along
+	 * with it so that they stay in order of appearance.
+	 */
+	protected static String toSortedParameterizedSQL(Collection expressions, String operator, 
+			ConnectedDB database, AliasMap aliases, List parameters) {
+		List fragments = new ArrayList(expressions.size());
+		Iterator it = expressions.iterator();
+		while (it.hasNext()) {
+			Expression expression = (Expression) it.next();
+			List fragmentParameters = new ArrayList();
+			String sql = expression.toParameterizedSQL(database, aliases, fragmentParameters);
+			fragments.add(new Object[]{sql, fragmentParameters});
+		}
+		Collections.sort(fragments, new Comparator() {
+			public int compare(Object o1, Object o2) {
+				return ((String) ((Object[]) o1)[0]).compareTo((String) ((Object[]) o2)[0]);
+			}
+		});
+		StringBuffer result = new StringBuffer("(");
+		it = fragments.iterator();
+		while (it.hasNext()) {
+			Object[] fragment = (Object[]) it.next();
+			result.append((String) fragment[0]);
+			parameters.addAll((List) fragment[1]);
+			if (it.hasNext()) {
+				result.append(operator);
+			}
+		}
+		result.append(")");
+		return result.toString();
+	}
+
 	public Expression or(Expression other) {
 		List list = new ArrayList(2);
 		list.add(this);
@@ -0,0 +1,82 @@
+package de.fuberlin.wiwiss.d2rq.expr;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import de.fuberlin.wiwiss.d2rq.algebra.AliasMap;
+import de.fuberlin.wiwiss.d2rq.algebra.Attribute;
+import de.fuberlin.wiwiss.d2rq.algebra.ColumnRenamer;
+import de.fuberlin.wiwiss.d2rq.sql.ConnectedDB;
+
+/**
+ * An expression that is TRUE iff the first expression is greater
+ * than the second, as compared by the database.
+ */
+public class GreaterThan extends Expression {
+
+	public static Expression create(Expression expr1, Expression expr2) {
+		if (expr1.equals(expr2)) {
+			return Expression.FALSE;
+		}
+		return new GreaterThan(expr1, expr2);
+	}
+
+	public static Expression createAttributeValue(Attribute attribute, String value) {
+		return create(new AttributeExpr(attribute), new Constant(value, attribute));
+	}
+
+	private final Expression expr1;
+	private final Expression expr2;
+	private final Set columns = new HashSet();
+
+	private GreaterThan(Expression expr1, Expression expr2) {
+		this.expr1 = expr1;
+		this.expr2 = expr2;
+		columns.addAll(expr1.attributes());
+		columns.addAll(expr2.attributes());
+	}
+
+	public Set attributes() {
+		return columns;
+	}
+
+	public boolean isFalse() {
+		return expr1.equals(expr2);
+	}
+
+	public boolean isTrue() {
+		return false;
+	}
+
+	public Expression renameAttributes(ColumnRenamer columnRenamer) {
+		return new GreaterThan(
+				expr1.renameAttributes(columnRenamer),
+				expr2.renameAttributes(columnRenamer));
+	}
+
+	public String toSQL(ConnectedDB database, AliasMap aliases) {
+		return expr1.toSQL(database, aliases) + " > " + expr2.toSQL(database, aliases);
+	}
+
+	public String toParameterizedSQL(ConnectedDB database, AliasMap aliases, List parameters) {
+		return expr1.toParameterizedSQL(database, aliases, parameters) + " > " +
+				expr2.toParameterizedSQL(database, aliases, parameters);
+	}
+
+	public String toString() {
+		return "GreaterThan(" + expr1 + ", " + expr2 + ")";
+	}
+
+	public boolean equals(Object other) {
+		if (!(other instanceof GreaterThan)) {
+			return false;
+		}
+		GreaterThan otherGreaterThan = (GreaterThan) other;
+		return expr1.equals(otherGreaterThan.expr1) && expr2.equals(otherGreaterThan.expr2);
+	}
+
+	public int hashCode() {
+		return expr1.hashCode() ^ (expr2.hashCode() * 31);
+	}
+}
@@ -1,5 +1,6 @@
 package de.fuberlin.wiwiss.d2rq.expr;
 
+import java.util.List;
 import java.util.Set;
 
 import de.fuberlin.wiwiss.d2rq.algebra.AliasMap;
@@ -40,6 +41,10 @@ public class Negation extends Expression {
 		return "NOT (" + base.toSQL(database, aliases) + ")";
 	}
 	
+	public String toParameterizedSQL(ConnectedDB database, AliasMap aliases, List parameters) {
+		return "NOT (" + base.toParameterizedSQL(database, aliases, parameters) + ")";
+	}
+
 	public String toString() {
 		return "Negation(" + base + ")";
 	}
@@ -0,0 +1,222 @@
+package de.fuberlin.wiwiss.d2rq.find;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.util.iterator.ExtendedIterator;
+import com.hp.hpl.jena.util.iterator.NullIterator;
+
+import de.fuberlin.wiwiss.d2rq.algebra.Attribute;
+import de.fuberlin.wiwiss.d2rq.algebra.Relation;
+import de.fuberlin.wiwiss.d2rq.algebra.RelationImpl;
+import de.fuberlin.wiwiss.d2rq.algebra.TripleRelation;
+import de.fuberlin.wiwiss.d2rq.expr.Expression;
+import de.fuberlin.wiwiss.d2rq.expr.GreaterThan;
+import de.fuberlin.wiwiss.d2rq.expr.Negation;
+import de.fuberlin.wiwiss.d2rq.nodes.NodeMaker;
+import de.fuberlin.wiwiss.d2rq.sql.ConnectedDB;
+import de.fuberlin.wiwiss.d2rq.sql.QueryExecutionIterator;
+import de.fuberlin.wiwiss.d2rq.sql.SelectStatementBuilder;
+
+/**
+ * Lists the instances of a class map, through the property bridges
+ * that give their <tt>rdf:type</tt> and <tt>rdfs:label</tt>.
+ *
+ * If the instances are identified by a single column, for example
+ * because their URI pattern has just one column, the list can be
+ * read in pages. A page is found by keyset pagination: the first
+ * query reads the next <em>n</em> key values after the last key of
+ * the previous page, using <code>ORDER BY key</code>, <code>WHERE
+ * key &gt; last</code> and <code>LIMIT n</code>; then the property
+ * bridges are queried for the key range of the page. Unlike
+ * <code>OFFSET</code>, this is just as fast for the last page as for
+ * the first.
+ */
+public class ClassMapInventory {
+	public static final int DEFAULT_PAGE_SIZE = 1000;
+	private static final Pattern NUMBER = Pattern.compile(
+			"[-+]?([0-9]+(\\.[0-9]*)?|\\.[0-9]+)([eE][-+]?[0-9]+)?");
+
+	private final Relation relation;
+	private final List inventoryBridges;
+	private final Attribute key;
+
+	/**
+	 * @param relation The relation of the class map
+	 * @param resourceMaker The node maker of the class map
+	 * @param inventoryBridges {@link TripleRelation}s that produce the
+	 * 		listed triples; their subjects are made by the resourceMaker
+	 */
+	public ClassMapInventory(Relation relation, NodeMaker resourceMaker, List inventoryBridges) {
+		this.relation = relation;
+		this.inventoryBridges = inventoryBridges;
+		this.key = findKey(relation, resourceMaker, inventoryBridges);
+	}
+
+	/**
+	 * @return <tt>true</tt> if the instances can be read in pages
+	 */
+	public boolean isPaged() {
+		return key != null;
+	}
+
+	/**
+	 * @return The single column that identifies the instances, or
+	 * 		<tt>null</tt> if the inventory is not paged
+	 */
+	public Attribute key() {
+		return key;
+	}
+
+	/**
+	 * Checks an <tt>after</tt> value from a client against the type
+	 * of the key column. Numbers, dates and timestamps must be well-formed,
+	 * so that the value can be compared to the column.
+	 * @return <tt>true</tt> if the value can be used with {@link #page(String, int)}
+	 */
+	public boolean isValidKey(String value) {
+		if (!isPaged()) return true;
+		int columnType = relation.database().columnType(key);
+		if (columnType == ConnectedDB.NUMERIC_COLUMN) {
+			return NUMBER.matcher(value).matches();
+		}
+		try {
+			if (columnType == ConnectedDB.DATE_COLUMN) {
+				Date.valueOf(value);
+			} else if (columnType == ConnectedDB.TIMESTAMP_COLUMN) {
+				Timestamp.valueOf(value);
+			}
+			return true;
+		} catch (IllegalArgumentException ex) {
+			return false;
+		}
+	}
+
+	/**
+	 * @return All triples of the inventory, not checked for duplicates
+	 */
+	public ExtendedIterator triples() {
+		return new FindQuery(Triple.ANY, inventoryBridges).iterator();
+	}
+
+	/**
+	 * Reads one page of the inventory. If the inventory is not paged,
+	 * the page contains all triples and there is no next page.
+	 * @param after The key value of the last instance on the previous
+	 * 		page, or <tt>null</tt> for the first page
+	 * @param pageSize Maximum number of instances on the page; the
+	 * 		result size limit of the database may reduce it further
+	 * @throws IllegalArgumentException if <tt>after</tt> is not a
+	 * 		{@link #isValidKey(String) valid key}
+	 */
+	public Page page(String after, int pageSize) {
+		if (!isPaged()) {
+			return new Page(triples(), null);
+		}
+		if (after != null && !isValidKey(after)) {
+			throw new IllegalArgumentException("Not a value of " + key + ": " + after);
+		}
+		Expression afterCondition = (after == null)
+				? Expression.TRUE : GreaterThan.createAttributeValue(key, after);
+		Relation keys = relation.select(afterCondition).project(Collections.singleton(key));
+		if (keys.equals(Relation.EMPTY)) {
+			return new Page(NullIterator.emptyIterator(), null);
+		}
+		int limit = Relation.combineLimits(pageSize, keys.database().limit());
+		keys = new RelationImpl(keys.database(), keys.aliases(), keys.condition(),
+				keys.joinConditions(), keys.projections(), keys.leftJoinConditions(),
+				false, key, false, limit, Relation.NO_LIMIT);
+		int count = 0;
+		String last = null;
+		QueryExecutionIterator rows = new QueryExecutionIterator(
+				new SelectStatementBuilder(keys), keys.database());
+		try {
+			while (rows.hasNext()) {
+				last = rows.nextRow().get(key);
+				count++;
+			}
+		} finally {
+			rows.close();
+		}
+		if (count == 0) {
+			return new Page(NullIterator.emptyIterator(), null);
+		}
+		boolean hasNext = (count == limit && last != null);
+		Expression range = hasNext
+				? afterCondition.and(new Negation(GreaterThan.createAttributeValue(key, last)))
+				: afterCondition;
+		List selected = new ArrayList(inventoryBridges.size());
+		Iterator it = inventoryBridges.iterator();
+		while (it.hasNext()) {
+			TripleRelation bridge = (TripleRelation) it.next();
+			selected.add(new TripleRelation(bridge.baseRelation().select(range),
+					bridge.nodeMaker(TripleRelation.SUBJECT),
+					bridge.nodeMaker(TripleRelation.PREDICATE),
+					bridge.nodeMaker(TripleRelation.OBJECT)));
+		}
+		return new Page(new FindQuery(Triple.ANY, selected).iterator(),
+				hasNext ? last : null);
+	}
+
+	/**
+	 * The column that identifies the instances, if there is exactly one
+	 * and all bridges can be restricted by it. Class maps with a limit
+	 * or order of their own are not paged.
+	 */
+	private static Attribute findKey(Relation relation, NodeMaker resourceMaker, List bridges) {
+		if (relation.equals(Relation.EMPTY) || relation.isTrivial() || relation.database() == null
+				|| relation.limit() != Relation.NO_LIMIT || relation.limitInverse() != Relation.NO_LIMIT
+				|| relation.order() != null || relation.offset() != 0) {
+			return null;
+		}
+		Set projections = resourceMaker.projectionSpecs();
+		if (projections.size() != 1 || !(projections.iterator().next() instanceof Attribute)) {
+			return null;
+		}
+		Attribute result = (Attribute) projections.iterator().next();
+		Iterator it = bridges.iterator();
+		while (it.hasNext()) {
+			TripleRelation bridge = (TripleRelation) it.next();
+			if (!bridge.nodeMaker(TripleRelation.SUBJECT).projectionSpecs().contains(result)
+					|| !relation.database().equals(bridge.baseRelation().database())) {
+				return null;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * A page of the inventory, and the key to start the next page from.
+	 */
+	public static class Page {
+		private final ExtendedIterator triples;
+		private final String nextKey;
+
+		Page(ExtendedIterator triples, String nextKey) {
+			this.triples = triples;
+			this.nextKey = nextKey;
+		}
+
+		/**
+		 * @return The triples of the page, not checked for duplicates
+		 */
+		public ExtendedIterator triples() {
+			return triples;
+		}
+
+		/**
+		 * @return The <tt>after</tt> value for the next page, or
+		 * 		<tt>null</tt> if this is the last page
+		 */
+		public String nextKey() {
+			return nextKey;
+		}
+	}
+}
@@ -0,0 +1,94 @@
+package de.fuberlin.wiwiss.d2rq.find;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.util.iterator.ExtendedIterator;
+import com.hp.hpl.jena.util.iterator.NullIterator;
+
+import de.fuberlin.wiwiss.d2rq.sql.ExecutionStatistics;
+
+/**
+ * Finds the triples that describe a resource: those that have it as
+ * subject, and optionally also those that have it as object or
+ * predicate. This gives the same triples as a {@link FindQuery} for
+ * each of the three triple patterns, but the relations selected for
+ * all patterns are grouped together, and the queries of the groups are
+ * combined into <code>UNION ALL</code> statements where possible. So
+ * describing a resource usually takes a single SQL query per database.
+ *
+ * The relations are selected through the index of the mapping, which
+ * only looks at property bridges whose URI pattern can produce the
+ * resource in the right position.
+ */
+public class DescribeQuery {
+	/**
+	 * @param resource A URI or blank node
+	 * @param includeIncoming Also match triples that have the resource
+	 * 		as object or predicate?
+	 * @return The triple patterns whose matches describe the resource
+	 */
+	public static List triplePatterns(Node resource, boolean includeIncoming) {
+		List result = new ArrayList(3);
+		result.add(new Triple(resource, Node.ANY, Node.ANY));
+		if (includeIncoming) {
+			result.add(new Triple(Node.ANY, Node.ANY, resource));
+			if (resource.isURI()) {
+				result.add(new Triple(Node.ANY, resource, Node.ANY));
+			}
+		}
+		return result;
+	}
+
+	private final Node resource;
+	private final boolean includeIncoming;
+	private final Collection tripleRelations;
+	private final boolean serveVocabulary;
+	private final boolean checkPredicates;
+	private final Model vocabularyModel;
+	private final ExecutionStatistics statistics;
+	private final int parallelQueries;
+
+	/**
+	 * @param resource A URI or blank node
+	 * @param includeIncoming Also find triples that have the resource
+	 * 		as object or predicate?
+	 * @param statistics Receives the work done by the SQL queries
+	 * @param parallelQueries Maximum number of SQL queries that are
+	 * 		run at the same time; 1 runs them one after another
+	 */
+	public DescribeQuery(Node resource, boolean includeIncoming, Collection tripleRelations, boolean serveVocabulary, boolean checkPredicates, Model vocabularyModel, ExecutionStatistics statistics, int parallelQueries) {
+		this.resource = resource;
+		this.includeIncoming = includeIncoming;
+		this.tripleRelations = tripleRelations;
+		this.serveVocabulary = serveVocabulary;
+		this.checkPredicates = checkPredicates;
+		this.vocabularyModel = vocabularyModel;
+		this.statistics = statistics;
+		this.parallelQueries = parallelQueries;
+	}
+
+	/**
+	 * @return An iterator over the triples; a triple that matches
+	 * 		several of the patterns may occur more than once
+	 */
+	public ExtendedIterator iterator() {
+		ExtendedIterator result = NullIterator.emptyIterator();
+		List selected = new ArrayList();
+		Iterator it = triplePatterns(resource, includeIncoming).iterator();
+		while (it.hasNext()) {
+			Triple pattern = (Triple) it.next();
+			if (serveVocabulary && vocabularyModel != null) {
+				result = result.andThen(vocabularyModel.getGraph().find(pattern));
+			}
+			selected.addAll(new FindQuery(pattern, tripleRelations, serveVocabulary,
+					checkPredicates, vocabularyModel).selectedTripleRelations());
+		}
+		return result.andThen(FindQuery.iterator(selected, true, statistics, parallelQueries));
+	}
+}
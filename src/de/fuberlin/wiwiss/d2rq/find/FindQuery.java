@@ -2,8 +2,10 @@ package de.fuberlin.wiwiss.d2rq.find;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 
 import com.hp.hpl.jena.graph.Node;
 import com.hp.hpl.jena.graph.Node_ANY;
@@ -12,6 +14,7 @@ import com.hp.hpl.jena.rdf.model.Model;
 import com.hp.hpl.jena.rdf.model.Property;
 import com.hp.hpl.jena.rdf.model.RDFNode;
 import com.hp.hpl.jena.rdf.model.Resource;
+import com.hp.hpl.jena.util.iterator.ClosableIterator;
 import com.hp.hpl.jena.util.iterator.ExtendedIterator;
 import com.hp.hpl.jena.util.iterator.NullIterator;
 
@@ -19,7 +22,11 @@ import de.fuberlin.wiwiss.d2rq.algebra.CompatibleRelationGroup;
 import de.fuberlin.wiwiss.d2rq.algebra.JoinOptimizer;
 import de.fuberlin.wiwiss.d2rq.algebra.Relation;
 import de.fuberlin.wiwiss.d2rq.algebra.TripleRelation;
+import de.fuberlin.wiwiss.d2rq.algebra.TripleRelationIndex;
 import de.fuberlin.wiwiss.d2rq.find.URIMakerRule.URIMakerRuleChecker;
+import de.fuberlin.wiwiss.d2rq.sql.ConnectedDB;
+import de.fuberlin.wiwiss.d2rq.sql.ExecutionStatistics;
+import de.fuberlin.wiwiss.d2rq.sql.UnionStatementBuilder;
 import de.fuberlin.wiwiss.d2rq.vocab.D2RQ;
 
 
@@ -37,22 +44,47 @@ public class FindQuery {
 	private final boolean serveVocabulary;
 	private final boolean checkPredicates;
 	private final Model vocabularyModel;
+	private final ExecutionStatistics statistics;
+	private final int parallelQueries;
 	
 	public FindQuery(Triple triplePattern, Collection tripleRelations, boolean serveVocabulary, boolean checkPredicates, Model vocabularyModel) {
+		this(triplePattern, tripleRelations, serveVocabulary, checkPredicates, vocabularyModel,
+				ExecutionStatistics.global());
+	}
+	
+	/**
+	 * @param statistics Receives the work done by the SQL queries
+	 * 		for this find query
+	 */
+	public FindQuery(Triple triplePattern, Collection tripleRelations, boolean serveVocabulary, boolean checkPredicates, Model vocabularyModel, ExecutionStatistics statistics) {
+		this(triplePattern, tripleRelations, serveVocabulary, checkPredicates, vocabularyModel,
+				statistics, 1);
+	}
+	
+	/**
+	 * @param statistics Receives the work done by the SQL queries
+	 * 		for this find query
+	 * @param parallelQueries Maximum number of SQL queries that are
+	 * 		run at the same time; 1 runs them one after another
+	 */
+	public FindQuery(Triple triplePattern, Collection tripleRelations, boolean serveVocabulary, boolean checkPredicates, Model vocabularyModel, ExecutionStatistics statistics, int parallelQueries) {
 		this.triplePattern = triplePattern;
 		this.tripleRelations = tripleRelations;
 		this.serveVocabulary = serveVocabulary;
 		this.checkPredicates = checkPredicates;
 		this.vocabularyModel = vocabularyModel;
+		this.statistics = statistics;
+		this.parallelQueries = parallelQueries;
 	}
 	
 	public FindQuery(Triple triplePattern, Collection tripleRelations) {
 		this(triplePattern, tripleRelations, false, true, null);
 	}	
 
-	private List selectedTripleRelations() {
+	List selectedTripleRelations() {
 		URIMakerRule rule = new URIMakerRule();
-		List sortedTripleRelations = rule.sortRDFRelations(tripleRelations);
+		List sortedTripleRelations = rule.sortRDFRelations(
+				TripleRelationIndex.candidates(tripleRelations, triplePattern));
 		URIMakerRuleChecker subjectChecker = rule.createRuleChecker(triplePattern.getSubject());
 		URIMakerRuleChecker predicateChecker = rule.createRuleChecker(triplePattern.getPredicate());
 		URIMakerRuleChecker objectChecker = rule.createRuleChecker(triplePattern.getObject());
@@ -84,15 +116,61 @@ public class FindQuery {
 		}
 
 		/* Answer from database */
-		Iterator it = CompatibleRelationGroup.groupTripleRelations(
-				selectedTripleRelations()).iterator();
+		return result.andThen(iterator(selectedTripleRelations(), false, statistics, parallelQueries));
+	}
+
+	/**
+	 * Runs one SQL query for each group of compatible triple relations.
+	 * @param tripleRelations {@link TripleRelation}s already restricted
+	 * 		to a triple pattern
+	 * @param combineGroups Run the queries of groups on the same database
+	 * 		as one <code>UNION ALL</code> statement where possible?
+	 * @return An iterator over the triples of all the relations
+	 */
+	static ExtendedIterator iterator(List tripleRelations, boolean combineGroups,
+			ExecutionStatistics statistics, int parallelQueries) {
+		List sqlIterators = new ArrayList();
+		Set databases = new HashSet();
+		List batchRelations = new ArrayList();
+		List batchTripleMakers = new ArrayList();
+		Iterator it = CompatibleRelationGroup.groupTripleRelations(tripleRelations).iterator();
 		while (it.hasNext()) {
 			CompatibleRelationGroup group = (CompatibleRelationGroup) it.next();
-			if (!group.baseRelation().equals(Relation.EMPTY) && group.baseRelation().limit()!=0) {
-				result = result.andThen(
-						RelationToTriplesIterator.create(
-								group.baseRelation(), group.tripleMakers()));
+			Relation relation = group.baseRelation();
+			if (relation.equals(Relation.EMPTY) || relation.limit() == 0) continue;
+			databases.add(relation.database());
+			if (!combineGroups) {
+				sqlIterators.add(RelationToTriplesIterator.create(
+						relation, group.tripleMakers(), statistics));
+				continue;
 			}
+			batchRelations.add(relation);
+			if (batchRelations.size() > 1 && (batchRelations.size() > UnionStatementBuilder.MAX_BRANCHES
+					|| !UnionStatementBuilder.canCombine(batchRelations))) {
+				batchRelations.remove(batchRelations.size() - 1);
+				sqlIterators.add(RelationToTriplesIterator.createUnion(
+						batchRelations, batchTripleMakers, statistics));
+				batchRelations = new ArrayList();
+				batchTripleMakers = new ArrayList();
+				batchRelations.add(relation);
+			}
+			batchTripleMakers.add(group.tripleMakers());
+		}
+		if (!batchRelations.isEmpty()) {
+			sqlIterators.add(RelationToTriplesIterator.createUnion(
+					batchRelations, batchTripleMakers, statistics));
+		}
+		// The threads of a database are bounded by its connection pool
+		if (parallelQueries > 1 && sqlIterators.size() > 1
+				&& databases.size() == 1 && !databases.contains(null)) {
+			ConnectedDB database = (ConnectedDB) databases.iterator().next();
+			return new ParallelIterator(sqlIterators, parallelQueries, database.queryThreads(),
+					database.pool());
+		}
+		ExtendedIterator result = NullIterator.emptyIterator();
+		it = sqlIterators.iterator();
+		while (it.hasNext()) {
+			result = result.andThen((ClosableIterator) it.next());
 		}
 		return result;
 	}
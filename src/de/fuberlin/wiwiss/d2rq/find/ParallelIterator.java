@@ -0,0 +1,316 @@
+package de.fuberlin.wiwiss.d2rq.find;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import com.hp.hpl.jena.util.iterator.ClosableIterator;
+import com.hp.hpl.jena.util.iterator.NiceIterator;
+
+import de.fuberlin.wiwiss.d2rq.D2RQException;
+import de.fuberlin.wiwiss.d2rq.sql.ConnectionPool;
+import de.fuberlin.wiwiss.d2rq.sql.ThreadPool;
+
+/**
+ * Iterates over the elements of several {@link ClosableIterator}s, which
+ * are read at the same time by a number of worker threads. This way, the
+ * SQL queries behind the iterators run concurrently, each on its own
+ * connection, and the total time is about that of the slowest query
+ * instead of the sum of all queries.
+ *
+ * The workers put the elements into a bounded buffer, from which they
+ * are handed out in the order of arrival. Elements from different sources
+ * are interleaved. The workers are started on the first call to
+ * {@link #hasNext()}. Each source is closed by the worker that read it,
+ * when it is exhausted or when this iterator is closed. {@link #close()}
+ * waits until the workers have closed their sources. If a source throws
+ * an exception, the remaining sources are closed and the exception is
+ * thrown to the caller of {@link #hasNext()}.
+ *
+ * The workers run on a {@link ThreadPool} that is shared by all
+ * queries on the database. If it has no free thread, the sources are
+ * read one after another by the caller of {@link #hasNext()}. If a
+ * {@link ConnectionPool} is given, each worker first takes a connection
+ * without waiting, which the sources on its thread then share; a worker
+ * that gets none leaves its sources to the other workers or the caller.
+ * This way, the workers never wait for connections held by the caller.
+ *
+ * A worker that can't put an element into the full buffer for longer
+ * than the stall timeout, because the caller neither reads nor closes
+ * this iterator, closes its source and stops, so that its connection
+ * is not held forever. The caller gets an exception if it comes back.
+ *
+ * Each source is only used by one thread, so a source doesn't need to
+ * be thread-safe, but it must not share unsynchronized state with
+ * the other sources or with the caller.
+ */
+public class ParallelIterator extends NiceIterator implements ClosableIterator {
+	public static final int DEFAULT_BUFFER_SIZE = 1000;
+	public static final long DEFAULT_STALL_TIMEOUT_MILLIS = 10 * 60 * 1000;
+
+	private final LinkedList sources = new LinkedList();
+	private final int threadCount;
+	private final ThreadPool threads;
+	private final ConnectionPool connections;
+	private final int bufferSize;
+	private final long stallTimeoutMillis;
+	private final LinkedList buffer = new LinkedList();
+	private int runningWorkers = 0;
+	private ClosableIterator callerSource = null;
+	private boolean started = false;
+	private boolean closed = false;
+	private RuntimeException failure = null;
+
+	/**
+	 * @param sources A list of {@link ClosableIterator}s
+	 * @param threadCount Maximum number of sources that are read at the same time
+	 * @param threads The pool that runs the workers
+	 */
+	public ParallelIterator(List sources, int threadCount, ThreadPool threads) {
+		this(sources, threadCount, threads, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * @param sources A list of {@link ClosableIterator}s
+	 * @param threadCount Maximum number of sources that are read at the same time
+	 * @param threads The pool that runs the workers
+	 * @param bufferSize Number of elements that are read ahead; the workers
+	 * 		wait when the buffer is full
+	 */
+	public ParallelIterator(List sources, int threadCount, ThreadPool threads, int bufferSize) {
+		this(sources, threadCount, threads, null, bufferSize, DEFAULT_STALL_TIMEOUT_MILLIS);
+	}
+
+	/**
+	 * @param sources A list of {@link ClosableIterator}s
+	 * @param threadCount Maximum number of sources that are read at the same time
+	 * @param threads The pool that runs the workers
+	 * @param connections The pool that the sources take their connections from
+	 */
+	public ParallelIterator(List sources, int threadCount, ThreadPool threads,
+			ConnectionPool connections) {
+		this(sources, threadCount, threads, connections, DEFAULT_BUFFER_SIZE, DEFAULT_STALL_TIMEOUT_MILLIS);
+	}
+
+	/**
+	 * @param sources A list of {@link ClosableIterator}s
+	 * @param threadCount Maximum number of sources that are read at the same time
+	 * @param threads The pool that runs the workers
+	 * @param connections The pool that the sources take their connections
+	 * 		from, or <tt>null</tt>
+	 * @param bufferSize Number of elements that are read ahead; the workers
+	 * 		wait when the buffer is full
+	 * @param stallTimeoutMillis How long the workers wait when the buffer is full
+	 */
+	public ParallelIterator(List sources, int threadCount, ThreadPool threads,
+			ConnectionPool connections, int bufferSize, long stallTimeoutMillis) {
+		if (threadCount < 1) {
+			throw new IllegalArgumentException("Need at least one thread: " + threadCount);
+		}
+		if (bufferSize < 1) {
+			throw new IllegalArgumentException("Buffer size must be at least 1: " + bufferSize);
+		}
+		this.sources.addAll(sources);
+		this.threadCount = Math.min(Math.min(threadCount, threads.maxSize()), sources.size());
+		this.threads = threads;
+		this.connections = connections;
+		this.bufferSize = bufferSize;
+		this.stallTimeoutMillis = stallTimeoutMillis;
+	}
+
+	public boolean hasNext() {
+		while (true) {
+			RuntimeException ex;
+			synchronized (this) {
+				if (closed) return false;
+				start();
+				while (buffer.isEmpty() && runningWorkers > 0 && failure == null) {
+					try {
+						wait();
+					} catch (InterruptedException interrupted) {
+						Thread.currentThread().interrupt();
+						failure = new D2RQException("Interrupted while waiting for query results", interrupted);
+					}
+				}
+				if (failure == null && !buffer.isEmpty()) return true;
+				ex = failure;
+			}
+			// Without workers, the remaining sources are read right here
+			if (ex == null && readInCaller()) continue;
+			// Failed or exhausted; Jena's andThen() relies on auto-closing
+			closeAndWait();
+			if (ex != null) throw ex;
+			return false;
+		}
+	}
+
+	public Object next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		synchronized (this) {
+			if (buffer.isEmpty()) {
+				throw new NoSuchElementException();
+			}
+			Object result = buffer.removeFirst();
+			notifyAll();
+			return result;
+		}
+	}
+
+	public void close() {
+		synchronized (this) {
+			if (closed) return;
+		}
+		closeAndWait();
+	}
+
+	private synchronized void start() {
+		if (started) return;
+		started = true;
+		for (int i = 0; i < threadCount; i++) {
+			runningWorkers++;
+			boolean accepted = threads.tryExecute(new Runnable() {
+				public void run() {
+					work();
+				}
+			});
+			if (!accepted) {
+				runningWorkers--;
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Reads an element of the next unfinished source into the buffer,
+	 * for use when the pool had no free thread
+	 * @return <tt>false</tt> if all sources are exhausted
+	 */
+	private boolean readInCaller() {
+		try {
+			while (true) {
+				if (callerSource == null) {
+					callerSource = nextSource();
+					if (callerSource == null) return false;
+				}
+				if (callerSource.hasNext()) {
+					Object element = callerSource.next();
+					synchronized (this) {
+						buffer.add(element);
+					}
+					return true;
+				}
+				callerSource.close();
+				callerSource = null;
+			}
+		} catch (RuntimeException ex) {
+			fail(ex);
+			return true;
+		}
+	}
+
+	/**
+	 * Tells the workers to stop, and waits until they have
+	 * closed their sources. Sources that have not been started
+	 * yet are closed right away.
+	 */
+	private void closeAndWait() {
+		List unread;
+		synchronized (this) {
+			closed = true;
+			buffer.clear();
+			unread = new ArrayList(sources);
+			sources.clear();
+			notifyAll();
+		}
+		Iterator it = unread.iterator();
+		while (it.hasNext()) {
+			((ClosableIterator) it.next()).close();
+		}
+		if (callerSource != null) {
+			callerSource.close();
+			callerSource = null;
+		}
+		synchronized (this) {
+			while (runningWorkers > 0) {
+				try {
+					wait();
+				} catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+	}
+
+	private void work() {
+		Connection connection = null;
+		try {
+			if (connections != null) {
+				connection = connections.tryCheckOut();
+				if (connection == null) return;
+			}
+			ClosableIterator source;
+			while ((source = nextSource()) != null) {
+				try {
+					while (source.hasNext()) {
+						if (!put(source.next())) return;
+					}
+				} finally {
+					source.close();
+				}
+			}
+		} catch (RuntimeException ex) {
+			fail(ex);
+		} finally {
+			if (connection != null) {
+				connections.checkIn(connection);
+			}
+			synchronized (this) {
+				runningWorkers--;
+				notifyAll();
+			}
+		}
+	}
+
+	private synchronized ClosableIterator nextSource() {
+		if (closed || sources.isEmpty()) return null;
+		return (ClosableIterator) sources.removeFirst();
+	}
+
+	/**
+	 * Adds an element to the buffer, waiting if it is full
+	 * @return <tt>false</tt> if the worker should stop
+	 */
+	private synchronized boolean put(Object element) {
+		long deadline = System.currentTimeMillis() + stallTimeoutMillis;
+		while (buffer.size() >= bufferSize && !closed) {
+			long remaining = deadline - System.currentTimeMillis();
+			if (remaining <= 0) {
+				fail(new D2RQException("Query results were not read for " +
+						(stallTimeoutMillis / 1000) + " seconds; stopped the SQL queries"));
+				return false;
+			}
+			try {
+				wait(remaining);
+			} catch (InterruptedException ex) {
+				return false;
+			}
+		}
+		if (closed) return false;
+		buffer.add(element);
+		notifyAll();
+		return true;
+	}
+
+	private synchronized void fail(RuntimeException ex) {
+		if (failure == null && !closed) {
+			failure = ex;
+		}
+		notifyAll();
+	}
+}
@@ -6,6 +6,7 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Set;
 
@@ -17,9 +18,11 @@ import com.hp.hpl.jena.util.iterator.SingletonIterator;
 import com.hp.hpl.jena.util.iterator.WrappedIterator;
 
 import de.fuberlin.wiwiss.d2rq.algebra.Relation;
+import de.fuberlin.wiwiss.d2rq.sql.ExecutionStatistics;
 import de.fuberlin.wiwiss.d2rq.sql.QueryExecutionIterator;
 import de.fuberlin.wiwiss.d2rq.sql.ResultRow;
 import de.fuberlin.wiwiss.d2rq.sql.SelectStatementBuilder;
+import de.fuberlin.wiwiss.d2rq.sql.UnionStatementBuilder;
 
 
 /**
@@ -34,6 +37,11 @@ import de.fuberlin.wiwiss.d2rq.sql.SelectStatementBuilder;
 public class RelationToTriplesIterator implements ClosableIterator {
 	
 	public static ClosableIterator create(Relation relation, Collection tripleMakers) {
+		return create(relation, tripleMakers, ExecutionStatistics.global());
+	}
+	
+	public static ClosableIterator create(Relation relation, Collection tripleMakers,
+			ExecutionStatistics statistics) {
 		if (relation.equals(Relation.EMPTY)) {
 			return NullIterator.instance();
 		}
@@ -49,19 +57,50 @@ public class RelationToTriplesIterator implements ClosableIterator {
 			return WrappedIterator.create(tripleList.iterator());				
 		}
 		
-		return new RelationToTriplesIterator(relation, tripleMakers);
+		return new RelationToTriplesIterator(relation, tripleMakers, statistics);
+	}
+	
+	/**
+	 * Runs the queries of several relations as a single <code>UNION ALL</code>
+	 * statement, see {@link UnionStatementBuilder}, and applies the triple
+	 * makers of the relation that produced each row.
+	 * @param relations {@link Relation}s that can be combined,
+	 * 		see {@link UnionStatementBuilder#canCombine(List)}
+	 * @param tripleMakers A collection of {@link TripleMaker}s
+	 * 		for each of the relations
+	 */
+	public static ClosableIterator createUnion(List relations, List tripleMakers,
+			ExecutionStatistics statistics) {
+		if (relations.size() == 1) {
+			return create((Relation) relations.get(0), (Collection) tripleMakers.get(0), statistics);
+		}
+		UnionStatementBuilder union = new UnionStatementBuilder(relations);
+		return new RelationToTriplesIterator(new QueryExecutionIterator(union, statistics),
+				tripleMakers, statistics);
 	}
 	
 	private Collection tripleMakers;
+	private List branches = null;
 	private ClosableIterator sqlIterator;
     private LinkedList tripleQueue = new LinkedList();
     private boolean explicitlyClosed = false;
+    private final ExecutionStatistics statistics;
+    private long nodeNanos = 0;
+    private long discardedRows = 0;
 
-    private RelationToTriplesIterator(Relation relation, Collection tripleMakers) {
+    private RelationToTriplesIterator(Relation relation, Collection tripleMakers,
+    		ExecutionStatistics statistics) {
     	SelectStatementBuilder select = new SelectStatementBuilder(relation);
-    	this.sqlIterator = new QueryExecutionIterator(
-    			select.getSQLStatement(), select.getColumnSpecs(), relation.database());
+    	this.sqlIterator = new QueryExecutionIterator(select, relation.database(), statistics);
 		this.tripleMakers = tripleMakers;
+		this.statistics = statistics;
+    }
+    
+    private RelationToTriplesIterator(ClosableIterator sqlIterator, List branches,
+    		ExecutionStatistics statistics) {
+    	this.sqlIterator = sqlIterator;
+    	this.branches = branches;
+    	this.statistics = statistics;
     }
     
 	public boolean hasNext() {
@@ -91,8 +130,12 @@ public class RelationToTriplesIterator implements ClosableIterator {
 	}
 	
 	public void close() {
+		if (this.explicitlyClosed) {
+			return;
+		}
 		this.explicitlyClosed = true;
 		this.sqlIterator.close();
+		this.statistics.addNodeConstruction(this.nodeNanos, this.discardedRows);
 	}
 	
 	public void remove() {
@@ -106,12 +149,19 @@ public class RelationToTriplesIterator implements ClosableIterator {
 	private void tryFillTripleQueue() {
 		while (this.sqlIterator.hasNext() && this.tripleQueue.isEmpty()) {
 			ResultRow nextRow = (ResultRow) this.sqlIterator.next();
-			Iterator it = tripleMakers.iterator();
+			long start = System.nanoTime();
+			Collection makers = (this.branches == null) ? this.tripleMakers
+					: (Collection) this.branches.get(UnionStatementBuilder.branchOf(nextRow));
+			Iterator it = makers.iterator();
 			while (it.hasNext()) {
 				TripleMaker tripleMaker = (TripleMaker) it.next();
 				Triple t = tripleMaker.makeTriple(nextRow);
 				if (t != null) this.tripleQueue.add(t);
 			}
+			if (this.tripleQueue.isEmpty()) {
+				this.discardedRows++;
+			}
+			this.nodeNanos += System.nanoTime() - start;
 		}
     }
 }
@@ -18,6 +18,7 @@ import de.fuberlin.wiwiss.d2rq.algebra.TripleRelation;
 import de.fuberlin.wiwiss.d2rq.expr.Expression;
 import de.fuberlin.wiwiss.d2rq.nodes.NodeMaker;
 import de.fuberlin.wiwiss.d2rq.nodes.NodeSetFilter;
+import de.fuberlin.wiwiss.d2rq.nodes.URIMakerIndex;
 import de.fuberlin.wiwiss.d2rq.values.BlankNodeID;
 import de.fuberlin.wiwiss.d2rq.values.Pattern;
 
@@ -127,8 +128,9 @@ public class URIMakerRule implements Comparator {
 			this.node = node;
 		}
 		public void addPotentialMatch(NodeMaker nodeMaker) {
-			if (node.isURI() 
+			if (this.canMatchURIColumn && node.isURI() 
 					&& uriMakerIdentifier(nodeMaker).isURIPattern() 
+					&& URIMakerIndex.mightProduce(nodeMaker, node.getURI())
 					&& !nodeMaker.selectNode(
 							node, RelationalOperators.DUMMY).equals(
 									NodeMaker.EMPTY)) {
@@ -13,9 +13,18 @@ import de.fuberlin.wiwiss.d2rq.vocab.D2RQ;
  * @version $Id: Configuration.java,v 1.2 2009/08/02 09:15:09 fatorange Exp $
  */
 public class Configuration extends MapObject {
+	public static final long DEFAULT_CACHE_MAX_TRIPLES = 100000;
+	public static final long DEFAULT_CACHE_MAX_ENTRY_TRIPLES = 10000;
+	public static final int NO_CACHE_EXPIRY = 0;
+	public static final int DEFAULT_PLAN_CACHE_SIZE = 1000;
 	
 	private boolean serveVocabulary = true;
 	private boolean useAllOptimizations = false;
+	private int parallelQueries = 1;
+	private long cacheMaxTriples = DEFAULT_CACHE_MAX_TRIPLES;
+	private long cacheMaxEntryTriples = DEFAULT_CACHE_MAX_ENTRY_TRIPLES;
+	private int cacheTimeToLive = NO_CACHE_EXPIRY;
+	private int planCacheSize = DEFAULT_PLAN_CACHE_SIZE;
 	
 	public Configuration() {
 		this(null);
@@ -41,11 +50,77 @@ public class Configuration extends MapObject {
 		this.useAllOptimizations = useAllOptimizations;
 	}
 
+	/**
+	 * @return Maximum number of independent SQL queries of a find or
+	 * 		union that are run at the same time; 1 or less runs them
+	 * 		one after another
+	 */
+	public int getParallelQueries() {
+		return this.parallelQueries;
+	}
+
+	public void setParallelQueries(int parallelQueries) {
+		this.parallelQueries = parallelQueries;
+	}
+
+	/**
+	 * @return Maximum number of triples in all find results that are
+	 * 		cached by a {@link de.fuberlin.wiwiss.d2rq.CachingGraphD2RQ}
+	 */
+	public long getCacheMaxTriples() {
+		return this.cacheMaxTriples;
+	}
+
+	public void setCacheMaxTriples(long cacheMaxTriples) {
+		this.cacheMaxTriples = cacheMaxTriples;
+	}
+
+	/**
+	 * @return Find results with more triples are not cached
+	 */
+	public long getCacheMaxEntryTriples() {
+		return this.cacheMaxEntryTriples;
+	}
+
+	public void setCacheMaxEntryTriples(long cacheMaxEntryTriples) {
+		this.cacheMaxEntryTriples = cacheMaxEntryTriples;
+	}
+
+	/**
+	 * @return Seconds after which cached find results expire, or
+	 * 		{@link #NO_CACHE_EXPIRY}
+	 */
+	public int getCacheTimeToLive() {
+		return this.cacheTimeToLive;
+	}
+
+	public void setCacheTimeToLive(int seconds) {
+		this.cacheTimeToLive = seconds;
+	}
+
+	/**
+	 * @return Maximum number of optimized SPARQL query plans that are
+	 * 		kept for reuse; 0 to optimize every query anew
+	 */
+	public int getPlanCacheSize() {
+		return this.planCacheSize;
+	}
+
+	public void setPlanCacheSize(int planCacheSize) {
+		this.planCacheSize = planCacheSize;
+	}
+
 	public String toString() {
 		return "d2rq:Configuration " + super.toString();
 	}
 
 	public void validate() throws D2RQException {
 		/* All settings are optional */
+		if (this.cacheMaxTriples < 0 || this.cacheMaxEntryTriples < 0 || this.cacheTimeToLive < 0
+				|| this.planCacheSize < 0) {
+			throw new D2RQException("d2rq:cacheMaxTriples, d2rq:cacheMaxEntryTriples, " +
+					"d2rq:cacheTimeToLive and d2rq:planCacheSize must not be negative",
+					D2RQException.CONFIGURATION_INVALID_CACHE_SETTING);
+		}
 	}
 }
\ No newline at end of file
@@ -23,6 +23,9 @@ import de.fuberlin.wiwiss.d2rq.vocab.D2RQ;
 public class Database extends MapObject {
 	public static final int NO_LIMIT = -1;
 	public static final int NO_FETCH_SIZE = -1;	
+	public static final int DEFAULT_CONNECTION_POOL_SIZE = 10;
+	public static final int DEFAULT_CONNECTION_POOL_TIMEOUT = 30; // seconds
+	public static final int DEFAULT_STATEMENT_CACHE_SIZE = 100;
 	
 	/**
 	 * Pre-registers a JDBC driver if its class can be found on the
@@ -77,6 +80,9 @@ public class Database extends MapObject {
 	private Set timestampColumns = new HashSet();
     private int limit = NO_LIMIT;
     private int fetchSize = NO_FETCH_SIZE;
+    private int connectionPoolSize = DEFAULT_CONNECTION_POOL_SIZE;
+    private int connectionPoolTimeout = DEFAULT_CONNECTION_POOL_TIMEOUT;
+    private int statementCacheSize = DEFAULT_STATEMENT_CACHE_SIZE;
 	private boolean allowDistinct = true;
 	private ConnectedDB connection = null;
 	private Properties connectionProperties = new Properties();
@@ -163,11 +169,45 @@ public class Database extends MapObject {
 		this.fetchSize = fetchSize;
 	}
 		
+	public int getConnectionPoolSize() {
+		return this.connectionPoolSize;
+	}
+	
+	public void setConnectionPoolSize(int connectionPoolSize) {
+		checkNotConnected();
+		this.connectionPoolSize = connectionPoolSize;
+	}
+	
+	public int getConnectionPoolTimeout() {
+		return this.connectionPoolTimeout;
+	}
+	
+	public void setConnectionPoolTimeout(int seconds) {
+		checkNotConnected();
+		this.connectionPoolTimeout = seconds;
+	}
+	
+	public int getStatementCacheSize() {
+		return this.statementCacheSize;
+	}
+	
+	public void setStatementCacheSize(int statementCacheSize) {
+		checkNotConnected();
+		this.statementCacheSize = statementCacheSize;
+	}
+	
 	public void setConnectionProperty(String key, String value) {
 		checkNotConnected();		
 		this.connectionProperties.setProperty(key, value);
 	}
 	
+	/**
+	 * @return <tt>true</tt> if {@link #connectedDB()} has been called
+	 */
+	public boolean isConnected() {
+		return this.connection != null;
+	}
+	
 	public ConnectedDB connectedDB() {
 		if (this.connection != null) {
 			return this.connection;
@@ -186,7 +226,8 @@ public class Database extends MapObject {
 		}
 		this.connection = new ConnectedDB(url, this.username, this.password, this.allowDistinct,
 				this.textColumns, this.numericColumns, this.dateColumns, this.timestampColumns,
-				this.limit, this.fetchSize, this.connectionProperties);
+				this.limit, this.fetchSize, this.connectionProperties,
+				this.connectionPoolSize, this.connectionPoolTimeout, this.statementCacheSize);
 		return this.connection;
 	}
 
@@ -211,6 +252,14 @@ public class Database extends MapObject {
 			throw new D2RQException("Can't use d2rq:jdbcDriver with jdbc:odbcDSN",
 					D2RQException.DATABASE_ODBC_WITH_JDBCDRIVER);
 		}
+		if (this.connectionPoolSize < 1) {
+			throw new D2RQException("d2rq:connectionPoolSize must be at least 1",
+					D2RQException.DATABASE_INVALID_CONNECTION_POOL_SIZE);
+		}
+		if (this.connectionPoolTimeout < 0) {
+			throw new D2RQException("d2rq:connectionPoolTimeout must not be negative",
+					D2RQException.DATABASE_INVALID_CONNECTION_POOL_TIMEOUT);
+		}
 		// TODO
 	}
 	
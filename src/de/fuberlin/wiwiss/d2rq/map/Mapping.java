@@ -4,6 +4,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
 import com.hp.hpl.jena.rdf.model.Literal;
@@ -21,6 +22,7 @@ import de.fuberlin.wiwiss.d2rq.D2RQException;
 import de.fuberlin.wiwiss.d2rq.algebra.Attribute;
 import de.fuberlin.wiwiss.d2rq.algebra.Relation;
 import de.fuberlin.wiwiss.d2rq.algebra.TripleRelation;
+import de.fuberlin.wiwiss.d2rq.algebra.TripleRelationIndex;
 import de.fuberlin.wiwiss.d2rq.vocab.D2RQ;
 
 /**
@@ -75,6 +77,7 @@ public class Mapping {
 			throw new D2RQException("No d2rq:Database defined in the mapping", 
 					D2RQException.MAPPING_NO_DATABASE);
 		}
+		this.configuration.validate();
 		Iterator it = this.databases.values().iterator();
 		while (it.hasNext()) {
 			Database db = (Database) it.next();
@@ -139,7 +142,8 @@ public class Mapping {
 	
 	/**
 	 * @return A collection of {@link TripleRelation}s corresponding to each
-	 * 		of the property bridges
+	 * 		of the property bridges; a {@link TripleRelationIndex} for
+	 * 		quickly finding the relations that match a triple pattern
 	 */
 	public synchronized Collection compiledPropertyBridges() {
 		if (this.compiledPropertyBridges == null) {
@@ -149,12 +153,13 @@ public class Mapping {
 	}
 
 	private void compilePropertyBridges() {
-		this.compiledPropertyBridges = new ArrayList();
+		List bridges = new ArrayList();
 		Iterator it = this.classMaps.values().iterator();
 		while (it.hasNext()) {
 			ClassMap classMap = (ClassMap) it.next();
-			this.compiledPropertyBridges.addAll(classMap.compiledPropertyBridges());
+			bridges.addAll(classMap.compiledPropertyBridges());
 		}
+		this.compiledPropertyBridges = new TripleRelationIndex(bridges);
 	}
 	
 	public PrefixMapping getPrefixMapping() {
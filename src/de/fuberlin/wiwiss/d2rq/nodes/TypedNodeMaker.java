@@ -1,5 +1,6 @@
 package de.fuberlin.wiwiss.d2rq.nodes;
 
+import java.math.BigInteger;
 import java.sql.Timestamp;
 import java.util.Calendar;
 import java.util.Set;
@@ -15,7 +16,11 @@ import de.fuberlin.wiwiss.d2rq.algebra.ColumnRenamer;
 import de.fuberlin.wiwiss.d2rq.algebra.RelationalOperators;
 import de.fuberlin.wiwiss.d2rq.expr.Expression;
 import de.fuberlin.wiwiss.d2rq.pp.PrettyPrinter;
+import de.fuberlin.wiwiss.d2rq.sql.ConnectedDB;
 import de.fuberlin.wiwiss.d2rq.sql.ResultRow;
+import de.fuberlin.wiwiss.d2rq.values.BlankNodeID;
+import de.fuberlin.wiwiss.d2rq.values.Column;
+import de.fuberlin.wiwiss.d2rq.values.Pattern;
 import de.fuberlin.wiwiss.d2rq.values.ValueMaker;
 
 public class TypedNodeMaker implements NodeMaker {
@@ -70,6 +75,70 @@ public class TypedNodeMaker implements NodeMaker {
 		return this.valueMaker;
 	}
 	
+	/**
+	 * Tells whether sorting the values of a column in SQL also puts the
+	 * nodes made from them into SPARQL order. This holds for numeric
+	 * and date literals made from columns of the matching type. It
+	 * does not hold for URIs and plain literals made from text columns,
+	 * because databases sort strings by a collation that may ignore
+	 * case or accents, e.g. MySQL by default, while SPARQL compares
+	 * them by code point.
+	 * 
+	 * @param columnType The type of the column, as in {@link de.fuberlin.wiwiss.d2rq.sql.ConnectedDB#columnType}
+	 */
+	public boolean isOrderedLikeColumn(int columnType) {
+		if (nodeType == XSD_DATE) {
+			return columnType == ConnectedDB.DATE_COLUMN;
+		}
+		if (nodeType == XSD_DATETIME) {
+			return columnType == ConnectedDB.TIMESTAMP_COLUMN;
+		}
+		if (!(nodeType instanceof LiteralNodeType)) {
+			return false;
+		}
+		RDFDatatype datatype = ((LiteralNodeType) nodeType).datatype;
+		if (datatype == null) {
+			return false;
+		}
+		return columnType == ConnectedDB.NUMERIC_COLUMN && datatype.getJavaClass() != null
+				&& Number.class.isAssignableFrom(datatype.getJavaClass());
+	}
+	
+	/**
+	 * Tells whether different values always make different nodes, so that
+	 * grouping or counting the values in SQL has the same result as
+	 * grouping or counting the nodes in SPARQL. This holds for nodes made
+	 * directly from a column, from a pattern with a single column, or
+	 * from a blank node ID. Dates and booleans are excluded because
+	 * different column values can make the same node.
+	 */
+	public boolean isInjective() {
+		if (nodeType == XSD_DATE || nodeType == XSD_BOOLEAN) {
+			return false;
+		}
+		if (valueMaker instanceof Pattern) {
+			return valueMaker.projectionSpecs().size() == 1;
+		}
+		return valueMaker instanceof Column || valueMaker instanceof BlankNodeID;
+	}
+	
+	/**
+	 * Tells whether the nodes are literals of xsd:integer or of one of
+	 * the bounded integer types derived from it, such as xsd:int
+	 */
+	public boolean isIntegerLiteral() {
+		if (!(nodeType instanceof LiteralNodeType)) {
+			return false;
+		}
+		RDFDatatype datatype = ((LiteralNodeType) nodeType).datatype;
+		if (datatype == null) {
+			return false;
+		}
+		Class javaClass = datatype.getJavaClass();
+		return javaClass == BigInteger.class || javaClass == Long.class || javaClass == Integer.class
+				|| javaClass == Short.class || javaClass == Byte.class;
+	}
+	
 	public Node makeNode(ResultRow tuple) {
 		String value = this.valueMaker.makeValue(tuple);
 		if (value == null) {
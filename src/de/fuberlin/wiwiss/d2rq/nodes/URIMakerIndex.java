@@ -0,0 +1,181 @@
+package de.fuberlin.wiwiss.d2rq.nodes;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+import com.hp.hpl.jena.datatypes.RDFDatatype;
+import com.hp.hpl.jena.graph.Node;
+
+import de.fuberlin.wiwiss.d2rq.algebra.Attribute;
+import de.fuberlin.wiwiss.d2rq.algebra.RelationalOperators;
+import de.fuberlin.wiwiss.d2rq.expr.Expression;
+import de.fuberlin.wiwiss.d2rq.values.BlankNodeID;
+import de.fuberlin.wiwiss.d2rq.values.Pattern;
+
+/**
+ * Finds the {@link NodeMaker}s that can produce a URI, without running
+ * {@link NodeMaker#selectNode(Node, RelationalOperators)} on each of them.
+ *
+ * Node makers that produce URIs from a {@link Pattern} are stored in a
+ * {@link URIPrefixTrie} under the first literal part of the pattern,
+ * and node makers for a fixed URI under that URI. A lookup only looks
+ * at the node makers whose prefix is a prefix of the URI, and skips
+ * those whose last literal part is not a suffix of the URI. Other
+ * node makers that can produce URIs, for example from a column, are
+ * always looked at. Node makers that cannot produce URIs are ignored.
+ *
+ * Each node maker is added together with a value, and lookups return
+ * the values in the order they were added.
+ */
+public class URIMakerIndex {
+
+	/**
+	 * Checks the first and last literal part of a URI pattern
+	 * against a URI. This is much cheaper than
+	 * {@link NodeMaker#selectNode(Node, RelationalOperators)},
+	 * which matches the whole pattern.
+	 * @return <tt>false</tt> if the node maker cannot produce the URI;
+	 * 		<tt>true</tt> if it might
+	 */
+	public static boolean mightProduce(NodeMaker nodeMaker, String uri) {
+		Entry entry = createEntry(nodeMaker, null, 0);
+		return entry != null && entry.mightProduce(uri);
+	}
+
+	private final URIPrefixTrie prefixes = new URIPrefixTrie();	// values are Entries
+	private final List unindexed = new ArrayList();		// Entries
+	private int size = 0;
+
+	/**
+	 * @param nodeMaker A node maker
+	 * @param value The value to return for URIs produced by the node maker
+	 */
+	public void add(NodeMaker nodeMaker, Object value) {
+		Entry entry = createEntry(nodeMaker, value, size++);
+		if (entry == null) return;
+		if (entry.prefix == null) {
+			unindexed.add(entry);
+		} else {
+			prefixes.put(entry.prefix, entry);
+		}
+	}
+
+	/**
+	 * @param uri A URI
+	 * @return The values of all node makers that might produce the URI,
+	 * 		and maybe some others
+	 */
+	public List candidates(String uri) {
+		List result = new ArrayList();
+		Iterator it = candidateEntries(uri).iterator();
+		while (it.hasNext()) {
+			result.add(((Entry) it.next()).value);
+		}
+		return result;
+	}
+
+	/**
+	 * @param uri A URI node
+	 * @return The values of exactly those node makers that produce the URI
+	 */
+	public List matches(Node uri) {
+		if (!uri.isURI()) return Collections.EMPTY_LIST;
+		List result = new ArrayList();
+		Iterator it = candidateEntries(uri.getURI()).iterator();
+		while (it.hasNext()) {
+			Entry entry = (Entry) it.next();
+			if (!entry.nodeMaker.selectNode(uri, RelationalOperators.DUMMY).equals(NodeMaker.EMPTY)) {
+				result.add(entry.value);
+			}
+		}
+		return result;
+	}
+
+	private List candidateEntries(String uri) {
+		List found = new ArrayList(unindexed);
+		prefixes.collectPrefixesOf(uri, found);
+		List result = new ArrayList(found.size());
+		Iterator it = found.iterator();
+		while (it.hasNext()) {
+			Entry entry = (Entry) it.next();
+			if (entry.mightProduce(uri)) {
+				result.add(entry);
+			}
+		}
+		Collections.sort(result, ENTRY_ORDER);
+		return result;
+	}
+
+	private static Entry createEntry(NodeMaker nodeMaker, Object value, int index) {
+		URIDescription description = new URIDescription();
+		nodeMaker.describeSelf(description);
+		if (description.isEmpty || !description.mayBeURI) return null;
+		Entry result = new Entry(nodeMaker, value, index);
+		if (description.fixedNode != null) {
+			result.prefix = description.fixedNode.getURI();
+			result.exact = true;
+			return result;
+		}
+		// Translators and other decorators change the values of a pattern
+		if (description.isURI && nodeMaker instanceof TypedNodeMaker
+				&& ((TypedNodeMaker) nodeMaker).valueMaker() instanceof Pattern) {
+			Pattern pattern = (Pattern) ((TypedNodeMaker) nodeMaker).valueMaker();
+			result.prefix = pattern.firstLiteralPart();
+			if (pattern.attributes().isEmpty()) {
+				result.exact = true;
+			} else {
+				result.suffix = pattern.lastLiteralPart();
+			}
+		}
+		return result;
+	}
+
+	private static final Comparator ENTRY_ORDER = new Comparator() {
+		public int compare(Object o1, Object o2) {
+			return ((Entry) o1).index - ((Entry) o2).index;
+		}
+	};
+
+	private static class Entry {
+		private final NodeMaker nodeMaker;
+		private final Object value;
+		private final int index;
+		private String prefix = null;
+		private String suffix = "";
+		private boolean exact = false;
+		Entry(NodeMaker nodeMaker, Object value, int index) {
+			this.nodeMaker = nodeMaker;
+			this.value = value;
+			this.index = index;
+		}
+		boolean mightProduce(String uri) {
+			if (prefix == null) return true;
+			if (exact) return uri.equals(prefix);
+			return uri.length() >= prefix.length() + suffix.length()
+					&& uri.startsWith(prefix) && uri.endsWith(suffix);
+		}
+	}
+
+	private static class URIDescription implements NodeSetFilter {
+		private boolean isEmpty = false;
+		private boolean isURI = false;
+		private boolean mayBeURI = true;
+		private Node fixedNode = null;
+		public void limitTo(Node node) {
+			fixedNode = node;
+			mayBeURI = node.isURI();
+		}
+		public void limitToEmptySet() { isEmpty = true; }
+		public void limitToURIs() { isURI = true; }
+		public void limitToBlankNodes() { mayBeURI = false; }
+		public void limitToLiterals(String language, RDFDatatype datatype) { mayBeURI = false; }
+		public void limitValues(String constant) { }
+		public void limitValuesToAttribute(Attribute attribute) { }
+		public void limitValuesToBlankNodeID(BlankNodeID id) { }
+		public void limitValuesToPattern(Pattern pattern) { }
+		public void limitValuesToExpression(Expression expression) { }
+	}
+}
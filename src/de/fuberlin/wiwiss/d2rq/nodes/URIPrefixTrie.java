@@ -0,0 +1,83 @@
+package de.fuberlin.wiwiss.d2rq.nodes;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stores values under string prefixes, and finds all values whose
+ * prefix is a prefix of a given string. Used to find the URI patterns
+ * that might produce a URI by looking at their first literal part,
+ * in time proportional to the length of the URI instead of the number
+ * of patterns.
+ */
+public class URIPrefixTrie {
+	private final TrieNode root = new TrieNode();
+	private int size = 0;
+
+	/**
+	 * @param prefix A string prefix, may be empty
+	 * @param value The value to store under the prefix
+	 */
+	public void put(String prefix, Object value) {
+		TrieNode node = root;
+		for (int i = 0; i < prefix.length(); i++) {
+			node = node.child(prefix.charAt(i), true);
+		}
+		node.values.add(value);
+		size++;
+	}
+
+	/**
+	 * Adds all values whose prefix is a prefix of a string to a collection,
+	 * shortest prefixes first, and values with the same prefix in the
+	 * order they were added.
+	 * @param s Any string
+	 * @param result Receives the values
+	 */
+	public void collectPrefixesOf(String s, Collection result) {
+		TrieNode node = root;
+		result.addAll(node.values);
+		for (int i = 0; i < s.length(); i++) {
+			node = node.child(s.charAt(i), false);
+			if (node == null) return;
+			result.addAll(node.values);
+		}
+	}
+
+	/**
+	 * @return All values whose prefix is a prefix of the string
+	 */
+	public List prefixesOf(String s) {
+		List result = new ArrayList();
+		collectPrefixesOf(s, result);
+		return result;
+	}
+
+	/**
+	 * @return The number of values in the trie
+	 */
+	public int size() {
+		return size;
+	}
+
+	private static class TrieNode {
+		private Map children = null;	// Character => TrieNode
+		private final List values = new ArrayList(1);
+		TrieNode child(char c, boolean create) {
+			if (children == null) {
+				if (!create) return null;
+				children = new HashMap(4);
+			}
+			Character key = new Character(c);
+			TrieNode result = (TrieNode) children.get(key);
+			if (result == null && create) {
+				result = new TrieNode();
+				children.put(key, result);
+			}
+			return result;
+		}
+	}
+}
@@ -719,7 +719,7 @@ public class D2RQTreeOptimizer
             if (!notMoveableFilterExpr.isEmpty())
             {        	
                 // create the filter for an opleftjoin
-                newOp = opLeftJoin.apply(addFilterTransform, left, right); 
+                newOp = OpFilter.filter(opLeftJoin.apply(d2rqTransform, left, right)); 
             	// add the conditions
                 ((OpFilter)newOp).getExprs().getList().addAll(notMoveableFilterExpr);
             }else
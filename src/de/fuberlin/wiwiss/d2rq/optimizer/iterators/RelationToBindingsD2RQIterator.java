@@ -1,9 +1,14 @@
 package de.fuberlin.wiwiss.d2rq.optimizer.iterators;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import com.hp.hpl.jena.graph.Node;
 import com.hp.hpl.jena.sparql.core.Var;
@@ -11,240 +16,565 @@ import com.hp.hpl.jena.sparql.engine.ExecutionContext;
 import com.hp.hpl.jena.sparql.engine.QueryIterator;
 import com.hp.hpl.jena.sparql.engine.binding.Binding;
 import com.hp.hpl.jena.sparql.engine.binding.BindingMap;
-import com.hp.hpl.jena.sparql.engine.iterator.QueryIter;
+import com.hp.hpl.jena.sparql.engine.iterator.QueryIter1;
 import com.hp.hpl.jena.sparql.engine.iterator.QueryIterNullIterator;
-import com.hp.hpl.jena.sparql.engine.iterator.QueryIterRepeatApply;
+import com.hp.hpl.jena.sparql.expr.ExprList;
 import com.hp.hpl.jena.sparql.serializer.SerializationContext;
 import com.hp.hpl.jena.sparql.util.IndentedWriter;
 import com.hp.hpl.jena.sparql.util.Utils;
+import de.fuberlin.wiwiss.d2rq.algebra.ColumnRenamer;
 import de.fuberlin.wiwiss.d2rq.algebra.MutableRelation;
 import de.fuberlin.wiwiss.d2rq.algebra.Relation;
+import de.fuberlin.wiwiss.d2rq.algebra.RelationalOperators;
 import de.fuberlin.wiwiss.d2rq.engine.BindingMaker;
+import de.fuberlin.wiwiss.d2rq.engine.QueryEngineD2RQ;
+import de.fuberlin.wiwiss.d2rq.expr.Conjunction;
+import de.fuberlin.wiwiss.d2rq.expr.Disjunction;
 import de.fuberlin.wiwiss.d2rq.expr.Expression;
 import de.fuberlin.wiwiss.d2rq.nodes.NodeMaker;
-import de.fuberlin.wiwiss.d2rq.nodes.TypedNodeMaker;
+import de.fuberlin.wiwiss.d2rq.sql.ExecutionStatistics;
 import de.fuberlin.wiwiss.d2rq.sql.QueryExecutionIterator;
 import de.fuberlin.wiwiss.d2rq.sql.ResultRow;
 import de.fuberlin.wiwiss.d2rq.sql.SelectStatementBuilder;
-import de.fuberlin.wiwiss.d2rq.values.ValueMaker;
- 
+import de.fuberlin.wiwiss.d2rq.sql.UnionStatementBuilder;
+
 /**
- * Iterator that calcualtes the result-bindings of an OpD2RQ.
+ * Iterator that calculates the result-bindings of an OpD2RQ for
+ * the bindings coming from its input, e.g. from the left side of
+ * a join or left-join.
  *
- * @author Herwig Leimer
+ * The input bindings are read in batches. For each batch, a single
+ * SQL query is run whose condition is a disjunction of the values
+ * that each input binding requires for the shared variables. Each
+ * result row is then matched to the input bindings it is compatible
+ * with. The results are returned in the order of the input bindings.
+ * A batch that holds only one input binding, for example the single
+ * binding at the start of a query, is not buffered: its results are
+ * returned while the rows are read from the database.
+ *
+ * In optional mode, input bindings without a matching row are passed
+ * through unchanged, as in a left-join.
+ *
+ * The iterator can also read from several relations on the same
+ * database, the branches of a union. Each batch then takes a
+ * single <code>UNION ALL</code> query, see {@link UnionStatementBuilder}.
  *
+ * @author Herwig Leimer
  */
-public class RelationToBindingsD2RQIterator extends QueryIterRepeatApply
+public class RelationToBindingsD2RQIterator extends QueryIter1
 {
-	protected final Collection bindingMakers;
-	protected final Relation relation;
-	
+	public static final int DEFAULT_BATCH_SIZE = 100;
+
+	protected final List relations;			// one Relation per branch
+	protected final List bindingMakers;		// one Collection of BindingMakers per branch
+	private final boolean optional;
+	private final ExprList filter;
+	private final int batchSize;
+	private final Set vars = new HashSet();
+	private final LinkedList queue = new LinkedList();
+	private final ExecutionStatistics statistics;
+	private SingleParentRows stream = null;
+	private long nodeNanos = 0;
+	private long discardedRows = 0;
+
 	/**
-	 * Creates a new RelationToBindingsD2RQIterator
+	 * Creates a new RelationToBindingsD2RQIterator that joins the
+	 * input bindings with the bindings of a relation
 	 * @param relation - contains information for getting the data used for the bindings from the database
 	 * @param bindingMakers - contains information for creating the bindings from the the databasedata
 	 * @param input - Input-Iterator
 	 * @param context - execution-context
 	 * @return QueryIterator - a QueryIterator
 	 */
-	public static QueryIterator create(Relation relation, Collection bindingMakers, QueryIterator input, ExecutionContext context) 
+	public static QueryIterator create(Relation relation, Collection bindingMakers, QueryIterator input, ExecutionContext context)
 	{
-		if (relation.condition().isFalse() || relation.isTrivial()) 
+		if (relation.condition().isFalse() || relation.isTrivial())
 		{
 			input.close();
 			return new QueryIterNullIterator(context);
 		}
-		return new RelationToBindingsD2RQIterator(relation, bindingMakers, input, context);
+		return new RelationToBindingsD2RQIterator(Collections.singletonList(relation), 
+				Collections.singletonList(bindingMakers), input, false, null, DEFAULT_BATCH_SIZE, context);
 	}
-	
+
 	/**
-	 * Constructor
+	 * Creates a new RelationToBindingsD2RQIterator that left-joins the
+	 * input bindings with the bindings of a relation
 	 * @param relation - contains information for getting the data used for the bindings from the database
 	 * @param bindingMakers - contains information for creating the bindings from the the databasedata
 	 * @param input - Input-Iterator
+	 * @param filter - condition of the left-join, or <tt>null</tt>
+	 * @param context - execution-context
+	 * @return QueryIterator - a QueryIterator
+	 */
+	public static QueryIterator createOptional(Relation relation, Collection bindingMakers,
+			QueryIterator input, ExprList filter, ExecutionContext context)
+	{
+		if (relation.condition().isFalse() || relation.isTrivial())
+		{
+			return input;
+		}
+		return new RelationToBindingsD2RQIterator(Collections.singletonList(relation), 
+				Collections.singletonList(bindingMakers), input, true, filter, DEFAULT_BATCH_SIZE, context);
+	}
+
+	/**
+	 * Creates a new RelationToBindingsD2RQIterator that joins or left-joins
+	 * the input bindings with the union of the bindings of several relations
+	 * @param relations - the {@link Relation} of each branch of the union; see {@link UnionStatementBuilder#canCombine(List)}
+	 * @param bindingMakers - the {@link BindingMaker}s of each branch, as a list of collections
+	 * @param input - Input-Iterator
+	 * @param optional - pass through input bindings that have no matching row?
+	 * @param filter - condition of the left-join, or <tt>null</tt>
+	 * @param context - execution-context
+	 * @return QueryIterator - a QueryIterator
+	 */
+	public static QueryIterator createUnion(List relations, List bindingMakers, QueryIterator input,
+			boolean optional, ExprList filter, ExecutionContext context)
+	{
+		return new RelationToBindingsD2RQIterator(relations, bindingMakers, input,
+				optional, filter, DEFAULT_BATCH_SIZE, context);
+	}
+
+	/**
+	 * Constructor
+	 * @param relations - the {@link Relation} of each branch
+	 * @param bindingMakers - the collection of {@link BindingMaker}s of each branch
+	 * @param input - Input-Iterator
+	 * @param optional - pass through input bindings that have no matching row?
+	 * @param filter - condition that combined bindings must satisfy, or <tt>null</tt>
+	 * @param batchSize - number of input bindings handled by one SQL query
 	 * @param context - execution-context
 	 */
-	protected RelationToBindingsD2RQIterator(Relation relation, Collection bindingMakers, QueryIterator input, ExecutionContext context)
+	protected RelationToBindingsD2RQIterator(List relations, List bindingMakers, QueryIterator input,
+			boolean optional, ExprList filter, int batchSize, ExecutionContext context)
     {
 		super(input, context) ;
     	this.bindingMakers = bindingMakers;
-    	this.relation = relation;
+    	this.relations = relations;
+    	this.optional = optional;
+    	this.filter = (filter == null || filter.isEmpty()) ? null : filter;
+    	this.batchSize = batchSize;
+    	this.statistics = (ExecutionStatistics) context.getContext().get(
+    			QueryEngineD2RQ.STATISTICS, ExecutionStatistics.global());
+    	for (int i = 0; i < bindingMakers.size(); i++)
+    	{
+	    	Iterator it = ((Collection) bindingMakers.get(i)).iterator();
+	    	while (it.hasNext())
+	    	{
+	    		Iterator it2 = ((BindingMaker) it.next()).variableNames().iterator();
+	    		while (it2.hasNext())
+	    		{
+	    			vars.add(Var.alloc((String) it2.next()));
+	    		}
+	    	}
+    	}
 	}
-	
+
 	/**
 	 * Method for printing
 	 */
-	public void output(IndentedWriter out, SerializationContext cxt) 
+	public void output(IndentedWriter out, SerializationContext cxt)
 	{
 		out.print(Utils.className(this));
 	}
 
-	
-	protected QueryIterator nextStage(Binding binding) 
-	{	
-		return new StagePattern(binding, relation, bindingMakers, getExecContext()) ;
+	protected boolean hasNextBinding()
+	{
+		while (queue.isEmpty())
+		{
+			if (stream != null)
+			{
+				if (!stream.readMore())
+				{
+					stream = null;
+				}
+				continue;
+			}
+			List parents = new ArrayList(batchSize);
+			while (parents.size() < batchSize && getInput().hasNext())
+			{
+				parents.add(getInput().nextBinding());
+			}
+			if (parents.isEmpty())
+			{
+				return false;
+			}
+			if (parents.size() == 1)
+			{
+				stream = new SingleParentRows((Binding) parents.get(0));
+			}
+			else
+			{
+				processBatch(parents);
+			}
+		}
+		return true;
+	}
+
+	protected Binding moveToNextBinding()
+	{
+		return (Binding) queue.removeFirst();
+	}
+
+	protected void closeSubIterator()
+	{
+		queue.clear();
+		if (stream != null)
+		{
+			stream.close();
+			stream = null;
+		}
+		statistics.addNodeConstruction(nodeNanos, discardedRows);
+		nodeNanos = 0;
+		discardedRows = 0;
 	}
-	
+
 	/**
-	 * Class that fetches additional values for every parent-binding.
-	 * Especially necessary for Joins and LeftJoins.
-	 * 
-	 * @author Herwig Leimer
-	 *
+	 * Runs one SQL query for a batch of parent bindings and puts
+	 * the results into the queue
+	 * @param parents - the parent bindings
 	 */
-	static class StagePattern extends QueryIter
-    {
-        Binding parentBinding ;
-        QueryExecutionIterator wrapped;
-        LinkedList queue = new LinkedList();
-        Collection bindingMakers;
-        NodeMaker nodeMaker;
-        ValueMaker valueMaker;
-        Set vars = new HashSet();
-              
-        /**
-         * Construtor
-         * @param parentBinding - Parentbinding - for example join/leftjoin - the parentbinding will be a resultbinding from the left-OpD2RQ
-         * @param relation - relation for getting the needed data from the database
-         * @param bindingMakers - bindingMakers for creating the bindings
-         * @param qCxt - execution-context
-         */
-        public StagePattern(Binding parentBinding, Relation relation,	Collection bindingMakers, ExecutionContext qCxt)
-        {
-            super(qCxt) ;
-            this.parentBinding = parentBinding ;
-            this.bindingMakers = bindingMakers;
-            BindingMaker bindingMaker;
-            Var var;
-            MutableRelation mutableRelation = null;
-            Expression expression;
-            TypedNodeMaker typedNodeMaker;
-            Node value;
-            String valueAsString;
-            
-            // bindingmakers contain all information for making the bindings of the current relation
-            
-            for(Iterator iterator = bindingMakers.iterator(); iterator.hasNext();)
-            {
-            	bindingMaker = (BindingMaker)iterator.next();
-            	// collect all vars of all bindingmakers
-            	vars.addAll(bindingMaker.variableNames());
-            	
-            	// now check if every result(var) of the parentbinding is part of the
-            	// the current relation and can be put into the current relation
-            	for(Iterator bindingVars = parentBinding.vars(); bindingVars.hasNext();)
-            	{
-            		// get first binding-var
-            		var = (Var)bindingVars.next();
-            		
-            		// is the binding var also used in this relation ?
-            		if (bindingMaker.variableNames().contains(var.getName()))
-            		{
-            			// put the value of the binding-var to the relation
-            			mutableRelation = new MutableRelation(relation);
-            			nodeMaker = bindingMaker.nodeMaker(var);
-            			// TODO: type-cast perhaps a problem ??
-            			typedNodeMaker = (TypedNodeMaker)nodeMaker;
-            			valueMaker = typedNodeMaker.valueMaker();
-            			
-            			value = parentBinding.get(var);
-                        
-            			// TODO: some problems with other datatypes - eg. dates ??
-            			if (value.isLiteral())
-            	    	{
-//            				valueAsString = value.getLiteralValue().toString();	
-            				valueAsString = value.getLiteralValue().toString();
-//            				valueAsString = ((Literal)value).getValue().toString();
-            	    	}else
-            	    	{
-            	    		valueAsString = value.getURI();
-            	    	}
-            			
-            			// create an equality-expression
-            			expression = valueMaker.valueExpression(valueAsString);
-            			// put the expression to the relation
-            			relation = mutableRelation.select(expression); 
-            		}
-            	}
-            }
-            
-            
-            if (!relation.equals(Relation.EMPTY))
-            {
-            	SelectStatementBuilder sql = new SelectStatementBuilder(relation);
-            	wrapped = new QueryExecutionIterator(sql.getSQLStatement(), sql.getColumnSpecs(), relation.database());
-            }
-        }
-
-        /**
-         * Check for next-binding
-         */
-    	public boolean hasNextBinding() 
-    	{
-    		
-    		while (queue.isEmpty() && wrapped != null && wrapped.hasNext()) 
-    		{
-    			enqueueBindings(wrapped.nextRow());
-    		}
-    		
-    		return !queue.isEmpty();
-    	}
+	private void processBatch(List parents)
+	{
+		List[] matches = new List[parents.size()];
+		ParentIndex index = new ParentIndex();
+		for (int i = 0; i < parents.size(); i++)
+		{
+			matches[i] = new ArrayList();
+			index.add((Binding) parents.get(i), i);
+		}
+		List branches = new ArrayList();
+		List batchRelations = new ArrayList();
+		selectBranches(parents, branches, batchRelations);
+		// Very long UNION ALL statements overwhelm some databases' parsers
+		for (int start = 0; start < batchRelations.size(); start += UnionStatementBuilder.MAX_BRANCHES)
+		{
+			int end = Math.min(start + UnionStatementBuilder.MAX_BRANCHES, batchRelations.size());
+			runQuery(batchRelations.subList(start, end), branches.subList(start, end),
+					parents, index, matches);
+		}
+		for (int i = 0; i < matches.length; i++)
+		{
+			if (optional && matches[i].isEmpty())
+			{
+				queue.add(parents.get(i));
+			}
+			else
+			{
+				queue.addAll(matches[i]);
+			}
+		}
+	}
 
-    	/**
-    	 * Closes the iterator
-    	 */
-        protected void closeIterator()
-        {
-        	if (wrapped != null)
-        		wrapped.close();
-        }
-
-        /**
-         * Go to the next binding
-         */
-    	public Binding moveToNextBinding() 
-    	{
-    		Binding b =  (Binding) queue.removeFirst();
-    		Binding binding = new BindingMap(this.parentBinding) ;
-    		
-    		
-    		for (Iterator iterator = vars.iterator(); iterator.hasNext();)
-            {
-    			String name = (String)iterator.next();
-    			Var var = Var.alloc(name);
-    			Node n = (Node)b.get(var) ;
-                if ( n == null )
-                    // There was no variable of this name.
-                    continue ;
-                if (!binding.contains(var))
-                {
-                	binding.add(var, n) ;
-                }
-            }
-    		
-    		return binding;
-    		
-    	}
-    
-    	/**
-    	 * Makes the binding from a result-row of the database
-    	 * and puts it into a queue
-    	 * @param row
-    	 */
-    	protected void enqueueBindings(ResultRow row) 
-    	{
-    		Iterator it = bindingMakers.iterator();
-    		while (it.hasNext()) 
-    		{
-    			BindingMaker bindingMaker = (BindingMaker) it.next();
-    			Binding binding = bindingMaker.makeBinding(row);
-    			if (binding != null) 
-    			{
-    				queue.add(binding);
-    			}
-    		}
-    	}
-    }
-	
-	
+	/**
+	 * Finds the branches whose relation can have rows that match
+	 * a batch of parent bindings
+	 * @param parents - the parent bindings
+	 * @param branches - the number of each matching branch is added here, as an Integer
+	 * @param batchRelations - the relation of each matching branch, restricted
+	 * 		to the parent bindings, is added here
+	 */
+	private void selectBranches(List parents, List branches, List batchRelations)
+	{
+		for (int b = 0; b < relations.size(); b++)
+		{
+			Collection branchBindingMakers = (Collection) bindingMakers.get(b);
+			List conditions = new ArrayList(parents.size());
+			for (int i = 0; i < parents.size(); i++)
+			{
+				conditions.add(condition((Binding) parents.get(i), branchBindingMakers));
+			}
+			MutableRelation batchRelation = new MutableRelation((Relation) relations.get(b));
+			batchRelation.select(Disjunction.create(conditions));
+			Relation snapshot = batchRelation.immutableSnapshot();
+			if (!snapshot.equals(Relation.EMPTY) && !snapshot.condition().isFalse())
+			{
+				branches.add(new Integer(b));
+				batchRelations.add(snapshot);
+			}
+		}
+	}
+
+	/**
+	 * Runs one SQL query for the relations of some branches, which is a union
+	 * if there is more than one, and adds the matching bindings
+	 * @param batchRelations - the relations, restricted to the parent bindings
+	 * @param branches - the number of each relation's branch, as Integers
+	 */
+	private void runQuery(List batchRelations, List branches, List parents,
+			ParentIndex index, List[] matches)
+	{
+		boolean union = batchRelations.size() > 1;
+		QueryExecutionIterator rows = execute(batchRelations);
+		try
+		{
+			while (rows.hasNext())
+			{
+				ResultRow row = rows.nextRow();
+				int b = ((Integer) branches.get(union ? UnionStatementBuilder.branchOf(row) : 0)).intValue();
+				addMatches(row, (Collection) bindingMakers.get(b), parents, index, matches);
+			}
+		}
+		finally
+		{
+			rows.close();
+		}
+	}
+
+	/**
+	 * @return The rows of the relations of some branches, from a union
+	 * 		if there is more than one
+	 */
+	private QueryExecutionIterator execute(List batchRelations)
+	{
+		if (batchRelations.size() > 1)
+		{
+			return new QueryExecutionIterator(new UnionStatementBuilder(batchRelations), statistics);
+		}
+		Relation relation = (Relation) batchRelations.get(0);
+		return new QueryExecutionIterator(new SelectStatementBuilder(relation), relation.database(), statistics);
+	}
+
+	/**
+	 * Makes the bindings from a result-row of the database and
+	 * combines them with each compatible parent binding
+	 * @param branchBindingMakers - the binding makers of the branch that produced the row
+	 */
+	private void addMatches(ResultRow row, Collection branchBindingMakers, List parents, 
+			ParentIndex index, List[] matches)
+	{
+		long start = System.nanoTime();
+		boolean matched = false;
+		Iterator it = branchBindingMakers.iterator();
+		while (it.hasNext())
+		{
+			Binding binding = ((BindingMaker) it.next()).makeBinding(row);
+			if (binding == null) continue;
+			Iterator candidates = index.candidates(binding).iterator();
+			while (candidates.hasNext())
+			{
+				int i = ((Integer) candidates.next()).intValue();
+				Binding merged = merge((Binding) parents.get(i), binding);
+				if (merged == null) continue;
+				if (filter != null && !filter.isSatisfied(merged, getExecContext())) continue;
+				matches[i].add(merged);
+				matched = true;
+			}
+		}
+		if (!matched)
+		{
+			discardedRows++;
+		}
+		nodeNanos += System.nanoTime() - start;
+	}
+
+	/**
+	 * @return The condition that a row must satisfy to be compatible
+	 * 		with the parent binding under at least one of the binding makers
+	 * 		of a branch
+	 */
+	private Expression condition(Binding parent, Collection branchBindingMakers)
+	{
+		List alternatives = new ArrayList(branchBindingMakers.size());
+		Iterator it = branchBindingMakers.iterator();
+		while (it.hasNext())
+		{
+			BindingMaker bindingMaker = (BindingMaker) it.next();
+			final List conjuncts = new ArrayList();
+			RelationalOperators collector = new RelationalOperators()
+			{
+				public Relation select(Expression condition)
+				{
+					conjuncts.add(condition);
+					return null;
+				}
+				public Relation renameColumns(ColumnRenamer renamer) { return null; }
+				public Relation project(Set projectionSpecs) { return null; }
+			};
+			boolean possible = true;
+			Iterator it2 = bindingMaker.variableNames().iterator();
+			while (possible && it2.hasNext())
+			{
+				Var var = Var.alloc((String) it2.next());
+				Node value = parent.get(var);
+				if (value == null) continue;
+				// Rows that don't match the optional part are compatible with any value
+				if (bindingMaker.optionalVariableNames().contains(var.getName())) continue;
+				possible = bindingMaker.nodeMaker(var).selectNode(value, collector) != NodeMaker.EMPTY;
+			}
+			if (possible)
+			{
+				alternatives.add(Conjunction.create(conjuncts));
+			}
+		}
+		return Disjunction.create(alternatives);
+	}
+
+	/**
+	 * @return The combination of both bindings, or <tt>null</tt>
+	 * 		if they have different values for a shared variable
+	 */
+	private static Binding merge(Binding parent, Binding binding)
+	{
+		Binding result = new BindingMap(parent);
+		Iterator it = binding.vars();
+		while (it.hasNext())
+		{
+			Var var = (Var) it.next();
+			Node value = binding.get(var);
+			Node parentValue = parent.get(var);
+			if (parentValue == null)
+			{
+				result.add(var, value);
+			}
+			else if (!parentValue.equals(value))
+			{
+				return null;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Finds the parent bindings of a batch that can be compatible with
+	 * a binding. Each parent is indexed under the value of one of its
+	 * variables that also occurs in the relation.
+	 */
+	private class ParentIndex
+	{
+		private final Map byVar = new HashMap();		// Var => (Node => List of Integer)
+		private final List unindexed = new ArrayList();	// Integers
+
+		void add(Binding parent, int i)
+		{
+			Integer position = new Integer(i);
+			Iterator it = parent.vars();
+			while (it.hasNext())
+			{
+				Var var = (Var) it.next();
+				if (!vars.contains(var)) continue;
+				Map byValue = (Map) byVar.get(var);
+				if (byValue == null)
+				{
+					byValue = new HashMap();
+					byVar.put(var, byValue);
+				}
+				Node value = parent.get(var);
+				List positions = (List) byValue.get(value);
+				if (positions == null)
+				{
+					positions = new ArrayList();
+					byValue.put(value, positions);
+				}
+				positions.add(position);
+				return;
+			}
+			unindexed.add(position);
+		}
+
+		List candidates(Binding binding)
+		{
+			if (byVar.isEmpty())
+			{
+				return unindexed;
+			}
+			List result = new ArrayList(unindexed);
+			Iterator it = byVar.entrySet().iterator();
+			while (it.hasNext())
+			{
+				Map.Entry entry = (Map.Entry) it.next();
+				Map byValue = (Map) entry.getValue();
+				Node value = binding.get((Var) entry.getKey());
+				if (value == null)
+				{
+					Iterator it2 = byValue.values().iterator();
+					while (it2.hasNext())
+					{
+						result.addAll((List) it2.next());
+					}
+				}
+				else if (byValue.containsKey(value))
+				{
+					result.addAll((List) byValue.get(value));
+				}
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * The results for a batch with a single parent binding. The rows
+	 * are read from the open result set when more results are needed,
+	 * and their bindings go straight into the queue.
+	 */
+	private class SingleParentRows
+	{
+		private final List parents;
+		private final ParentIndex index = new ParentIndex();
+		private final List[] matches = new List[]{queue};
+		private final List branches = new ArrayList();
+		private final List batchRelations = new ArrayList();
+		private int next = 0;				// first relation not queried yet
+		private List currentBranches = null;
+		private QueryExecutionIterator rows = null;
+		private boolean matched = false;
+
+		SingleParentRows(Binding parent)
+		{
+			parents = Collections.singletonList(parent);
+			index.add(parent, 0);
+			selectBranches(parents, branches, batchRelations);
+		}
+
+		/**
+		 * Reads rows until at least one binding has been added to the queue
+		 * @return <tt>false</tt> if all rows have been read
+		 */
+		boolean readMore()
+		{
+			while (true)
+			{
+				if (rows == null)
+				{
+					if (next >= batchRelations.size())
+					{
+						if (optional && !matched)
+						{
+							queue.add(parents.get(0));
+						}
+						return false;
+					}
+					// Very long UNION ALL statements overwhelm some databases' parsers
+					int end = Math.min(next + UnionStatementBuilder.MAX_BRANCHES, batchRelations.size());
+					currentBranches = branches.subList(next, end);
+					rows = execute(batchRelations.subList(next, end));
+					next = end;
+				}
+				if (!rows.hasNext())
+				{
+					close();
+					continue;
+				}
+				ResultRow row = rows.nextRow();
+				int b = ((Integer) currentBranches.get(
+						currentBranches.size() > 1 ? UnionStatementBuilder.branchOf(row) : 0)).intValue();
+				addMatches(row, (Collection) bindingMakers.get(b), parents, index, matches);
+				if (!queue.isEmpty())
+				{
+					matched = true;
+					return true;
+				}
+			}
+		}
+
+		void close()
+		{
+			if (rows != null)
+			{
+				rows.close();
+				rows = null;
+			}
+		}
+	}
 }
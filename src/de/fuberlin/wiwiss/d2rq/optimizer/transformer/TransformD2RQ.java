@@ -11,10 +11,19 @@ import java.util.Map;
 import java.util.Set;
 import com.hp.hpl.jena.sparql.algebra.Op;
 import com.hp.hpl.jena.sparql.algebra.TransformCopy;
+import com.hp.hpl.jena.query.SortCondition;
 import com.hp.hpl.jena.sparql.algebra.op.OpBGP;
+import com.hp.hpl.jena.sparql.algebra.op.OpDistinct;
+import com.hp.hpl.jena.sparql.algebra.op.OpExt;
 import com.hp.hpl.jena.sparql.algebra.op.OpFilter;
+import com.hp.hpl.jena.sparql.algebra.op.OpGroupAgg;
 import com.hp.hpl.jena.sparql.algebra.op.OpLabel;
+import com.hp.hpl.jena.sparql.algebra.op.OpLeftJoin;
 import com.hp.hpl.jena.sparql.algebra.op.OpNull;
+import com.hp.hpl.jena.sparql.algebra.op.OpOrder;
+import com.hp.hpl.jena.sparql.algebra.op.OpProject;
+import com.hp.hpl.jena.sparql.algebra.op.OpReduced;
+import com.hp.hpl.jena.sparql.algebra.op.OpSlice;
 import com.hp.hpl.jena.sparql.algebra.op.OpUnion;
 import com.hp.hpl.jena.sparql.core.Var;
 import com.hp.hpl.jena.sparql.expr.Expr;
@@ -26,6 +35,10 @@ import de.fuberlin.wiwiss.d2rq.engine.BindingMaker;
 import de.fuberlin.wiwiss.d2rq.engine.GraphPatternTranslator;
 import de.fuberlin.wiwiss.d2rq.engine.NodeRelation;
 import de.fuberlin.wiwiss.d2rq.engine.OpD2RQ;
+import de.fuberlin.wiwiss.d2rq.engine.OpD2RQGrouper;
+import de.fuberlin.wiwiss.d2rq.engine.OpD2RQLeftJoiner;
+import de.fuberlin.wiwiss.d2rq.engine.OpD2RQSlicer;
+import de.fuberlin.wiwiss.d2rq.engine.OpD2RQUnion;
 import de.fuberlin.wiwiss.d2rq.expr.Expression;
 import de.fuberlin.wiwiss.d2rq.expr.SQLExpression;
 import de.fuberlin.wiwiss.d2rq.optimizer.ops.OpFilteredBGP;
@@ -33,7 +46,8 @@ import de.fuberlin.wiwiss.d2rq.optimizer.utility.ExprUtility;
 
 
 /**
- * Transforms OpBGPs / OpFilteredBGPs to OpD2RQs.
+ * Transforms OpBGPs / OpFilteredBGPs to OpD2RQs, and moves
+ * unions, left-joins, solution modifiers and aggregates into them where possible.
  * 
  * @author Herwig Leimer
  * 
@@ -91,6 +105,120 @@ public class TransformD2RQ extends TransformCopy
         return newOp;
     }    
     
+    /**
+     * Turns a left-join between two OpD2RQs into a single OpD2RQ
+     * with an SQL left outer join, if possible
+     */
+    public Op transform(OpLeftJoin opLeftJoin, Op left, Op right)
+    {
+    	if (left instanceof OpD2RQ && right instanceof OpD2RQ)
+    	{
+    		Op joined = new OpD2RQLeftJoiner(opLeftJoin, (OpD2RQ) left, (OpD2RQ) right).leftJoined();
+    		if (joined != null)
+    		{
+    			return joined;
+    		}
+    	}
+    	return super.transform(opLeftJoin, left, right);
+    }
+    
+    /**
+     * Combines the two sides of a union into a single SQL query, if possible
+     */
+    public Op transform(OpUnion opUnion, Op left, Op right)
+    {
+    	Op union = OpD2RQUnion.create(new OpUnion(effectiveOp(left), effectiveOp(right)), left, right);
+    	return (union == null) ? super.transform(opUnion, left, right) : union;
+    }
+    
+    private Op effectiveOp(Op op)
+    {
+    	return (op instanceof OpExt) ? ((OpExt) op).effectiveOp() : op;
+    }
+    
+    /**
+     * Lets the database eliminate duplicates, by reducing the SQL
+     * query beneath a DISTINCT to the columns of the selected variables
+     */
+    public Op transform(OpDistinct opDistinct, Op subOp)
+    {
+    	Op projected = projectOpD2RQ(subOp);
+    	return (projected == null) ? super.transform(opDistinct, subOp) : new OpDistinct(projected);
+    }
+    
+    public Op transform(OpReduced opReduced, Op subOp)
+    {
+    	Op projected = projectOpD2RQ(subOp);
+    	return (projected == null) ? super.transform(opReduced, subOp) : new OpReduced(projected);
+    }
+    
+    /**
+     * Moves LIMIT, OFFSET and ORDER BY into the SQL query, if possible
+     */
+    public Op transform(OpSlice opSlice, Op subOp)
+    {
+    	Op sliced = new OpD2RQSlicer(opSlice, subOp).sliced();
+    	return (sliced == null) ? super.transform(opSlice, subOp) : sliced;
+    }
+    
+    /**
+     * Lets the database group the solutions and compute the aggregates,
+     * if possible
+     */
+    public Op transform(OpGroupAgg opGroupAgg, Op subOp)
+    {
+    	if (subOp instanceof OpD2RQ)
+    	{
+    		Op grouped = new OpD2RQGrouper(opGroupAgg, (OpD2RQ) subOp).grouped();
+    		if (grouped != null)
+    		{
+    			return grouped;
+    		}
+    	}
+    	return super.transform(opGroupAgg, subOp);
+    }
+    
+    /**
+     * Projects the OpD2RQ in an OpProject or OpProject/OpOrder
+     * to the variables that are used
+     * @return The new OpProject, or <tt>null</tt> if not possible
+     */
+    private Op projectOpD2RQ(Op subOp)
+    {
+    	if (!(subOp instanceof OpProject)) return null;
+    	OpProject opProject = (OpProject) subOp;
+    	List vars = new ArrayList(opProject.getVars());
+    	Op op = opProject.getSubOp();
+    	OpOrder opOrder = null;
+    	if (op instanceof OpOrder)
+    	{
+    		// The ORDER BY needs its variables
+    		opOrder = (OpOrder) op;
+    		Iterator it = opOrder.getConditions().iterator();
+    		while (it.hasNext())
+    		{
+    			Iterator it2 = ((SortCondition) it.next()).getExpression().getVarsMentioned().iterator();
+    			while (it2.hasNext())
+    			{
+    				Var var = (Var) it2.next();
+    				if (!vars.contains(var))
+    				{
+    					vars.add(var);
+    				}
+    			}
+    		}
+    		op = opOrder.getSubOp();
+    	}
+    	if (!(op instanceof OpD2RQ)) return null;
+    	op = ((OpD2RQ) op).project(vars);
+    	if (op == null) return null;
+    	if (opOrder != null)
+    	{
+    		op = opOrder.copy(op);
+    	}
+    	return opProject.copy(op);
+    }
+    
     public Op transform(OpLabel opLabel, Op subOp)
     {
     	// remove all labels
@@ -153,11 +281,13 @@ public class TransformD2RQ extends TransformCopy
         
         compatibleGroups = CompatibleRelationGroup.groupNodeRelations(nodeRelations);
         it = compatibleGroups.iterator();
+        List branches = new ArrayList();
         
         while (it.hasNext()) 
         {
             group = (CompatibleRelationGroup) it.next();
             op = new OpD2RQ(opBGP, group.baseRelation(), group.bindingMakers());
+            branches.add(op);
             if (tree == null) {
                 tree = op;
             } else {
@@ -165,6 +295,13 @@ public class TransformD2RQ extends TransformCopy
             }
         }
         
+        // run all groups with a single SQL query, if possible
+        op = OpD2RQUnion.create(opBGP, branches);
+        if (op != null)
+        {
+        	tree = op;
+        }
+        
         // could all filterexpression be converted to sql ?
         if (opFilter != null && !opFilter.getExprs().isEmpty())
         {
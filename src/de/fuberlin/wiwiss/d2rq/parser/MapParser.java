@@ -196,6 +196,26 @@ public class MapParser {
 			while (stmts.hasNext()) {
 				configuration.setUseAllOptimizations(stmts.nextStatement().getBoolean());
 			}			
+			stmts = configResource.listProperties(D2RQ.parallelQueries);
+			while (stmts.hasNext()) {
+				configuration.setParallelQueries(stmts.nextStatement().getInt());
+			}
+			stmts = configResource.listProperties(D2RQ.cacheMaxTriples);
+			while (stmts.hasNext()) {
+				configuration.setCacheMaxTriples(stmts.nextStatement().getLong());
+			}
+			stmts = configResource.listProperties(D2RQ.cacheMaxEntryTriples);
+			while (stmts.hasNext()) {
+				configuration.setCacheMaxEntryTriples(stmts.nextStatement().getLong());
+			}
+			stmts = configResource.listProperties(D2RQ.cacheTimeToLive);
+			while (stmts.hasNext()) {
+				configuration.setCacheTimeToLive(stmts.nextStatement().getInt());
+			}
+			stmts = configResource.listProperties(D2RQ.planCacheSize);
+			while (stmts.hasNext()) {
+				configuration.setPlanCacheSize(stmts.nextStatement().getInt());
+			}
 			this.mapping.setConfiguration(configuration);
 
 			if (it.hasNext())
@@ -270,6 +290,33 @@ public class MapParser {
 				throw new D2RQException("Value of d2rq:fetchSize must be numeric", D2RQException.MUST_BE_NUMERIC);
 			}
 		}
+		stmts = r.listProperties(D2RQ.connectionPoolSize);
+		while (stmts.hasNext()) {
+			try {
+				int poolSize = Integer.parseInt(stmts.nextStatement().getString());
+				database.setConnectionPoolSize(poolSize);
+			} catch (NumberFormatException ex) {
+				throw new D2RQException("Value of d2rq:connectionPoolSize must be numeric", D2RQException.MUST_BE_NUMERIC);
+			}
+		}
+		stmts = r.listProperties(D2RQ.connectionPoolTimeout);
+		while (stmts.hasNext()) {
+			try {
+				int timeout = Integer.parseInt(stmts.nextStatement().getString());
+				database.setConnectionPoolTimeout(timeout);
+			} catch (NumberFormatException ex) {
+				throw new D2RQException("Value of d2rq:connectionPoolTimeout must be numeric", D2RQException.MUST_BE_NUMERIC);
+			}
+		}
+		stmts = r.listProperties(D2RQ.statementCacheSize);
+		while (stmts.hasNext()) {
+			try {
+				int cacheSize = Integer.parseInt(stmts.nextStatement().getString());
+				database.setStatementCacheSize(cacheSize);
+			} catch (NumberFormatException ex) {
+				throw new D2RQException("Value of d2rq:statementCacheSize must be numeric", D2RQException.MUST_BE_NUMERIC);
+			}
+		}
 		stmts = r.listProperties();
 		while (stmts.hasNext()) {
 			Statement stmt = stmts.nextStatement();
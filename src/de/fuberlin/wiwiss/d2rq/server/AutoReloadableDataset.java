@@ -22,104 +22,230 @@ import de.fuberlin.wiwiss.d2rq.ModelD2RQ;
 import de.fuberlin.wiwiss.d2rq.engine.D2RQDatasetGraph;
 import de.fuberlin.wiwiss.d2rq.vocab.D2RQ;
 
+/**
+ * A dataset whose default graph is a {@link GraphD2RQ} for the
+ * server's mapping file. A local mapping file is watched by a
+ * background thread, and is reloaded when it changes.
+ *
+ * The graph and everything derived from it are kept in an immutable
+ * {@link Snapshot}. A reload builds and warms a complete new snapshot
+ * off the request path: it parses and compiles the mapping, connects
+ * to the databases and builds the indexes. Only then does it replace
+ * the current snapshot, so requests never see a half-loaded mapping.
+ * If the new mapping cannot be loaded, the old one stays in use,
+ * but its table statistics and query plans are discarded, as the
+ * database may have changed along with the mapping file. A new
+ * snapshot starts with new connections and no statistics or plans.
+ *
+ * Each request is pinned to the snapshot that was current when it
+ * started (see {@link DatasetSnapshotFilter}), and sees that same
+ * mapping until it completes. A replaced snapshot is closed when
+ * the last request pinned to it has completed.
+ */
 public class AutoReloadableDataset implements Dataset {
 	private static Log log = LogFactory.getLog(AutoReloadableDataset.class);
-	
-	/** only reload any this mili seconds */
+
+	/** check the mapping file for changes every this many milliseconds */
 	private static long RELOAD_FREQUENCY_MS = 1000;
 
 	private D2RServer server;
-	private D2RQDatasetGraph datasetGraph = null;
-    
+	private volatile Snapshot current = null;
+
+	/** the snapshot of the request handled by the current thread, if any */
+	private final ThreadLocal pinned = new ThreadLocal();
+
 	private String mappingFile;
-	private long lastModified = Long.MAX_VALUE;
-	private long lastReload = Long.MIN_VALUE;
-	
-	/** true if resultSizeLimit is used */
-	private boolean hasTruncatedResults;
-	
+	private volatile long lastModified = Long.MAX_VALUE;
+
 	/** (localFile) => auto-reloadable */
 	private boolean localFile;
-	
-	private Model defaultModel;
-	
+
+	private Thread watcher = null;
+
 	public AutoReloadableDataset(String mappingFile, boolean localFile, D2RServer server) {
 		this.mappingFile = mappingFile;
-		this.localFile = localFile;	
+		this.localFile = localFile;
 		this.server = server;
 	}
 
-	/** re-init dsg */
-	public void forceReload() {
-		initD2RQDatasetGraph();		
+	/**
+	 * Loads the mapping file and makes it current, on the calling thread.
+	 * @throws com.hp.hpl.jena.shared.JenaException if the mapping file
+	 * 		cannot be read
+	 * @throws de.fuberlin.wiwiss.d2rq.D2RQException if the mapping is
+	 * 		invalid or a database cannot be connected
+	 */
+	public synchronized void forceReload() {
+		long lastmod = localFile ? new File(this.mappingFile).lastModified() : 0;
+		if (this.current != null)
+			log.info("Reloading mapping file");
+		Snapshot previous = this.current;
+		try {
+			this.current = loadSnapshot();
+		} catch (RuntimeException ex) {
+			refreshStatistics();
+			throw ex;
+		}
+		this.lastModified = lastmod;
+		// Requests still pinned to the previous snapshot may cache more
+		// documents; the cache is cleared again when it is closed
+		server.responseCache().clear();
+		if (previous != null) {
+			previous.retire();
+		}
 	}
-	
-	/** re-init dsg if mapping file has changed */
-	public void checkMappingFileChanged() {
+
+	/**
+	 * Discards the table statistics and query plans of the current
+	 * mapping, so they are made again from the current database contents.
+	 */
+	public void refreshStatistics() {
+		Snapshot snapshot = this.current;
+		if (snapshot == null) return;
+		((GraphD2RQ) snapshot.datasetGraph.getDefaultGraph()).refreshStatistics();
+	}
+
+	/**
+	 * Starts a background thread that reloads the mapping file when it
+	 * changes. Does nothing if the mapping file is not a local file, or
+	 * if auto-reload is switched off in the server configuration.
+	 */
+	public synchronized void startWatching() {
 		if (!localFile || this.mappingFile == null || !server.getConfig().getAutoReloadMapping()) return;
-		
-		// only reload again if lastReload is older than CHECK_FREQUENCY_MS
-		long now = System.currentTimeMillis();
-		if (now < this.lastReload + RELOAD_FREQUENCY_MS) return;
-		
-		long lastmod = new File(this.mappingFile).lastModified();
-		if (lastmod == this.lastModified)
-			return;
-		
-		initD2RQDatasetGraph();
-	}
-	
-	private void initD2RQDatasetGraph() {
-		if (this.datasetGraph != null)
-			log.info("Reloading mapping file");
-		
+		if (this.watcher != null) return;
+		this.watcher = new Thread("D2R Server mapping watcher") {
+			public void run() {
+				watch();
+			}
+		};
+		this.watcher.setDaemon(true);
+		this.watcher.start();
+	}
+
+	/**
+	 * Stops the background thread, if it is running.
+	 */
+	public void stopWatching() {
+		Thread thread;
+		synchronized (this) {
+			thread = this.watcher;
+			this.watcher = null;
+		}
+		if (thread == null) return;
+		thread.interrupt();
+		try {
+			thread.join();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void watch() {
+		while (!Thread.currentThread().isInterrupted()) {
+			try {
+				Thread.sleep(RELOAD_FREQUENCY_MS);
+			} catch (InterruptedException ex) {
+				return;
+			}
+			if (new File(this.mappingFile).lastModified() == this.lastModified) continue;
+			synchronized (this) {
+				if (this.watcher != Thread.currentThread()) return;
+				try {
+					forceReload();
+				} catch (Throwable t) {
+					// Don't try again until the file changes once more
+					this.lastModified = new File(this.mappingFile).lastModified();
+					log.error("Could not reload mapping file, still using the previous mapping: " +
+							t.getMessage(), t);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reads the mapping file and builds a ready-to-use snapshot from it.
+	 */
+	private Snapshot loadSnapshot() {
 		Model mapModel = ModelFactory.createDefaultModel();
 		mapModel.read((this.localFile) ? "file:" + this.mappingFile : this.mappingFile, server.resourceBaseURI(), "N3");
-		
-		this.hasTruncatedResults = mapModel.contains(null, D2RQ.resultSizeLimit, (RDFNode) null);
+
+		boolean hasTruncatedResults = mapModel.contains(null, D2RQ.resultSizeLimit, (RDFNode) null);
 		ModelD2RQ result = new ModelD2RQ(mapModel, server.resourceBaseURI());
 		GraphD2RQ graph = (GraphD2RQ) result.getGraph();
-		graph.connect();
-		graph.initInventory(server.baseURI() + "all/");
-		this.datasetGraph = new D2RQDatasetGraph(graph);
-		this.defaultModel = ModelFactory.createModelForGraph(datasetGraph.getDefaultGraph());		
-		
-		if (localFile) {
-			this.lastModified = new File(this.mappingFile).lastModified();
-			this.lastReload = System.currentTimeMillis();
+		try {
+			graph.connect();
+			graph.tripleRelations();
+			graph.initInventory(server.baseURI() + "all/");
+		} catch (RuntimeException ex) {
+			graph.close();
+			throw ex;
+		} catch (Error er) {
+			graph.close();
+			throw er;
 		}
+		return new Snapshot(new D2RQDatasetGraph(graph), hasTruncatedResults);
+	}
+
+	/**
+	 * Pins the current snapshot to the calling thread, until
+	 * {@link #endRequest()} is called. Must be followed by
+	 * {@link #endRequest()} in a <tt>finally</tt> block.
+	 * @return <tt>false</tt> if the thread was pinned already, or if
+	 * 		no mapping has been loaded yet
+	 */
+	public boolean beginRequest() {
+		if (pinned.get() != null) return false;
+		Snapshot snapshot;
+		do {
+			snapshot = this.current;
+			if (snapshot == null) return false;
+		} while (!snapshot.pin());
+		pinned.set(snapshot);
+		return true;
+	}
+
+	/**
+	 * Unpins the snapshot pinned by {@link #beginRequest()}. If it has
+	 * been replaced in the meantime and no other request uses it,
+	 * it is closed.
+	 */
+	public void endRequest() {
+		Snapshot snapshot = (Snapshot) pinned.get();
+		if (snapshot == null) return;
+		pinned.set(null);
+		snapshot.release();
+	}
+
+	/**
+	 * @return The snapshot pinned to the calling thread, or else the current one
+	 */
+	private Snapshot snapshot() {
+		Snapshot result = (Snapshot) pinned.get();
+		return (result == null) ? this.current : result;
 	}
 
 	public Capabilities getCapabilities() {
-		//checkMappingFileChanged();
-		return this.datasetGraph.getDefaultGraph().getCapabilities();
+		return snapshot().datasetGraph.getDefaultGraph().getCapabilities();
 	}
 
 	public PrefixMapping getPrefixMapping() {
-		//checkMappingFileChanged();
-		return this.datasetGraph.getDefaultGraph().getPrefixMapping();
+		return snapshot().datasetGraph.getDefaultGraph().getPrefixMapping();
 	}
 
 	public boolean hasTruncatedResults() {
-		//checkMappingFileChanged();
-		return hasTruncatedResults;
+		return snapshot().hasTruncatedResults;
 	}
 
 	public QueryHandler queryHandler() {
-		checkMappingFileChanged();
-		return this.datasetGraph.getDefaultGraph().queryHandler();
+		return snapshot().datasetGraph.getDefaultGraph().queryHandler();
 	}
-	
+
 	public DatasetGraph asDatasetGraph() {
-		// check already done by servlets before getting the graph
-		//checkMappingFileChanged();
-		return datasetGraph;
+		return snapshot().datasetGraph;
 	}
 
 	public Model getDefaultModel() {
-		// check already done earlier, don't care
-		//checkMappingFileChanged();
-		return defaultModel;
+		return snapshot().defaultModel;
 	}
 
 	public boolean containsNamedModel(String uri) {
@@ -127,7 +253,7 @@ public class AutoReloadableDataset implements Dataset {
 	}
 
 	public Lock getLock() {
-		return datasetGraph.getLock();
+		return snapshot().datasetGraph.getLock();
 	}
 
 	public Model getNamedModel(String uri) {
@@ -138,8 +264,74 @@ public class AutoReloadableDataset implements Dataset {
 		return NullIterator.instance();
 	}
 
+	/**
+	 * Stops watching the mapping file, and closes the current snapshot
+	 * once no request uses it any longer.
+	 */
 	public void close() {
-		datasetGraph.close();
+		stopWatching();
+		Snapshot snapshot;
+		synchronized (this) {
+			snapshot = this.current;
+		}
+		if (snapshot != null) {
+			snapshot.retire();
+		}
+	}
+
+	/**
+	 * A loaded mapping: the D2RQ graph, the dataset and model wrapping it,
+	 * and the number of requests currently using it. When a replaced
+	 * snapshot is closed, the response cache is cleared, to remove
+	 * documents that requests pinned to it have put there.
+	 */
+	private class Snapshot {
+		private final D2RQDatasetGraph datasetGraph;
+		private final Model defaultModel;
+
+		/** true if resultSizeLimit is used */
+		private final boolean hasTruncatedResults;
+
+		private int users = 0;
+		private boolean retired = false;
+		private boolean closed = false;
+
+		Snapshot(D2RQDatasetGraph datasetGraph, boolean hasTruncatedResults) {
+			this.datasetGraph = datasetGraph;
+			this.defaultModel = ModelFactory.createModelForGraph(datasetGraph.getDefaultGraph());
+			this.hasTruncatedResults = hasTruncatedResults;
+		}
+
+		/**
+		 * @return <tt>false</tt> if the snapshot has been replaced already
+		 */
+		synchronized boolean pin() {
+			if (retired) return false;
+			users++;
+			return true;
+		}
+
+		void release() {
+			synchronized (this) {
+				users--;
+				if (!retired || users > 0 || closed) return;
+				closed = true;
+			}
+			close();
+		}
+
+		void retire() {
+			synchronized (this) {
+				retired = true;
+				if (users > 0 || closed) return;
+				closed = true;
+			}
+			close();
+		}
+
+		private void close() {
+			datasetGraph.close();
+			server.responseCache().clear();
+		}
 	}
-	
 }
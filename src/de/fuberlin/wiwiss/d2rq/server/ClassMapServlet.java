@@ -1,6 +1,8 @@
 package de.fuberlin.wiwiss.d2rq.server;
 
 import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
 import java.util.Iterator;
 
 import javax.servlet.ServletException;
@@ -8,35 +10,124 @@ import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import com.hp.hpl.jena.graph.Triple;
 import com.hp.hpl.jena.rdf.model.Model;
 import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.Property;
 import com.hp.hpl.jena.rdf.model.Resource;
+import com.hp.hpl.jena.rdf.model.ResourceFactory;
 import com.hp.hpl.jena.vocabulary.RDFS;
 
 import de.fuberlin.wiwiss.d2rq.GraphD2RQ;
+import de.fuberlin.wiwiss.d2rq.find.ClassMapInventory;
 
 public class ClassMapServlet extends HttpServlet {
+	private final static Property NEXT = 
+			ResourceFactory.createProperty("http://www.w3.org/1999/xhtml/vocab#next");
 
 	protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
 		D2RServer server = D2RServer.fromServletContext(getServletContext());
-		server.checkMappingFileChanged();
-		if (request.getPathInfo() == null) {
-			new ModelResponse(classMapListModel(), request, response).serve();
+		String mediaType = ModelResponse.negotiateMediaType(request);
+		if (mediaType == null) {
+			ModelResponse.sendNotAcceptable(response);
 			return;
 		}
-		String classMapName = request.getPathInfo().substring(1);
-		Model resourceList = graphD2RQ().classMapInventory(classMapName);
-		if (resourceList == null) {
+		String after = request.getParameter("after");
+		if (request.getPathInfo() != null && after != null
+				&& !graphD2RQ().isValidClassMapKey(request.getPathInfo().substring(1), after)) {
+			response.sendError(400, "Invalid value for parameter 'after'.");
+			return;
+		}
+		if (request.getPathInfo() != null && TripleStreamWriter.canStream(mediaType)) {
+			streamClassMapInstances(request.getPathInfo().substring(1), after, mediaType, response);
+			return;
+		}
+		String documentURL = (request.getPathInfo() == null)
+				? server.baseURI() + "all" : pageURL(request.getPathInfo().substring(1), after);
+		ResponseCache.Entry document = server.responseCache().get(documentURL, mediaType);
+		if (document == null) {
+			Model model;
+			if (request.getPathInfo() == null) {
+				model = classMapListModel();
+			} else {
+				String classMapName = request.getPathInfo().substring(1);
+				model = classMapInstancesModel(classMapName, after);
+				if (model == null) {
+					response.sendError(404, "Sorry, class map '" + classMapName + "' not found.");
+					return;
+				}
+			}
+			document = server.responseCache().put(documentURL, mediaType, 
+					ModelResponse.render(model, mediaType));
+		}
+		response.addHeader("Vary", "Accept");
+		document.serve(request, response);
+	}
+
+	/**
+	 * Writes a page of the instances of a class map as they are read
+	 * from the database. The listing can be much larger than other
+	 * documents, so it is not kept in the response cache.
+	 */
+	private void streamClassMapInstances(String classMapName, String after, String mediaType, 
+			HttpServletResponse response) throws IOException {
+		ClassMapInventory.Page page = graphD2RQ().classMapInventoryPage(
+				classMapName, after, ClassMapInventory.DEFAULT_PAGE_SIZE);
+		if (page == null) {
 			response.sendError(404, "Sorry, class map '" + classMapName + "' not found.");
 			return;
 		}
-    	Resource classMap = resourceList.getResource(server.baseURI() + "all/" + classMapName);
+		Model metadata = ModelFactory.createDefaultModel();
+		metadata.setNsPrefixes(graphD2RQ().getPrefixMapping());
+		addClassMapMetadata(metadata, classMapName, after, page.nextKey());
+		response.addHeader("Vary", "Accept");
+		ModelResponse.stream(metadata.getGraph().find(Triple.ANY).andThen(page.triples()), 
+				metadata, mediaType, response);
+	}
+
+	private Model classMapInstancesModel(String classMapName, String after) {
+		ClassMapInventory.Page page = graphD2RQ().classMapInventoryPage(
+				classMapName, after, ClassMapInventory.DEFAULT_PAGE_SIZE);
+		if (page == null) {
+			return null;
+		}
+		Model resourceList = ModelFactory.createDefaultModel();
+		resourceList.setNsPrefixes(graphD2RQ().getPrefixMapping());
+		resourceList.getGraph().getBulkUpdateHandler().add(page.triples());
+		addClassMapMetadata(resourceList, classMapName, after, page.nextKey());
+		return resourceList;
+	}
+
+	/**
+	 * Adds labels, document metadata, and an <tt>xhtml:next</tt> link
+	 * to the next page if there is one.
+	 */
+	private void addClassMapMetadata(Model resourceList, String classMapName, 
+			String after, String nextKey) {
+		D2RServer server = D2RServer.fromServletContext(getServletContext());
+    	Resource classMap = resourceList.createResource(server.baseURI() + "all/" + classMapName);
     	Resource directory = resourceList.createResource(server.baseURI() + "all");
     	classMap.addProperty(RDFS.seeAlso, directory);
     	classMap.addProperty(RDFS.label, "List of all instances: " + classMapName);
     	directory.addProperty(RDFS.label, "D2R Server contents");
     	server.addDocumentMetadata(resourceList, classMap);
-		new ModelResponse(resourceList, request, response).serve();
+    	if (nextKey != null) {
+    		resourceList.createResource(pageURL(classMapName, after)).addProperty(
+    				NEXT, resourceList.createResource(pageURL(classMapName, nextKey)));
+    	}
+	}
+
+	private String pageURL(String classMapName, String after) {
+		String result = D2RServer.fromServletContext(getServletContext()).baseURI() 
+				+ "all/" + classMapName;
+		if (after == null) {
+			return result;
+		}
+		try {
+			return result + "?after=" + URLEncoder.encode(after, "utf-8");
+		} catch (UnsupportedEncodingException ex) {
+			throw new RuntimeException(ex);
+		}
 	}
 
 	private GraphD2RQ graphD2RQ() {
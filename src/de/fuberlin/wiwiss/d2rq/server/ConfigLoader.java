@@ -20,6 +20,9 @@ import de.fuberlin.wiwiss.d2rq.vocab.D2RConfig;
 
 public class ConfigLoader {
 
+	public final static long DEFAULT_RESPONSE_CACHE_MAX_BYTES = 0;
+	public final static int DEFAULT_RESPONSE_CACHE_TIME_TO_LIVE = 60;
+
 	/**
 	 * Accepts an absolute URI, relative file: URI, or plain
 	 * file name (including names with spaces, Windows backslashes
@@ -54,6 +57,9 @@ public class ConfigLoader {
 	private Resource documentMetadata = null;
 	private boolean vocabularyIncludeInstances = true;
 	private boolean autoReloadMapping = true;
+	private boolean enableMetrics = false;
+	private long responseCacheMaxBytes = DEFAULT_RESPONSE_CACHE_MAX_BYTES;
+	private int responseCacheTimeToLive = DEFAULT_RESPONSE_CACHE_TIME_TO_LIVE;
 	
 	public ConfigLoader(String configURL) {
 		this.configURL = configURL;
@@ -81,13 +87,7 @@ public class ConfigLoader {
 		}
 		s = server.getProperty(D2RConfig.port);
 		if (s != null) {
-			String value = s.getLiteral().getLexicalForm();
-			try {
-				this.port = Integer.parseInt(value);
-			} catch (NumberFormatException ex) {
-				throw new JenaException(
-						"Illegal integer value '" + value + "' for d2r:port");
-			}
+			this.port = getInt(s, "d2r:port");
 		}
 		s = server.getProperty(RDFS.label);
 		if (s != null) {
@@ -105,7 +105,39 @@ public class ConfigLoader {
 		if (s != null) {
 			this.autoReloadMapping = s.getBoolean();
 		}	
-}
+		s = server.getProperty(D2RConfig.enableMetrics);
+		if (s != null) {
+			this.enableMetrics = s.getBoolean();
+		}
+		s = server.getProperty(D2RConfig.responseCacheMaxBytes);
+		if (s != null) {
+			this.responseCacheMaxBytes = getLong(s, "d2r:responseCacheMaxBytes");
+		}
+		s = server.getProperty(D2RConfig.responseCacheTimeToLive);
+		if (s != null) {
+			this.responseCacheTimeToLive = getInt(s, "d2r:responseCacheTimeToLive");
+		}
+	}
+	
+	private int getInt(Statement s, String propertyName) {
+		String value = s.getLiteral().getLexicalForm();
+		try {
+			return Integer.parseInt(value);
+		} catch (NumberFormatException ex) {
+			throw new JenaException(
+					"Illegal integer value '" + value + "' for " + propertyName);
+		}
+	}
+	
+	private long getLong(Statement s, String propertyName) {
+		String value = s.getLiteral().getLexicalForm();
+		try {
+			return Long.parseLong(value);
+		} catch (NumberFormatException ex) {
+			throw new JenaException(
+					"Illegal integer value '" + value + "' for " + propertyName);
+		}
+	}
 	
 	public boolean isLocalMappingFile() {
 		return this.isLocalMappingFile;
@@ -151,6 +183,28 @@ public class ConfigLoader {
 		return this.autoReloadMapping;
 	}
 	
+	/**
+	 * @return Whether the metrics page at <tt>/metrics</tt> is served
+	 */
+	public boolean getEnableMetrics() {
+		return this.enableMetrics;
+	}
+	
+	/**
+	 * @return Maximum total size of the documents in the {@link ResponseCache};
+	 * 		0 if the cache is disabled
+	 */
+	public long getResponseCacheMaxBytes() {
+		return this.responseCacheMaxBytes;
+	}
+	
+	/**
+	 * @return Seconds until a document in the {@link ResponseCache} expires
+	 */
+	public int getResponseCacheTimeToLive() {
+		return this.responseCacheTimeToLive;
+	}
+	
 	public void addDocumentMetadata(Model document, Resource documentResource) {
 		if (this.documentMetadata == null) {
 			return;
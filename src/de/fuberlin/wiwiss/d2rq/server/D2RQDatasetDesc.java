@@ -26,7 +26,6 @@ public class D2RQDatasetDesc extends DatasetDesc {
 	}
 
 	public Dataset getDataset() {
-		dataset.checkMappingFileChanged();
 		return this.dataset;
 	}
 
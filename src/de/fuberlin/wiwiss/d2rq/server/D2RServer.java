@@ -60,6 +60,11 @@ public class D2RServer {
 	/** the dataset, auto-reloadable in case of local mapping files */
 	private AutoReloadableDataset dataset;
 
+	/** request counts and latencies, for the metrics servlet */
+	private final RequestMetrics metrics = new RequestMetrics();
+
+	/** rendered documents of the web interface, cleared on reload */
+	private ResponseCache responseCache;
 	
 	public void putIntoServletContext(ServletContext context) {
 		context.setAttribute(SERVER_INSTANCE, this);
@@ -192,19 +197,12 @@ public class D2RServer {
 	}
 
 	/**
-	 * @return The graph currently in use; will change to a new instance on auto-reload
+	 * @return The graph of the current request; will change to a new instance on auto-reload
 	 */
 	public GraphD2RQ currentGraph() {
 		return (GraphD2RQ) this.dataset.asDatasetGraph().getDefaultGraph();
 	}
 	
-	/**
-	 * delegate to auto-reloadable dataset, will reload if necessary
-	 */
-	public void checkMappingFileChanged() {
-		dataset.checkMappingFileChanged();
-	}
-	
 	/** 
 	 * delegate to auto-reloadable dataset	 * 
 	 * @return prefix mappings for the d2rq base graph
@@ -217,6 +215,8 @@ public class D2RServer {
 		log.info("using config file: " + configFile);
 		this.config = new ConfigLoader(configFile);
 		this.config.load();
+		this.responseCache = new ResponseCache(
+				config.getResponseCacheMaxBytes(), config.getResponseCacheTimeToLive());
 		
 		if (config.isLocalMappingFile())
 			this.dataset = new AutoReloadableDataset(config.getLocalMappingFilename(), true, this);
@@ -233,6 +233,8 @@ public class D2RServer {
 			log.info("Safe mode (launch using --fast to use all optimizations)");
 		}
 		
+		this.dataset.startWatching();
+		
 		DescribeHandlerRegistry.get().clear();
 		DescribeHandlerRegistry.get().add(new FindDescribeHandlerFactory());
 
@@ -240,6 +242,15 @@ public class D2RServer {
 				createJosekiServiceRegistry());
 	}
 	
+	/**
+	 * Stops watching the mapping file and closes the database connections.
+	 */
+	public void shutdown() {
+		if (this.dataset != null) {
+			this.dataset.close();
+		}
+	}
+	
 	protected ServiceRegistry createJosekiServiceRegistry() {
 		ServiceRegistry services = new ServiceRegistry();
 		Service service = new Service(new SPARQL(),
@@ -256,6 +267,14 @@ public class D2RServer {
 		}
 	}
 	
+	public RequestMetrics metrics() {
+		return metrics;
+	}
+	
+	public ResponseCache responseCache() {
+		return responseCache;
+	}
+	
 	public ConfigLoader getConfig() {
 		return config;
 	}
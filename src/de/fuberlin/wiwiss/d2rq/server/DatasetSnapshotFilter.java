@@ -0,0 +1,42 @@
+package de.fuberlin.wiwiss.d2rq.server;
+
+import java.io.IOException;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+
+/**
+ * Pins each request to the mapping that is current when the request
+ * starts, so that a mapping reload in the middle of the request
+ * does not affect it. See {@link AutoReloadableDataset}.
+ */
+public class DatasetSnapshotFilter implements Filter {
+	private ServletContext context;
+
+	public void init(FilterConfig config) {
+		this.context = config.getServletContext();
+	}
+
+	public void doFilter(ServletRequest request, ServletResponse response, 
+			FilterChain chain) throws IOException, ServletException {
+		D2RServer server = D2RServer.fromServletContext(context);
+		if (server == null || !server.dataset().beginRequest()) {
+			chain.doFilter(request, response);
+			return;
+		}
+		try {
+			chain.doFilter(request, response);
+		} finally {
+			server.dataset().endRequest();
+		}
+	}
+
+	public void destroy() {
+		this.context = null;
+	}
+}
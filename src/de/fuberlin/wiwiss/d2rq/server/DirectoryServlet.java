@@ -1,6 +1,8 @@
 package de.fuberlin.wiwiss.d2rq.server;
 
 import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.TreeMap;
@@ -13,12 +15,14 @@ import javax.servlet.http.HttpServletResponse;
 import org.apache.velocity.context.Context;
 
 import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
 import com.hp.hpl.jena.rdf.model.ResIterator;
 import com.hp.hpl.jena.rdf.model.Resource;
 import com.hp.hpl.jena.rdf.model.Statement;
 import com.hp.hpl.jena.vocabulary.RDFS;
 
 import de.fuberlin.wiwiss.d2rq.GraphD2RQ;
+import de.fuberlin.wiwiss.d2rq.find.ClassMapInventory;
 
 public class DirectoryServlet extends HttpServlet {
 
@@ -26,17 +30,24 @@ public class DirectoryServlet extends HttpServlet {
 	protected void doGet(HttpServletRequest request, HttpServletResponse response) 
 			throws ServletException, IOException {
 		D2RServer server = D2RServer.fromServletContext(getServletContext());
-		server.checkMappingFileChanged();
 		if (request.getPathInfo() == null) {
 			response.sendError(404);
 			return;
 		}
 		String classMapName = request.getPathInfo().substring(1);
-		Model resourceList = graphD2RQ().classMapInventory(classMapName);
-		if (resourceList == null) {
+		String after = request.getParameter("after");
+		if (after != null && !graphD2RQ().isValidClassMapKey(classMapName, after)) {
+			response.sendError(400, "Invalid value for parameter 'after'.");
+			return;
+		}
+		ClassMapInventory.Page page = graphD2RQ().classMapInventoryPage(
+				classMapName, after, ClassMapInventory.DEFAULT_PAGE_SIZE);
+		if (page == null) {
 			response.sendError(404, "Sorry, class map '" + classMapName + "' not found.");
 			return;
 		}
+		Model resourceList = ModelFactory.createDefaultModel();
+		resourceList.getGraph().getBulkUpdateHandler().add(page.triples());
 		Map resources = new TreeMap();
 		ResIterator subjects = resourceList.listSubjects();
 		while (subjects.hasNext()) {
@@ -57,13 +68,29 @@ public class DirectoryServlet extends HttpServlet {
 		}
 		VelocityWrapper velocity = new VelocityWrapper(this, request, response);
 		Context context = velocity.getContext();
-		context.put("rdf_link", server.baseURI() + "all/" + classMapName);
+		context.put("rdf_link", server.baseURI() + "all/" + classMapName + afterParam(after, "?"));
+		context.put("rdf_param_separator", (after == null) ? "?" : "&amp;");
+		if (page.nextKey() != null) {
+			context.put("next_link", server.baseURI() + "directory/" + classMapName 
+					+ afterParam(page.nextKey(), "?"));
+		}
 		context.put("classmap", classMapName);
 		context.put("classmap_links", classMapLinks);
 		context.put("resources", resources);
 		velocity.mergeTemplateXHTML("directory_page.vm");
 	}
 
+	private String afterParam(String after, String separator) {
+		if (after == null) {
+			return "";
+		}
+		try {
+			return separator + "after=" + URLEncoder.encode(after, "utf-8");
+		} catch (UnsupportedEncodingException ex) {
+			throw new RuntimeException(ex);
+		}
+	}
+
 	private GraphD2RQ graphD2RQ() {
 		return (GraphD2RQ) D2RServer.fromServletContext(getServletContext()).currentGraph();
 	}
@@ -1,19 +1,29 @@
 package de.fuberlin.wiwiss.d2rq.server;
 
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
 import com.hp.hpl.jena.rdf.model.Model;
-import com.hp.hpl.jena.rdf.model.ModelFactory;
-import com.hp.hpl.jena.rdf.model.NodeIterator;
-import com.hp.hpl.jena.rdf.model.Property;
-import com.hp.hpl.jena.rdf.model.RDFNode;
-import com.hp.hpl.jena.rdf.model.ResIterator;
 import com.hp.hpl.jena.rdf.model.Resource;
 import com.hp.hpl.jena.sparql.core.describe.DescribeHandler;
 import com.hp.hpl.jena.sparql.util.Context;
+import com.hp.hpl.jena.util.iterator.ExtendedIterator;
+import com.hp.hpl.jena.util.iterator.NullIterator;
 import com.hp.hpl.jena.vocabulary.RDFS;
 
+import de.fuberlin.wiwiss.d2rq.GraphD2RQ;
+import de.fuberlin.wiwiss.d2rq.find.DescribeQuery;
+
 /**
  * A custom {@link DescribeHandler} that returns the results of a two-way
- * find.
+ * find. The triples are added straight to the result model as they are
+ * read from the database, see {@link GraphD2RQ#describe(Node, boolean)}.
+ * If the dataset's graph is not a {@link GraphD2RQ}, a find is run for
+ * each triple pattern instead.
  * 
  * TODO Is this thread-safe? ARQ uses just a single instance of this class.
  * 
@@ -35,52 +45,68 @@ public class FindDescribeHandler implements DescribeHandler {
 	
 	public void describe(Resource resource) {
 		try {
-		Model description = ModelFactory.createDefaultModel();
-		Model seeAlsos = ModelFactory.createDefaultModel();
-		Model dataModel = server.dataset().getDefaultModel();
-		description.add(dataModel.listStatements(resource, null, (RDFNode) null));
-
-		if (!server.isVocabularyResource(resource) || server.getConfig().getVocabularyIncludeInstances()) {
-			description.add(dataModel.listStatements(null, null, resource));
-			description.add(dataModel.listStatements(null, (Property) resource.as(Property.class), (RDFNode) null));
-		}
-		ResIterator rit = description.listSubjects();
-		while (rit.hasNext()) {
-			addSeeAlsoStatement(rit.nextResource(), seeAlsos, resource.getURI());
-		}
-		rit.close();
-		NodeIterator nit = description.listObjects();
-		while (nit.hasNext()) {
-			addSeeAlsoStatement(nit.nextNode(), seeAlsos, resource.getURI());
+		Graph graph = server.dataset().getDefaultModel().getGraph();
+		boolean includeIncoming = !server.isVocabularyResource(resource)
+				|| server.getConfig().getVocabularyIncludeInstances();
+		Graph result = resultModel.getGraph();
+		Set seen = new HashSet();
+		seen.add(resource.asNode());
+		ExtendedIterator it = describe(graph, resource.asNode(), includeIncoming);
+		try {
+			while (it.hasNext()) {
+				Triple t = (Triple) it.next();
+				result.add(t);
+				if (seen.add(t.getSubject())) {
+					addSeeAlsoStatement(t.getSubject(), result);
+				}
+				if (seen.add(t.getObject())) {
+					addSeeAlsoStatement(t.getObject(), result);
+				}
+			}
+		} finally {
+			it.close();
 		}
-		nit.close();
-		resultModel.add(description);
-		resultModel.add(seeAlsos);
 		} catch (RuntimeException ex) {
 			ex.printStackTrace(System.out);
 			throw ex;
 		}
 	}
 
+	/**
+	 * Uses {@link GraphD2RQ#describe(Node, boolean)} if possible, and
+	 * otherwise a find for each of the {@link DescribeQuery#triplePatterns(Node, boolean)}
+	 */
+	private ExtendedIterator describe(Graph graph, Node node, boolean includeIncoming) {
+		if (graph instanceof GraphD2RQ) {
+			return ((GraphD2RQ) graph).describe(node, includeIncoming);
+		}
+		ExtendedIterator result = NullIterator.instance();
+		Iterator it = DescribeQuery.triplePatterns(node, includeIncoming).iterator();
+		while (it.hasNext()) {
+			result = result.andThen(graph.find((Triple) it.next()));
+		}
+		return result;
+	}
+
 	public void finish() {
 		// do nothing
 	}
 
-	private void addSeeAlsoStatement(RDFNode n, Model m, String currentResourceURI) {
-		if (!n.isURIResource()) {
-			return;
-		}
-		String resourceURI = n.asNode().getURI();
-		if (currentResourceURI.equals(resourceURI)) {
-			// Don't add seeAlso for the current resource pointing to its own description 
+	/**
+	 * Adds an rdfs:seeAlso link to the graph that describes a node.
+	 * The described resource itself must not be passed in; it doesn't
+	 * need a link to its own description.
+	 */
+	private void addSeeAlsoStatement(Node n, Graph g) {
+		if (!n.isURI()) {
 			return;
 		}
+		String resourceURI = n.getURI();
 		if (resourceURI.startsWith(server.baseURI())) {
 			// Don't add seeAlso for dereferenceable URIs
 			return;
 		}
 		String seeAlsoURI = server.graphURLDescribingResource(resourceURI);
-		Resource nAsResource = m.getResource(resourceURI);
-		nAsResource.addProperty(RDFS.seeAlso, m.createResource(seeAlsoURI));
+		g.add(new Triple(n, RDFS.seeAlso.asNode(), Node.createURI(seeAlsoURI)));
 	}
 }
@@ -0,0 +1,56 @@
+package de.fuberlin.wiwiss.d2rq.server;
+
+import java.io.IOException;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * Records the time taken by each request in the server's
+ * {@link RequestMetrics}. The service name is taken from the
+ * servlet path, so <tt>/page/foo</tt> and <tt>/vocab/page/foo</tt>
+ * both count as <tt>page</tt>.
+ */
+public class MetricsFilter implements Filter {
+	private ServletContext context;
+
+	public void init(FilterConfig config) {
+		this.context = config.getServletContext();
+	}
+
+	public void doFilter(ServletRequest request, ServletResponse response, 
+			FilterChain chain) throws IOException, ServletException {
+		long start = System.nanoTime();
+		try {
+			chain.doFilter(request, response);
+		} finally {
+			D2RServer server = D2RServer.fromServletContext(context);
+			if (server != null && request instanceof HttpServletRequest) {
+				server.metrics().add(serviceName((HttpServletRequest) request), 
+						System.nanoTime() - start);
+			}
+		}
+	}
+
+	public void destroy() {
+		this.context = null;
+	}
+
+	private String serviceName(HttpServletRequest request) {
+		String path = request.getServletPath();
+		if (path.startsWith("/")) {
+			path = path.substring(1);
+		}
+		if (path.startsWith("vocab/")) {
+			path = path.substring("vocab/".length());
+		}
+		int slash = path.indexOf('/');
+		return (slash == -1) ? path : path.substring(0, slash);
+	}
+}
@@ -0,0 +1,108 @@
+package de.fuberlin.wiwiss.d2rq.server;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.Map.Entry;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import de.fuberlin.wiwiss.d2rq.CachingGraphD2RQ;
+import de.fuberlin.wiwiss.d2rq.GraphD2RQ;
+import de.fuberlin.wiwiss.d2rq.TripleCache;
+import de.fuberlin.wiwiss.d2rq.map.Database;
+import de.fuberlin.wiwiss.d2rq.sql.ConnectionPool;
+import de.fuberlin.wiwiss.d2rq.sql.ExecutionStatistics;
+import de.fuberlin.wiwiss.d2rq.sql.LatencyHistogram;
+import de.fuberlin.wiwiss.d2rq.sql.SlowQueryLog;
+
+/**
+ * Reports request latencies per service, SQL execution statistics,
+ * connection pool usage, plan cache hits and the slowest SQL queries
+ * as plain text,
+ * one <tt>name value</tt> pair per line. Only served if enabled
+ * with <tt>d2r:enableMetrics</tt> in the server configuration, as
+ * it shows query text.
+ */
+public class MetricsServlet extends HttpServlet {
+
+	protected void doGet(HttpServletRequest request, HttpServletResponse response) 
+			throws ServletException, IOException {
+		D2RServer server = D2RServer.fromServletContext(getServletContext());
+		if (!server.getConfig().getEnableMetrics()) {
+			response.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
+		response.setContentType("text/plain; charset=utf-8");
+		response.setHeader("Cache-Control", "no-cache");
+		PrintWriter out = response.getWriter();
+		out.println("# " + server.serverName() + " metrics at " + new Date());
+		out.println("uptime_seconds " + 
+				(System.currentTimeMillis() - server.metrics().startTime()) / 1000);
+		Iterator it = server.metrics().services().entrySet().iterator();
+		while (it.hasNext()) {
+			Entry entry = (Entry) it.next();
+			printHistogram(out, "requests." + entry.getKey(), (LatencyHistogram) entry.getValue());
+		}
+		ExecutionStatistics sql = ExecutionStatistics.global();
+		printHistogram(out, "sql", sql.sqlLatency());
+		out.println("sql.rows " + sql.rows());
+		out.println("sql.fields " + sql.fields());
+		out.println("sql.discarded_rows " + sql.discardedRows());
+		out.println("sql.node_construction_ms " + sql.nodeConstructionMillis());
+		GraphD2RQ graph = server.currentGraph();
+		it = graph.getMapping().databases().iterator();
+		int i = 1;
+		while (it.hasNext()) {
+			ConnectionPool pool = ((Database) it.next()).connectedDB().pool();
+			out.println("pool." + i + ".size " + pool.size());
+			out.println("pool." + i + ".idle " + pool.idleCount());
+			out.println("pool." + i + ".in_use " + pool.inUseCount());
+			out.println("pool." + i + ".max " + pool.maxSize());
+			i++;
+		}
+		out.println("plans.cached " + graph.planCache().size());
+		out.println("plans.hits " + graph.planCache().hits());
+		out.println("plans.misses " + graph.planCache().misses());
+		out.println("plans.hit_rate " + graph.planCache().hitRate());
+		if (graph instanceof CachingGraphD2RQ) {
+			TripleCache cache = ((CachingGraphD2RQ) graph).cache();
+			out.println("cache.entries " + cache.size());
+			out.println("cache.triples " + cache.weight());
+			out.println("cache.hits " + cache.hits());
+			out.println("cache.misses " + cache.misses());
+			out.println("cache.evictions " + cache.evictions());
+		}
+		out.println();
+		out.println("# Slowest SQL queries");
+		it = sql.slowQueries().entries().iterator();
+		while (it.hasNext()) {
+			SlowQueryLog.Entry entry = (SlowQueryLog.Entry) it.next();
+			out.println("# " + entry.millis() + "ms, " + entry.rows() + " rows, at " + new Date(entry.time()));
+			out.println("#   SQL: " + singleLine(entry.sql()));
+			if (entry.origin() != null) {
+				out.println("#   From: " + singleLine(entry.origin()));
+			}
+		}
+		out.flush();
+	}
+
+	private void printHistogram(PrintWriter out, String name, LatencyHistogram histogram) {
+		out.println(name + ".count " + histogram.count());
+		out.println(name + ".total_ms " + histogram.totalMillis());
+		out.println(name + ".p50_ms " + histogram.percentileMillis(50));
+		out.println(name + ".p90_ms " + histogram.percentileMillis(90));
+		out.println(name + ".p99_ms " + histogram.percentileMillis(99));
+		out.println(name + ".max_ms " + histogram.maxMillis());
+	}
+
+	private String singleLine(String s) {
+		return s.replaceAll("\\s+", " ").trim();
+	}
+
+	private static final long serialVersionUID = -4409478405766339536L;
+}
@@ -1,15 +1,23 @@
 package de.fuberlin.wiwiss.d2rq.server;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Iterator;
 
 import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import com.hp.hpl.jena.graph.Triple;
 import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
 import com.hp.hpl.jena.rdf.model.RDFWriter;
 import com.hp.hpl.jena.shared.JenaException;
+import com.hp.hpl.jena.shared.PrefixMapping;
+import com.hp.hpl.jena.util.iterator.ExtendedIterator;
 
 import de.fuberlin.wiwiss.pubby.negotiation.ContentTypeNegotiator;
 import de.fuberlin.wiwiss.pubby.negotiation.MediaRangeSpec;
@@ -25,6 +33,72 @@ import de.fuberlin.wiwiss.pubby.negotiation.PubbyNegotiator;
  * @version $Id: ModelResponse.java,v 1.1 2008/09/01 11:35:07 cyganiak Exp $
  */
 public class ModelResponse {
+
+	/**
+	 * Negotiates the media type for a request, taking an
+	 * <tt>?output=format</tt> request parameter into account.
+	 * @return The media type, or <tt>null</tt> if none of the
+	 * 		supported formats is acceptable
+	 */
+	public static String negotiateMediaType(HttpServletRequest request) {
+		String accept = new RequestParamHandler(request).getRequestedMediaType();
+		if (accept == null) {
+			accept = request.getHeader("Accept");
+		}
+		MediaRangeSpec bestMatch = PubbyNegotiator.getDataNegotiator().getBestMatch(
+				accept, request.getHeader("User-Agent"));
+		return (bestMatch == null) ? null : bestMatch.getMediaType();
+	}
+
+	/**
+	 * Serializes a model in one of the media types returned
+	 * by {@link #negotiateMediaType(HttpServletRequest)}.
+	 */
+	public static byte[] render(Model model, String mediaType) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		getWriter(mediaType).write(model, out);
+		return out.toByteArray();
+	}
+
+	/**
+	 * Sends triples from an iterator without collecting them into a
+	 * model, if the media type allows it (see {@link TripleStreamWriter}).
+	 * Other formats are written from a model as usual. The iterator
+	 * is closed.
+	 */
+	public static void stream(Iterator triples, PrefixMapping prefixes, 
+			String mediaType, HttpServletResponse response) throws IOException {
+		response.setContentType(mediaType);
+		if (TripleStreamWriter.canStream(mediaType)) {
+			TripleStreamWriter writer = new TripleStreamWriter(
+					response.getOutputStream(), mediaType, prefixes);
+			writer.write(triples);
+			writer.flush();
+			return;
+		}
+		Model model = ModelFactory.createDefaultModel();
+		model.setNsPrefixes(prefixes);
+		try {
+			while (triples.hasNext()) {
+				model.getGraph().add((Triple) triples.next());
+			}
+		} finally {
+			if (triples instanceof ExtendedIterator) {
+				((ExtendedIterator) triples).close();
+			}
+		}
+		getWriter(mediaType).write(model, response.getOutputStream());
+		response.getOutputStream().flush();
+	}
+
+	public static void sendNotAcceptable(HttpServletResponse response) throws IOException {
+		response.setStatus(406);
+		response.setContentType("text/plain");
+		ServletOutputStream out = response.getOutputStream();
+		out.println("406 Not Acceptable: The requested data format is not supported.");
+		out.println("Supported formats are RDF/XML, Turtle, N3, and N-Triples.");
+	}
+
 	private final Model model;
 	private final HttpServletRequest request;
 	private final HttpServletResponse response;
@@ -66,19 +140,15 @@ public class ModelResponse {
 		MediaRangeSpec bestMatch = negotiator.getBestMatch(
 				request.getHeader("Accept"), request.getHeader("User-Agent"));
 		if (bestMatch == null) {
-			response.setStatus(406);
-			response.setContentType("text/plain");
-			ServletOutputStream out = response.getOutputStream();
-			out.println("406 Not Acceptable: The requested data format is not supported.");
-			out.println("Supported formats are RDF/XML, Turtle, N3, and N-Triples.");
+			sendNotAcceptable(response);
 			return;
 		}
 		response.setContentType(bestMatch.getMediaType());
-		getWriter(bestMatch.getMediaType()).write(model, response);
+		getWriter(bestMatch.getMediaType()).write(model, response.getOutputStream());
 		response.getOutputStream().flush();
     }
 	
-	private ModelWriter getWriter(String mediaType) {
+	private static ModelWriter getWriter(String mediaType) {
 		if ("application/rdf+xml".equals(mediaType)) {
 			return new RDFXMLWriter();
 		}
@@ -92,29 +162,30 @@ public class ModelResponse {
 	}
 	
 	private interface ModelWriter {
-		void write(Model model, HttpServletResponse response) throws IOException;
+		void write(Model model, OutputStream out) throws IOException;
 	}
 	
-	private class NTriplesWriter implements ModelWriter {
-		public void write(Model model, HttpServletResponse response) throws IOException {
-			model.getWriter("N-TRIPLES").write(model, response.getOutputStream(), null);
+	private static class NTriplesWriter implements ModelWriter {
+		public void write(Model model, OutputStream out) throws IOException {
+			model.getWriter("N-TRIPLES").write(model, out, null);
 		}
 	}
 	
-	private class N3Writer implements ModelWriter {
-		public void write(Model model, HttpServletResponse response) throws IOException {
-			model.getWriter("N3").write(model, response.getOutputStream(), null);
+	private static class N3Writer implements ModelWriter {
+		public void write(Model model, OutputStream out) throws IOException {
+			model.getWriter("N3").write(model, out, null);
 		}
 	}
 	
-	private class RDFXMLWriter implements ModelWriter {
-		public void write(Model model, HttpServletResponse response) throws IOException {
+	private static class RDFXMLWriter implements ModelWriter {
+		public void write(Model model, OutputStream out) throws IOException {
 			RDFWriter writer = model.getWriter("RDF/XML-ABBREV");
 			writer.setProperty("showXmlDeclaration", "true");
 			// From Joseki -- workaround for the j.cook.up bug.
 			writer.setProperty("blockRules", "propertyAttr");
-			writer.write(model, 
-					new OutputStreamWriter(response.getOutputStream(), "utf-8"), null);
+			Writer w = new OutputStreamWriter(out, "utf-8");
+			writer.write(model, w, null);
+			w.flush();
 		}
 	}
 }
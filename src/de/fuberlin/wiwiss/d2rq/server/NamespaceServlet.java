@@ -15,7 +15,6 @@ public class NamespaceServlet extends HttpServlet {
 	protected void doGet(HttpServletRequest request, HttpServletResponse response) 
 			throws ServletException, IOException {
 		D2RServer d2r = D2RServer.fromServletContext(getServletContext());
-		d2r.checkMappingFileChanged();
 		response.setContentType("text/javascript");
 		ServletOutputStream out = response.getOutputStream();
 		d2r.getPrefixes().getNsPrefixMap();
@@ -31,7 +31,6 @@ public class PageServlet extends HttpServlet {
 	public void doGet(HttpServletRequest request,
 			HttpServletResponse response) throws IOException, ServletException {
 		D2RServer server = D2RServer.fromServletContext(getServletContext());
-		server.checkMappingFileChanged();
 		String relativeResourceURI = request.getRequestURI().substring(
 				request.getContextPath().length() + request.getServletPath().length());
 		// Some servlet containers keep the leading slash, some don't
@@ -50,12 +49,30 @@ public class PageServlet extends HttpServlet {
 		
 		String resourceURI = server.resourceBaseURI(serviceStem) + relativeResourceURI;
 		String documentURL = server.dataURL(serviceStem, relativeResourceURI);
+		String pageURL = server.pageURL(serviceStem, relativeResourceURI);
 
+		String mediaType = VelocityWrapper.negotiateXHTMLMediaType(request);
+		ResponseCache.Entry page = server.responseCache().get(pageURL, mediaType);
+		if (page == null) {
+			byte[] content = render(server, serviceStem, relativeResourceURI, 
+					resourceURI, documentURL, request, response);
+			if (content == null) {
+				response.sendError(404);
+				return;
+			}
+			page = server.responseCache().put(pageURL, mediaType, content);
+		}
+		response.addHeader("Vary", "Accept, User-Agent");
+		page.serve(request, response);
+	}
+
+	private byte[] render(D2RServer server, String serviceStem, String relativeResourceURI, 
+			String resourceURI, String documentURL, 
+			HttpServletRequest request, HttpServletResponse response) {
 		String sparqlQuery = "DESCRIBE <" + resourceURI + ">";
 		Model description = QueryExecutionFactory.create(sparqlQuery, server.dataset()).execDescribe();			
 		if (description.size() == 0) {
-			response.sendError(404);
-			return;
+			return null;
 		}
 		
 		this.prefixes = server.getPrefixes(); // model();
@@ -95,7 +112,7 @@ public class PageServlet extends HttpServlet {
 		context.put("label", resource.getProperty(RDFS.label));
 		context.put("properties", collectProperties(description, resource));
 		context.put("classmap_links", classmapLinks(resource));
-		velocity.mergeTemplateXHTML("resource_page.vm");
+		return velocity.mergeTemplate("resource_page.vm");
 	}
 
 	private Collection collectProperties(Model m, Resource r) {
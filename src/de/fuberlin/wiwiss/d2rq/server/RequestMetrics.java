@@ -0,0 +1,47 @@
+package de.fuberlin.wiwiss.d2rq.server;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import de.fuberlin.wiwiss.d2rq.sql.LatencyHistogram;
+
+/**
+ * Request counts and latencies of the D2R Server services,
+ * such as <tt>sparql</tt>, <tt>resource</tt> or <tt>page</tt>.
+ */
+public class RequestMetrics {
+	private final long startTime = System.currentTimeMillis();
+	private final Map services = new TreeMap();
+
+	/**
+	 * @param service Name of the service that handled the request
+	 * @param nanos Time spent on the request
+	 */
+	public void add(String service, long nanos) {
+		histogram(service).add(nanos);
+	}
+
+	/**
+	 * @return A map from service names to {@link LatencyHistogram}s
+	 */
+	public synchronized Map services() {
+		return new TreeMap(services);
+	}
+
+	/**
+	 * @return Time when the server was started, as returned by
+	 * 		{@link System#currentTimeMillis()}
+	 */
+	public long startTime() {
+		return startTime;
+	}
+
+	private synchronized LatencyHistogram histogram(String service) {
+		LatencyHistogram result = (LatencyHistogram) services.get(service);
+		if (result == null) {
+			result = new LatencyHistogram();
+			services.put(service, result);
+		}
+		return result;
+	}
+}
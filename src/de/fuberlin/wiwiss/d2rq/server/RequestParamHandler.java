@@ -66,6 +66,17 @@ public class RequestParamHandler {
 		return requestedType != null;
 	}
 
+	/**
+	 * @return The media type requested through the parameter, or
+	 * 		<tt>null</tt> if this is not a matching request
+	 */
+	public String getRequestedMediaType() {
+		if (!isMatchingRequest()) {
+			return null;
+		}
+		return (String) mimeTypes.get(requestedType);
+	}
+
 	public HttpServletRequest getModifiedRequest() {
 		return new WrappedRequest();
 	}
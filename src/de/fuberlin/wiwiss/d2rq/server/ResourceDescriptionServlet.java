@@ -19,7 +19,6 @@ public class ResourceDescriptionServlet extends HttpServlet {
 	
 	protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException {
 		D2RServer server = D2RServer.fromServletContext(getServletContext());
-		server.checkMappingFileChanged();
 		String relativeResourceURI = request.getRequestURI().substring(
 				request.getContextPath().length() + request.getServletPath().length());
 		// Some servlet containers keep the leading slash, some don't
@@ -40,11 +39,33 @@ public class ResourceDescriptionServlet extends HttpServlet {
 				server.resourceBaseURI(serviceStem) + relativeResourceURI);
 		String documentURL = server.dataURL(serviceStem, relativeResourceURI);
 
+		String mediaType = ModelResponse.negotiateMediaType(request);
+		if (mediaType == null) {
+			ModelResponse.sendNotAcceptable(response);
+			return;
+		}
+		ResponseCache.Entry document = server.responseCache().get(documentURL, mediaType);
+		if (document == null) {
+			Model description = describe(server, resourceURI, documentURL, request, response);
+			if (description == null) {
+				response.sendError(404);
+				return;
+			}
+			// TODO: Add a Content-Location header
+			document = server.responseCache().put(documentURL, mediaType, 
+					ModelResponse.render(description, mediaType));
+		}
+		response.addHeader("Vary", "Accept");
+		document.serve(request, response);
+	}
+
+	private Model describe(D2RServer server, String resourceURI, String documentURL, 
+			HttpServletRequest request, HttpServletResponse response) {
 		String sparqlQuery = "DESCRIBE <" + resourceURI + ">";
 		Model description = QueryExecutionFactory.create(sparqlQuery, server.dataset()).execDescribe();	
 			
 		if (description.size() == 0) {
-			response.sendError(404);
+			return null;
 		}
 		if (description.qnameFor(FOAF.primaryTopic.getURI()) == null
 				&& description.getNsPrefixURI("foaf") == null) {
@@ -65,10 +86,7 @@ public class ResourceDescriptionServlet extends HttpServlet {
 		mc.setSparqlQuery(sparqlQuery);
 
 		description.add(mc.addMetadataFromTemplate(description.createResource(resourceURI), getServletContext()));
-				
-// TODO: Add a Content-Location header
-		new ModelResponse(description, request, response).serve();
-//		Resource resource = description.getResource(resourceURI);
+		return description;
 	}
 
 	private static final long serialVersionUID = -4898674928803998210L;
@@ -0,0 +1,208 @@
+package de.fuberlin.wiwiss.d2rq.server;
+
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.StringTokenizer;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Keeps the rendered documents of the resource, data, page and
+ * directory services, so that repeated requests for the same
+ * document do not run the SQL queries and templates again.
+ * Documents are keyed by URI and negotiated media type.
+ *
+ * The cache holds documents up to a total number of bytes, and drops
+ * the least recently used ones when it is full. Documents expire
+ * after a fixed time, because the database may change without
+ * the server noticing. The whole cache is cleared when the mapping
+ * is reloaded. A size of 0 disables the cache, but documents still
+ * get an ETag and conditional requests are still answered with
+ * <tt>304 Not Modified</tt>.
+ *
+ * Clients are told to revalidate every time, so that they see changes
+ * to the database as soon as the server does.
+ */
+public class ResponseCache {
+	private final long maxBytes;
+	private final long timeToLiveMillis;
+	private final LinkedHashMap entries = new LinkedHashMap(16, 0.75f, true);	// key => Entry, least recently used first
+	private long bytes = 0;
+
+	/**
+	 * @param maxBytes Maximum total size of the documents in the cache
+	 * @param timeToLiveSeconds Time until a document expires
+	 */
+	public ResponseCache(long maxBytes, int timeToLiveSeconds) {
+		this.maxBytes = maxBytes;
+		this.timeToLiveMillis = timeToLiveSeconds * 1000L;
+	}
+
+	/**
+	 * @return The cached document, or <tt>null</tt> if there is no
+	 * 		document for the URI and media type, or if it has expired
+	 */
+	public synchronized Entry get(String uri, String mediaType) {
+		String key = key(uri, mediaType);
+		Entry result = (Entry) entries.get(key);
+		if (result == null) return null;
+		if (result.isExpired()) {
+			remove(key);
+			return null;
+		}
+		return result;
+	}
+
+	/**
+	 * Adds a rendered document to the cache, replacing any earlier
+	 * document with the same URI and media type. The least recently
+	 * used documents are dropped to make room. A document that is
+	 * larger than the whole cache is not kept.
+	 * @param uri The URI of the document
+	 * @param mediaType The media type that was negotiated for the request,
+	 * 		and that is sent as the <tt>Content-Type</tt>
+	 * @param content The rendered document
+	 * @return An entry that can be served to the current request
+	 */
+	public synchronized Entry put(String uri, String mediaType, byte[] content) {
+		Entry result = new Entry(mediaType, content,
+				System.currentTimeMillis() + timeToLiveMillis);
+		String key = key(uri, mediaType);
+		remove(key);
+		if (content.length > maxBytes) return result;
+		Iterator it = entries.values().iterator();
+		while (bytes + content.length > maxBytes && it.hasNext()) {
+			bytes -= ((Entry) it.next()).content().length;
+			it.remove();
+		}
+		entries.put(key, result);
+		bytes += content.length;
+		return result;
+	}
+
+	/**
+	 * Removes all documents, e.g. because the mapping has changed.
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		bytes = 0;
+	}
+
+	/**
+	 * @return Number of documents in the cache
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * @return Total size of the documents in the cache
+	 */
+	public synchronized long bytes() {
+		return bytes;
+	}
+
+	private void remove(String key) {
+		Entry removed = (Entry) entries.remove(key);
+		if (removed != null) {
+			bytes -= removed.content().length;
+		}
+	}
+
+	private String key(String uri, String mediaType) {
+		return mediaType + " " + uri;
+	}
+
+	/**
+	 * A rendered document and its ETag.
+	 */
+	public static class Entry {
+		private final String mediaType;
+		private final byte[] content;
+		private final String etag;
+		private final long expires;
+
+		Entry(String mediaType, byte[] content, long expires) {
+			this.mediaType = mediaType;
+			this.content = content;
+			this.etag = "\"" + hash(content) + "\"";
+			this.expires = expires;
+		}
+
+		public String mediaType() {
+			return mediaType;
+		}
+
+		public byte[] content() {
+			return content;
+		}
+
+		/**
+		 * @return The ETag header value, a quoted hash of the content
+		 */
+		public String etag() {
+			return etag;
+		}
+
+		public boolean isExpired() {
+			return System.currentTimeMillis() >= expires;
+		}
+
+		/**
+		 * @return <tt>true</tt> if the request has an <tt>If-None-Match</tt>
+		 * 		header that lists this document's ETag
+		 */
+		public boolean isNotModified(HttpServletRequest request) {
+			String ifNoneMatch = request.getHeader("If-None-Match");
+			if (ifNoneMatch == null) return false;
+			StringTokenizer tokens = new StringTokenizer(ifNoneMatch, ",");
+			while (tokens.hasMoreTokens()) {
+				String tag = tokens.nextToken().trim();
+				if (tag.startsWith("W/")) {
+					tag = tag.substring(2);
+				}
+				if ("*".equals(tag) || etag.equals(tag)) return true;
+			}
+			return false;
+		}
+
+		/**
+		 * Sends the document, or a <tt>304 Not Modified</tt> response
+		 * if the client already has it. The <tt>Cache-Control</tt> header
+		 * lets clients keep the document, but they must ask with its
+		 * ETag before using it again.
+		 */
+		public void serve(HttpServletRequest request, HttpServletResponse response) throws IOException {
+			response.setHeader("ETag", etag);
+			response.setHeader("Cache-Control", "no-cache");
+			if (isNotModified(request)) {
+				response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+				return;
+			}
+			response.setContentType(mediaType);
+			response.setContentLength(content.length);
+			ServletOutputStream out = response.getOutputStream();
+			out.write(content);
+			out.flush();
+		}
+
+		private static String hash(byte[] content) {
+			try {
+				byte[] digest = MessageDigest.getInstance("MD5").digest(content);
+				StringBuffer result = new StringBuffer(digest.length * 2);
+				for (int i = 0; i < digest.length; i++) {
+					result.append(Character.forDigit((digest[i] >> 4) & 0xF, 16));
+					result.append(Character.forDigit(digest[i] & 0xF, 16));
+				}
+				return result.toString();
+			} catch (NoSuchAlgorithmException ex) {
+				throw new RuntimeException(ex);
+			}
+		}
+	}
+}
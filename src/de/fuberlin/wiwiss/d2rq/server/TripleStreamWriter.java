@@ -0,0 +1,162 @@
+package de.fuberlin.wiwiss.d2rq.server;
+
+import java.io.BufferedWriter;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.UnsupportedEncodingException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.impl.NTripleWriter;
+import com.hp.hpl.jena.shared.PrefixMapping;
+import com.hp.hpl.jena.util.iterator.ExtendedIterator;
+
+/**
+ * Writes triples as N-Triples or Turtle while they are read from an
+ * iterator, without collecting them into a Jena {@link Model} first.
+ * Memory use does not depend on the number of triples, and the first
+ * triples go out before the last ones have been read from the database.
+ *
+ * Turtle output starts with the <tt>@prefix</tt> declarations and then
+ * has one triple per line, abbreviating URIs to prefixed names where
+ * possible. It is also used for N3. Other formats, such as RDF/XML,
+ * need the whole model and are not supported here.
+ */
+public class TripleStreamWriter {
+	private static final int FLUSH_INTERVAL = 1000;
+	private static final Pattern PREFIX = Pattern.compile("([A-Za-z][A-Za-z0-9_\\-]*)?");
+	private static final Pattern LOCAL_NAME = Pattern.compile("[A-Za-z_][A-Za-z0-9_\\-]*");
+
+	/**
+	 * @param mediaType A media type returned by
+	 * 		{@link ModelResponse#negotiateMediaType(javax.servlet.http.HttpServletRequest)}
+	 * @return <tt>true</tt> if triples can be streamed in that media type
+	 */
+	public static boolean canStream(String mediaType) {
+		return "text/plain".equals(mediaType) || isTurtle(mediaType);
+	}
+
+	private static boolean isTurtle(String mediaType) {
+		return "application/x-turtle".equals(mediaType)
+				|| "text/rdf+n3;charset=utf-8".equals(mediaType);
+	}
+
+	private final PrintWriter writer;
+	private final PrefixMapping prefixes;
+	private int unflushed = 0;
+
+	/**
+	 * Writes the prefix declarations if the media type is Turtle or N3.
+	 * @param out The destination; is flushed, but not closed
+	 * @param mediaType A media type for which {@link #canStream(String)}
+	 * 		is <tt>true</tt>
+	 * @param prefixes Prefixes for abbreviating URIs in Turtle
+	 */
+	public TripleStreamWriter(OutputStream out, String mediaType, PrefixMapping prefixes) {
+		if (!canStream(mediaType)) {
+			throw new IllegalArgumentException("Can't stream " + mediaType);
+		}
+		try {
+			this.writer = new PrintWriter(new BufferedWriter(
+					new OutputStreamWriter(out, "utf-8"), 16 * 1024));
+		} catch (UnsupportedEncodingException ex) {
+			throw new RuntimeException("Can't happen -- utf-8 is always supported");
+		}
+		this.prefixes = isTurtle(mediaType) ? usablePrefixes(prefixes) : null;
+		if (this.prefixes != null) {
+			writePrefixes();
+		}
+	}
+
+	/**
+	 * Writes all triples from an iterator, and closes it if it is
+	 * an {@link ExtendedIterator}.
+	 */
+	public void write(Iterator triples) {
+		try {
+			while (triples.hasNext()) {
+				write((Triple) triples.next());
+			}
+		} finally {
+			if (triples instanceof ExtendedIterator) {
+				((ExtendedIterator) triples).close();
+			}
+		}
+	}
+
+	public void write(Triple t) {
+		writeNode(t.getSubject());
+		writer.write(' ');
+		writeNode(t.getPredicate());
+		writer.write(' ');
+		writeNode(t.getObject());
+		writer.write(" .\n");
+		if (++unflushed >= FLUSH_INTERVAL) {
+			flush();
+		}
+	}
+
+	/**
+	 * Sends everything written so far to the output stream.
+	 */
+	public void flush() {
+		writer.flush();
+		unflushed = 0;
+	}
+
+	private void writePrefixes() {
+		Iterator it = new TreeMap(prefixes.getNsPrefixMap()).entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry entry = (Map.Entry) it.next();
+			writer.write("@prefix " + entry.getKey() + ": <" + entry.getValue() + "> .\n");
+		}
+		writer.write('\n');
+	}
+
+	private void writeNode(Node node) {
+		if (prefixes != null && node.isURI()) {
+			String qname = prefixes.shortForm(node.getURI());
+			int colon = qname.indexOf(':');
+			if (colon != -1 && !qname.equals(node.getURI())
+					&& LOCAL_NAME.matcher(qname.substring(colon + 1)).matches()) {
+				writer.write(qname);
+				return;
+			}
+		}
+		NodeWriter.writeNode(node, writer);
+	}
+
+	/**
+	 * @return The prefixes whose names can be used in Turtle
+	 */
+	private PrefixMapping usablePrefixes(PrefixMapping prefixes) {
+		PrefixMapping result = PrefixMapping.Factory.create();
+		Iterator it = prefixes.getNsPrefixMap().entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry entry = (Map.Entry) it.next();
+			String prefix = (String) entry.getKey();
+			if (PREFIX.matcher(prefix).matches()) {
+				result.setNsPrefix(prefix, (String) entry.getValue());
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Gives access to the node formatting of Jena's N-Triples writer.
+	 * Its output is valid in Turtle as well.
+	 */
+	private static class NodeWriter extends NTripleWriter {
+		private static final Model model = ModelFactory.createDefaultModel();
+		static void writeNode(Node node, PrintWriter writer) {
+			writeNode(model.asRDFNode(node), writer);
+		}
+	}
+}
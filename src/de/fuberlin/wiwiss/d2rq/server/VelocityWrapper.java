@@ -1,5 +1,6 @@
 package de.fuberlin.wiwiss.d2rq.server;
 
+import java.io.StringWriter;
 import java.util.regex.Pattern;
 
 import javax.servlet.ServletContext;
@@ -39,6 +40,16 @@ public class VelocityWrapper {
 	}
 	
 	
+	/**
+	 * @return The media type, <tt>application/xhtml+xml</tt> or
+	 * 		<tt>text/html</tt>, to use for an XHTML page
+	 */
+	public static String negotiateXHTMLMediaType(HttpServletRequest request) {
+		MediaRangeSpec bestMatch = xhtmlNegotiator.getBestMatch(
+				request.getHeader("Accept"), request.getHeader("User-Agent"));
+		return bestMatch != null ? bestMatch.getMediaType() : TEXTHTML_CONTENTTYPE;
+	}
+	
 	public static synchronized void initEngine(D2RServer d2r, ServletContext servletContext) {
 		try {
 			VelocityEngine engine = new VelocityEngine(servletContext.getRealPath("/WEB-INF/velocity.properties"));
@@ -81,9 +92,7 @@ public class VelocityWrapper {
 	}
 
 	public void mergeTemplateXHTML(String templateName) {
-		MediaRangeSpec bestMatch = xhtmlNegotiator.getBestMatch(
-				request.getHeader("Accept"), request.getHeader("User-Agent"));
-		response.addHeader("Content-Type", bestMatch != null ? bestMatch.getMediaType() : TEXTHTML_CONTENTTYPE);
+		response.addHeader("Content-Type", negotiateXHTMLMediaType(request));
 		response.addHeader("Vary", "Accept, User-Agent");
 
 		response.addHeader("Cache-Control", "no-cache");
@@ -94,4 +103,18 @@ public class VelocityWrapper {
 			throw new RuntimeException(ex);
 		}
 	}
+
+	/**
+	 * Renders a template into a UTF-8 encoded byte array instead of
+	 * the response, so that the page can be kept in a {@link ResponseCache}.
+	 */
+	public byte[] mergeTemplate(String templateName) {
+		try {
+			StringWriter out = new StringWriter();
+			engine.mergeTemplate(templateName, context, out);
+			return out.toString().getBytes("utf-8");
+		} catch (Exception ex) {
+			throw new RuntimeException(ex);
+		}
+	}
 }
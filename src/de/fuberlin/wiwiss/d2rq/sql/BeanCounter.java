@@ -4,16 +4,21 @@ package de.fuberlin.wiwiss.d2rq.sql;
  * A class for capturing performance information.
  * We grant read/write access to instance variables.
  * 
- * TODO: Remove?
+ * @deprecated Snapshots of the global totals only; use
+ * 		{@link ExecutionStatistics} to find the work done by a single query
  * 
  * @author jgarbers
  * @version $Id: BeanCounter.java,v 1.2 2010/11/03 18:48:17 cyganiak Exp $
  */
 public class BeanCounter implements Cloneable {
     
-    // Static global state information to be copied into an instance with update(). 
+    // Static global state information to be copied into an instance with update().
+    // Kept in step with ExecutionStatistics.global().
+    /** @deprecated Use {@link ExecutionStatistics#sqlQueries()} on {@link ExecutionStatistics#global()} */
     public static int totalNumberOfExecutedSQLQueries = 0; 
+    /** @deprecated Use {@link ExecutionStatistics#rows()} on {@link ExecutionStatistics#global()} */
     public static int totalNumberOfReturnedRows = 0; 
+    /** @deprecated Use {@link ExecutionStatistics#fields()} on {@link ExecutionStatistics#global()} */
     public static int totalNumberOfReturnedFields = 0; 
        
     // instance fields corresponding to static fields
@@ -25,6 +30,15 @@ public class BeanCounter implements Cloneable {
    
     // Operations on instances
     
+    /**
+     * Called by {@link ExecutionStatistics#global()} for every SQL query.
+     */
+    static synchronized void addSQLQuery(long rowCount, long fieldCount) {
+    	   totalNumberOfExecutedSQLQueries++;
+    	   totalNumberOfReturnedRows+=rowCount;
+    	   totalNumberOfReturnedFields+=fieldCount;
+    }
+    
     /**
      * Updates the instance fields with current static values.
      */
@@ -2,6 +2,7 @@ package de.fuberlin.wiwiss.d2rq.sql;
 
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Types;
@@ -21,6 +22,7 @@ import de.fuberlin.wiwiss.d2rq.algebra.Attribute;
 import de.fuberlin.wiwiss.d2rq.algebra.RelationName;
 import de.fuberlin.wiwiss.d2rq.dbschema.ColumnType;
 import de.fuberlin.wiwiss.d2rq.dbschema.DatabaseSchemaInspector;
+import de.fuberlin.wiwiss.d2rq.dbschema.TableStatistics;
 import de.fuberlin.wiwiss.d2rq.map.Database;
  
 /**
@@ -75,6 +77,7 @@ public class ConnectedDB {
 	private Set timestampColumns;
 	private Connection connection = null;
 	private DatabaseSchemaInspector schemaInspector = null;
+	private TableStatistics tableStatistics = null;
 	
 	// Lazy initialization for these two -- use the getSyntax() and dbType() for access!
 	private String dbType = null;
@@ -85,56 +88,14 @@ public class ConnectedDB {
 	private Map zerofillCache = new HashMap(); // Attribute => Boolean
 	private Map uniqueIndexCache = new HashMap(); // RelationName => String => List of Strings
 	private final Properties connectionProperties;
-	private class KeepAliveAgent extends Thread {
-		private final int interval;
-		private final String query;
-		volatile boolean shutdown = false;
-		
-		/**
-		 * @param interval in seconds
-		 */
-		public KeepAliveAgent(int interval, String query) {
-			this.interval = interval;
-			this.query = query;
-		}
-		
-		public void run() {
-			Connection c;
-			Statement s = null;
-			while (!shutdown) {
-				try { Thread.sleep(interval*1000); }
-				catch (InterruptedException e) { if (shutdown) break; }
-				
-				try {
-					if (log.isDebugEnabled())
-						log.debug("Keep alive agent is executing noop query '" + query + "'...");
-					c = connection();
-					s = c.createStatement();
-					s.execute(query);
-					s.close();
-				} catch (Throwable e) { // may throw D2RQException at runtime
-					log.error("Keep alive connection test failed: " + e.getMessage());
-				} finally {
-					if (s != null) try { s.close(); } catch (Exception ignore) {}
-				}
-			}
-			
-			log.info("Keep alive agent terminated.");
-		}
-		
-		public void shutdown() {
-			shutdown = true;
-			keepAliveAgent.interrupt();
-		}
-	};
-	
-	private final Thread shutdownHook = new Thread() {
-		public void run() {
-			keepAliveAgent.shutdown();
-		}
-	};
-	
-	private final KeepAliveAgent keepAliveAgent;
+	private final int connectionPoolSize;
+	private final int connectionPoolTimeout;
+	private final int statementCacheSize;
+	private final int keepAliveInterval;
+	private final String keepAliveQuery;
+	private ConnectionPool pool = null;
+	private ThreadPool queryThreads = null;
+	private long connectionLastValidated;
 	
 	public ConnectedDB(String jdbcURL, String username, String password) {
 		this(jdbcURL, username, password, true,
@@ -145,6 +106,16 @@ public class ConnectedDB {
 	public ConnectedDB(String jdbcURL, String username, String password,
 			boolean allowDistinct, Set textColumns, Set numericColumns, Set dateColumns,
 			Set timestampColumns, int limit, int fetchSize, Properties connectionProperties) {
+		this(jdbcURL, username, password, allowDistinct, textColumns, numericColumns,
+				dateColumns, timestampColumns, limit, fetchSize, connectionProperties,
+				Database.DEFAULT_CONNECTION_POOL_SIZE, Database.DEFAULT_CONNECTION_POOL_TIMEOUT,
+				Database.DEFAULT_STATEMENT_CACHE_SIZE);
+	}
+	
+	public ConnectedDB(String jdbcURL, String username, String password,
+			boolean allowDistinct, Set textColumns, Set numericColumns, Set dateColumns,
+			Set timestampColumns, int limit, int fetchSize, Properties connectionProperties,
+			int connectionPoolSize, int connectionPoolTimeout, int statementCacheSize) {
 		this.jdbcURL = jdbcURL;
 		this.allowDistinct = allowDistinct;
 		this.username = username;
@@ -157,7 +128,11 @@ public class ConnectedDB {
 		this.fetchSize = fetchSize;
 		this.connectionProperties = connectionProperties;
 		
-		// create keep alive agent if enabled
+		this.connectionPoolSize = connectionPoolSize;
+		this.connectionPoolTimeout = connectionPoolTimeout;
+		this.statementCacheSize = statementCacheSize;
+		
+		// validate idle connections if keep alive is enabled
 		if (connectionProperties != null && connectionProperties.containsKey(KEEP_ALIVE_PROPERTY)) {
 			int interval = DEFAULT_KEEP_ALIVE_INTERVAL;
 			String query = DEFAULT_KEEP_ALIVE_QUERY;
@@ -167,22 +142,143 @@ public class ConnectedDB {
 			} catch (NumberFormatException ignore) {	} // use default
 			if (connectionProperties.containsKey(KEEP_ALIVE_QUERY_PROPERTY))
 				query = connectionProperties.getProperty(KEEP_ALIVE_QUERY_PROPERTY);
-			
-			this.keepAliveAgent = new KeepAliveAgent(interval, query);
-			this.keepAliveAgent.start();
-			Runtime.getRuntime().addShutdownHook(shutdownHook);
-			log.info("Keep alive agent is enabled (interval: " + interval + " seconds, noop query: '" + query + "').");
-		} else
-			this.keepAliveAgent = null;
+			this.keepAliveInterval = interval;
+			this.keepAliveQuery = query;
+			log.info("Keep alive is enabled (idle connections are validated after " + interval + " seconds, noop query: '" + query + "').");
+		} else {
+			this.keepAliveInterval = ConnectionPool.NO_VALIDATION;
+			this.keepAliveQuery = null;
+		}
 	}
 	
-	public Connection connection() {
+	/**
+	 * Returns a connection that is shared by all users of this database.
+	 * It is used for schema inspection and other metadata access.
+	 * For executing queries, use {@link #checkOutConnection()} instead.
+	 */
+	public synchronized Connection connection() {
+		if (this.connection != null && keepAliveInterval != ConnectionPool.NO_VALIDATION
+				&& System.currentTimeMillis() - connectionLastValidated > keepAliveInterval * 1000L) {
+			if (!ConnectionPool.isValid(this.connection, keepAliveQuery)) {
+				try { this.connection.close(); } catch (SQLException ignore) {}
+				this.connection = null;
+				this.schemaInspector = null;
+			}
+			this.connectionLastValidated = System.currentTimeMillis();
+		}
 		if (this.connection == null) {
-			connect();
+			this.connection = openConnection();
+			this.connectionLastValidated = System.currentTimeMillis();
+			initializeConnection(this.connection);
 		}
 		return this.connection;
 	}
 	
+	/**
+	 * Takes a connection from the connection pool for the use of the
+	 * calling thread. A thread that holds a connection already gets the
+	 * same one again. The pool is bounded by the <tt>d2rq:connectionPoolSize</tt>
+	 * setting; if all connections are in use, this method waits up to
+	 * <tt>d2rq:connectionPoolTimeout</tt> seconds for one to be returned.
+	 * Every connection obtained here must be handed back through
+	 * {@link #returnConnection(Connection)}.
+	 * 
+	 * @return A connection
+	 * @throws D2RQException on connection failure or timeout
+	 * @see ConnectionPool
+	 */
+	public Connection checkOutConnection() {
+		return pool().checkOut();
+	}
+	
+	/**
+	 * Like {@link #checkOutConnection()}, but the connection is reclaimed
+	 * if the owner is garbage collected before it is returned through
+	 * {@link #returnConnection(Connection, Object)}.
+	 */
+	public Connection checkOutConnection(Object owner) {
+		return pool().checkOut(owner);
+	}
+	
+	/**
+	 * Like {@link #checkOutConnection()}, but doesn't wait.
+	 * @return A connection, or <tt>null</tt> if all are in use
+	 */
+	public Connection tryCheckOutConnection() {
+		return pool().tryCheckOut();
+	}
+	
+	/**
+	 * Returns a connection obtained from {@link #checkOutConnection()}
+	 * or {@link #tryCheckOutConnection()} to the connection pool.
+	 */
+	public void returnConnection(Connection connection) {
+		pool().checkIn(connection);
+	}
+	
+	/**
+	 * Returns a connection obtained from {@link #checkOutConnection(Object)}
+	 * to the connection pool.
+	 */
+	public void returnConnection(Connection connection, Object owner) {
+		pool().checkIn(connection, owner);
+	}
+	
+	/**
+	 * @return <tt>true</tt> if queries should be executed as prepared
+	 * 		statements with bind parameters
+	 * @see #prepareStatement(Connection, String)
+	 */
+	public boolean usePreparedStatements() {
+		return this.statementCacheSize > 0;
+	}
+	
+	/**
+	 * Prepares a statement on a connection obtained from
+	 * {@link #checkOutConnection()}. Statements are cached per connection,
+	 * so repeated queries with the same SQL text are parsed only once.
+	 * The returned statement must not be closed by the caller, but
+	 * handed back through {@link #releaseStatement(Connection, PreparedStatement)}.
+	 */
+	public PreparedStatement prepareStatement(Connection connection, String sql) throws SQLException {
+		return pool().statementCache(connection).prepare(sql);
+	}
+	
+	/**
+	 * Hands back a statement obtained from {@link #prepareStatement(Connection, String)}
+	 * before the connection is returned.
+	 */
+	public void releaseStatement(Connection connection, PreparedStatement statement) {
+		pool().statementCache(connection).release(statement);
+	}
+	
+	/**
+	 * @return The pool that hands out connections for query execution
+	 */
+	public synchronized ConnectionPool pool() {
+		if (this.pool == null) {
+			this.pool = new ConnectionPool(connectionPoolSize, connectionPoolTimeout,
+					keepAliveInterval, keepAliveQuery, statementCacheSize) {
+				protected Connection createConnection() {
+					return connect();
+				}
+			};
+		}
+		return this.pool;
+	}
+	
+	/**
+	 * @return The threads that run SQL queries at the same time, see
+	 * 		{@link de.fuberlin.wiwiss.d2rq.find.ParallelIterator}. There are
+	 * 		never more of them than connections in the pool.
+	 */
+	public synchronized ThreadPool queryThreads() {
+		if (this.queryThreads == null) {
+			this.queryThreads = new ThreadPool(connectionPoolSize, "D2RQ parallel query");
+		}
+		return this.queryThreads;
+	}
+	
 	public int limit() {
 		return this.limit;
 	}
@@ -191,30 +287,40 @@ public class ConnectedDB {
 		return this.fetchSize;
 	}
 
-	private void connect() {
+	private Connection connect() {
+		Connection result = openConnection();
+		initializeConnection(result);
+		return result;
+	}
+	
+	private Connection openConnection() {
 		try {
-			this.connection = DriverManager.getConnection(this.jdbcURL, getConnectionProperties());
+			return DriverManager.getConnection(this.jdbcURL, getConnectionProperties());
 		} catch (SQLException ex) {
 			throw new D2RQException(
 					"Database connection to " + jdbcURL + " failed " +
 					"(user: " + username + "): " + ex.getMessage(), 
 					D2RQException.D2RQ_DB_CONNECTION_FAILED);
 		}
-		
-		/* Database-dependent initialization */
+	}
+	
+	/**
+	 * Database-dependent initialization of a new connection
+	 */
+	private void initializeConnection(Connection result) {
 		try {
 			/* 
 			 * Disable auto-commit in PostgreSQL to support cursors
 			 * @see http://jdbc.postgresql.org/documentation/83/query.html
 			 */
 			if (dbTypeIs(PostgreSQL))
-				this.connection.setAutoCommit(false);
+				result.setAutoCommit(false);
 						
 			/*
 			 * Set Oracle date formats 
 			 */
 			if (dbTypeIs(Oracle)) {
-				Statement stmt = this.connection.createStatement();
+				Statement stmt = result.createStatement();
 				try
 				{
 					stmt.execute(ORACLE_SET_DATE_FORMAT);
@@ -259,13 +365,27 @@ public class ConnectedDB {
 		return result;
 	}
 	
-	public DatabaseSchemaInspector schemaInspector() {
+	public synchronized DatabaseSchemaInspector schemaInspector() {
+		if (this.schemaInspector != null) {
+			connection(); // Drops the inspector if the connection had to be replaced
+		}
 		if (this.schemaInspector == null && this.jdbcURL != null) {
 			this.schemaInspector = new DatabaseSchemaInspector(this);
 		}
 		return this.schemaInspector;
 	}
 
+	/**
+	 * @return Row counts and distinct value counts of the tables,
+	 * 		for estimating the size of query results
+	 */
+	public synchronized TableStatistics tableStatistics() {
+		if (this.tableStatistics == null) {
+			this.tableStatistics = new TableStatistics(this);
+		}
+		return this.tableStatistics;
+	}
+
 	/**
      * Reports the brand of RDBMS.
      * Will currently report one of these constants:
@@ -308,7 +428,7 @@ public class ConnectedDB {
 		return connection().getMetaData().getDatabaseProductName();
 	}
 	
-	private void ensureDatabaseTypeInitialized() {
+	private synchronized void ensureDatabaseTypeInitialized() {
 		if (this.dbType != null) return;
 		try {
 			String productName = getDatabaseProductType().toLowerCase();
@@ -356,7 +476,11 @@ public class ConnectedDB {
     	if (this.timestampColumns.contains(column.qualifiedName())) {
     		return TIMESTAMP_COLUMN;
     	}
-		ColumnType type = schemaInspector().columnType(column);
+		ColumnType type;
+		synchronized (this) {
+			// The metadata connection is shared between threads
+			type = schemaInspector().columnType(column);
+		}
 		switch (type.typeId()) {
 			// TODO There are a bunch of others, see http://java.sun.com/j2se/1.5.0/docs/api/java/sql/Types.html
 			case Types.CHAR: return TEXT_COLUMN;
@@ -398,6 +522,46 @@ public class ConnectedDB {
 		}
 	}
 
+	/**
+	 * Tells if the values of a {@link #TEXT_COLUMN} are character strings.
+	 * Binary, CLOB and vendor-specific columns such as PostgreSQL's
+	 * <tt>uuid</tt> are also text columns, but some databases don't
+	 * compare them to a string that is bound as a <tt>VARCHAR</tt>.
+	 * @return <tt>true</tt> if the column is declared as
+	 * 		<tt>d2rq:textColumn</tt> or has a character type
+	 */
+	public boolean isCharacterColumn(Attribute column) {
+		if (this.textColumns.contains(column.qualifiedName())) {
+			return true;
+		}
+		if (columnType(column) != TEXT_COLUMN) {
+			return false;
+		}
+		ColumnType type;
+		synchronized (this) {
+			type = schemaInspector().columnType(column);
+		}
+		switch (type.typeId()) {
+			case Types.CHAR: return true;
+			case Types.VARCHAR: return true;
+			case ConnectedDB.SQL_TYPE_NVARCHAR: return true;
+			case Types.LONGVARCHAR: return true;
+			default: return "NVARCHAR2".equals(type.typeName());
+		}
+	}
+
+	/**
+	 * @return A <code>NULL</code> of the column's type, or <tt>null</tt>
+	 * 		if there is none, see {@link SQLSyntax#getNullExpression(int, String)}
+	 */
+	public String typedNull(Attribute column) {
+		ColumnType type;
+		synchronized (this) {
+			type = schemaInspector().columnType(column);
+		}
+		return getSyntax().getNullExpression(type.typeId(), type.typeName());
+	}
+
 	/**
 	 * <p>Checks if two columns are formatted by the database in a compatible
 	 * fashion.</p>
@@ -426,7 +590,7 @@ public class ConnectedDB {
 		return !isZerofillColumn(column1) && !isZerofillColumn(column2);
 	}
 	
-	private boolean isZerofillColumn(Attribute column) {
+	private synchronized boolean isZerofillColumn(Attribute column) {
 		if (!dbTypeIs(MySQL)) return false;
 		if (!zerofillCache.containsKey(column)) {
 			zerofillCache.put(column, 
@@ -435,7 +599,7 @@ public class ConnectedDB {
 		return ((Boolean) zerofillCache.get(column)).booleanValue();
 	}
 	
-	public HashMap getUniqueKeyColumns(RelationName tableName) {
+	public synchronized HashMap getUniqueKeyColumns(RelationName tableName) {
 		if (!uniqueIndexCache.containsKey(tableName) && schemaInspector() != null)
 			uniqueIndexCache.put(tableName, schemaInspector().uniqueColumns(tableName));
 		return (HashMap) uniqueIndexCache.get(tableName);
@@ -472,10 +636,10 @@ public class ConnectedDB {
 			}
 		} else if (columnType == ConnectedDB.DATE_COLUMN) {
 			// TODO: Acces requires "#2006-09-15#"
-			return "DATE '" + value + "'";
+			return "DATE " + singleQuote(value);
 		} else if (columnType == ConnectedDB.TIMESTAMP_COLUMN) {
 			// TODO: Acces requires "#2006-09-15 23:59:00#" (?)
-			return "TIMESTAMP '" + value + "'";
+			return "TIMESTAMP " + singleQuote(value);
 		}
 		return singleQuote(value);
 	}
@@ -527,9 +691,14 @@ public class ConnectedDB {
 	}
 
 	public void close() {
-		if (keepAliveAgent != null)
-			keepAliveAgent.shutdown();
-		
+		synchronized (this) {
+			if (queryThreads != null) {
+				queryThreads.close();
+			}
+			if (pool != null) {
+				pool.close();
+			}
+		}
 		if (connection != null) try {
 			this.connection.close();
 		} catch (SQLException ex) {
@@ -0,0 +1,481 @@
+package de.fuberlin.wiwiss.d2rq.sql;
+
+import java.lang.ref.WeakReference;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import de.fuberlin.wiwiss.d2rq.D2RQException;
+
+/**
+ * A bounded pool of JDBC connections to a single database.
+ * Connections are opened on demand until the maximum pool size
+ * is reached; after that, {@link #checkOut()} waits until another
+ * thread returns a connection through {@link #checkIn(Connection)}.
+ *
+ * A thread holds at most one connection. If it checks out again before
+ * returning the first one, e.g. for the right side of a bind join, it
+ * gets the same connection, which goes back to the pool when every
+ * check-out has been returned. So a query never waits for a connection
+ * that it holds itself. Threads that must not wait at all, like the
+ * workers of parallel queries, use {@link #tryCheckOut()}.
+ *
+ * The pool keeps track of the connections that are checked out.
+ * A connection is abandoned if its thread has died, or if all owners
+ * that checked it out through {@link #checkOut(Object)} have been
+ * garbage collected without returning it. When the pool is exhausted,
+ * abandoned connections are closed and their slots reused.
+ *
+ * Connections that have been sitting idle for longer than the
+ * validation interval are tested with a no-op query before being
+ * handed out again, and are replaced if the test fails. This
+ * takes the place of a periodic keep-alive thread.
+ *
+ * Each connection can have a {@link PreparedStatementCache} that lives
+ * as long as the connection stays in the pool.
+ *
+ * Subclasses must implement {@link #createConnection()} to open and
+ * initialize new connections.
+ */
+public abstract class ConnectionPool {
+	private static final Log log = LogFactory.getLog(ConnectionPool.class);
+
+	public static final int NO_VALIDATION = -1;
+
+	/**
+	 * How often a waiting {@link #checkOut()} looks for abandoned connections
+	 */
+	private static final long RECLAIM_INTERVAL_MILLIS = 1000;
+
+	private final int maxSize;
+	private final long timeoutMillis;
+	private final long validationIntervalMillis;
+	private final String validationQuery;
+	private final int statementCacheSize;
+	private final Map statementCaches = new IdentityHashMap(); // Connection => PreparedStatementCache
+	private final LinkedList idleConnections = new LinkedList(); // IdleConnections, most recently used first
+	private final Map leases = new IdentityHashMap(); // Connection => Lease
+	private final Map threadLeases = new HashMap(); // Thread => Lease
+	private int openConnections = 0;
+	private boolean closed = false;
+
+	/**
+	 * @param maxSize Maximum number of simultaneously open connections
+	 * @param timeout Seconds to wait for a free connection before giving up
+	 * @param validationInterval Seconds a connection may be idle before it
+	 * 		is validated, or {@link #NO_VALIDATION}
+	 * @param validationQuery SQL query used to validate idle connections
+	 */
+	public ConnectionPool(int maxSize, int timeout, int validationInterval, String validationQuery) {
+		this(maxSize, timeout, validationInterval, validationQuery, 0);
+	}
+
+	/**
+	 * @param maxSize Maximum number of simultaneously open connections
+	 * @param timeout Seconds to wait for a free connection before giving up
+	 * @param validationInterval Seconds a connection may be idle before it
+	 * 		is validated, or {@link #NO_VALIDATION}
+	 * @param validationQuery SQL query used to validate idle connections
+	 * @param statementCacheSize Number of prepared statements to keep per connection
+	 */
+	public ConnectionPool(int maxSize, int timeout, int validationInterval, String validationQuery,
+			int statementCacheSize) {
+		if (maxSize < 1) {
+			throw new IllegalArgumentException("Pool size must be at least 1: " + maxSize);
+		}
+		this.maxSize = maxSize;
+		this.timeoutMillis = timeout * 1000L;
+		this.validationIntervalMillis =
+			(validationInterval == NO_VALIDATION) ? NO_VALIDATION : validationInterval * 1000L;
+		this.validationQuery = validationQuery;
+		this.statementCacheSize = statementCacheSize;
+	}
+
+	/**
+	 * Opens and initializes a new connection.
+	 * @throws D2RQException if the connection cannot be established
+	 */
+	protected abstract Connection createConnection();
+
+	/**
+	 * Takes a connection from the pool, opening a new one if necessary.
+	 * The connection must be returned using {@link #checkIn(Connection)}
+	 * when no longer needed.
+	 * @return A connection for the use of the calling thread
+	 * @throws D2RQException if no connection becomes available in time
+	 */
+	public Connection checkOut() {
+		return checkOut(null);
+	}
+
+	/**
+	 * Takes a connection from the pool on behalf of an object, e.g. an
+	 * iterator over a result set. If the owner is garbage collected
+	 * before the connection is returned through
+	 * {@link #checkIn(Connection, Object)}, the connection is reclaimed.
+	 * @param owner The object that uses the connection, or <tt>null</tt>
+	 * @return A connection for the use of the calling thread
+	 * @throws D2RQException if no connection becomes available in time
+	 */
+	public Connection checkOut(Object owner) {
+		Connection result = heldConnection(owner);
+		if (result != null) {
+			return result;
+		}
+		return lease(take(true), owner);
+	}
+
+	/**
+	 * Takes a connection from the pool if one is available without
+	 * waiting. The connection must be returned using
+	 * {@link #checkIn(Connection)} when no longer needed.
+	 * @return A connection for the use of the calling thread, or
+	 * 		<tt>null</tt> if all connections are in use
+	 */
+	public Connection tryCheckOut() {
+		Connection result = heldConnection(null);
+		if (result != null) {
+			return result;
+		}
+		result = take(false);
+		return (result == null) ? null : lease(result, null);
+	}
+
+	/**
+	 * @return The connection that the calling thread holds already,
+	 * 		or <tt>null</tt>
+	 */
+	private synchronized Connection heldConnection(Object owner) {
+		Lease lease = (Lease) threadLeases.get(Thread.currentThread());
+		if (lease == null) return null;
+		lease.hold(owner);
+		return lease.connection;
+	}
+
+	private synchronized Connection lease(Connection connection, Object owner) {
+		Lease lease = new Lease(connection);
+		lease.hold(owner);
+		leases.put(connection, lease);
+		threadLeases.put(lease.thread, lease);
+		return connection;
+	}
+
+	/**
+	 * Takes an idle connection or opens a new one
+	 * @param wait Wait for a connection if all are in use?
+	 * @return <tt>null</tt> if all connections are in use and <tt>wait</tt>
+	 * 		is <tt>false</tt>
+	 */
+	private Connection take(boolean wait) {
+		IdleConnection candidate = null;
+		List abandoned = new ArrayList();
+		try {
+			synchronized (this) {
+				long deadline = System.currentTimeMillis() + timeoutMillis;
+				while (!closed && idleConnections.isEmpty() && openConnections >= maxSize) {
+					if (reclaimAbandoned(abandoned)) continue;
+					if (!wait) return null;
+					long remaining = deadline - System.currentTimeMillis();
+					if (remaining <= 0) {
+						throw new D2RQException("No database connection became available within " +
+								(timeoutMillis / 1000) + " seconds (connection pool size: " + maxSize + 
+								"; " + leases.size() + " connections in use)",
+								D2RQException.D2RQ_DB_CONNECTION_TIMEOUT);
+					}
+					try {
+						// Owners that are garbage collected don't notify
+						wait(Math.min(remaining, RECLAIM_INTERVAL_MILLIS));
+					} catch (InterruptedException ex) {
+						throw new D2RQException("Interrupted while waiting for a database connection",
+								D2RQException.D2RQ_DB_CONNECTION_TIMEOUT);
+					}
+				}
+				if (closed) {
+					throw new D2RQException("Connection pool has been closed",
+							D2RQException.D2RQ_DB_CONNECTION_FAILED);
+				}
+				if (idleConnections.isEmpty()) {
+					// Reserve a slot; the connection is opened outside the lock
+					openConnections++;
+				} else {
+					candidate = (IdleConnection) idleConnections.removeFirst();
+				}
+			}
+		} finally {
+			Iterator it = abandoned.iterator();
+			while (it.hasNext()) {
+				closeQuietly((Connection) it.next());
+			}
+		}
+		if (candidate != null) {
+			if (isUsable(candidate)) {
+				return candidate.connection;
+			}
+			closeQuietly(candidate.connection);
+		}
+		try {
+			return createConnection();
+		} catch (RuntimeException ex) {
+			release();
+			throw ex;
+		}
+	}
+
+	/**
+	 * Frees the slots of abandoned connections
+	 * @param abandoned Receives the connections, which must be closed
+	 * 		outside the lock
+	 * @return <tt>true</tt> if any slots were freed
+	 */
+	private synchronized boolean reclaimAbandoned(List abandoned) {
+		boolean result = false;
+		Iterator it = new ArrayList(leases.values()).iterator();
+		while (it.hasNext()) {
+			Lease lease = (Lease) it.next();
+			if (!lease.isAbandoned()) continue;
+			log.warn("Reclaiming database connection that was checked out by " + lease.thread.getName() +
+					" " + ((System.currentTimeMillis() - lease.since) / 1000) + " seconds ago and not returned");
+			removeLease(lease);
+			abandoned.add(lease.connection);
+			openConnections--;
+			result = true;
+		}
+		return result;
+	}
+
+	private void removeLease(Lease lease) {
+		leases.remove(lease.connection);
+		if (threadLeases.get(lease.thread) == lease) {
+			threadLeases.remove(lease.thread);
+		}
+	}
+
+	/**
+	 * Returns a connection previously obtained from {@link #checkOut()}
+	 * or {@link #tryCheckOut()}. If the thread has checked it out
+	 * several times, it goes back to the pool when the last check-out is
+	 * returned. Any open transaction is then rolled back.
+	 */
+	public void checkIn(Connection connection) {
+		checkIn(connection, null);
+	}
+
+	/**
+	 * Returns a connection previously obtained from {@link #checkOut(Object)}.
+	 * @param owner The owner that was given when checking out
+	 */
+	public void checkIn(Connection connection, Object owner) {
+		boolean leaked;
+		synchronized (this) {
+			Lease lease = (Lease) leases.get(connection);
+			if (lease == null) {
+				// Reclaimed as abandoned; closed and released already
+				return;
+			}
+			if (!lease.release(owner)) return;
+			removeLease(lease);
+			leaked = lease.leaked;
+		}
+		if (leaked) {
+			// Owners that were not closed may have left result sets open
+			closeQuietly(connection);
+			release();
+			return;
+		}
+		try {
+			if (!connection.getAutoCommit()) {
+				connection.rollback();
+			}
+		} catch (SQLException ex) {
+			log.warn("Discarding database connection: " + ex.getMessage());
+			closeQuietly(connection);
+			release();
+			return;
+		}
+		synchronized (this) {
+			if (!closed) {
+				idleConnections.addFirst(new IdleConnection(connection));
+				notifyAll();
+				return;
+			}
+		}
+		closeQuietly(connection);
+		release();
+	}
+
+	/**
+	 * Returns the prepared statement cache of a connection that is
+	 * currently checked out from this pool.
+	 */
+	public synchronized PreparedStatementCache statementCache(Connection connection) {
+		PreparedStatementCache result = (PreparedStatementCache) statementCaches.get(connection);
+		if (result == null) {
+			result = new PreparedStatementCache(connection, statementCacheSize);
+			statementCaches.put(connection, result);
+		}
+		return result;
+	}
+
+	/**
+	 * @return The number of connections currently open, whether idle or in use
+	 */
+	public synchronized int size() {
+		return openConnections;
+	}
+
+	/**
+	 * @return The number of open connections not currently in use
+	 */
+	public synchronized int idleCount() {
+		return idleConnections.size();
+	}
+
+	/**
+	 * @return The number of connections currently checked out
+	 */
+	public synchronized int inUseCount() {
+		return leases.size();
+	}
+
+	public int maxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * Closes all idle connections. Connections that are currently
+	 * checked out will be closed when they are returned.
+	 */
+	public void close() {
+		LinkedList toClose;
+		synchronized (this) {
+			closed = true;
+			toClose = new LinkedList(idleConnections);
+			idleConnections.clear();
+			openConnections -= toClose.size();
+			notifyAll();
+		}
+		Iterator it = toClose.iterator();
+		while (it.hasNext()) {
+			closeQuietly(((IdleConnection) it.next()).connection);
+		}
+	}
+
+	private synchronized void release() {
+		openConnections--;
+		notifyAll();
+	}
+
+	private boolean isUsable(IdleConnection idle) {
+		if (validationIntervalMillis == NO_VALIDATION
+				|| System.currentTimeMillis() - idle.since < validationIntervalMillis) {
+			return true;
+		}
+		return isValid(idle.connection, validationQuery);
+	}
+
+	/**
+	 * Tests a connection by running a no-op query on it.
+	 * @return <tt>true</tt> if the query succeeded
+	 */
+	static boolean isValid(Connection connection, String validationQuery) {
+		if (log.isDebugEnabled()) {
+			log.debug("Validating idle connection with query '" + validationQuery + "'...");
+		}
+		Statement s = null;
+		try {
+			s = connection.createStatement();
+			s.execute(validationQuery);
+			return true;
+		} catch (SQLException ex) {
+			log.info("Replacing idle database connection that failed validation: " + ex.getMessage());
+			return false;
+		} finally {
+			if (s != null) try { s.close(); } catch (SQLException ignore) {}
+		}
+	}
+
+	private void closeQuietly(Connection connection) {
+		PreparedStatementCache cache;
+		synchronized (this) {
+			cache = (PreparedStatementCache) statementCaches.remove(connection);
+		}
+		if (cache != null) {
+			cache.close();
+		}
+		try {
+			connection.close();
+		} catch (SQLException ex) {
+			log.warn("Error closing database connection: " + ex.getMessage());
+		}
+	}
+
+	/**
+	 * A checked-out connection, with the thread that holds it
+	 * and the check-outs that have not been returned yet
+	 */
+	private static class Lease {
+		final Connection connection;
+		final Thread thread = Thread.currentThread();
+		final long since = System.currentTimeMillis();
+		final List owners = new ArrayList(); // WeakReferences
+		int untrackedHolds = 0;
+		boolean leaked = false;
+		Lease(Connection connection) {
+			this.connection = connection;
+		}
+		void hold(Object owner) {
+			if (owner == null) {
+				untrackedHolds++;
+			} else {
+				owners.add(new WeakReference(owner));
+			}
+		}
+		/**
+		 * @return <tt>true</tt> if the connection is not held any longer
+		 */
+		boolean release(Object owner) {
+			if (owner == null) {
+				untrackedHolds--;
+			}
+			Iterator it = owners.iterator();
+			while (it.hasNext()) {
+				Object referent = ((WeakReference) it.next()).get();
+				if (referent == null) {
+					leaked = true;
+					it.remove();
+				} else if (referent == owner) {
+					it.remove();
+					owner = null;
+				}
+			}
+			return untrackedHolds <= 0 && owners.isEmpty();
+		}
+		boolean isAbandoned() {
+			if (!thread.isAlive()) return true;
+			if (untrackedHolds > 0 || owners.isEmpty()) return false;
+			Iterator it = owners.iterator();
+			while (it.hasNext()) {
+				if (((WeakReference) it.next()).get() != null) return false;
+			}
+			return true;
+		}
+	}
+
+	private static class IdleConnection {
+		final Connection connection;
+		final long since = System.currentTimeMillis();
+		IdleConnection(Connection connection) {
+			this.connection = connection;
+		}
+	}
+}
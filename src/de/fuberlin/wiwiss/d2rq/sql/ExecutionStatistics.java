@@ -0,0 +1,188 @@
+package de.fuberlin.wiwiss.d2rq.sql;
+
+/**
+ * Counts the work done for executing a query: the SQL statements
+ * sent to the database, the rows and fields they returned, the time
+ * spent in the database and in turning rows into RDF nodes, and the
+ * rows that did not produce any result.
+ *
+ * An instance is created for each SPARQL query and handed down to
+ * the iterators that run the SQL. Everything that is added to an
+ * instance is also added to the process-wide aggregate returned by
+ * {@link #global()}. Find queries add to the global aggregate
+ * directly. The global statistics also keep the slowest SQL
+ * statements, and update the deprecated {@link BeanCounter} totals.
+ *
+ * All methods are thread-safe.
+ */
+public class ExecutionStatistics {
+	private static final ExecutionStatistics global = new ExecutionStatistics(null, null, 16);
+
+	/**
+	 * @return The totals of all executions since startup
+	 */
+	public static ExecutionStatistics global() {
+		return global;
+	}
+
+	private final ExecutionStatistics parent;
+	private final String description;
+	private final Counter sqlQueries;
+	private final Counter rows;
+	private final Counter fields;
+	private final Counter sqlNanos;
+	private final Counter nodeNanos;
+	private final Counter discardedRows;
+	private final LatencyHistogram sqlLatency = new LatencyHistogram();
+	private final SlowQueryLog slowQueries;
+
+	/**
+	 * @param description Description of the query, e.g. its SPARQL text
+	 */
+	public ExecutionStatistics(String description) {
+		this(global, description, 1);
+	}
+
+	private ExecutionStatistics(ExecutionStatistics parent, String description, int stripes) {
+		this.parent = parent;
+		this.description = description;
+		this.sqlQueries = new Counter(stripes);
+		this.rows = new Counter(stripes);
+		this.fields = new Counter(stripes);
+		this.sqlNanos = new Counter(stripes);
+		this.nodeNanos = new Counter(stripes);
+		this.discardedRows = new Counter(stripes);
+		this.slowQueries = (parent == null) ? new SlowQueryLog(SlowQueryLog.DEFAULT_SIZE) : null;
+	}
+
+	/**
+	 * Records a completed SQL query.
+	 * @param rowCount Number of rows read from the result set
+	 * @param fieldCount Number of fields read from the result set
+	 * @param nanos Time spent executing the query and reading the results
+	 */
+	public void addSQLQuery(long rowCount, long fieldCount, long nanos) {
+		addSQLQuery(null, rowCount, fieldCount, nanos);
+	}
+
+	/**
+	 * Records a completed SQL query.
+	 * @param sql The SQL statement, or <tt>null</tt> if not known
+	 * @param rowCount Number of rows read from the result set
+	 * @param fieldCount Number of fields read from the result set
+	 * @param nanos Time spent executing the query and reading the results
+	 */
+	public void addSQLQuery(String sql, long rowCount, long fieldCount, long nanos) {
+		add(sql, description, rowCount, fieldCount, nanos);
+	}
+
+	private void add(String sql, String origin, long rowCount, long fieldCount, long nanos) {
+		sqlQueries.add(1);
+		rows.add(rowCount);
+		fields.add(fieldCount);
+		sqlNanos.add(nanos);
+		sqlLatency.add(nanos);
+		if (slowQueries != null && sql != null) {
+			slowQueries.add(sql, origin, rowCount, nanos);
+		}
+		if (parent != null) {
+			parent.add(sql, origin, rowCount, fieldCount, nanos);
+		} else {
+			BeanCounter.addSQLQuery(rowCount, fieldCount);
+		}
+	}
+
+	/**
+	 * Records the work of turning result rows into triples or bindings.
+	 * @param nanos Time spent
+	 * @param discardedRowCount Number of rows that did not produce any result
+	 */
+	public void addNodeConstruction(long nanos, long discardedRowCount) {
+		nodeNanos.add(nanos);
+		discardedRows.add(discardedRowCount);
+		if (parent != null) {
+			parent.addNodeConstruction(nanos, discardedRowCount);
+		}
+	}
+
+	public String description() {
+		return description;
+	}
+
+	public long sqlQueries() {
+		return sqlQueries.sum();
+	}
+
+	public long rows() {
+		return rows.sum();
+	}
+
+	public long fields() {
+		return fields.sum();
+	}
+
+	public long sqlMillis() {
+		return sqlNanos.sum() / 1000000;
+	}
+
+	public long nodeConstructionMillis() {
+		return nodeNanos.sum() / 1000000;
+	}
+
+	public long discardedRows() {
+		return discardedRows.sum();
+	}
+
+	/**
+	 * @return The distribution of the execution times of the SQL queries
+	 */
+	public LatencyHistogram sqlLatency() {
+		return sqlLatency;
+	}
+
+	/**
+	 * @return The slowest SQL queries of all executions since startup
+	 */
+	public SlowQueryLog slowQueries() {
+		return global.slowQueries;
+	}
+
+	public String toString() {
+		return sqlQueries() + " SQL queries, " + rows() + " rows, " + fields() + " fields, " +
+				sqlMillis() + "ms SQL, " + nodeConstructionMillis() + "ms node construction, " +
+				discardedRows() + " rows discarded";
+	}
+
+	/**
+	 * A counter that is split into several cells so that threads
+	 * updating it at the same time rarely wait for each other.
+	 * The value is the sum of all cells.
+	 */
+	private static class Counter {
+		private final long[] cells;
+		private final Object[] locks;
+		Counter(int stripes) {
+			cells = new long[stripes];
+			locks = new Object[stripes];
+			for (int i = 0; i < stripes; i++) {
+				locks[i] = new Object();
+			}
+		}
+		void add(long value) {
+			int i = (cells.length == 1) ? 0
+					: (System.identityHashCode(Thread.currentThread()) & 0x7fffffff) % cells.length;
+			synchronized (locks[i]) {
+				cells[i] += value;
+			}
+		}
+		long sum() {
+			long result = 0;
+			for (int i = 0; i < cells.length; i++) {
+				synchronized (locks[i]) {
+					result += cells[i];
+				}
+			}
+			return result;
+		}
+	}
+}
@@ -0,0 +1,76 @@
+package de.fuberlin.wiwiss.d2rq.sql;
+
+/**
+ * Counts durations in a fixed set of buckets, from one millisecond
+ * to one minute. Percentiles are estimated as the upper bound of
+ * the bucket that contains them, so they are never too optimistic.
+ *
+ * All methods are thread-safe.
+ */
+public class LatencyHistogram {
+
+	/**
+	 * Upper bounds of the buckets in milliseconds; the last bucket has no bound
+	 */
+	private static final long[] BOUNDS = {
+		1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 30000, 60000
+	};
+
+	private final long[] counts = new long[BOUNDS.length + 1];
+	private long count = 0;
+	private long totalNanos = 0;
+	private long maxNanos = 0;
+
+	/**
+	 * @param nanos A duration in nanoseconds
+	 */
+	public synchronized void add(long nanos) {
+		long millis = nanos / 1000000;
+		int i = 0;
+		while (i < BOUNDS.length && millis >= BOUNDS[i]) {
+			i++;
+		}
+		counts[i]++;
+		count++;
+		totalNanos += nanos;
+		if (nanos > maxNanos) {
+			maxNanos = nanos;
+		}
+	}
+
+	public synchronized long count() {
+		return count;
+	}
+
+	public synchronized long totalMillis() {
+		return totalNanos / 1000000;
+	}
+
+	public synchronized long maxMillis() {
+		return maxNanos / 1000000;
+	}
+
+	/**
+	 * @param percentile A number between 0 and 100
+	 * @return Upper bound in milliseconds of the given percentile, 
+	 * 		or 0 if nothing has been counted yet
+	 */
+	public synchronized long percentileMillis(double percentile) {
+		if (count == 0) return 0;
+		long rank = (long) Math.ceil(count * percentile / 100);
+		long seen = 0;
+		for (int i = 0; i < BOUNDS.length; i++) {
+			seen += counts[i];
+			if (seen >= rank) {
+				return Math.min(BOUNDS[i], maxMillis());
+			}
+		}
+		return maxMillis();
+	}
+
+	public String toString() {
+		return count() + " times, p50 " + percentileMillis(50) + "ms, p90 " + 
+				percentileMillis(90) + "ms, p99 " + percentileMillis(99) + "ms, max " +
+				maxMillis() + "ms";
+	}
+}
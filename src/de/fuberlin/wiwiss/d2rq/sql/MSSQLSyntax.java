@@ -23,4 +23,17 @@ public class MSSQLSyntax extends SQL92Syntax {
 	public String getRowNumLimitAsQueryAppendage(int limit) {
 		return "";
 	}
+
+	public String getOffsetAsQueryAppendage(int offset) {
+		if (offset == 0) return "";
+		return null;
+	}
+
+	/**
+	 * SQL Server finds the type of a <code>NULL</code> in a <code>UNION</code>
+	 * from the other branches.
+	 */
+	public String getNullExpression(int typeId, String typeName) {
+		return "NULL";
+	}
 }
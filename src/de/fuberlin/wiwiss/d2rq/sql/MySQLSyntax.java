@@ -46,4 +46,12 @@ public class MySQLSyntax extends SQL92Syntax {
 		result.setProperty("zeroDateTimeBehavior", "convertToNull");
 		return result;
 	}
+
+	/**
+	 * MySQL finds the type of a <code>NULL</code> in a <code>UNION</code>
+	 * from the other branches, and can only cast to a few types.
+	 */
+	public String getNullExpression(int typeId, String typeName) {
+		return "NULL";
+	}
 }
@@ -24,4 +24,18 @@ public class OracleSyntax extends SQL92Syntax {
 	public String getRowNumLimitAsQueryAppendage(int limit) {
 		return "";
 	}
+
+	public String getOffsetAsQueryAppendage(int offset) {
+		if (offset == 0) return "";
+		return null;
+	}
+
+	/**
+	 * Oracle finds the type of a <code>NULL</code> in a <code>UNION</code>
+	 * from the other branches, and can't cast to a character type
+	 * without its length.
+	 */
+	public String getNullExpression(int typeId, String typeName) {
+		return "NULL";
+	}
 }
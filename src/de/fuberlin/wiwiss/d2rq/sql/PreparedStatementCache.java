@@ -0,0 +1,124 @@
+package de.fuberlin.wiwiss.d2rq.sql;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Keeps the most recently used {@link PreparedStatement}s of a single
+ * connection, keyed on their SQL text, so that queries that differ only
+ * in their parameter values are parsed and planned by the database
+ * only once. The least recently used statement is closed when the
+ * cache is full.
+ *
+ * Nested queries share their thread's connection, see
+ * {@link ConnectionPool}, so a statement can still be in use when
+ * its SQL is run again. Then another statement is prepared, which
+ * is closed when it is released. Statements are handed back through
+ * {@link #release(PreparedStatement)}.
+ *
+ * Like the connection itself, a cache must only be used by one
+ * thread at a time.
+ */
+public class PreparedStatementCache {
+	private static final Log log = LogFactory.getLog(PreparedStatementCache.class);
+
+	private final Connection connection;
+	private final int maxSize;
+	private int hits = 0;
+	private int misses = 0;
+	private final Map inUse = new IdentityHashMap(); // PreparedStatement => Boolean
+
+	/**
+	 * SQL string => PreparedStatement, in access order
+	 */
+	private final LinkedHashMap statements = new LinkedHashMap(16, 0.75f, true) {
+		protected boolean removeEldestEntry(Map.Entry eldest) {
+			if (size() <= maxSize) return false;
+			// A statement in use is closed when it is released
+			if (!inUse.containsKey(eldest.getValue())) {
+				closeQuietly((PreparedStatement) eldest.getValue());
+			}
+			return true;
+		}
+	};
+
+	public PreparedStatementCache(Connection connection, int maxSize) {
+		this.connection = connection;
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Returns a cached statement for the SQL text, or prepares a new one.
+	 * The statement must not be closed by the caller, but handed back
+	 * through {@link #release(PreparedStatement)}.
+	 */
+	public PreparedStatement prepare(String sql) throws SQLException {
+		PreparedStatement result = (PreparedStatement) statements.get(sql);
+		if (result != null && !inUse.containsKey(result)) {
+			hits++;
+			result.clearParameters();
+			inUse.put(result, Boolean.TRUE);
+			return result;
+		}
+		misses++;
+		result = connection.prepareStatement(sql,
+				ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+		if (!statements.containsKey(sql)) {
+			statements.put(sql, result);
+		}
+		inUse.put(result, Boolean.TRUE);
+		return result;
+	}
+
+	/**
+	 * Marks a statement from {@link #prepare(String)} as no longer in use.
+	 * It is closed if it is not in the cache.
+	 */
+	public void release(PreparedStatement statement) {
+		inUse.remove(statement);
+		if (!statements.containsValue(statement)) {
+			closeQuietly(statement);
+		}
+	}
+
+	public int size() {
+		return statements.size();
+	}
+
+	public int hits() {
+		return hits;
+	}
+
+	public int misses() {
+		return misses;
+	}
+
+	/**
+	 * Closes all cached statements.
+	 */
+	public void close() {
+		Iterator it = statements.values().iterator();
+		while (it.hasNext()) {
+			closeQuietly((PreparedStatement) it.next());
+		}
+		statements.clear();
+		inUse.clear();
+	}
+
+	private void closeQuietly(PreparedStatement statement) {
+		try {
+			statement.close();
+		} catch (SQLException ex) {
+			log.warn("Error closing prepared statement: " + ex.getMessage());
+		}
+	}
+}
@@ -1,7 +1,9 @@
 package de.fuberlin.wiwiss.d2rq.sql;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.Collection;
@@ -18,6 +20,14 @@ import de.fuberlin.wiwiss.d2rq.map.Database;
 /**
  * Executes an SQL query and delivers result rows as an iterator over {@link ResultRow}s.
  * The query is executed lazily. This class logs all executed SQL queries.
+ * 
+ * A connection is checked out of the database's connection pool when the
+ * query is executed, and returned when the iterator is closed or exhausted.
+ * Iterators that are read at the same time on one thread share a connection.
+ * This happens in bind joins, where the queries of the right side run while
+ * the left side is still being read. So a query needs one connection per
+ * thread, however deeply its joins are nested. If an iterator is garbage
+ * collected without being closed, the pool reclaims its connection.
  *
  * @author Chris Bizer chris@bizer.de
  * @author Richard Cyganiak (richard@cyganiak.de)
@@ -27,20 +37,84 @@ public class QueryExecutionIterator implements ClosableIterator {
 	public static Collection protocol=null;
 
 	private String sql;
+	private List parameters;
 	private List columns;
 	private ConnectedDB database;
+	private Connection connection = null;
 	private Statement statement = null;
 	private ResultSet resultSet = null;
+	private ResultRowArray.Layout layout = null;
 	private ResultRow prefetchedRow = null;
 	private int numCols = 0;
 	private boolean queryExecuted = false;
 	private boolean explicitlyClosed = false;
+	private final ExecutionStatistics statistics;
+	private long rowCount = 0;
+	private long sqlNanos = 0;
+	private boolean statisticsReported = false;
 
 	public QueryExecutionIterator(String sql, List columns, ConnectedDB db) {
+		this(sql, null, columns, db);
+    }
+
+	/**
+	 * Executes the statement built by a {@link SelectStatementBuilder}.
+	 * If the database has prepared statements enabled, constant values
+	 * are sent as bind parameters.
+	 */
+	public QueryExecutionIterator(SelectStatementBuilder select, ConnectedDB db) {
+		this(select, db, ExecutionStatistics.global());
+	}
+	
+	/**
+	 * Executes the statement built by a {@link SelectStatementBuilder},
+	 * and records the work done in the given statistics.
+	 */
+	public QueryExecutionIterator(SelectStatementBuilder select, ConnectedDB db, 
+			ExecutionStatistics statistics) {
+		this(db.usePreparedStatements() ? select.getParameterizedSQLStatement() : select.getSQLStatement(),
+				db.usePreparedStatements() ? select.getParameters() : null,
+				select.getColumnSpecs(), db, statistics);
+	}
+	
+	/**
+	 * Executes the statement built by a {@link UnionStatementBuilder},
+	 * and records the work done in the given statistics.
+	 */
+	public QueryExecutionIterator(UnionStatementBuilder union, ExecutionStatistics statistics) {
+		this(union.database().usePreparedStatements() ? union.getParameterizedSQLStatement() : union.getSQLStatement(),
+				union.database().usePreparedStatements() ? union.getParameters() : null,
+				union.getColumnSpecs(), union.database(), statistics);
+	}
+	
+	/**
+	 * @param sql An SQL statement, possibly with <code>?</code> placeholders
+	 * @param parameters {@link StatementParameter}s for the placeholders;
+	 * 		if not <tt>null</tt>, the query is run as a prepared statement
+	 * @param columns The {@link ProjectionSpec}s of the SELECT clause
+	 * @param db The database
+	 */
+	public QueryExecutionIterator(String sql, List parameters, List columns, ConnectedDB db) {
+		this(sql, parameters, columns, db, ExecutionStatistics.global());
+	}
+
+	/**
+	 * @param sql An SQL statement, possibly with <code>?</code> placeholders
+	 * @param parameters {@link StatementParameter}s for the placeholders;
+	 * 		if not <tt>null</tt>, the query is run as a prepared statement
+	 * @param columns The {@link ProjectionSpec}s of the SELECT clause
+	 * @param db The database
+	 * @param statistics Receives the number of rows and the time spent
+	 * 		once the iterator is exhausted or closed
+	 */
+	public QueryExecutionIterator(String sql, List parameters, List columns, ConnectedDB db,
+			ExecutionStatistics statistics) {
 		this.sql = sql;
+		this.parameters = parameters;
 		this.columns = columns;
 		this.database = db;
-    }
+		this.statistics = statistics;
+	}
 
 	public boolean hasNext() {
 		if (this.explicitlyClosed) {
@@ -77,16 +151,19 @@ public class QueryExecutionIterator implements ClosableIterator {
 	    if (this.resultSet == null) {
 	    	return null;
 	    }
+		long start = System.nanoTime();
 		try {
 			if (!this.resultSet.next()) {
-				this.resultSet.close();
-				this.resultSet = null;
+				this.sqlNanos += System.nanoTime() - start;
+				release();
 				return null;
 			}
-			BeanCounter.totalNumberOfReturnedRows++;
-			BeanCounter.totalNumberOfReturnedFields+=this.numCols;
-			return ResultRowMap.fromResultSet(this.resultSet, this.columns);
+			this.rowCount++;
+			ResultRow result = this.layout.readRow(this.resultSet);
+			this.sqlNanos += System.nanoTime() - start;
+			return result;
 		} catch (SQLException ex) {
+			release();
 			throw new D2RQException(ex.getMessage());
 		}
 	}
@@ -97,28 +174,47 @@ public class QueryExecutionIterator implements ClosableIterator {
 	 */
 	public void close() {
 	    this.explicitlyClosed = true;
-	    
-	    /* JDBC 4+ requires manual closing of result sets and statements */
-	    if (this.resultSet != null) {
-			try {
-				this.resultSet.close();
-				this.resultSet = null;
-			} catch (SQLException ex) {
-				throw new D2RQException(ex.getMessage() + "; query was: " + this.sql);
-			}
-	    }
-	    
-	    if (this.statement != null) {
-			try {
-				this.statement.close();
-				this.statement = null;
-			} catch (SQLException ex) {
-				throw new D2RQException(ex.getMessage() + "; query was: " + this.sql);
-			}
-	    }
-
+	    release();
 	    this.prefetchedRow = null;
+	}
 
+	/**
+	 * Closes result set and statement, and returns the connection to the pool.
+	 */
+	private void release() {
+		if (this.queryExecuted && !this.statisticsReported) {
+			this.statisticsReported = true;
+			this.statistics.addSQLQuery(this.sql, this.rowCount, this.rowCount * this.numCols, this.sqlNanos);
+		}
+		try {
+		    /* JDBC 4+ requires manual closing of result sets and statements */
+			if (this.resultSet != null) {
+				try {
+					this.resultSet.close();
+					this.resultSet = null;
+				} catch (SQLException ex) {
+					throw new D2RQException(ex.getMessage() + "; query was: " + this.sql);
+				}
+			}
+			if (this.statement != null) {
+				try {
+					// Prepared statements are cached and stay open
+					if (this.parameters == null) {
+						this.statement.close();
+					} else {
+						this.database.releaseStatement(this.connection, (PreparedStatement) this.statement);
+					}
+					this.statement = null;
+				} catch (SQLException ex) {
+					throw new D2RQException(ex.getMessage() + "; query was: " + this.sql);
+				}
+			}
+		} finally {
+			if (this.connection != null) {
+				this.database.returnConnection(this.connection, this);
+				this.connection = null;
+			}
+		}
 	}
 
 	public void remove() {
@@ -130,23 +226,41 @@ public class QueryExecutionIterator implements ClosableIterator {
 	    	return;
 	    }
     	this.queryExecuted = true;
-    	LogFactory.getLog(QueryExecutionIterator.class).debug(this.sql);
-    	BeanCounter.totalNumberOfExecutedSQLQueries++;
+    	LogFactory.getLog(QueryExecutionIterator.class).debug(
+    			this.parameters == null ? this.sql : this.sql + " " + this.parameters);
     	if (protocol!=null)
     	    protocol.add(this.sql);
+		this.connection = this.database.checkOutConnection(this);
+		long start = System.nanoTime();
         try {
-			Connection con = this.database.connection();
-			this.statement = con.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        	if (this.parameters == null) {
+        		this.statement = this.connection.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        	} else {
+        		this.statement = this.database.prepareStatement(this.connection, this.sql);
+        	}
 			if (database.fetchSize() != Database.NO_FETCH_SIZE) {
 				try {
 					this.statement.setFetchSize(database.fetchSize());
 				}
 				catch (SQLException e) {} /* Some drivers don't support fetch sizes, e.g. JDBC-ODBC */
 			}
-			this.resultSet = this.statement.executeQuery(this.sql);
-			this.numCols = this.resultSet.getMetaData().getColumnCount();
+			if (this.parameters == null) {
+				this.resultSet = this.statement.executeQuery(this.sql);
+			} else {
+				PreparedStatement prepared = (PreparedStatement) this.statement;
+				for (int i = 0; i < this.parameters.size(); i++) {
+					((StatementParameter) this.parameters.get(i)).bind(prepared, i + 1);
+				}
+				this.resultSet = prepared.executeQuery();
+			}
+			ResultSetMetaData metaData = this.resultSet.getMetaData();
+			this.numCols = metaData.getColumnCount();
+			this.layout = new ResultRowArray.Layout(this.columns, metaData);
+			this.sqlNanos += System.nanoTime() - start;
         } catch (SQLException ex) {
-        	throw new D2RQException(ex.getMessage() + ": " + this.sql);
+        	release();
+        	throw new D2RQException(ex.getMessage() + ": " + this.sql +
+        			(this.parameters == null ? "" : " " + this.parameters));
         }
     }
 }
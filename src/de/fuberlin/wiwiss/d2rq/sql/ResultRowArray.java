@@ -0,0 +1,161 @@
+package de.fuberlin.wiwiss.d2rq.sql;
+
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import de.fuberlin.wiwiss.d2rq.algebra.ProjectionSpec;
+
+/**
+ * A result row returned by a database query, stored as an array
+ * of string values. The mapping from SELECT clause entries to array
+ * slots is held in a {@link Layout} that is shared by all rows of
+ * the same query.
+ */
+public class ResultRowArray implements ResultRow {
+
+	/**
+	 * The columns of a query result, computed once per query from the
+	 * SELECT clause and the JDBC result set metadata.
+	 */
+	public static class Layout {
+		private static final int STRING = 0;
+		private static final int BOOLEAN = 1;
+		private static final int ORACLE_DATE = 2;
+		private static final int ORACLE_TIMESTAMP = 3;
+
+		private final ProjectionSpec[] projections;
+		private final Map slots = new HashMap(); // ProjectionSpec => Integer
+		private final int[] columnKinds;
+
+		/**
+		 * @param projectionSpecs The entries of the SELECT clause, in order
+		 * @param metaData Metadata of the result set, or <tt>null</tt> if
+		 * 		not available, in which case all values are read as strings
+		 */
+		public Layout(List projectionSpecs, ResultSetMetaData metaData) throws SQLException {
+			this.projections = (ProjectionSpec[]) projectionSpecs.toArray(
+					new ProjectionSpec[projectionSpecs.size()]);
+			this.columnKinds = new int[this.projections.length];
+			for (int i = 0; i < this.projections.length; i++) {
+				this.slots.put(this.projections[i], new Integer(i));
+				this.columnKinds[i] = (metaData == null) ? STRING : kindOf(metaData.getColumnClassName(i + 1));
+			}
+		}
+
+		/**
+		 * @return The array slot of the column, or -1 if the query doesn't select it
+		 */
+		public int slotOf(ProjectionSpec projection) {
+			Integer slot = (Integer) this.slots.get(projection);
+			return (slot == null) ? -1 : slot.intValue();
+		}
+
+		public int size() {
+			return this.projections.length;
+		}
+
+		/**
+		 * Reads the current row of a result set.
+		 */
+		public ResultRowArray readRow(ResultSet resultSet) throws SQLException {
+			String[] values = new String[this.projections.length];
+			for (int i = 0; i < values.length; i++) {
+				values[i] = readValue(resultSet, i);
+			}
+			return new ResultRowArray(this, values);
+		}
+
+		/*
+		 * Return string representations of the values using information from the type map
+		 *
+		 * TODO Generally use resultSet.getObject(i+1).toString() instead of resultSet.getString(i+1); maybe even map to Objects instead of Strings?
+		 * This would convert at JDBC/Java level, which will likely differ from current data, so it's probably best to keep things as they are for now
+		 */
+		private String readValue(ResultSet resultSet, int i) throws SQLException {
+			switch (this.columnKinds[i]) {
+			/*
+			 * Specifically handle Oracle DATEs and TIMESTAMPs because the regular getString()
+			 * returns them in non-standard fashion, e.g. "2008-3-22.0.0. 0. 0".
+			 * This occurs independently of the NLS_DATE_FORMAT / NLS_TIMESTAMP_FORMAT in use.
+			 *
+			 * Note: getObject(i+1).toString() does not work in this case; the only other options seems to be Oracle's toJdbc()
+			 */
+			case ORACLE_DATE:
+				Date oracleDate = resultSet.getDate(i + 1);
+				return resultSet.wasNull() ? null : oracleDate.toString();
+			case ORACLE_TIMESTAMP:
+				Timestamp oracleTimestamp = resultSet.getTimestamp(i + 1);
+				return resultSet.wasNull() ? null : oracleTimestamp.toString();
+			/*
+			 * Let the JDBC driver convert boolean values for us as their representation differs greatly amongst DBs (e.g. PostgreSQL employs 't' and 'f', others use 0 and 1)
+			 */
+			case BOOLEAN:
+				return Boolean.toString(resultSet.getBoolean(i + 1));
+			default:
+				/*
+				 * Return native string representation of the object
+				 */
+				return resultSet.getString(i + 1);
+			}
+		}
+
+		private static int kindOf(String classString) {
+			if ("oracle.sql.DATE".equals(classString)) return ORACLE_DATE;
+			if ("oracle.sql.TIMESTAMP".equals(classString)) return ORACLE_TIMESTAMP;
+			if ("java.lang.Boolean".equals(classString)) return BOOLEAN;
+			return STRING;
+		}
+	}
+
+	private final Layout layout;
+	private final String[] values;
+
+	public ResultRowArray(Layout layout, String[] values) {
+		this.layout = layout;
+		this.values = values;
+	}
+
+	public Layout layout() {
+		return this.layout;
+	}
+
+	public String get(ProjectionSpec projection) {
+		return get(this.layout.slotOf(projection));
+	}
+
+	/**
+	 * @param slot A slot obtained from {@link Layout#slotOf(ProjectionSpec)}
+	 * @return The value in the slot; <tt>null</tt> for SQL NULL or a slot of -1
+	 */
+	public String get(int slot) {
+		return (slot == -1) ? null : this.values[slot];
+	}
+
+	public String toString() {
+		List columns = new ArrayList(this.layout.slots.keySet());
+		Collections.sort(columns);
+		StringBuffer result = new StringBuffer("{");
+		Iterator it = columns.iterator();
+		while (it.hasNext()) {
+			ProjectionSpec projection = (ProjectionSpec) it.next();
+			result.append(projection.toString());
+			result.append(" => '");
+			result.append(get(projection));
+			result.append("'");
+			if (it.hasNext()) {
+				result.append(", ");
+			}
+		}
+		result.append("}");
+		return result.toString();
+	}
+}
@@ -1,5 +1,6 @@
 package de.fuberlin.wiwiss.d2rq.sql;
 
+import java.sql.Types;
 import java.util.Properties;
 import java.util.regex.Pattern;
 
@@ -43,6 +44,10 @@ public class SQL92Syntax implements SQLSyntax {
 		return quoteRelationName(relationName) + (useAS ? " AS " : " ") + quoteRelationName(aliasName);
 	}
 	
+	public String getDerivedTableAliasExpression(String subquery, RelationName aliasName) {
+		return "(" + subquery + ")" + (useAS ? " AS " : " ") + quoteRelationName(aliasName);
+	}
+	
 	public String quoteAttribute(Attribute attribute) {
 		return quoteRelationName(attribute.relationName()) + "." + 
 				quoteIdentifier(attribute.attributeName());
@@ -82,6 +87,37 @@ public class SQL92Syntax implements SQLSyntax {
 		return "LIMIT " + limit;
 	}
 
+	/**
+	 * Not SQL 92 either, but supported wherever LIMIT is.
+	 */
+	public String getOffsetAsQueryAppendage(int offset) {
+		if (offset == 0) return "";
+		return "OFFSET " + offset;
+	}
+
+	/**
+	 * Casts the <code>NULL</code> to the type. Character and integer
+	 * types use their standard names, because engine-specific names
+	 * such as PostgreSQL's <code>serial</code> can't be used in casts.
+	 */
+	public String getNullExpression(int typeId, String typeName) {
+		switch (typeId) {
+			case Types.CHAR:
+			case Types.VARCHAR:
+			case Types.LONGVARCHAR:
+			case ConnectedDB.SQL_TYPE_NVARCHAR: return "CAST(NULL AS VARCHAR)";
+			case Types.TINYINT:
+			case Types.SMALLINT: return "CAST(NULL AS SMALLINT)";
+			case Types.INTEGER: return "CAST(NULL AS INTEGER)";
+			case Types.BIGINT: return "CAST(NULL AS BIGINT)";
+		}
+		if (typeName == null || !typeNamePattern.matcher(typeName).matches()) {
+			return null;
+		}
+		return "CAST(NULL AS " + typeName + ")";
+	}
+	private final static Pattern typeNamePattern = Pattern.compile("[A-Za-z_][A-Za-z0-9_ ]*");
+
 	public String getRowNumLimitAsSelectModifier(int limit) {
 		return "";
 	}
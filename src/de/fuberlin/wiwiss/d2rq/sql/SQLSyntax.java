@@ -40,6 +40,18 @@ public interface SQLSyntax {
 	 */
 	String getRelationNameAliasExpression(RelationName relationName, RelationName aliasName);
 	
+	/**
+	 * A subquery with an alias name for use in <code>FROM</code> clauses.
+	 * Would return <code>(subquery) AS alias</code> for SQL 92, with
+	 * the same rules for <code>AS</code> as in
+	 * {@link #getRelationNameAliasExpression(RelationName, RelationName)}.
+	 * 
+	 * @param subquery A SELECT statement
+	 * @param aliasName The name of the derived table
+	 * @return An expression that assigns the alias to the subquery
+	 */
+	String getDerivedTableAliasExpression(String subquery, RelationName aliasName);
+	
 	/**
 	 * Handles special characters in attribute names.
 	 * 
@@ -93,6 +105,30 @@ public interface SQLSyntax {
 	 */
 	String getRowNumLimitAsQueryAppendage(int limit);
 	
+	/**
+	 * Returns a fragment to be appended to a SQL query, after the limit,
+	 * in order to skip a number of rows for engines that support
+	 * this (<code>OFFSET n</code>)
+	 * 
+	 * @param offset A number of rows to skip
+	 * @return A SQL fragment, the empty string if <tt>offset</tt> is 0,
+	 * or <tt>null</tt> if not supported by the engine
+	 */
+	String getOffsetAsQueryAppendage(int offset);
+	
+	/**
+	 * Returns a <code>NULL</code> of a column's type, for the branches
+	 * of a <code>UNION</code> that don't have the column. Some engines,
+	 * such as PostgreSQL, reject a plain <code>NULL</code> there if the
+	 * other branches have a non-text column.
+	 * 
+	 * @param typeId The type of the column, from {@link java.sql.Types}
+	 * @param typeName The engine's name of the type
+	 * @return A SQL expression, or <tt>null</tt> if there is no
+	 * <code>NULL</code> of that type
+	 */
+	String getNullExpression(int typeId, String typeName);
+	
 	/**
 	 * Returns a set of default connection properties to be used
 	 * when connecting to this database engine type
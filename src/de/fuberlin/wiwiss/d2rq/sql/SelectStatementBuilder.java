@@ -2,19 +2,25 @@ package de.fuberlin.wiwiss.d2rq.sql;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
+import de.fuberlin.wiwiss.d2rq.algebra.Aggregate;
 import de.fuberlin.wiwiss.d2rq.algebra.AliasMap;
 import de.fuberlin.wiwiss.d2rq.algebra.Attribute;
+import de.fuberlin.wiwiss.d2rq.algebra.ExpressionProjectionSpec;
 import de.fuberlin.wiwiss.d2rq.algebra.Join;
+import de.fuberlin.wiwiss.d2rq.algebra.LeftJoin;
 import de.fuberlin.wiwiss.d2rq.algebra.ProjectionSpec;
 import de.fuberlin.wiwiss.d2rq.algebra.Relation;
 import de.fuberlin.wiwiss.d2rq.algebra.RelationName;
 import de.fuberlin.wiwiss.d2rq.expr.Conjunction;
 import de.fuberlin.wiwiss.d2rq.expr.Equality;
 import de.fuberlin.wiwiss.d2rq.expr.Expression;
+import de.fuberlin.wiwiss.d2rq.expr.SQLExpression;
 
 
 /**
@@ -36,8 +42,58 @@ public class SelectStatementBuilder {
 	private Attribute order;
 	private boolean orderDesc;
 	private int limit;
+	private int offset;
+	private List leftJoins = new ArrayList();	// LeftJoins, in order of their aliases
+	private RelationName anchor = null;
+	private Map columnAliases = null;
+	private SelectStatementBuilder groupedTable = null;	// for aggregate queries
+	private RelationName groupedTableAlias = null;
+	private List groupBy = Collections.EMPTY_LIST;	// Attributes of the grouped table
+	private List aggregates = Collections.EMPTY_LIST;
+	private String parameterizedSQL = null;
+	private List parameters = null;
 	
 	public SelectStatementBuilder(Relation relation) {
+		this(relation, null);
+	}
+	
+	/**
+	 * Builds an aggregate query over a relation. The relation
+	 * becomes a derived table, whose rows are grouped and aggregated:
+	 * <code>SELECT groupBy, aggregates FROM (SELECT ...) AS alias GROUP BY groupBy</code>.
+	 * Each projected attribute of the relation is available as a column
+	 * of the derived table, see {@link LeftJoin#outerAttributes(RelationName, Collection)}.
+	 * The value of each aggregate is in the column {@link #aggregateColumn(int)}
+	 * of its position.
+	 * 
+	 * @param relation The relation to be grouped; all its projections must be {@link Attribute}s
+	 * @param alias Name of the derived table
+	 * @param groupBy {@link Attribute}s of the derived table
+	 * @param aggregates {@link Aggregate}s over attributes of the derived table
+	 */
+	public SelectStatementBuilder(Relation relation, RelationName alias, List groupBy, List aggregates) {
+		if (aggregates.isEmpty()) {
+			throw new IllegalArgumentException("Aggregate query without aggregates");
+		}
+		Map columnAliases = LeftJoin.outerAttributes(alias, relation.projections());
+		this.groupedTable = new SelectStatementBuilder(relation, columnAliases);
+		this.groupedTableAlias = alias;
+		this.groupBy = groupBy;
+		this.database = relation.database();
+		this.limit = Relation.NO_LIMIT;
+		this.aggregates = aggregates;
+		this.selectSpecs.addAll(groupBy);
+		for (int i = 0; i < aggregates.size(); i++) {
+			this.selectSpecs.add(aggregateColumn(i));
+		}
+	}
+	
+	/**
+	 * @param columnAliases For building a derived table: A map from
+	 * 		projected {@link Attribute}s to the attributes that will hold
+	 * 		their values outside the derived table; <tt>null</tt> otherwise
+	 */
+	private SelectStatementBuilder(Relation relation, Map columnAliases) {
 		if (relation.isTrivial()) {
 			throw new IllegalArgumentException("Cannot create SQL for trivial relation");
 		}
@@ -45,7 +101,12 @@ public class SelectStatementBuilder {
 			throw new IllegalArgumentException("Cannot create SQL for empty relation");
 		}
 		database = relation.database();
-		this.limit = Relation.combineLimits(relation.limit(), database.limit());
+		this.columnAliases = columnAliases;
+		// The result size limit of the database applies only to the outermost query
+		this.limit = (columnAliases == null) 
+				? Relation.combineLimits(relation.limit(), database.limit())
+				: relation.limit();
+		this.offset = relation.offset();
 		this.order = relation.order();
 		this.orderDesc = relation.orderDesc();
 		this.aliases = this.aliases.applyTo(relation.aliases());
@@ -68,6 +129,21 @@ public class SelectStatementBuilder {
 		addCondition(database.getSyntax().getRowNumLimitAsExpression(limit));
 	
 		addMentionedTablesFromConditions();		
+		
+		leftJoins.addAll(relation.leftJoinConditions());
+		Collections.sort(leftJoins);
+		it = leftJoins.iterator();
+		while (it.hasNext()) {
+			LeftJoin leftJoin = (LeftJoin) it.next();
+			this.mentionedTables.remove(leftJoin.alias());
+			if (anchor != null && !anchor.equals(leftJoin.anchor())) {
+				throw new IllegalArgumentException("Left joins must all refer to the same table: " + relation);
+			}
+			anchor = leftJoin.anchor();
+		}
+		if (anchor != null) {
+			this.mentionedTables.add(anchor);
+		}
 	}
 	
 	private Expression condition() {
@@ -85,8 +161,67 @@ public class SelectStatementBuilder {
 		}
 	}
 	
+	/**
+	 * @return The SQL statement, with all values written into the SQL text
+	 */
 	public String getSQLStatement() {
-		
+		return buildSQLStatement(null);
+	}
+	
+	/**
+	 * Returns the SQL statement with <code>?</code> placeholders in place
+	 * of constant values in the WHERE clause. Queries that differ only in
+	 * those values have the same parameterized SQL text.
+	 * 
+	 * @return The SQL statement for use in a prepared statement
+	 * @see #getParameters()
+	 */
+	public String getParameterizedSQLStatement() {
+		if (this.parameterizedSQL == null) {
+			this.parameters = new ArrayList();
+			this.parameterizedSQL = buildSQLStatement(this.parameters);
+		}
+		return this.parameterizedSQL;
+	}
+	
+	/**
+	 * @return The values of the placeholders in
+	 * 		{@link #getParameterizedSQLStatement()}, as a list of
+	 * 		{@link StatementParameter}s
+	 */
+	public List getParameters() {
+		getParameterizedSQLStatement();
+		return this.parameters;
+	}
+	
+	/**
+	 * @param parameters If not <tt>null</tt>, constants are written as placeholders
+	 * 		and their values are collected into this list
+	 */
+	private String buildSQLStatement(List parameters) {
+		if (groupedTable != null) {
+			return buildAggregateSQLStatement(parameters);
+		}
+		return buildSQLStatement(parameters, null, null, 0);
+	}
+	
+	/**
+	 * Builds this query as one branch of a <code>UNION ALL</code>.
+	 * The SELECT clause has the number of the branch, and then each of the
+	 * union's columns, or a <code>NULL</code> for those not selected by this query.
+	 * 
+	 * @param parameters As in {@link #buildSQLStatement(List)}
+	 * @param branch The number of this branch
+	 * @param unionColumns The {@link ProjectionSpec}s of the union, starting 
+	 * 		with {@link UnionStatementBuilder#BRANCH}
+	 * @param typedNulls A <code>NULL</code> of the type of each column
+	 * 		that is not selected by all branches
+	 */
+	String buildUnionBranchStatement(List parameters, int branch, List unionColumns, Map typedNulls) {
+		return buildSQLStatement(parameters, unionColumns, typedNulls, branch);
+	}
+	
+	private String buildSQLStatement(List parameters, List unionColumns, Map typedNulls, int branch) {
 		StringBuffer result = new StringBuffer("SELECT ");
 		
 		if (this.eliminateDuplicates && database.allowDistinct()) {
@@ -99,21 +234,28 @@ public class SelectStatementBuilder {
 			result.append(" ");
 		}
 		
-		Iterator it = this.selectSpecs.iterator();
-		if (!it.hasNext()) {
-			result.append("1");
-		}
-		while (it.hasNext()) {
-			ProjectionSpec projection = (ProjectionSpec) it.next();
-			result.append(projection.toSQL(database, aliases));
-			if (it.hasNext()) {
+		if (unionColumns == null) {
+			appendSelectList(result);
+		} else {
+			result.append(branch);
+			Iterator it = unionColumns.iterator();
+			while (it.hasNext()) {
+				ProjectionSpec projection = (ProjectionSpec) it.next();
+				if (projection.equals(UnionStatementBuilder.BRANCH)) continue;
 				result.append(", ");
+				result.append(selectSpecs.contains(projection) 
+						? projection.toSQL(database, aliases) : (String) typedNulls.get(projection));
 			}
 		}
 		
-		
 		result.append(" FROM ");
-		it = mentionedTables.iterator();
+		// The anchor of the left joins must come last, right before the joins
+		List tables = new ArrayList(mentionedTables);
+		if (anchor != null) {
+			tables.remove(anchor);
+			tables.add(anchor);
+		}
+		Iterator it = tables.iterator();
 		while (it.hasNext()) {			
 			RelationName tableName = (RelationName) it.next();
 			if (this.aliases.isAlias(tableName)) {
@@ -127,10 +269,30 @@ public class SelectStatementBuilder {
 			}
 		
 		}
+		it = leftJoins.iterator();
+		while (it.hasNext()) {
+			LeftJoin leftJoin = (LeftJoin) it.next();
+			SelectStatementBuilder derived = new SelectStatementBuilder(
+					leftJoin.relation(), leftJoin.outerAttributes());
+			result.append(" LEFT OUTER JOIN ");
+			result.append(database.getSyntax().getDerivedTableAliasExpression(
+					derived.buildSQLStatement(parameters), leftJoin.alias()));
+			result.append(" ON (");
+			if (parameters == null) {
+				result.append(leftJoin.condition().toSQL(this.database, this.aliases));
+			} else {
+				result.append(leftJoin.condition().toParameterizedSQL(this.database, this.aliases, parameters));
+			}
+			result.append(")");
+		}
 		
 		if (!condition().isTrue()) {
 			result.append(" WHERE ");
-			result.append(condition().toSQL(this.database, this.aliases));
+			if (parameters == null) {
+				result.append(condition().toSQL(this.database, this.aliases));
+			} else {
+				result.append(condition().toParameterizedSQL(this.database, this.aliases, parameters));
+			}
 		}
 
 		if (order!=null) {
@@ -145,10 +307,77 @@ public class SelectStatementBuilder {
 			result.append(" ");
 			result.append(s);
 		}
+		s = database.getSyntax().getOffsetAsQueryAppendage(offset);
+		if (s == null) {
+			throw new IllegalArgumentException("Database does not support OFFSET: " + database);
+		}
+		if (!"".equals(s)) {
+			result.append(" ");
+			result.append(s);
+		}
 						
 		return result.toString();
 	}
 	
+	private void appendSelectList(StringBuffer result) {
+		Iterator it = this.selectSpecs.iterator();
+		if (!it.hasNext()) {
+			result.append("1");
+		}
+		while (it.hasNext()) {
+			ProjectionSpec projection = (ProjectionSpec) it.next();
+			result.append(projection.toSQL(database, aliases));
+			if (columnAliases != null && columnAliases.containsKey(projection)) {
+				result.append(" AS ");
+				result.append(database.getSyntax().quoteIdentifier(
+						((Attribute) columnAliases.get(projection)).attributeName()));
+			}
+			if (it.hasNext()) {
+				result.append(", ");
+			}
+		}
+	}
+	
+	/**
+	 * @return The column of an aggregate query that holds the value of
+	 * 		the aggregate at the given position, for reading it from a
+	 * 		{@link ResultRow}
+	 */
+	public static ProjectionSpec aggregateColumn(int index) {
+		return new ExpressionProjectionSpec(SQLExpression.create("a" + index));
+	}
+	
+	private String buildAggregateSQLStatement(List parameters) {
+		StringBuffer result = new StringBuffer("SELECT ");
+		Iterator it = this.groupBy.iterator();
+		while (it.hasNext()) {
+			result.append(((Attribute) it.next()).toSQL(database, aliases));
+			result.append(", ");
+		}
+		for (int i = 0; i < aggregates.size(); i++) {
+			result.append(((Aggregate) aggregates.get(i)).toSQL(database, aliases));
+			result.append(" AS ");
+			result.append(database.getSyntax().quoteIdentifier("a" + i));
+			if (i < aggregates.size() - 1) {
+				result.append(", ");
+			}
+		}
+		result.append(" FROM ");
+		result.append(database.getSyntax().getDerivedTableAliasExpression(
+				groupedTable.buildSQLStatement(parameters), groupedTableAlias));
+		if (!groupBy.isEmpty()) {
+			result.append(" GROUP BY ");
+			it = groupBy.iterator();
+			while (it.hasNext()) {
+				result.append(((Attribute) it.next()).toSQL(database, aliases));
+				if (it.hasNext()) {
+					result.append(", ");
+				}
+			}
+		}
+		return result.toString();
+	}
+	
 	/**
 	 * Returns the projection specs used in this query, in order of appearance 
 	 * in the "SELECT x, y, z" part of the query.
@@ -0,0 +1,54 @@
+package de.fuberlin.wiwiss.d2rq.sql;
+
+import java.util.List;
+
+import de.fuberlin.wiwiss.d2rq.algebra.ProjectionSpec;
+
+/**
+ * Remembers where a fixed list of columns is found in the rows of
+ * a query, so that a value maker can read its values from a
+ * {@link ResultRowArray} by array index instead of looking up
+ * each column in every row. The slots are resolved once per
+ * {@link ResultRowArray.Layout}, that is, once per query.
+ *
+ * Instances can be shared between threads.
+ */
+public class SlotCache {
+	private final ProjectionSpec[] projections;
+	private Slots last = null;
+
+	/**
+	 * @param projections A list of {@link ProjectionSpec}s
+	 */
+	public SlotCache(List projections) {
+		this.projections = (ProjectionSpec[]) projections.toArray(
+				new ProjectionSpec[projections.size()]);
+	}
+
+	/**
+	 * @return The slot of each column in the layout, in the order of
+	 * 		the list passed to the constructor; -1 for absent columns
+	 */
+	public int[] slots(ResultRowArray.Layout layout) {
+		// Read the field once; the Slots instance itself is immutable
+		Slots result = this.last;
+		if (result == null || result.layout != layout) {
+			int[] slots = new int[this.projections.length];
+			for (int i = 0; i < slots.length; i++) {
+				slots[i] = layout.slotOf(this.projections[i]);
+			}
+			result = new Slots(layout, slots);
+			this.last = result;
+		}
+		return result.slots;
+	}
+
+	private static class Slots {
+		final ResultRowArray.Layout layout;
+		final int[] slots;
+		Slots(ResultRowArray.Layout layout, int[] slots) {
+			this.layout = layout;
+			this.slots = slots;
+		}
+	}
+}
@@ -0,0 +1,88 @@
+package de.fuberlin.wiwiss.d2rq.sql;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the slowest SQL queries executed so far, together
+ * with the query that caused them.
+ *
+ * All methods are thread-safe.
+ */
+public class SlowQueryLog {
+	public static final int DEFAULT_SIZE = 20;
+
+	private final int size;
+
+	/**
+	 * {@link Entry}s, slowest first
+	 */
+	private final List entries = new ArrayList();
+
+	public SlowQueryLog(int size) {
+		this.size = size;
+	}
+
+	/**
+	 * @param sql An SQL statement
+	 * @param origin The SPARQL or find query that caused it, if known
+	 * @param rows Number of rows read
+	 * @param nanos Time spent executing the statement and reading the results
+	 */
+	public synchronized void add(String sql, String origin, long rows, long nanos) {
+		if (entries.size() == size && ((Entry) entries.get(size - 1)).nanos >= nanos) {
+			return;
+		}
+		int i = 0;
+		while (i < entries.size() && ((Entry) entries.get(i)).nanos >= nanos) {
+			i++;
+		}
+		entries.add(i, new Entry(sql, origin, rows, nanos));
+		if (entries.size() > size) {
+			entries.remove(size);
+		}
+	}
+
+	/**
+	 * @return A list of {@link Entry}s, slowest first
+	 */
+	public synchronized List entries() {
+		return new ArrayList(entries);
+	}
+
+	public static class Entry {
+		private final String sql;
+		private final String origin;
+		private final long rows;
+		private final long nanos;
+		private final long time = System.currentTimeMillis();
+		Entry(String sql, String origin, long rows, long nanos) {
+			this.sql = sql;
+			this.origin = origin;
+			this.rows = rows;
+			this.nanos = nanos;
+		}
+		public String sql() {
+			return sql;
+		}
+		/**
+		 * @return The SPARQL or find query, or <tt>null</tt> if not known
+		 */
+		public String origin() {
+			return origin;
+		}
+		public long rows() {
+			return rows;
+		}
+		public long millis() {
+			return nanos / 1000000;
+		}
+		/**
+		 * @return Completion time of the statement, as returned by
+		 * 		{@link System#currentTimeMillis()}
+		 */
+		public long time() {
+			return time;
+		}
+	}
+}
@@ -0,0 +1,106 @@
+package de.fuberlin.wiwiss.d2rq.sql;
+
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+
+/**
+ * A constant value that is passed to a prepared statement as a
+ * bind parameter instead of being written into the SQL text.
+ * The value is bound using a JDBC type that corresponds to the
+ * column type it is compared to, following the same rules as
+ * {@link ConnectedDB#quoteValue(String, int)}.
+ */
+public class StatementParameter {
+
+	/**
+	 * @param value The constant's string form
+	 * @param columnType One of the column type constants in {@link ConnectedDB}
+	 * @return A parameter, or <tt>null</tt> if the value cannot be bound as
+	 * 		the given type and must be written into the SQL text instead,
+	 * 		escaped by {@link ConnectedDB#quoteValue(String, int)}
+	 */
+	public static StatementParameter create(String value, int columnType) {
+		if (columnType == ConnectedDB.NUMERIC_COLUMN) {
+			try {
+				return new StatementParameter(value, columnType, new Long(Long.parseLong(value)));
+			} catch (NumberFormatException nfex) {
+				try {
+					return new StatementParameter(value, columnType, new Double(Double.parseDouble(value)));
+				} catch (NumberFormatException nfex2) {
+					// No number -- bind as string, like quoteValue() does
+					return new StatementParameter(value, ConnectedDB.TEXT_COLUMN, value);
+				}
+			}
+		}
+		if (columnType == ConnectedDB.DATE_COLUMN) {
+			try {
+				return new StatementParameter(value, columnType, Date.valueOf(value));
+			} catch (IllegalArgumentException ex) {
+				return null;
+			}
+		}
+		if (columnType == ConnectedDB.TIMESTAMP_COLUMN) {
+			try {
+				return new StatementParameter(value, columnType, Timestamp.valueOf(value));
+			} catch (IllegalArgumentException ex) {
+				return null;
+			}
+		}
+		return new StatementParameter(value, ConnectedDB.TEXT_COLUMN, value);
+	}
+
+	private final String value;
+	private final int columnType;
+	private final Object boundValue;
+
+	private StatementParameter(String value, int columnType, Object boundValue) {
+		this.value = value;
+		this.columnType = columnType;
+		this.boundValue = boundValue;
+	}
+
+	public String value() {
+		return value;
+	}
+
+	/**
+	 * Binds the value to a placeholder of a prepared statement.
+	 * @param statement The statement
+	 * @param index The placeholder's index, starting at 1
+	 */
+	public void bind(PreparedStatement statement, int index) throws SQLException {
+		switch (columnType) {
+			case ConnectedDB.NUMERIC_COLUMN:
+				if (boundValue instanceof Long) {
+					statement.setLong(index, ((Long) boundValue).longValue());
+				} else {
+					statement.setDouble(index, ((Double) boundValue).doubleValue());
+				}
+				break;
+			case ConnectedDB.DATE_COLUMN:
+				statement.setDate(index, (Date) boundValue);
+				break;
+			case ConnectedDB.TIMESTAMP_COLUMN:
+				statement.setTimestamp(index, (Timestamp) boundValue);
+				break;
+			default:
+				statement.setString(index, value);
+		}
+	}
+
+	public String toString() {
+		return "'" + value + "'";
+	}
+
+	public boolean equals(Object other) {
+		if (!(other instanceof StatementParameter)) return false;
+		StatementParameter otherParameter = (StatementParameter) other;
+		return value.equals(otherParameter.value) && columnType == otherParameter.columnType;
+	}
+
+	public int hashCode() {
+		return value.hashCode() ^ columnType;
+	}
+}
@@ -0,0 +1,151 @@
+package de.fuberlin.wiwiss.d2rq.sql;
+
+import java.util.LinkedList;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * A bounded set of daemon threads that is shared by all parallel
+ * queries on a database. Threads are started on demand until the
+ * maximum size is reached, and stop after sitting idle for a minute.
+ *
+ * There is no queue: if all threads are busy, {@link #tryExecute(Runnable)}
+ * refuses the task and the caller has to do the work itself. This
+ * way, a query never waits for threads that are held by another
+ * query, or by itself.
+ */
+public class ThreadPool {
+	private static final Log log = LogFactory.getLog(ThreadPool.class);
+
+	public static final long IDLE_TIMEOUT_MILLIS = 60 * 1000;
+
+	private final int maxSize;
+	private final String name;
+	private final LinkedList idleWorkers = new LinkedList(); // Workers, most recently used first
+	private int threads = 0;
+	private int threadsStarted = 0;
+	private boolean closed = false;
+
+	/**
+	 * @param maxSize Maximum number of threads
+	 * @param name Prefix for the names of the threads
+	 */
+	public ThreadPool(int maxSize, String name) {
+		if (maxSize < 1) {
+			throw new IllegalArgumentException("Pool size must be at least 1: " + maxSize);
+		}
+		this.maxSize = maxSize;
+		this.name = name;
+	}
+
+	public int maxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * Runs a task on an idle thread, or on a new thread if the
+	 * pool isn't full yet.
+	 * @return <tt>false</tt> if all threads are busy or the pool
+	 * 		is closed; the task has not been run
+	 */
+	public synchronized boolean tryExecute(Runnable task) {
+		if (closed) return false;
+		if (!idleWorkers.isEmpty()) {
+			Worker worker = (Worker) idleWorkers.removeFirst();
+			worker.task = task;
+			notifyAll();
+			return true;
+		}
+		if (threads >= maxSize) return false;
+		threads++;
+		threadsStarted++;
+		Worker worker = new Worker(name + " " + threadsStarted, task);
+		worker.setDaemon(true);
+		worker.start();
+		return true;
+	}
+
+	/**
+	 * @return Number of threads that are currently running or idle
+	 */
+	public synchronized int size() {
+		return threads;
+	}
+
+	/**
+	 * @return Number of threads that are waiting for a task
+	 */
+	public synchronized int idleSize() {
+		return idleWorkers.size();
+	}
+
+	/**
+	 * Stops the idle threads. Busy threads stop when their task is done.
+	 */
+	public synchronized void close() {
+		closed = true;
+		notifyAll();
+	}
+
+	/**
+	 * Waits until the worker gets a new task
+	 * @return The task, or <tt>null</tt> if the worker should stop
+	 */
+	private synchronized Runnable awaitTask(Worker worker) {
+		worker.task = null;
+		if (!closed) {
+			idleWorkers.addFirst(worker);
+			long deadline = System.currentTimeMillis() + IDLE_TIMEOUT_MILLIS;
+			long remaining = IDLE_TIMEOUT_MILLIS;
+			while (worker.task == null && !closed && remaining > 0) {
+				try {
+					wait(remaining);
+				} catch (InterruptedException ex) {
+					break;
+				}
+				remaining = deadline - System.currentTimeMillis();
+			}
+		}
+		if (worker.task == null) {
+			idleWorkers.remove(worker);
+		}
+		return worker.task;
+	}
+
+	/**
+	 * Frees the slot of a worker that stops, normally or because
+	 * its task threw an {@link Error}
+	 */
+	private synchronized void workerStopped(Worker worker) {
+		idleWorkers.remove(worker);
+		threads--;
+		notifyAll();
+	}
+
+	private class Worker extends Thread {
+		private Runnable task;	// guarded by the pool
+		Worker(String name, Runnable task) {
+			super(name);
+			this.task = task;
+		}
+		public void run() {
+			Runnable next;
+			synchronized (ThreadPool.this) {
+				next = task;
+			}
+			try {
+				while (next != null) {
+					try {
+						next.run();
+					} catch (RuntimeException ex) {
+						log.warn("Task failed in " + getName(), ex);
+					}
+					next = awaitTask(this);
+				}
+			} finally {
+				workerStopped(this);
+			}
+		}
+	}
+}
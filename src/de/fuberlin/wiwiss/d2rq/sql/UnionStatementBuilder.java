@@ -0,0 +1,216 @@
+package de.fuberlin.wiwiss.d2rq.sql;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import de.fuberlin.wiwiss.d2rq.algebra.Attribute;
+import de.fuberlin.wiwiss.d2rq.algebra.ExpressionProjectionSpec;
+import de.fuberlin.wiwiss.d2rq.algebra.LeftJoin;
+import de.fuberlin.wiwiss.d2rq.algebra.ProjectionSpec;
+import de.fuberlin.wiwiss.d2rq.algebra.Relation;
+import de.fuberlin.wiwiss.d2rq.expr.SQLExpression;
+
+/**
+ * Combines the queries of several {@link Relation}s on the same database
+ * into a single <code>UNION ALL</code> statement, so that they take
+ * one round-trip to the database instead of one each.
+ *
+ * The first column holds the number of the relation that produced
+ * the row, see {@link #branchOf(ResultRow)}. Each {@link ProjectionSpec}
+ * of the relations gets one column. Relations that select the same
+ * projection share its column, and put a <code>NULL</code> of the
+ * column's type into the columns of the other relations.
+ */
+public class UnionStatementBuilder {
+
+	/**
+	 * Key of the column that holds the number of the relation that
+	 * produced a row
+	 */
+	public static final ProjectionSpec BRANCH =
+			new ExpressionProjectionSpec(SQLExpression.create("UNION_BRANCH"));
+
+	/**
+	 * Maximum number of relations that should be combined into one
+	 * statement; HSQLDB, for one, fails to parse much longer unions
+	 */
+	public static final int MAX_BRANCHES = 100;
+
+	/**
+	 * Checks if the queries of some relations can be combined. They must
+	 * be on the same database, and may not have limits or ordering.
+	 * Relations that select the same attribute must mean the same
+	 * column of the same table by it, so that the values fit into the
+	 * same column of the union. A column that isn't selected by all
+	 * relations must be a table column whose type is known, see
+	 * {@link ConnectedDB#typedNull(Attribute)}.
+	 *
+	 * @param relations A list of at least two {@link Relation}s
+	 */
+	public static boolean canCombine(List relations) {
+		if (relations.size() < 2) return false;
+		ConnectedDB database = ((Relation) relations.get(0)).database();
+		if (database == null || database.limit() != Relation.NO_LIMIT) return false;
+		Map originals = new HashMap();	// Attribute => Attribute
+		Iterator it = relations.iterator();
+		while (it.hasNext()) {
+			Relation relation = (Relation) it.next();
+			if (relation.isTrivial() || relation.equals(Relation.EMPTY)) return false;
+			if (!database.equals(relation.database())) return false;
+			if (relation.order() != null || relation.limit() != Relation.NO_LIMIT
+					|| relation.limitInverse() != Relation.NO_LIMIT || relation.offset() != 0) return false;
+			Set leftJoinAliases = new HashSet();
+			Iterator it2 = relation.leftJoinConditions().iterator();
+			while (it2.hasNext()) {
+				leftJoinAliases.add(((LeftJoin) it2.next()).alias());
+			}
+			it2 = relation.projections().iterator();
+			while (it2.hasNext()) {
+				Iterator it3 = ((ProjectionSpec) it2.next()).requiredAttributes().iterator();
+				while (it3.hasNext()) {
+					Attribute attribute = (Attribute) it3.next();
+					// The columns of left-joined derived tables have no fixed meaning
+					Object original = leftJoinAliases.contains(attribute.relationName())
+							? (Object) relation : relation.aliases().originalOf(attribute);
+					if (originals.containsKey(attribute) && !originals.get(attribute).equals(original)) {
+						return false;
+					}
+					originals.put(attribute, original);
+				}
+			}
+		}
+		return typedNulls(relations) != null;
+	}
+
+	/**
+	 * @return A map from the projections that are not selected by all
+	 * 		relations to a <code>NULL</code> of their type, or <tt>null</tt>
+	 * 		if the type of one of them is not known
+	 */
+	private static Map typedNulls(List relations) {
+		ConnectedDB database = ((Relation) relations.get(0)).database();
+		Map result = new HashMap();	// ProjectionSpec => String
+		Iterator it = relations.iterator();
+		while (it.hasNext()) {
+			Relation relation = (Relation) it.next();
+			Iterator it2 = relation.projections().iterator();
+			while (it2.hasNext()) {
+				ProjectionSpec projection = (ProjectionSpec) it2.next();
+				if (result.containsKey(projection) || isSelectedByAll(projection, relations)) continue;
+				if (!(projection instanceof Attribute)) return null;
+				Attribute attribute = (Attribute) projection;
+				Iterator it3 = relation.leftJoinConditions().iterator();
+				while (it3.hasNext()) {
+					if (((LeftJoin) it3.next()).alias().equals(attribute.relationName())) return null;
+				}
+				String typedNull = database.typedNull(relation.aliases().originalOf(attribute));
+				if (typedNull == null) return null;
+				result.put(projection, typedNull);
+			}
+		}
+		return result;
+	}
+
+	private static boolean isSelectedByAll(ProjectionSpec projection, List relations) {
+		Iterator it = relations.iterator();
+		while (it.hasNext()) {
+			if (!((Relation) it.next()).projections().contains(projection)) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return The number of the relation that produced a row
+	 */
+	public static int branchOf(ResultRow row) {
+		return Integer.parseInt(row.get(BRANCH).trim());
+	}
+
+	private final ConnectedDB database;
+	private final List branches = new ArrayList();	// SelectStatementBuilders
+	private final List columns = new ArrayList();
+	private final Map typedNulls;
+	private String parameterizedSQL = null;
+	private List parameters = null;
+
+	/**
+	 * @param relations A list of {@link Relation}s, see {@link #canCombine(List)}
+	 */
+	public UnionStatementBuilder(List relations) {
+		if (!canCombine(relations)) {
+			throw new IllegalArgumentException("Cannot combine relations: " + relations);
+		}
+		this.database = ((Relation) relations.get(0)).database();
+		this.typedNulls = typedNulls(relations);
+		this.columns.add(BRANCH);
+		Iterator it = relations.iterator();
+		while (it.hasNext()) {
+			SelectStatementBuilder branch = new SelectStatementBuilder((Relation) it.next());
+			this.branches.add(branch);
+			Iterator it2 = branch.getColumnSpecs().iterator();
+			while (it2.hasNext()) {
+				Object projection = it2.next();
+				if (!this.columns.contains(projection)) {
+					this.columns.add(projection);
+				}
+			}
+		}
+	}
+
+	public ConnectedDB database() {
+		return this.database;
+	}
+
+	/**
+	 * @return The SQL statement, with all values written into the SQL text
+	 */
+	public String getSQLStatement() {
+		return buildSQLStatement(null);
+	}
+
+	/**
+	 * @return The SQL statement with <code>?</code> placeholders, as in
+	 * 		{@link SelectStatementBuilder#getParameterizedSQLStatement()}
+	 */
+	public String getParameterizedSQLStatement() {
+		if (this.parameterizedSQL == null) {
+			this.parameters = new ArrayList();
+			this.parameterizedSQL = buildSQLStatement(this.parameters);
+		}
+		return this.parameterizedSQL;
+	}
+
+	/**
+	 * @return The values of the placeholders in
+	 * 		{@link #getParameterizedSQLStatement()}, as a list of
+	 * 		{@link StatementParameter}s
+	 */
+	public List getParameters() {
+		getParameterizedSQLStatement();
+		return this.parameters;
+	}
+
+	/**
+	 * @return The {@link ProjectionSpec}s of the columns, starting with {@link #BRANCH}
+	 */
+	public List getColumnSpecs() {
+		return this.columns;
+	}
+
+	private String buildSQLStatement(List parameters) {
+		StringBuffer result = new StringBuffer();
+		for (int i = 0; i < this.branches.size(); i++) {
+			if (i > 0) {
+				result.append(" UNION ALL ");
+			}
+			result.append(((SelectStatementBuilder) this.branches.get(i))
+					.buildUnionBranchStatement(parameters, i, this.columns, this.typedNulls));
+		}
+		return result.toString();
+	}
+}
@@ -17,6 +17,8 @@ import de.fuberlin.wiwiss.d2rq.expr.Equality;
 import de.fuberlin.wiwiss.d2rq.expr.Expression;
 import de.fuberlin.wiwiss.d2rq.nodes.NodeSetFilter;
 import de.fuberlin.wiwiss.d2rq.sql.ResultRow;
+import de.fuberlin.wiwiss.d2rq.sql.ResultRowArray;
+import de.fuberlin.wiwiss.d2rq.sql.SlotCache;
 
 /**
  * A blank node identifier that uniquely identifies all resources generated from
@@ -34,6 +36,7 @@ public class BlankNodeID implements ValueMaker {
 
 	private String classMapID;
 	private List attributes;
+	private SlotCache slots;
 	
 	/**
 	 * Constructs a new blank node identifier.
@@ -45,6 +48,7 @@ public class BlankNodeID implements ValueMaker {
 	public BlankNodeID(String classMapID, List attributes) {
 		this.classMapID = classMapID;
 		this.attributes = attributes;
+		this.slots = new SlotCache(attributes);
 	}
 
 	public List attributes() {
@@ -90,11 +94,17 @@ public class BlankNodeID implements ValueMaker {
 	 * @return this column's blank node identifier
 	 */
 	public String makeValue(ResultRow row) {
+		ResultRowArray array = null;
+		int[] attributeSlots = null;
+		if (row instanceof ResultRowArray) {
+			array = (ResultRowArray) row;
+			attributeSlots = this.slots.slots(array.layout());
+		}
 		StringBuffer result = new StringBuffer(this.classMapID);
-		Iterator it = this.attributes.iterator();
-		while (it.hasNext()) {
-			Attribute attribute = (Attribute) it.next();
-			String value = row.get(attribute);
+		for (int i = 0; i < this.attributes.size(); i++) {
+			String value = (array == null)
+					? row.get((Attribute) this.attributes.get(i))
+					: array.get(attributeSlots[i]);
 			if (value == null) {
 				return null;
 		    }
@@ -9,6 +9,8 @@ import de.fuberlin.wiwiss.d2rq.expr.Equality;
 import de.fuberlin.wiwiss.d2rq.expr.Expression;
 import de.fuberlin.wiwiss.d2rq.nodes.NodeSetFilter;
 import de.fuberlin.wiwiss.d2rq.sql.ResultRow;
+import de.fuberlin.wiwiss.d2rq.sql.ResultRowArray;
+import de.fuberlin.wiwiss.d2rq.sql.SlotCache;
 
 /**
  * A {@link ValueMaker} that takes its values from a single
@@ -20,13 +22,23 @@ import de.fuberlin.wiwiss.d2rq.sql.ResultRow;
 public class Column implements ValueMaker {
 	private Attribute attribute;
 	private Set attributeAsSet;
+	private SlotCache slots;
 	
 	public Column(Attribute attribute) {
 		this.attribute = attribute;
 		this.attributeAsSet = Collections.singleton(this.attribute);
+		this.slots = new SlotCache(Collections.singletonList(this.attribute));
+	}
+	
+	public Attribute attribute() {
+		return this.attribute;
 	}
 	
 	public String makeValue(ResultRow row) {
+		if (row instanceof ResultRowArray) {
+			ResultRowArray array = (ResultRowArray) row;
+			return array.get(this.slots.slots(array.layout())[0]);
+		}
 		return row.get(this.attribute);
 	}
 
@@ -22,6 +22,8 @@ import de.fuberlin.wiwiss.d2rq.expr.Equality;
 import de.fuberlin.wiwiss.d2rq.expr.Expression;
 import de.fuberlin.wiwiss.d2rq.nodes.NodeSetFilter;
 import de.fuberlin.wiwiss.d2rq.sql.ResultRow;
+import de.fuberlin.wiwiss.d2rq.sql.ResultRowArray;
+import de.fuberlin.wiwiss.d2rq.sql.SlotCache;
 import de.fuberlin.wiwiss.d2rq.sql.SQL;
 
 /**
@@ -42,7 +44,8 @@ public class Pattern implements ValueMaker {
 	private List columnFunctions = new ArrayList(3);
 	private List literalParts = new ArrayList(3);
 	private Set columnsAsSet;
-	private java.util.regex.Pattern regex;
+	private java.util.regex.Pattern regex = null;
+	private SlotCache slots;
 	
 	/**
 	 * Constructs a new Pattern instance from a pattern syntax string
@@ -53,6 +56,7 @@ public class Pattern implements ValueMaker {
 		this.pattern = pattern;
 		parsePattern();
 		this.columnsAsSet = new HashSet(this.columns);
+		this.slots = new SlotCache(this.columns);
 	}
 
 	public String firstLiteralPart() {
@@ -92,15 +96,15 @@ public class Pattern implements ValueMaker {
 		if (value == null) {
 			return Expression.FALSE;
 		}
-		Matcher match = this.regex.matcher(value);
-		if (!match.matches()) {
+		String[] columnValues = splitValue(value);
+		if (columnValues == null) {
 			return Expression.FALSE;
 		}
 		Collection expressions = new ArrayList(columns.size());
 		for (int i = 0; i < this.columns.size(); i++) {
 			Attribute attribute = (Attribute) this.columns.get(i);
 			ColumnFunction function = (ColumnFunction) this.columnFunctions.get(i);
-			String attributeValue = function.decode(match.group(i + 1));
+			String attributeValue = function.decode(columnValues[i]);
 			if (attributeValue == null) {
 				return Expression.FALSE;
 			}
@@ -109,6 +113,55 @@ public class Pattern implements ValueMaker {
 		return Conjunction.create(expressions);
 	}
 
+	/**
+	 * Splits a value into the values of the columns by finding the
+	 * literal parts from left to right. Taking the first occurrence
+	 * of each literal part leaves the most room for the rest of the
+	 * pattern, so this finds the same values as the regex with
+	 * reluctant groups, but in linear time. Only if two columns are
+	 * adjacent, the regex is used.
+	 * @return The column values, or <tt>null</tt> if the value
+	 * 		doesn't match the pattern
+	 */
+	private String[] splitValue(String value) {
+		if (this.regex != null) {
+			Matcher match = this.regex.matcher(value);
+			if (!match.matches()) {
+				return null;
+			}
+			String[] result = new String[this.columns.size()];
+			for (int i = 0; i < result.length; i++) {
+				result[i] = match.group(i + 1);
+			}
+			return result;
+		}
+		if (this.columns.isEmpty()) {
+			return value.equals(this.firstLiteralPart) ? new String[0] : null;
+		}
+		if (!value.startsWith(this.firstLiteralPart)) {
+			return null;
+		}
+		String[] result = new String[this.columns.size()];
+		int position = this.firstLiteralPart.length();
+		int last = result.length - 1;
+		for (int i = 0; i < last; i++) {
+			String literalPart = (String) this.literalParts.get(i);
+			int found = value.indexOf(literalPart, position);
+			if (found == -1) {
+				return null;
+			}
+			result[i] = value.substring(position, found);
+			position = found + literalPart.length();
+		}
+		String lastLiteralPart = (String) this.literalParts.get(last);
+		int end = value.length() - lastLiteralPart.length();
+		if (end < position || !value.endsWith(lastLiteralPart)) {
+			return null;
+		}
+		result[last] = value.substring(position, end);
+		return result;
+	}
+
 	public Set projectionSpecs() {
 		return this.columnsAsSet;
 	}
@@ -119,12 +172,19 @@ public class Pattern implements ValueMaker {
 	 * @return the pattern's value for the given row
 	 */
 	public String makeValue(ResultRow row) {
+		ResultRowArray array = null;
+		int[] columnSlots = null;
+		if (row instanceof ResultRowArray) {
+			array = (ResultRowArray) row;
+			columnSlots = this.slots.slots(array.layout());
+		}
 		int index = 0;
 		StringBuffer result = new StringBuffer(this.firstLiteralPart);
 		while (index < this.columns.size()) {
-			Attribute column = (Attribute) this.columns.get(index);
 			ColumnFunction function = (ColumnFunction) this.columnFunctions.get(index);
-			String value = row.get(column);
+			String value = (array == null) 
+					? row.get((Attribute) this.columns.get(index)) 
+					: array.get(columnSlots[index]);
 			if (value == null) {
 				return null;
 			}
@@ -185,6 +245,7 @@ public class Pattern implements ValueMaker {
 		int firstLiteralEnd = matched ? match.start() : this.pattern.length();
 		this.firstLiteralPart = this.pattern.substring(0, firstLiteralEnd);
 		String regexPattern = "\\Q" + this.firstLiteralPart + "\\E";
+		boolean hasAdjacentColumns = false;
 		while (matched) {
 			this.columns.add(SQL.parseAttribute(match.group(1)));
 			this.columnFunctions.add(getColumnFunction(match.group(2)));
@@ -194,8 +255,13 @@ public class Pattern implements ValueMaker {
 			String nextLiteralPart = this.pattern.substring(nextLiteralStart, nextLiteralEnd);
 			this.literalParts.add(nextLiteralPart);
 			regexPattern += "(.*?)\\Q" + nextLiteralPart + "\\E";
+			if (matched && nextLiteralPart.length() == 0) {
+				hasAdjacentColumns = true;
+			}
+		}
+		if (hasAdjacentColumns) {
+			this.regex = java.util.regex.Pattern.compile(regexPattern, java.util.regex.Pattern.DOTALL);
 		}
-		this.regex = java.util.regex.Pattern.compile(regexPattern, java.util.regex.Pattern.DOTALL);
 	}
 	
 	public Iterator partsIterator() {
@@ -269,6 +335,9 @@ public class Pattern implements ValueMaker {
 			}
 		}
 		public String decode(String s) {
+			if (s.indexOf('%') == -1 && s.indexOf('+') == -1) {
+				return s;
+			}
 			try {
 				return URLDecoder.decode(s, "utf-8");
 			} catch (UnsupportedEncodingException ex) {
@@ -292,6 +361,9 @@ public class Pattern implements ValueMaker {
 			}
 		}
 		public String decode(String s) {
+			if (s.indexOf('%') == -1 && s.indexOf('+') == -1 && s.indexOf('_') == -1) {
+				return s;
+			}
 			try {
 				return URLDecoder.decode(s.replace('_', '+'), "utf-8");
 			} catch (UnsupportedEncodingException ex) {
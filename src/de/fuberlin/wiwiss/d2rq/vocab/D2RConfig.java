@@ -23,6 +23,11 @@ public class D2RConfig {
     /** <p>Whether D2R Server should check for an updated mapping file with every request.</p> */
     public static final Property autoReloadMapping = m_model.createProperty( "http://sites.wiwiss.fu-berlin.de/suhl/bizer/d2r-server/config.rdf#autoReloadMapping" );
     
+    /** <p>Whether D2R Server should serve performance metrics, including the slowest 
+     *  SQL queries, at /metrics.</p>
+     */
+    public static final Property enableMetrics = m_model.createProperty( "http://sites.wiwiss.fu-berlin.de/suhl/bizer/d2r-server/config.rdf#enableMetrics" );
+    
     /** <p>Base URI for a D2R Server installation; the URI of the running server's start 
      *  page.</p>
      */
@@ -36,6 +41,15 @@ public class D2RConfig {
     /** <p>A RDF metadata template.</p> */
     public static final Property metadataTemplate = m_model.createProperty( "http://sites.wiwiss.fu-berlin.de/suhl/bizer/d2r-server/config.rdf#metadataTemplate" );
     
+    /** <p>The maximum total size in bytes of the documents kept in the response cache 
+     *  of a D2R Server installation; 0, the default, disables the cache.</p>
+     */
+    public static final Property responseCacheMaxBytes = m_model.createProperty( "http://sites.wiwiss.fu-berlin.de/suhl/bizer/d2r-server/config.rdf#responseCacheMaxBytes" );
+    
+    /** <p>The number of seconds for which documents are kept in the response cache.</p>
+     */
+    public static final Property responseCacheTimeToLive = m_model.createProperty( "http://sites.wiwiss.fu-berlin.de/suhl/bizer/d2r-server/config.rdf#responseCacheTimeToLive" );
+    
     /** <p>The TCP port on which a D2R Server installation listens.</p> */
     public static final Property port = m_model.createProperty( "http://sites.wiwiss.fu-berlin.de/suhl/bizer/d2r-server/config.rdf#port" );
     
@@ -35,6 +35,15 @@ public class D2RQ {
      */
     public static final Property allowDistinct = m_model.createProperty( "http://www.wiwiss.fu-berlin.de/suhl/bizer/D2RQ/0.1#allowDistinct" );
     
+    /** <p>Find results with more triples than this are not cached by a caching graph</p> */
+    public static final Property cacheMaxEntryTriples = m_model.createProperty( "http://www.wiwiss.fu-berlin.de/suhl/bizer/D2RQ/0.1#cacheMaxEntryTriples" );
+    
+    /** <p>Maximum number of triples in all find results cached by a caching graph</p> */
+    public static final Property cacheMaxTriples = m_model.createProperty( "http://www.wiwiss.fu-berlin.de/suhl/bizer/D2RQ/0.1#cacheMaxTriples" );
+    
+    /** <p>Seconds after which find results cached by a caching graph expire</p> */
+    public static final Property cacheTimeToLive = m_model.createProperty( "http://www.wiwiss.fu-berlin.de/suhl/bizer/D2RQ/0.1#cacheTimeToLive" );
+    
     /** <p>Comma-separated list of database columns used for construction of blank nodes.</p> */
     public static final Property bNodeIdColumns = m_model.createProperty( "http://www.wiwiss.fu-berlin.de/suhl/bizer/D2RQ/0.1#bNodeIdColumns" );
     
@@ -57,6 +66,16 @@ public class D2RQ {
     /** <p>SQL WHERE condition that must be satisfied for a database row to be mapped.</p> */
     public static final Property condition = m_model.createProperty( "http://www.wiwiss.fu-berlin.de/suhl/bizer/D2RQ/0.1#condition" );
     
+    /** <p>The maximum number of connections that are opened to the database at the 
+     *  same time</p>
+     */
+    public static final Property connectionPoolSize = m_model.createProperty( "http://www.wiwiss.fu-berlin.de/suhl/bizer/D2RQ/0.1#connectionPoolSize" );
+    
+    /** <p>The number of seconds to wait for a free database connection if all connections 
+     *  are in use</p>
+     */
+    public static final Property connectionPoolTimeout = m_model.createProperty( "http://www.wiwiss.fu-berlin.de/suhl/bizer/D2RQ/0.1#connectionPoolTimeout" );
+    
     /** <p>A constant RDF node to be used as the value of this property bridge, or as 
      *  the resource of a singleton ClassMap.</p>
      */
@@ -118,10 +137,16 @@ public class D2RQ {
     /** <p>The column after which to sort results in descending order for this PropertyBridge</p> */
     public static final Property orderDesc = m_model.createProperty( "http://www.wiwiss.fu-berlin.de/suhl/bizer/D2RQ/0.1#orderDesc" );
     
+    /** <p>Maximum number of independent SQL queries that are run at the same time</p> */
+    public static final Property parallelQueries = m_model.createProperty( "http://www.wiwiss.fu-berlin.de/suhl/bizer/D2RQ/0.1#parallelQueries" );
+    
     public static final Property password = m_model.createProperty( "http://www.wiwiss.fu-berlin.de/suhl/bizer/D2RQ/0.1#password" );
     
     public static final Property pattern = m_model.createProperty( "http://www.wiwiss.fu-berlin.de/suhl/bizer/D2RQ/0.1#pattern" );
     
+    /** <p>Maximum number of optimized SPARQL query plans that are kept for reuse</p> */
+    public static final Property planCacheSize = m_model.createProperty( "http://www.wiwiss.fu-berlin.de/suhl/bizer/D2RQ/0.1#planCacheSize" );
+    
     /** <p>Links a d2rq:PropertyBridge to an RDF property.</p> */
     public static final Property property = m_model.createProperty( "http://www.wiwiss.fu-berlin.de/suhl/bizer/D2RQ/0.1#property" );
     
@@ -155,6 +180,11 @@ public class D2RQ {
     /** <p>A SQL expression whose result will be the value of this property bridge.</p> */
     public static final Property sqlExpression = m_model.createProperty( "http://www.wiwiss.fu-berlin.de/suhl/bizer/D2RQ/0.1#sqlExpression" );
     
+    /** <p>The number of prepared statements that are cached for each database connection; 
+     *  0 disables prepared statements</p>
+     */
+    public static final Property statementCacheSize = m_model.createProperty( "http://www.wiwiss.fu-berlin.de/suhl/bizer/D2RQ/0.1#statementCacheSize" );
+    
     public static final Property textColumn = m_model.createProperty( "http://www.wiwiss.fu-berlin.de/suhl/bizer/D2RQ/0.1#textColumn" );
     
     public static final Property timestampColumn = m_model.createProperty( "http://www.wiwiss.fu-berlin.de/suhl/bizer/D2RQ/0.1#timestampColumn" );
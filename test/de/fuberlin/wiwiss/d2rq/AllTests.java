@@ -15,6 +15,7 @@ public class AllTests {
 		//$JUnit-BEGIN$
 		suite.addTestSuite(JenaAPITest.class);
 		suite.addTestSuite(DBConnectionTest.class);
+		suite.addTestSuite(TripleCacheTest.class);
 		//$JUnit-END$
 		return suite;
 	}
@@ -24,13 +24,16 @@ public class D2RQTestSuite {
 		suite.addTest(de.fuberlin.wiwiss.d2rq.algebra.AllTests.suite());
 		suite.addTest(de.fuberlin.wiwiss.d2rq.csv.AllTests.suite());
 		suite.addTest(de.fuberlin.wiwiss.d2rq.dbschema.AllTests.suite());
+		suite.addTest(de.fuberlin.wiwiss.d2rq.dump.AllTests.suite());
 		suite.addTest(de.fuberlin.wiwiss.d2rq.expr.AllTests.suite());
 		suite.addTest(de.fuberlin.wiwiss.d2rq.find.AllTests.suite());
 		suite.addTest(de.fuberlin.wiwiss.d2rq.functional_tests.AllTests.suite());
 		suite.addTest(de.fuberlin.wiwiss.d2rq.map.AllTests.suite());
 		suite.addTest(de.fuberlin.wiwiss.d2rq.nodes.AllTests.suite());
+		suite.addTest(de.fuberlin.wiwiss.d2rq.optimizer.iterators.AllTests.suite());
 		suite.addTest(de.fuberlin.wiwiss.d2rq.parser.AllTests.suite());
 		suite.addTest(de.fuberlin.wiwiss.d2rq.pp.AllTests.suite());
+		suite.addTest(de.fuberlin.wiwiss.d2rq.server.AllTests.suite());
 		suite.addTest(de.fuberlin.wiwiss.d2rq.sql.AllTests.suite());
 		suite.addTest(de.fuberlin.wiwiss.d2rq.values.AllTests.suite());
 		suite.addTest(de.fuberlin.wiwiss.d2rq.engine.AllTests.suite());
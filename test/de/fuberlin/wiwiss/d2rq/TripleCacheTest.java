@@ -0,0 +1,135 @@
+package de.fuberlin.wiwiss.d2rq;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.util.iterator.ExtendedIterator;
+import com.hp.hpl.jena.util.iterator.WrappedIterator;
+
+public class TripleCacheTest extends TestCase {
+	private static final Triple pattern1 = Triple.create(Node.createURI("http://example.org/s1"), Node.ANY, Node.ANY);
+	private static final Triple pattern2 = Triple.create(Node.createURI("http://example.org/s2"), Node.ANY, Node.ANY);
+	private static final Triple pattern3 = Triple.create(Node.createURI("http://example.org/s3"), Node.ANY, Node.ANY);
+
+	private static class CountingLoader implements TripleCache.Loader {
+		final int resultSize;
+		int loads = 0;
+		long delay = 0;
+		CountingLoader(int resultSize) {
+			this.resultSize = resultSize;
+		}
+		public ExtendedIterator load(Triple pattern) {
+			synchronized (this) {
+				loads++;
+			}
+			if (delay > 0) {
+				try { Thread.sleep(delay); } catch (InterruptedException ignore) {}
+			}
+			List result = new ArrayList();
+			for (int i = 0; i < resultSize; i++) {
+				result.add(Triple.create(pattern.getSubject(), 
+						Node.createURI("http://example.org/p"), Node.createLiteral("" + i)));
+			}
+			return WrappedIterator.create(result.iterator());
+		}
+	}
+	
+	public void testSecondFindIsAHit() {
+		TripleCache cache = new TripleCache(100, 100, TripleCache.NO_EXPIRY);
+		CountingLoader loader = new CountingLoader(3);
+		assertEquals(3, cache.find(pattern1, loader).toList().size());
+		assertEquals(3, cache.find(pattern1, loader).toList().size());
+		assertEquals(1, loader.loads);
+		assertEquals(1, cache.hits());
+		assertEquals(1, cache.misses());
+		assertEquals(3, cache.weight());
+	}
+
+	public void testEvictsLeastRecentlyUsedByWeight() {
+		TripleCache cache = new TripleCache(10, 10, TripleCache.NO_EXPIRY);
+		CountingLoader loader = new CountingLoader(4);
+		cache.find(pattern1, loader).toList();
+		cache.find(pattern2, loader).toList();
+		cache.find(pattern1, loader).toList();
+		cache.find(pattern3, loader).toList();
+		assertEquals(2, cache.size());
+		assertEquals(8, cache.weight());
+		assertEquals(1, cache.evictions());
+		cache.find(pattern1, loader).toList();
+		assertEquals(3, loader.loads);
+	}
+
+	public void testLargeResultIsStreamedButNotCached() {
+		TripleCache cache = new TripleCache(100, 5, TripleCache.NO_EXPIRY);
+		CountingLoader loader = new CountingLoader(20);
+		assertEquals(20, cache.find(pattern1, loader).toList().size());
+		assertEquals(0, cache.size());
+		assertEquals(20, cache.find(pattern1, loader).toList().size());
+		assertEquals(2, loader.loads);
+	}
+
+	public void testExpiredResultIsReloaded() throws InterruptedException {
+		TripleCache cache = new TripleCache(100, 100, 10);
+		CountingLoader loader = new CountingLoader(1);
+		cache.find(pattern1, loader).toList();
+		Thread.sleep(50);
+		cache.find(pattern1, loader).toList();
+		assertEquals(2, loader.loads);
+		assertEquals(1, cache.expirations());
+	}
+
+	public void testClear() {
+		TripleCache cache = new TripleCache(100, 100, TripleCache.NO_EXPIRY);
+		CountingLoader loader = new CountingLoader(2);
+		cache.find(pattern1, loader).toList();
+		cache.clear();
+		assertEquals(0, cache.size());
+		assertEquals(0, cache.weight());
+		cache.find(pattern1, loader).toList();
+		assertEquals(2, loader.loads);
+	}
+
+	public void testFailedLoadIsNotLeftInProgress() {
+		TripleCache cache = new TripleCache(100, 100, TripleCache.NO_EXPIRY);
+		try {
+			cache.find(pattern1, new TripleCache.Loader() {
+				public ExtendedIterator load(Triple pattern) {
+					throw new NoClassDefFoundError("com.example.Driver");
+				}
+			});
+			fail();
+		} catch (NoClassDefFoundError expected) {
+			// expected
+		}
+		// Would wait forever for the failed load if it were still in progress
+		assertEquals(3, cache.find(pattern1, new CountingLoader(3)).toList().size());
+	}
+
+	public void testConcurrentMissesLoadOnce() throws InterruptedException {
+		final TripleCache cache = new TripleCache(100, 100, TripleCache.NO_EXPIRY);
+		final CountingLoader loader = new CountingLoader(3);
+		loader.delay = 200;
+		final int[] sizes = new int[4];
+		Thread[] threads = new Thread[sizes.length];
+		for (int i = 0; i < threads.length; i++) {
+			final int index = i;
+			threads[i] = new Thread() {
+				public void run() {
+					sizes[index] = cache.find(pattern1, loader).toList().size();
+				}
+			};
+			threads[i].start();
+		}
+		for (int i = 0; i < threads.length; i++) {
+			threads[i].join();
+		}
+		assertEquals(1, loader.loads);
+		for (int i = 0; i < sizes.length; i++) {
+			assertEquals(3, sizes[i]);
+		}
+	}
+}
@@ -16,6 +16,7 @@ public class AllTests {
 		suite.addTestSuite(ColumnRenamerTest.class);
 		suite.addTestSuite(CompatibleRelationGroupTest.class);
 		suite.addTestSuite(JoinTest.class);
+		suite.addTestSuite(TripleRelationIndexTest.class);
 		//$JUnit-END$
 		return suite;
 	}
@@ -0,0 +1,131 @@
+package de.fuberlin.wiwiss.d2rq.algebra;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.vocabulary.RDF;
+
+import de.fuberlin.wiwiss.d2rq.expr.Expression;
+import de.fuberlin.wiwiss.d2rq.nodes.FixedNodeMaker;
+import de.fuberlin.wiwiss.d2rq.nodes.TypedNodeMaker;
+import de.fuberlin.wiwiss.d2rq.values.Column;
+import de.fuberlin.wiwiss.d2rq.values.Pattern;
+import de.fuberlin.wiwiss.d2rq.vocab.FOAF;
+
+public class TripleRelationIndexTest extends TestCase {
+	private final static Node person1 = Node.createURI("http://test/person1");
+	private final static Node homepage = Node.createURI("http://example.org/");
+	private TripleRelation personType;
+	private TripleRelation knows;
+	private TripleRelation documentType;
+	private TripleRelation personHomepage;
+	private TripleRelation personName;
+	private TripleRelationIndex index;
+
+	public void setUp() {
+		Relation base = new RelationImpl(null, AliasMap.NO_ALIASES,
+				Expression.TRUE, Collections.EMPTY_SET, Collections.EMPTY_SET, false, null, false, Relation.NO_LIMIT, Relation.NO_LIMIT);
+		personType = new TripleRelation(base,
+				new TypedNodeMaker(TypedNodeMaker.URI,
+						new Pattern("http://test/person@@employees.ID@@"), true),
+				new FixedNodeMaker(RDF.type.asNode(), false),
+				new FixedNodeMaker(FOAF.Person.asNode(), false));
+		knows = new TripleRelation(base,
+				new TypedNodeMaker(TypedNodeMaker.URI,
+						new Pattern("http://test/person@@employees.ID@@"), true),
+				new FixedNodeMaker(FOAF.knows.asNode(), false),
+				new TypedNodeMaker(TypedNodeMaker.URI,
+						new Pattern("http://test/person@@employees.manager@@"), true));
+		documentType = new TripleRelation(base,
+				new TypedNodeMaker(TypedNodeMaker.URI,
+						new Column(new Attribute(null, "employees", "homepage")), false),
+				new FixedNodeMaker(RDF.type.asNode(), false),
+				new FixedNodeMaker(FOAF.Document.asNode(), false));
+		personHomepage = new TripleRelation(base,
+				new TypedNodeMaker(TypedNodeMaker.URI,
+						new Pattern("http://test/person@@employees.ID@@"), true),
+				new FixedNodeMaker(FOAF.homepage.asNode(), false),
+				new TypedNodeMaker(TypedNodeMaker.URI,
+						new Column(new Attribute(null, "employees", "homepage")), false));
+		personName = new TripleRelation(base,
+				new TypedNodeMaker(TypedNodeMaker.URI,
+						new Pattern("http://test/person@@employees.ID@@"), true),
+				new FixedNodeMaker(FOAF.name.asNode(), false),
+				new TypedNodeMaker(TypedNodeMaker.PLAIN_LITERAL,
+						new Column(new Attribute(null, "employees", "name")), false));
+		index = new TripleRelationIndex(Arrays.asList(new TripleRelation[]{
+				personType, knows, documentType, personHomepage, personName}));
+	}
+
+	public void testAnyPatternReturnsAllRelationsInOrder() {
+		assertEquals(Arrays.asList(new TripleRelation[]{
+				personType, knows, documentType, personHomepage, personName}),
+				index.candidates(Triple.ANY));
+	}
+
+	public void testLookupByPredicate() {
+		assertEquals(Collections.singletonList(knows),
+				index.candidates(new Triple(Node.ANY, FOAF.knows.asNode(), Node.ANY)));
+	}
+
+	public void testUnknownPredicateHasNoCandidates() {
+		assertTrue(index.candidates(new Triple(Node.ANY, FOAF.mbox.asNode(), Node.ANY)).isEmpty());
+	}
+
+	public void testLookupByType() {
+		assertEquals(Collections.singletonList(documentType),
+				index.candidates(new Triple(Node.ANY, RDF.type.asNode(), FOAF.Document.asNode())));
+	}
+
+	public void testLookupBySubjectPrefix() {
+		List candidates = index.candidates(new Triple(person1, Node.ANY, Node.ANY));
+		assertEquals(Arrays.asList(new TripleRelation[]{
+				personType, knows, documentType, personHomepage, personName}),
+				candidates);
+		candidates = index.candidates(new Triple(homepage, Node.ANY, Node.ANY));
+		assertEquals(Collections.singletonList(documentType), candidates);
+	}
+
+	public void testLookupByObjectPrefix() {
+		assertEquals(Arrays.asList(new TripleRelation[]{knows, personHomepage}),
+				index.candidates(new Triple(Node.ANY, Node.ANY, person1)));
+		assertEquals(Collections.singletonList(personHomepage),
+				index.candidates(new Triple(Node.ANY, Node.ANY, homepage)));
+	}
+
+	public void testLiteralObjectIsNotLookedUpByPrefix() {
+		assertEquals(Collections.singletonList(personName),
+				index.candidates(new Triple(Node.ANY, FOAF.name.asNode(), Node.createLiteral("Alice"))));
+	}
+
+	public void testCandidatesIncludeAllMatches() {
+		Triple[] patterns = {
+				new Triple(person1, RDF.type.asNode(), FOAF.Person.asNode()),
+				new Triple(person1, FOAF.knows.asNode(), Node.ANY),
+				new Triple(homepage, Node.ANY, Node.ANY),
+				new Triple(Node.ANY, Node.ANY, homepage),
+				new Triple(Node.ANY, RDF.type.asNode(), Node.ANY)};
+		for (int i = 0; i < patterns.length; i++) {
+			List candidates = index.candidates(patterns[i]);
+			Iterator it = index.iterator();
+			while (it.hasNext()) {
+				TripleRelation relation = (TripleRelation) it.next();
+				if (relation.selectTriple(patterns[i]) != null) {
+					assertTrue(patterns[i] + " " + relation, candidates.contains(relation));
+				}
+			}
+		}
+	}
+
+	public void testPlainCollectionIsNotFiltered() {
+		List all = Arrays.asList(new TripleRelation[]{personType, knows});
+		assertSame(all, TripleRelationIndex.candidates(all,
+				new Triple(Node.ANY, FOAF.name.asNode(), Node.ANY)));
+	}
+}
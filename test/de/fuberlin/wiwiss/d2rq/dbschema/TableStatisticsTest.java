@@ -0,0 +1,90 @@
+package de.fuberlin.wiwiss.d2rq.dbschema;
+
+import junit.framework.TestCase;
+import de.fuberlin.wiwiss.d2rq.algebra.Attribute;
+import de.fuberlin.wiwiss.d2rq.algebra.RelationName;
+import de.fuberlin.wiwiss.d2rq.helpers.HSQLDatabase;
+import de.fuberlin.wiwiss.d2rq.sql.ConnectedDB;
+
+public class TableStatisticsTest extends TestCase {
+	private final static RelationName PERSON = new RelationName(null, "PERSON");
+	private HSQLDatabase hsql;
+	private ConnectedDB db;
+
+	public void setUp() {
+		hsql = new HSQLDatabase("tablestatisticstest");
+		hsql.executeSQL("CREATE TABLE PERSON (ID INT PRIMARY KEY, NAME VARCHAR(50))");
+		hsql.executeSQL("INSERT INTO PERSON VALUES (1, 'Alice')");
+		hsql.executeSQL("INSERT INTO PERSON VALUES (2, 'Bob')");
+		hsql.executeSQL("INSERT INTO PERSON VALUES (3, 'Carol')");
+		db = new ConnectedDB(hsql.jdbcURL(), "sa", "");
+	}
+
+	public void tearDown() {
+		db.close();
+		hsql.close();
+	}
+
+	public void testRowsAreCountedInTheBackground() throws InterruptedException {
+		TableStatistics statistics = new TableStatistics(db);
+		assertEquals(3, awaitRowCount(statistics, 3));
+	}
+
+	public void testUnknownWithoutFreeThread() {
+		db.queryThreads().close();
+		TableStatistics statistics = new TableStatistics(db);
+		assertEquals(TableStatistics.UNKNOWN, statistics.rowCount(PERSON));
+		assertEquals(TableStatistics.UNKNOWN, statistics.distinctValues(new Attribute(PERSON, "ID")));
+	}
+
+	public void testDistinctValuesOfUniqueColumnAreRows() throws InterruptedException {
+		TableStatistics statistics = new TableStatistics(db);
+		awaitRowCount(statistics, 3);
+		assertEquals(3, statistics.distinctValues(new Attribute(PERSON, "ID")));
+	}
+
+	public void testCountIsKeptUntilInvalidated() throws InterruptedException {
+		TableStatistics statistics = new TableStatistics(db);
+		awaitRowCount(statistics, 3);
+		hsql.executeSQL("INSERT INTO PERSON VALUES (4, 'Dave')");
+		assertEquals(3, statistics.rowCount(PERSON));
+		statistics.invalidate();
+		assertEquals(4, awaitRowCount(statistics, 4));
+	}
+
+	public void testExpiredCountIsRetrievedAgain() throws InterruptedException {
+		TableStatistics statistics = new TableStatistics(db, 0);
+		awaitRowCount(statistics, 3);
+		hsql.executeSQL("INSERT INTO PERSON VALUES (4, 'Dave')");
+		assertEquals(4, awaitRowCount(statistics, 4));
+	}
+
+	public void testVersionChangesWithNumbers() throws InterruptedException {
+		TableStatistics statistics = new TableStatistics(db, 0);
+		long version = statistics.version();
+		awaitRowCount(statistics, 3);
+		assertTrue(statistics.version() > version);
+		version = statistics.version();
+		// Retrieving the same number again doesn't change the version
+		statistics.rowCount(PERSON);
+		Thread.sleep(100);
+		statistics.rowCount(PERSON);
+		assertEquals(version, statistics.version());
+		statistics.invalidate();
+		assertTrue(statistics.version() > version);
+	}
+
+	/**
+	 * Asks for the row count until it is the expected number,
+	 * or a few seconds have passed
+	 */
+	private long awaitRowCount(TableStatistics statistics, long expected) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		long result = statistics.rowCount(PERSON);
+		while (result != expected && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+			result = statistics.rowCount(PERSON);
+		}
+		return result;
+	}
+}
@@ -0,0 +1,16 @@
+package de.fuberlin.wiwiss.d2rq.dump;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+public class AllTests {
+
+	public static Test suite() {
+		TestSuite suite = new TestSuite("Test for de.fuberlin.wiwiss.d2rq.dump");
+		//$JUnit-BEGIN$
+		suite.addTestSuite(NTriplesDumpTest.class);
+		//$JUnit-END$
+		return suite;
+	}
+
+}
@@ -0,0 +1,230 @@
+package de.fuberlin.wiwiss.d2rq.dump;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.Iterator;
+
+import junit.framework.TestCase;
+
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.vocabulary.RDF;
+
+import de.fuberlin.wiwiss.d2rq.D2RQException;
+import de.fuberlin.wiwiss.d2rq.ModelD2RQ;
+import de.fuberlin.wiwiss.d2rq.algebra.CompatibleRelationGroup;
+import de.fuberlin.wiwiss.d2rq.algebra.RelationName;
+import de.fuberlin.wiwiss.d2rq.map.Mapping;
+import de.fuberlin.wiwiss.d2rq.parser.MapParser;
+
+public class NTriplesDumpTest extends TestCase {
+	private static final String HSQL_URL = "jdbc:hsqldb:mem:ntriplesdumptest";
+	private static final String MAPPING =
+		"@prefix d2rq: <http://www.wiwiss.fu-berlin.de/suhl/bizer/D2RQ/0.1#> .\n" +
+		"@prefix ex: <http://example.org/> .\n" +
+		"@prefix map: <file:///map#> .\n" +
+		"map:db a d2rq:Database; d2rq:jdbcDriver \"org.hsqldb.jdbcDriver\";\n" +
+		"    d2rq:jdbcDSN \"" + HSQL_URL + "\"; d2rq:username \"sa\" .\n" +
+		"map:Person a d2rq:ClassMap; d2rq:dataStorage map:db;\n" +
+		"    d2rq:uriPattern \"http://example.org/person/@@PERSON.ID@@\"; d2rq:class ex:Person .\n" +
+		"map:name a d2rq:PropertyBridge; d2rq:belongsToClassMap map:Person;\n" +
+		"    d2rq:property ex:name; d2rq:column \"PERSON.NAME\" .\n" +
+		"map:age a d2rq:PropertyBridge; d2rq:belongsToClassMap map:Person;\n" +
+		"    d2rq:property ex:age; d2rq:column \"PERSON.AGE\"; d2rq:datatype <http://www.w3.org/2001/XMLSchema#int> .\n" +
+		"map:Group a d2rq:ClassMap; d2rq:dataStorage map:db;\n" +
+		"    d2rq:bNodeIdColumns \"GRP.ID\"; d2rq:class ex:Group .\n" +
+		"map:member a d2rq:PropertyBridge; d2rq:belongsToClassMap map:Person;\n" +
+		"    d2rq:property ex:member; d2rq:refersToClassMap map:Group;\n" +
+		"    d2rq:join \"PERSON.GRP = GRP.ID\" .\n";
+
+	public void setUp() throws Exception {
+		Class.forName("org.hsqldb.jdbcDriver");
+		Connection c = DriverManager.getConnection(HSQL_URL, "sa", "");
+		Statement s = c.createStatement();
+		s.execute("DROP TABLE PERSON IF EXISTS");
+		s.execute("DROP TABLE GRP IF EXISTS");
+		s.execute("CREATE TABLE GRP (ID INT PRIMARY KEY)");
+		s.execute("CREATE TABLE PERSON (ID INT PRIMARY KEY, NAME VARCHAR(50), AGE INT, GRP INT)");
+		s.execute("INSERT INTO GRP VALUES (1)");
+		s.execute("INSERT INTO PERSON VALUES (1, 'Alice', 30, 1)");
+		s.execute("INSERT INTO PERSON VALUES (2, 'Böb \"Q\"', NULL, 1)");
+		s.execute("INSERT INTO PERSON VALUES (3, NULL, 40, NULL)");
+		s.execute("DROP TABLE WIDE IF EXISTS");
+		s.execute("CREATE TABLE WIDE (ID BIGINT PRIMARY KEY)");
+		s.execute("INSERT INTO WIDE VALUES (" + (Long.MIN_VALUE + 1) + ")");
+		s.execute("INSERT INTO WIDE VALUES (-1)");
+		s.execute("INSERT INTO WIDE VALUES (0)");
+		s.execute("INSERT INTO WIDE VALUES (" + (Long.MAX_VALUE - 1) + ")");
+		s.execute("DROP TABLE VISIT IF EXISTS");
+		s.execute("CREATE TABLE VISIT (ID INT PRIMARY KEY, CITY VARCHAR(50))");
+		s.execute("INSERT INTO VISIT VALUES (1, 'Berlin')");
+		s.execute("INSERT INTO VISIT VALUES (2, 'Galway')");
+		s.execute("INSERT INTO VISIT VALUES (3, 'Berlin')");
+		s.execute("INSERT INTO VISIT VALUES (4, 'Berlin')");
+		s.close();
+		c.close();
+	}
+
+	private Mapping mapping() {
+		Model m = ModelFactory.createDefaultModel();
+		m.read(new StringReader(MAPPING), "file:///map", "N3");
+		return new MapParser(m, "http://example.org/").parse();
+	}
+
+	private Model expectedModel() {
+		Mapping mapping = mapping();
+		mapping.configuration().setServeVocabulary(false);
+		Model expected = ModelFactory.createDefaultModel();
+		ModelD2RQ model = new ModelD2RQ(mapping);
+		expected.add(model);
+		model.close();
+		return expected;
+	}
+
+	private Model dump(NTriplesDump dump) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		dump.write(out);
+		Model dumped = ModelFactory.createDefaultModel();
+		dumped.read(new ByteArrayInputStream(out.toByteArray()), null, "N-TRIPLE");
+		return dumped;
+	}
+
+	public void testDumpEqualsModel() {
+		Mapping mapping = mapping();
+		mapping.configuration().setServeVocabulary(false);
+		NTriplesDump dump = new NTriplesDump(mapping);
+		Model dumped = dump(dump);
+		Model expected = expectedModel();
+		assertEquals(10, expected.size());
+		assertEquals(expected.size(), dump.tripleCount());
+		assertTrue(expected.isIsomorphicWith(dumped));
+	}
+
+	public void testParallelDumpEqualsModel() {
+		Mapping mapping = mapping();
+		mapping.configuration().setServeVocabulary(false);
+		NTriplesDump dump = new ParallelNTriplesDump(mapping, 3, 2);
+		Model dumped = dump(dump);
+		Model expected = expectedModel();
+		assertEquals(expected.size(), dump.tripleCount());
+		assertTrue(expected.isIsomorphicWith(dumped));
+	}
+
+	public void testWriteErrorFailsDump() {
+		Mapping mapping = mapping();
+		mapping.configuration().setServeVocabulary(false);
+		try {
+			new NTriplesDump(mapping).write(new FullDiskStream());
+			fail("Expected D2RQException");
+		} catch (D2RQException ex) {
+			// expected
+		}
+	}
+
+	public void testWriteErrorOfPrintStreamFailsDump() {
+		Mapping mapping = mapping();
+		mapping.configuration().setServeVocabulary(false);
+		try {
+			new NTriplesDump(mapping).write(new PrintStream(new FullDiskStream()));
+			fail("Expected D2RQException");
+		} catch (D2RQException ex) {
+			// expected
+		}
+	}
+
+	public void testWriteErrorFailsParallelDump() {
+		Mapping mapping = mapping();
+		mapping.configuration().setServeVocabulary(false);
+		try {
+			new ParallelNTriplesDump(mapping, 3, 2).write(new FullDiskStream());
+			fail("Expected D2RQException");
+		} catch (D2RQException ex) {
+			// expected
+		}
+	}
+
+	public void testWideKeyRangeIsSplitWithoutOverflow() {
+		Model m = ModelFactory.createDefaultModel();
+		m.read(new StringReader(MAPPING +
+				"map:Wide a d2rq:ClassMap; d2rq:dataStorage map:db;\n" +
+				"    d2rq:uriPattern \"http://example.org/wide/@@WIDE.ID@@\"; d2rq:class ex:Wide .\n"),
+				"file:///map", "N3");
+		Mapping mapping = new MapParser(m, "http://example.org/").parse();
+		mapping.configuration().setServeVocabulary(false);
+		ParallelNTriplesDump dump = new ParallelNTriplesDump(mapping, 2, 3);
+		Model dumped = dump(dump);
+		assertEquals(4, dumped.listSubjectsWithProperty(RDF.type,
+				dumped.createResource("http://example.org/Wide")).toList().size());
+		Iterator it = dump.groups().iterator();
+		while (it.hasNext()) {
+			CompatibleRelationGroup group = (CompatibleRelationGroup) it.next();
+			if (group.baseRelation().tables().equals(Collections.singleton(new RelationName(null, "WIDE")))) {
+				assertEquals(3, dump.partition(group.baseRelation()).size());
+			}
+		}
+	}
+
+	public void testSingleTableGroupIsSplitByPrimaryKey() {
+		Mapping mapping = mapping();
+		ParallelNTriplesDump dump = new ParallelNTriplesDump(mapping, 2, 2);
+		int personGroups = 0;
+		Iterator it = dump.groups().iterator();
+		while (it.hasNext()) {
+			CompatibleRelationGroup group = (CompatibleRelationGroup) it.next();
+			if (group.baseRelation().tables().equals(Collections.singleton(new RelationName(null, "PERSON")))) {
+				assertEquals(2, dump.partition(group.baseRelation()).size());
+				personGroups++;
+			} else {
+				assertEquals(1, dump.partition(group.baseRelation()).size());
+			}
+		}
+		assertEquals(1, personGroups);
+	}
+
+	public void testDistinctGroupWithoutKeyIsNotSplit() {
+		Model m = ModelFactory.createDefaultModel();
+		m.read(new StringReader(MAPPING +
+				"map:City a d2rq:ClassMap; d2rq:dataStorage map:db;\n" +
+				"    d2rq:uriPattern \"http://example.org/city/@@VISIT.CITY@@\";\n" +
+				"    d2rq:containsDuplicates \"true\"; d2rq:class ex:City .\n"),
+				"file:///map", "N3");
+		Mapping mapping = new MapParser(m, "http://example.org/").parse();
+		mapping.configuration().setServeVocabulary(false);
+		ParallelNTriplesDump dump = new ParallelNTriplesDump(mapping, 2, 2);
+		int visitGroups = 0;
+		Iterator it = dump.groups().iterator();
+		while (it.hasNext()) {
+			CompatibleRelationGroup group = (CompatibleRelationGroup) it.next();
+			if (group.baseRelation().tables().equals(Collections.singleton(new RelationName(null, "VISIT")))) {
+				assertFalse(group.baseRelation().isUnique());
+				assertEquals(1, dump.partition(group.baseRelation()).size());
+				visitGroups++;
+			}
+		}
+		assertEquals(1, visitGroups);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		dump.write(out);
+		String berlin = "<http://example.org/city/Berlin> " +
+				"<http://www.w3.org/1999/02/22-rdf-syntax-ns#type> <http://example.org/City> .";
+		String[] lines = out.toString().split("\n");
+		int count = 0;
+		for (int i = 0; i < lines.length; i++) {
+			if (lines[i].equals(berlin)) count++;
+		}
+		assertEquals(1, count);
+	}
+
+	private static class FullDiskStream extends OutputStream {
+		public void write(int b) throws IOException {
+			throw new IOException("No space left on device");
+		}
+	}
+}
@@ -9,7 +9,14 @@ public class AllTests {
 		TestSuite suite = new TestSuite(
 				"Test for de.fuberlin.wiwiss.d2rq.engine");
 		//$JUnit-BEGIN$
+		suite.addTestSuite(CardinalityEstimatorTest.class);
 		suite.addTestSuite(GraphPatternTranslatorTest.class);
+		suite.addTestSuite(GroupExecutionTest.class);
+		suite.addTestSuite(LeftJoinExecutionTest.class);
+		suite.addTestSuite(ParameterizedOpTest.class);
+		suite.addTestSuite(PlanCacheTest.class);
+		suite.addTestSuite(SliceExecutionTest.class);
+		suite.addTestSuite(UnionExecutionTest.class);
 		//$JUnit-END$
 		return suite;
 	}
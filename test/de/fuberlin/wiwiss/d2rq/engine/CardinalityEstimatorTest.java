@@ -0,0 +1,169 @@
+package de.fuberlin.wiwiss.d2rq.engine;
+
+import java.io.StringReader;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.sparql.core.Var;
+
+import de.fuberlin.wiwiss.d2rq.GraphD2RQ;
+import de.fuberlin.wiwiss.d2rq.ModelD2RQ;
+import de.fuberlin.wiwiss.d2rq.algebra.TripleRelation;
+import de.fuberlin.wiwiss.d2rq.parser.MapParser;
+import de.fuberlin.wiwiss.d2rq.sql.ConnectedDB;
+
+public class CardinalityEstimatorTest extends TestCase {
+	private static final String HSQL_URL = "jdbc:hsqldb:mem:cardinalityestimatortest";
+	private static final String MAPPING =
+		"@prefix d2rq: <http://www.wiwiss.fu-berlin.de/suhl/bizer/D2RQ/0.1#> .\n" +
+		"@prefix ex: <http://example.org/> .\n" +
+		"@prefix map: <file:///map#> .\n" +
+		"map:db a d2rq:Database; d2rq:jdbcDriver \"org.hsqldb.jdbcDriver\";\n" +
+		"    d2rq:jdbcDSN \"" + HSQL_URL + "\"; d2rq:username \"sa\" .\n" +
+		"map:Big a d2rq:ClassMap; d2rq:dataStorage map:db;\n" +
+		"    d2rq:uriPattern \"http://example.org/big@@BIG.ID@@\"; d2rq:class ex:Big .\n" +
+		"map:name a d2rq:PropertyBridge; d2rq:belongsToClassMap map:Big;\n" +
+		"    d2rq:property ex:name; d2rq:column \"BIG.NAME\" .\n" +
+		"map:small a d2rq:PropertyBridge; d2rq:belongsToClassMap map:Big;\n" +
+		"    d2rq:property ex:small; d2rq:refersToClassMap map:Small;\n" +
+		"    d2rq:join \"BIG.SMALL_ID => SMALL.ID\" .\n" +
+		"map:Small a d2rq:ClassMap; d2rq:dataStorage map:db;\n" +
+		"    d2rq:uriPattern \"http://example.org/small@@SMALL.ID@@\"; d2rq:class ex:Small .\n" +
+		"map:label a d2rq:PropertyBridge; d2rq:belongsToClassMap map:Small;\n" +
+		"    d2rq:property ex:label; d2rq:column \"SMALL.LABEL\" .\n";
+
+	private GraphD2RQ graph;
+	private CardinalityEstimator estimator = new CardinalityEstimator();
+
+	public void setUp() throws Exception {
+		Class.forName("org.hsqldb.jdbcDriver");
+		Connection c = DriverManager.getConnection(HSQL_URL, "sa", "");
+		Statement s = c.createStatement();
+		s.execute("DROP TABLE BIG IF EXISTS");
+		s.execute("DROP TABLE SMALL IF EXISTS");
+		s.execute("CREATE TABLE SMALL (ID INT PRIMARY KEY, LABEL VARCHAR(50))");
+		s.execute("CREATE TABLE BIG (ID INT PRIMARY KEY, NAME VARCHAR(50), SMALL_ID INT)");
+		s.execute("INSERT INTO SMALL VALUES (1, 'One')");
+		s.execute("INSERT INTO SMALL VALUES (2, 'Two')");
+		for (int i = 1; i <= 20; i++) {
+			s.execute("INSERT INTO BIG VALUES (" + i + ", 'Name" + i + "', " + (i % 2 + 1) + ")");
+		}
+		s.close();
+		c.close();
+		Model m = ModelFactory.createDefaultModel();
+		m.read(new StringReader(MAPPING), "file:///map", "N3");
+		graph = (GraphD2RQ) new ModelD2RQ(
+				new MapParser(m, "http://example.org/").parse()).getGraph();
+		awaitStatistics();
+	}
+
+	public void tearDown() {
+		graph.close();
+	}
+
+	public void testAllRowsOfTableMatchVariables() {
+		assertEquals(20.0, estimate("?b rdf:type ex:Big"), 0);
+		assertEquals(20.0, estimate("?b ex:name ?n"), 0);
+		assertEquals(2.0, estimate("?s ex:label ?l"), 0);
+	}
+
+	public void testJoinedTablesHaveRowsOfLargestTable() {
+		assertEquals(20.0, estimate("?b ex:small ?s"), 0);
+	}
+
+	public void testConstantInUniqueColumnMatchesOneRow() {
+		assertEquals(1.0, estimate("ex:big1 ex:name ?n"), 0);
+	}
+
+	public void testConstantInColumnWithoutIndexUsesDefaultSelectivity() {
+		assertEquals(20 * CardinalityEstimator.DEFAULT_SELECTIVITY,
+				estimate("?b ex:name 'Name1'"), 0.0001);
+	}
+
+	public void testConstantThatMatchesNoClassMapSelectsNothing() {
+		assertEquals(0.0, estimate("ex:foo ex:name ?n"), 0);
+	}
+
+	public void testParameterIsEstimatedLikeConstant() {
+		Triple triple = (Triple) triples("?b ex:name 'Name1'").get(0);
+		assertEquals(estimate(triple), estimate(new Triple(triple.getSubject(),
+				triple.getPredicate(), Var.alloc("/param0"))), 0);
+		assertEquals(20.0, estimate(new Triple(triple.getSubject(),
+				triple.getPredicate(), Var.alloc("param0"))), 0);
+	}
+
+	public void testJoinOrderFollowsEstimates() {
+		List plan = new GraphPatternTranslator(
+				triples("?b ex:name ?n . ?s ex:label ?l . ?b ex:small ?s"),
+				graph.tripleRelations(), true).joinPlan();
+		List order = new ArrayList();
+		Iterator it = plan.iterator();
+		while (it.hasNext()) {
+			order.add(((GraphPatternTranslator.CandidateList) it.next()).triplePattern());
+		}
+		assertEquals(triples("?s ex:label ?l . ?b ex:small ?s . ?b ex:name ?n"), order);
+	}
+
+	public void testUnknownWhileRowsAreCounted() {
+		graph.close();
+		graph = (GraphD2RQ) new ModelD2RQ(new MapParser(
+				ModelFactory.createDefaultModel().read(new StringReader(MAPPING), "file:///map", "N3"),
+				"http://example.org/").parse()).getGraph();
+		database().queryThreads().close();
+		assertEquals(CardinalityEstimator.UNKNOWN, estimate("?b ex:name ?n"), 0);
+	}
+
+	/**
+	 * HSQLDB doesn't report row counts, so they are counted in the background
+	 */
+	private void awaitStatistics() throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (estimate("?b ex:small ?s") == CardinalityEstimator.UNKNOWN
+				|| estimate("?s ex:label ?l") == CardinalityEstimator.UNKNOWN) {
+			if (System.currentTimeMillis() > deadline) fail("No statistics");
+			Thread.sleep(10);
+		}
+	}
+
+	private ConnectedDB database() {
+		return ((TripleRelation) graph.tripleRelations().iterator().next()).baseRelation().database();
+	}
+
+	/**
+	 * @return The sum of the estimates of all triple relations that match the pattern
+	 */
+	private double estimate(String pattern) {
+		return estimate((Triple) triples(pattern).get(0));
+	}
+
+	private double estimate(Triple triple) {
+		double result = 0;
+		Iterator it = graph.tripleRelations().iterator();
+		while (it.hasNext()) {
+			TripleRelation tripleRelation = (TripleRelation) it.next();
+			if (tripleRelation.selectTriple(triple) == null) continue;
+			double estimate = estimator.estimate(tripleRelation, triple);
+			if (estimate == CardinalityEstimator.UNKNOWN) return CardinalityEstimator.UNKNOWN;
+			result += estimate;
+		}
+		return result;
+	}
+
+	private List triples(String pattern) {
+		List results = new ArrayList();
+		String[] parts = pattern.split("\\s+\\.\\s*");
+		for (int i = 0; i < parts.length; i++) {
+			results.add(Triple.create(MapFixture.prefixes(), parts[i]));
+		}
+		return results;
+	}
+}
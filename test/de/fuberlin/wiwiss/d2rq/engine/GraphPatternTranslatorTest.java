@@ -3,6 +3,7 @@ package de.fuberlin.wiwiss.d2rq.engine;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 
 import junit.framework.TestCase;
@@ -148,6 +149,49 @@ public class GraphPatternTranslatorTest extends TestCase {
 				r.condition());
 	}
 
+	public void testCandidatesThatCannotJoinArePruned() {
+		List plan = joinPlan("?x rdf:type ?t . ?x ex:name ?n . ?x ex:small ?s", "engine/two-classes.n3");
+		assertEquals(3, plan.size());
+		assertEquals(1, candidates(plan, "?x rdf:type ?t").all().size());
+	}
+
+	public void testPatternWithoutJoinableCandidatesIsPruned() {
+		assertNull(joinPlan("?x rdf:type ?t . ?x ex:label ?l . ?x ex:name ?n", "engine/two-classes.n3"));
+		assertTrue(translate("?x rdf:type ?t . ?x ex:label ?l . ?x ex:name ?n", "engine/two-classes.n3").length == 0);
+	}
+
+	public void testJoinOrderPrefersPatternsThatShareAVariable() {
+		List plan = joinPlan("?b ex:name ?n . ?t rdf:type ?c . ?s ex:label ?l . ?b ex:small ?s",
+				"engine/two-classes.n3");
+		assertEquals(triplesToList("?b ex:name ?n . ?b ex:small ?s . ?s ex:label ?l . ?t rdf:type ?c"),
+				triplePatterns(plan));
+	}
+
+	private List joinPlan(String pattern, String mappingFile) {
+		return new GraphPatternTranslator(triplesToList(pattern),
+				MapFixture.loadPropertyBridges(mappingFile), true).joinPlan();
+	}
+
+	private GraphPatternTranslator.CandidateList candidates(List joinPlan, String pattern) {
+		Triple triple = (Triple) triplesToList(pattern).get(0);
+		Iterator it = joinPlan.iterator();
+		while (it.hasNext()) {
+			GraphPatternTranslator.CandidateList candidates = (GraphPatternTranslator.CandidateList) it.next();
+			if (candidates.triplePattern().equals(triple)) return candidates;
+		}
+		fail("No candidates for " + pattern);
+		return null;
+	}
+
+	private List triplePatterns(List joinPlan) {
+		List result = new ArrayList();
+		Iterator it = joinPlan.iterator();
+		while (it.hasNext()) {
+			result.add(((GraphPatternTranslator.CandidateList) it.next()).triplePattern());
+		}
+		return result;
+	}
+
 	private NodeRelation translate1(String pattern, String mappingFile) {
 		return translate1(triplesToList(pattern), mappingFile);
 	}
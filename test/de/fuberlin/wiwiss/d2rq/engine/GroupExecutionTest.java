@@ -0,0 +1,98 @@
+package de.fuberlin.wiwiss.d2rq.engine;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.query.QueryFactory;
+import com.hp.hpl.jena.query.Syntax;
+import com.hp.hpl.jena.sparql.algebra.Algebra;
+import com.hp.hpl.jena.sparql.algebra.Op;
+import com.hp.hpl.jena.sparql.algebra.op.Op1;
+
+import de.fuberlin.wiwiss.d2rq.GraphD2RQ;
+import de.fuberlin.wiwiss.d2rq.helpers.HSQLDatabase;
+import de.fuberlin.wiwiss.d2rq.optimizer.D2RQTreeOptimizer;
+
+public class GroupExecutionTest extends TestCase {
+	private final static String PREFIX = "PREFIX ex: <http://example.org/> ";
+	private HSQLDatabase db;
+	private GraphD2RQ graph;
+
+	public void setUp() {
+		db = new HSQLDatabase("grouptest");
+		db.executeSQL("CREATE TABLE PERSON (ID INT PRIMARY KEY, CITY VARCHAR(50), AGE INT)");
+		db.executeSQL("INSERT INTO PERSON VALUES (1, 'Berlin', 34)");
+		db.executeSQL("INSERT INTO PERSON VALUES (2, 'Berlin', 27)");
+		db.executeSQL("INSERT INTO PERSON VALUES (3, 'Galway', 51)");
+		graph = db.graph(db.mapping(
+				"map:Person a d2rq:ClassMap; d2rq:dataStorage map:db;\n" +
+				"    d2rq:uriPattern \"http://example.org/person/@@PERSON.ID@@\";\n" +
+				"    d2rq:class ex:Person .\n" +
+				"map:city a d2rq:PropertyBridge; d2rq:belongsToClassMap map:Person;\n" +
+				"    d2rq:property ex:city; d2rq:column \"PERSON.CITY\" .\n" +
+				"map:age a d2rq:PropertyBridge; d2rq:belongsToClassMap map:Person;\n" +
+				"    d2rq:property ex:age; d2rq:column \"PERSON.AGE\"; d2rq:datatype xsd:integer .\n"));
+	}
+
+	public void tearDown() {
+		graph.close();
+		db.close();
+	}
+
+	public void testCountWithGroupBy() {
+		String query = "SELECT ?city (COUNT(*) AS ?c) WHERE { ?p ex:city ?city } GROUP BY ?city";
+		assertTrue(isPushedDown(query));
+		assertEquals(Arrays.asList(new String[]{"?city=Berlin ?c=2", "?city=Galway ?c=1"}),
+				select(query));
+	}
+
+	public void testCountWithoutGroupBy() {
+		String query = "SELECT (COUNT(*) AS ?c) (SUM(?age) AS ?s) WHERE { ?p ex:age ?age }";
+		assertTrue(isPushedDown(query));
+		assertEquals(Collections.singletonList("?c=3 ?s=112"), select(query));
+	}
+
+	public void testAggregatesOverNoRows() {
+		db.executeSQL("DELETE FROM PERSON");
+		String query = "SELECT (COUNT(*) AS ?c) (SUM(?age) AS ?s) WHERE { ?p ex:age ?age }";
+		assertTrue(isPushedDown(query));
+		List results = select(query);
+		assertEquals(select(HSQLDatabase.copy(graph), query), results);
+		assertEquals(Collections.singletonList("?c=0 ?s=0"), results);
+	}
+
+	public void testGroupWithoutGroupByColumnsIsRefused() {
+		// ?type comes from a constant, so there's nothing to GROUP BY in SQL
+		String query = "SELECT ?type (COUNT(*) AS ?c) WHERE { ?p a ?type; ex:age ?age } GROUP BY ?type";
+		assertFalse(isPushedDown(query));
+		assertEquals(Collections.singletonList("?type=http://example.org/Person ?c=3"), select(query));
+		db.executeSQL("DELETE FROM PERSON");
+		assertEquals(select(HSQLDatabase.copy(graph), query), select(query));
+	}
+
+	private boolean isPushedDown(String query) {
+		Op op = D2RQTreeOptimizer.optimize(Algebra.compile(
+				QueryFactory.create(PREFIX + query, Syntax.syntaxARQ)), graph);
+		while (op instanceof Op1) {
+			op = ((Op1) op).getSubOp();
+		}
+		return op instanceof OpD2RQGroup;
+	}
+
+	/**
+	 * @return The solutions in sorted order
+	 */
+	private List select(String query) {
+		return select(graph, query);
+	}
+
+	private List select(Graph graph, String query) {
+		List results = HSQLDatabase.select(graph, PREFIX + query);
+		Collections.sort(results);
+		return results;
+	}
+}
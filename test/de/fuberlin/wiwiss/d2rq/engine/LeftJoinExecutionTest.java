@@ -0,0 +1,88 @@
+package de.fuberlin.wiwiss.d2rq.engine;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+import de.fuberlin.wiwiss.d2rq.GraphD2RQ;
+import de.fuberlin.wiwiss.d2rq.helpers.HSQLDatabase;
+import de.fuberlin.wiwiss.d2rq.sql.ExecutionStatistics;
+
+public class LeftJoinExecutionTest extends TestCase {
+	private HSQLDatabase db;
+	private GraphD2RQ graph;
+
+	public void setUp() {
+		db = new HSQLDatabase("leftjointest");
+		db.executeSQL("CREATE TABLE PAPER (ID INT PRIMARY KEY, TITLE VARCHAR(50))");
+		db.executeSQL("CREATE TABLE AUTHOR (ID INT PRIMARY KEY, PAPER INT, NAME VARCHAR(50))");
+		db.executeSQL("INSERT INTO PAPER VALUES (1, 'Two authors')");
+		db.executeSQL("INSERT INTO PAPER VALUES (2, 'One author')");
+		db.executeSQL("INSERT INTO PAPER VALUES (3, 'No author')");
+		db.executeSQL("INSERT INTO AUTHOR VALUES (1, 1, 'Alice')");
+		db.executeSQL("INSERT INTO AUTHOR VALUES (2, 1, 'Bob')");
+		db.executeSQL("INSERT INTO AUTHOR VALUES (3, 2, 'Carol')");
+		graph = db.graph(db.mapping(
+				"map:Paper a d2rq:ClassMap; d2rq:dataStorage map:db;\n" +
+				"    d2rq:uriPattern \"http://example.org/paper/@@PAPER.ID@@\" .\n" +
+				"map:title a d2rq:PropertyBridge; d2rq:belongsToClassMap map:Paper;\n" +
+				"    d2rq:property ex:title; d2rq:column \"PAPER.TITLE\" .\n" +
+				"map:Author a d2rq:ClassMap; d2rq:dataStorage map:db;\n" +
+				"    d2rq:uriPattern \"http://example.org/author/@@AUTHOR.ID@@\" .\n" +
+				"map:name a d2rq:PropertyBridge; d2rq:belongsToClassMap map:Author;\n" +
+				"    d2rq:property ex:name; d2rq:column \"AUTHOR.NAME\" .\n" +
+				"map:paper a d2rq:PropertyBridge; d2rq:belongsToClassMap map:Author;\n" +
+				"    d2rq:property ex:paper; d2rq:refersToClassMap map:Paper;\n" +
+				"    d2rq:join \"AUTHOR.PAPER => PAPER.ID\" .\n"));
+	}
+
+	public void tearDown() {
+		graph.close();
+		db.close();
+	}
+
+	public void testUnmatchedRowLeavesVariableUnbound() {
+		List results = select(
+				"SELECT ?title ?name WHERE { ?paper ex:title ?title " +
+				"OPTIONAL { ?author ex:paper ?paper . ?author ex:name ?name } }");
+		assertTrue(results.contains("?title=No author"));
+	}
+
+	public void testMultipleMatchesGiveOneRowEach() {
+		List results = select(
+				"SELECT ?title ?name WHERE { ?paper ex:title ?title " +
+				"OPTIONAL { ?author ex:paper ?paper . ?author ex:name ?name } }");
+		assertEquals(Arrays.asList(new String[]{
+				"?title=No author",
+				"?title=One author ?name=Carol",
+				"?title=Two authors ?name=Alice",
+				"?title=Two authors ?name=Bob"}), results);
+	}
+
+	public void testOptionalIsOneSQLQuery() {
+		long before = ExecutionStatistics.global().sqlQueries();
+		select("SELECT ?title ?name WHERE { ?paper ex:title ?title " +
+				"OPTIONAL { ?author ex:paper ?paper . ?author ex:name ?name } }");
+		assertEquals(1, ExecutionStatistics.global().sqlQueries() - before);
+	}
+
+	public void testOptionalWithoutAnyMatch() {
+		db.executeSQL("DELETE FROM AUTHOR");
+		List results = select(
+				"SELECT ?title ?name WHERE { ?paper ex:title ?title " +
+				"OPTIONAL { ?author ex:paper ?paper . ?author ex:name ?name } }");
+		assertEquals(Arrays.asList(new String[]{
+				"?title=No author", "?title=One author", "?title=Two authors"}), results);
+	}
+
+	/**
+	 * @return The solutions in sorted order
+	 */
+	private List select(String query) {
+		List results = HSQLDatabase.select(graph,
+				"PREFIX ex: <http://example.org/> " + query);
+		Collections.sort(results);
+		return results;
+	}
+}
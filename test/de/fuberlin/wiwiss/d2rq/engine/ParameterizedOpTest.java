@@ -0,0 +1,81 @@
+package de.fuberlin.wiwiss.d2rq.engine;
+
+import java.util.Iterator;
+
+import junit.framework.TestCase;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.query.QueryFactory;
+import com.hp.hpl.jena.query.Syntax;
+import com.hp.hpl.jena.sparql.algebra.Algebra;
+import com.hp.hpl.jena.sparql.algebra.Op;
+import com.hp.hpl.jena.sparql.core.Var;
+
+public class ParameterizedOpTest extends TestCase {
+	private final static String PREFIX = "PREFIX ex: <http://example.org/> ";
+
+	public void testQueriesFromTheSameTemplateAreEqual() {
+		ParameterizedOp op1 = parameterize("SELECT ?name WHERE { ex:a ex:name ?name; ex:city 'Berlin' }");
+		ParameterizedOp op2 = parameterize("SELECT ?name WHERE { ex:b ex:name ?name; ex:city 'Paris' }");
+		assertTrue(op1.hasParameters());
+		assertEquals(op1.getOp().toString(), op2.getOp().toString());
+		assertEquals(Node.createURI("http://example.org/a"), op1.getParameters().get(Var.alloc("/param0")));
+		assertEquals(Node.createLiteral("Paris"), op2.getParameters().get(Var.alloc("/param1")));
+	}
+
+	public void testEqualConstantsAreOneParameter() {
+		ParameterizedOp op1 = parameterize("SELECT * WHERE { ex:a ex:knows ex:a }");
+		ParameterizedOp op2 = parameterize("SELECT * WHERE { ex:a ex:knows ex:b }");
+		assertFalse(op1.getOp().toString().equals(op2.getOp().toString()));
+		assertEquals(1, size(op1));
+		assertEquals(2, size(op2));
+	}
+
+	public void testWithoutConstantsNothingChanges() {
+		ParameterizedOp op = parameterize("SELECT * WHERE { ?s ex:name ?o }");
+		assertFalse(op.hasParameters());
+		assertEquals(Algebra.compile(QueryFactory.create(PREFIX + "SELECT * WHERE { ?s ex:name ?o }")).toString(),
+				op.getOp().toString());
+	}
+
+	public void testClassesAndVariablePredicatesAreKept() {
+		assertFalse(parameterize("SELECT * WHERE { ?s a ex:Person }").hasParameters());
+		assertFalse(parameterize("SELECT * WHERE { ex:a ?p ?o }").hasParameters());
+	}
+
+	public void testProjectionHidesParameters() {
+		ParameterizedOp op = parameterize("SELECT DISTINCT ?name WHERE { ?p ex:name ?name; ex:city 'Berlin' }");
+		assertTrue(op.getOp().toString(), op.getOp().toString().indexOf("(distinct\n  (project (?name)") >= 0);
+	}
+
+	public void testOptionalAndGroupConstantsAreKept() {
+		assertFalse(parameterize("SELECT * WHERE { ?p ex:name ?name OPTIONAL { ?p ex:city 'Berlin' } }").hasParameters());
+		assertFalse(parameterize("SELECT (COUNT(*) AS ?c) WHERE { ?p ex:city 'Berlin' }").hasParameters());
+		ParameterizedOp op = parameterize("SELECT * WHERE { ?p ex:city 'Paris' OPTIONAL { ?p ex:city 'Berlin' } }");
+		assertEquals(1, size(op));
+		assertEquals(Node.createLiteral("Paris"), op.getParameters().get(Var.alloc("/param0")));
+	}
+
+	public void testParameterIsRecognized() {
+		ParameterizedOp op = parameterize("SELECT * WHERE { ex:a ex:name ?name }");
+		Var var = (Var) op.getParameters().vars().next();
+		assertTrue(ParameterizedOp.isParameter(var));
+		assertFalse(ParameterizedOp.isParameter(Var.alloc("name")));
+		assertFalse(ParameterizedOp.isParameter(Node.createURI("http://example.org/a")));
+	}
+
+	private int size(ParameterizedOp op) {
+		int result = 0;
+		Iterator it = op.getParameters().vars();
+		while (it.hasNext()) {
+			it.next();
+			result++;
+		}
+		return result;
+	}
+
+	private ParameterizedOp parameterize(String sparql) {
+		Op op = Algebra.compile(QueryFactory.create(PREFIX + sparql, Syntax.syntaxARQ));
+		return new ParameterizedOp(op);
+	}
+}
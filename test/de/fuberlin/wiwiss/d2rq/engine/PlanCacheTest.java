@@ -0,0 +1,254 @@
+package de.fuberlin.wiwiss.d2rq.engine;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.hp.hpl.jena.query.QueryFactory;
+import com.hp.hpl.jena.sparql.algebra.Algebra;
+import com.hp.hpl.jena.sparql.algebra.Op;
+
+import de.fuberlin.wiwiss.d2rq.GraphD2RQ;
+import de.fuberlin.wiwiss.d2rq.algebra.RelationName;
+import de.fuberlin.wiwiss.d2rq.dbschema.TableStatistics;
+import de.fuberlin.wiwiss.d2rq.helpers.HSQLDatabase;
+import de.fuberlin.wiwiss.d2rq.map.Database;
+
+public class PlanCacheTest extends TestCase {
+	private final static String PREFIX = "PREFIX ex: <http://example.org/> ";
+	private final static RelationName PERSON = new RelationName(null, "PERSON");
+	private final static String QUERY1 = "SELECT * WHERE { ?s <http://example.org/p> 1 }";
+	private final static String QUERY2 = "SELECT * WHERE { ?s <http://example.org/p> 2 }";
+	private final static String QUERY3 = "SELECT * WHERE { ?s <http://example.org/p> 3 }";
+
+	public void testEmptyCacheMisses() {
+		PlanCache cache = new PlanCache(10);
+		assertNull(cache.get(op(QUERY1), true, 0));
+		assertEquals(0, cache.hits());
+		assertEquals(1, cache.misses());
+	}
+
+	public void testStructurallyEqualQueryHits() {
+		PlanCache cache = new PlanCache(10);
+		Op plan = op(QUERY2);
+		cache.put(op(QUERY1), true, 0, plan);
+		assertSame(plan, cache.get(op(QUERY1), true, 0));
+		assertEquals(1, cache.hits());
+	}
+
+	public void testDifferentConstantMisses() {
+		PlanCache cache = new PlanCache(10);
+		cache.put(op(QUERY1), true, 0, op(QUERY1));
+		assertNull(cache.get(op(QUERY2), true, 0));
+	}
+
+	public void testLeftJoinConditionIsPartOfKey() {
+		PlanCache cache = new PlanCache(10);
+		cache.put(op("SELECT * WHERE { ?s ?p ?o OPTIONAL { ?s ?q ?x FILTER (?x = 1) } }"), true, 0,
+				op(QUERY1));
+		assertNull(cache.get(op("SELECT * WHERE { ?s ?p ?o OPTIONAL { ?s ?q ?x FILTER (?x = 2) } }"), true, 0));
+	}
+
+	public void testOptimizationSettingIsPartOfKey() {
+		PlanCache cache = new PlanCache(10);
+		cache.put(op(QUERY1), true, 0, op(QUERY1));
+		assertNull(cache.get(op(QUERY1), false, 0));
+	}
+
+	public void testPlanWithOldStatisticsIsDropped() {
+		PlanCache cache = new PlanCache(10);
+		cache.put(op(QUERY1), true, 3, op(QUERY1));
+		assertNull(cache.get(op(QUERY1), true, 4));
+		assertEquals(0, cache.size());
+		assertEquals(1, cache.misses());
+	}
+
+	public void testLeastRecentlyUsedIsEvicted() {
+		PlanCache cache = new PlanCache(2);
+		cache.put(op(QUERY1), true, 0, op(QUERY1));
+		cache.put(op(QUERY2), true, 0, op(QUERY2));
+		cache.get(op(QUERY1), true, 0);
+		cache.put(op(QUERY3), true, 0, op(QUERY3));
+		assertEquals(2, cache.size());
+		assertNotNull(cache.get(op(QUERY1), true, 0));
+		assertNull(cache.get(op(QUERY2), true, 0));
+		assertNotNull(cache.get(op(QUERY3), true, 0));
+	}
+
+	public void testSegmentedCacheKeepsMaxSize() {
+		PlanCache cache = new PlanCache(100);
+		Op plan = op(QUERY1);
+		for (int i = 0; i < 300; i++) {
+			cache.put(op("SELECT * WHERE { ?s <http://example.org/p> " + i + " }"), true, 0, plan);
+		}
+		assertEquals(100, cache.size());
+		assertSame(plan, cache.get(op("SELECT * WHERE { ?s <http://example.org/p> 299 }"), true, 0));
+		cache.clear();
+		assertEquals(0, cache.size());
+	}
+
+	public void testHitRate() {
+		PlanCache cache = new PlanCache(10);
+		assertEquals(0.0, cache.hitRate(), 0.0);
+		cache.get(op(QUERY1), true, 0);
+		cache.put(op(QUERY1), true, 0, op(QUERY1));
+		cache.get(op(QUERY1), true, 0);
+		cache.get(op(QUERY1), true, 0);
+		cache.get(op(QUERY2), true, 0);
+		assertEquals(0.5, cache.hitRate(), 0.0);
+	}
+
+	public void testSizeZeroCachesNothing() {
+		PlanCache cache = new PlanCache(0);
+		cache.put(op(QUERY1), true, 0, op(QUERY1));
+		assertNull(cache.get(op(QUERY1), true, 0));
+		assertEquals(0, cache.size());
+		assertEquals(0, cache.misses());
+	}
+
+	public void testQueriesFromTheSameTemplateShareAPlan() {
+		HSQLDatabase db = database();
+		GraphD2RQ graph = graph(db);
+		try {
+			String query = "SELECT ?name WHERE { <http://example.org/person/1> <http://example.org/name> ?name }";
+			assertEquals(Collections.singletonList("?name=Alice"), HSQLDatabase.select(graph, query));
+			assertEquals(Collections.singletonList("?name=Alice"), HSQLDatabase.select(graph, query));
+			assertEquals(1, graph.planCache().hits());
+			assertEquals(Collections.singletonList("?name=Bob"), HSQLDatabase.select(graph,
+					"SELECT ?name WHERE { <http://example.org/person/2> <http://example.org/name> ?name }"));
+			assertEquals(Collections.EMPTY_LIST, HSQLDatabase.select(graph,
+					"SELECT ?name WHERE { <http://example.org/other/2> <http://example.org/name> ?name }"));
+			assertEquals(3, graph.planCache().hits());
+			assertEquals(1, graph.planCache().size());
+		} finally {
+			graph.close();
+			db.close();
+		}
+	}
+
+	public void testLiteralParameters() {
+		HSQLDatabase db = database();
+		GraphD2RQ graph = graph(db);
+		try {
+			assertEquals(Arrays.asList(new String[]{"?name=Alice", "?name=Bob"}), sorted(HSQLDatabase.select(graph,
+					PREFIX + "SELECT ?name WHERE { ?p ex:city 'Berlin'; ex:name ?name }")));
+			assertEquals(Collections.singletonList("?name=Carol"), HSQLDatabase.select(graph,
+					PREFIX + "SELECT ?name WHERE { ?p ex:city 'Paris'; ex:name ?name }"));
+			assertEquals(Collections.EMPTY_LIST, HSQLDatabase.select(graph,
+					PREFIX + "SELECT ?name WHERE { ?p ex:city 'London'; ex:name ?name }"));
+			assertEquals(2, graph.planCache().hits());
+		} finally {
+			graph.close();
+			db.close();
+		}
+	}
+
+	public void testDistinctKeepsParameters() {
+		HSQLDatabase db = database();
+		GraphD2RQ graph = graph(db);
+		try {
+			assertEquals(Collections.singletonList("?city=Berlin"), HSQLDatabase.select(graph,
+					PREFIX + "SELECT DISTINCT ?city WHERE { ?p ex:city ?city; ex:name 'Bob' }"));
+			assertEquals(Collections.singletonList("?city=Paris"), HSQLDatabase.select(graph,
+					PREFIX + "SELECT DISTINCT ?city WHERE { ?p ex:city ?city; ex:name 'Carol' }"));
+			assertEquals(1, graph.planCache().hits());
+		} finally {
+			graph.close();
+			db.close();
+		}
+	}
+
+	public void testConstantsInOptionalAndGroupAreKept() {
+		HSQLDatabase db = database();
+		GraphD2RQ graph = graph(db);
+		try {
+			assertEquals(Arrays.asList(new String[]{"?name=Alice", "?name=Bob", "?name=Carol ?x=Carol"}),
+					sorted(HSQLDatabase.select(graph, PREFIX +
+					"SELECT ?name ?x WHERE { ?p ex:name ?name OPTIONAL { ?p ex:city 'Paris'; ex:name ?x } }")));
+			assertEquals(Collections.singletonList("?c=2"), HSQLDatabase.select(graph,
+					PREFIX + "SELECT (COUNT(*) AS ?c) WHERE { ?p ex:city 'Berlin' }"));
+			assertEquals(Collections.singletonList("?c=1"), HSQLDatabase.select(graph,
+					PREFIX + "SELECT (COUNT(*) AS ?c) WHERE { ?p ex:city 'Paris' }"));
+		} finally {
+			graph.close();
+			db.close();
+		}
+	}
+
+	public void testSelectAllIsNotParameterized() {
+		HSQLDatabase db = database();
+		GraphD2RQ graph = graph(db);
+		try {
+			assertEquals(Collections.singletonList("?p=http://example.org/person/3"), HSQLDatabase.select(graph,
+					PREFIX + "SELECT * WHERE { ?p ex:city 'Paris' }"));
+			assertEquals(Collections.EMPTY_LIST, HSQLDatabase.select(graph,
+					PREFIX + "SELECT * WHERE { ?p ex:city 'London' }"));
+			assertEquals(0, graph.planCache().hits());
+			assertEquals(2, graph.planCache().size());
+		} finally {
+			graph.close();
+			db.close();
+		}
+	}
+
+	public void testRefreshingStatisticsDropsPlans() {
+		HSQLDatabase db = database();
+		GraphD2RQ graph = graph(db);
+		try {
+			HSQLDatabase.select(graph, PREFIX + "SELECT ?name WHERE { ?p ex:name ?name }");
+			assertEquals(1, graph.planCache().size());
+			graph.refreshStatistics();
+			assertEquals(0, graph.planCache().size());
+		} finally {
+			graph.close();
+			db.close();
+		}
+	}
+
+	private HSQLDatabase database() {
+		HSQLDatabase db = new HSQLDatabase("plancachetest");
+		db.executeSQL("CREATE TABLE PERSON (ID INT PRIMARY KEY, NAME VARCHAR(50), CITY VARCHAR(50))");
+		db.executeSQL("INSERT INTO PERSON VALUES (1, 'Alice', 'Berlin')");
+		db.executeSQL("INSERT INTO PERSON VALUES (2, 'Bob', 'Berlin')");
+		db.executeSQL("INSERT INTO PERSON VALUES (3, 'Carol', 'Paris')");
+		return db;
+	}
+
+	/**
+	 * @return A graph whose row counts are known, so that the
+	 * 		statistics don't change during the test
+	 */
+	private GraphD2RQ graph(HSQLDatabase db) {
+		GraphD2RQ graph = db.graph(db.mapping(
+				"map:Person a d2rq:ClassMap; d2rq:dataStorage map:db;\n" +
+				"    d2rq:uriPattern \"http://example.org/person/@@PERSON.ID@@\" .\n" +
+				"map:name a d2rq:PropertyBridge; d2rq:belongsToClassMap map:Person;\n" +
+				"    d2rq:property ex:name; d2rq:column \"PERSON.NAME\" .\n" +
+				"map:city a d2rq:PropertyBridge; d2rq:belongsToClassMap map:Person;\n" +
+				"    d2rq:property ex:city; d2rq:column \"PERSON.CITY\" .\n"));
+		TableStatistics statistics = ((Database) graph.getMapping().databases().iterator().next())
+				.connectedDB().tableStatistics();
+		long deadline = System.currentTimeMillis() + 5000;
+		while (statistics.rowCount(PERSON) == TableStatistics.UNKNOWN
+				&& System.currentTimeMillis() < deadline) {
+			try {
+				Thread.sleep(10);
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+		return graph;
+	}
+
+	private List sorted(List list) {
+		Collections.sort(list);
+		return list;
+	}
+
+	private Op op(String sparql) {
+		return Algebra.compile(QueryFactory.create(sparql));
+	}
+}
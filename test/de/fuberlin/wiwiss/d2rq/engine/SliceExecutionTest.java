@@ -0,0 +1,133 @@
+package de.fuberlin.wiwiss.d2rq.engine;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.hp.hpl.jena.query.Query;
+import com.hp.hpl.jena.query.QueryFactory;
+import com.hp.hpl.jena.query.SortCondition;
+import com.hp.hpl.jena.sparql.algebra.Algebra;
+import com.hp.hpl.jena.sparql.algebra.Op;
+import com.hp.hpl.jena.sparql.algebra.op.Op1;
+import com.hp.hpl.jena.sparql.algebra.op.OpOrder;
+import com.hp.hpl.jena.sparql.algebra.op.OpSlice;
+import com.hp.hpl.jena.sparql.core.Var;
+import com.hp.hpl.jena.sparql.expr.ExprVar;
+
+import de.fuberlin.wiwiss.d2rq.GraphD2RQ;
+import de.fuberlin.wiwiss.d2rq.algebra.Attribute;
+import de.fuberlin.wiwiss.d2rq.algebra.Relation;
+import de.fuberlin.wiwiss.d2rq.algebra.RelationImpl;
+import de.fuberlin.wiwiss.d2rq.helpers.HSQLDatabase;
+import de.fuberlin.wiwiss.d2rq.optimizer.D2RQTreeOptimizer;
+import de.fuberlin.wiwiss.d2rq.sql.ConnectedDB;
+import de.fuberlin.wiwiss.d2rq.sql.DummyDB;
+import de.fuberlin.wiwiss.d2rq.sql.SelectStatementBuilder;
+
+public class SliceExecutionTest extends TestCase {
+	private final static String PREFIX = "PREFIX ex: <http://example.org/> ";
+	private HSQLDatabase db;
+	private GraphD2RQ graph;
+
+	public void setUp() {
+		db = new HSQLDatabase("slicetest");
+		db.executeSQL("CREATE TABLE PERSON (ID INT PRIMARY KEY, NAME VARCHAR(50), AGE INT)");
+		db.executeSQL("INSERT INTO PERSON VALUES (1, 'Alice', 34)");
+		db.executeSQL("INSERT INTO PERSON VALUES (2, 'bob', 27)");
+		db.executeSQL("INSERT INTO PERSON VALUES (3, 'Carol', 51)");
+		db.executeSQL("INSERT INTO PERSON VALUES (4, 'dave', 8)");
+		db.executeSQL("INSERT INTO PERSON VALUES (5, 'Eve', 42)");
+		graph = db.graph(db.mapping(
+				"map:Person a d2rq:ClassMap; d2rq:dataStorage map:db;\n" +
+				"    d2rq:uriPattern \"http://example.org/person/@@PERSON.ID@@\" .\n" +
+				"map:name a d2rq:PropertyBridge; d2rq:belongsToClassMap map:Person;\n" +
+				"    d2rq:property ex:name; d2rq:column \"PERSON.NAME\" .\n" +
+				"map:age a d2rq:PropertyBridge; d2rq:belongsToClassMap map:Person;\n" +
+				"    d2rq:property ex:age; d2rq:column \"PERSON.AGE\"; d2rq:datatype xsd:integer .\n"));
+	}
+
+	public void tearDown() {
+		graph.close();
+		db.close();
+	}
+
+	public void testOrderDescWithLimitAndOffsetIsPushedDown() {
+		String query = PREFIX + "SELECT ?p ?age WHERE { ?p ex:age ?age } ORDER BY DESC(?age) LIMIT 2 OFFSET 1";
+		Relation relation = opD2RQ(optimize(query)).getRelation();
+		assertEquals(2, relation.limit());
+		assertEquals(1, relation.offset());
+		assertTrue(relation.orderDesc());
+		List results = HSQLDatabase.select(graph, query);
+		assertEquals(2, results.size());
+		assertEquals(HSQLDatabase.select(HSQLDatabase.copy(graph), query), results);
+	}
+
+	public void testOffsetBeyondLastRow() {
+		String query = PREFIX + "SELECT ?p ?age WHERE { ?p ex:age ?age } ORDER BY ?age LIMIT 2 OFFSET 5";
+		assertEquals(5, opD2RQ(optimize(query)).getRelation().offset());
+		assertEquals(Collections.EMPTY_LIST, HSQLDatabase.select(graph, query));
+	}
+
+	public void testOrderOnTextColumnIsRefused() {
+		String query = PREFIX + "SELECT ?p ?name WHERE { ?p ex:name ?name } ORDER BY DESC(?name) LIMIT 2 OFFSET 1";
+		Op op = optimize(query);
+		assertTrue(op instanceof OpSlice);
+		assertEquals(Relation.NO_LIMIT, opD2RQ(op).getRelation().limit());
+		assertNull(opD2RQ(op).getRelation().order());
+		assertEquals(HSQLDatabase.select(HSQLDatabase.copy(graph), query), HSQLDatabase.select(graph, query));
+	}
+
+	public void testOracleSkipsOffsetInOpSlice() {
+		OpD2RQ opD2RQ = onOracle(opD2RQ(optimize(PREFIX + "SELECT * WHERE { ?p ex:age ?age }")));
+		Op sliced = new OpD2RQSlicer(new OpSlice(opD2RQ, 1, 2), opD2RQ).sliced();
+		assertTrue(sliced instanceof OpSlice);
+		assertEquals(1, ((OpSlice) sliced).getStart());
+		assertEquals(Query.NOLIMIT, ((OpSlice) sliced).getLength());
+		Relation relation = opD2RQ(sliced).getRelation();
+		assertEquals(3, relation.limit());
+		assertEquals(0, relation.offset());
+		String sql = new SelectStatementBuilder(relation).getSQLStatement();
+		assertTrue(sql, sql.indexOf("ROWNUM <= 3") >= 0);
+		assertTrue(sql, sql.indexOf("OFFSET") == -1);
+	}
+
+	public void testOracleRefusesOrderedSlice() {
+		OpD2RQ opD2RQ = onOracle(opD2RQ(optimize(PREFIX + "SELECT * WHERE { ?p ex:age ?age }")));
+		Op ordered = new OpOrder(opD2RQ, Collections.singletonList(
+				new SortCondition(new ExprVar(Var.alloc("age")), Query.ORDER_DESCENDING)));
+		assertNull(new OpD2RQSlicer(new OpSlice(ordered, 0, 2), ordered).sliced());
+	}
+
+	private Op optimize(String query) {
+		return D2RQTreeOptimizer.optimize(Algebra.compile(QueryFactory.create(query)), graph);
+	}
+
+	private OpD2RQ opD2RQ(Op op) {
+		while (op instanceof Op1) {
+			op = ((Op1) op).getSubOp();
+		}
+		assertTrue(op.toString(), op instanceof OpD2RQ);
+		return (OpD2RQ) op;
+	}
+
+	/**
+	 * @return A copy of the OpD2RQ whose relation is on an Oracle database
+	 */
+	private OpD2RQ onOracle(OpD2RQ opD2RQ) {
+		Relation r = opD2RQ.getRelation();
+		DummyDB oracle = new DummyDB(ConnectedDB.Oracle);
+		Iterator it = r.projections().iterator();
+		while (it.hasNext()) {
+			Attribute column = r.aliases().originalOf((Attribute) it.next());
+			oracle.setColumnType(column, column.attributeName().equals("AGE")
+					? ConnectedDB.NUMERIC_COLUMN : ConnectedDB.TEXT_COLUMN);
+		}
+		return new OpD2RQ(opD2RQ.effectiveOp(), new RelationImpl(oracle, r.aliases(),
+				r.condition(), r.joinConditions(), r.projections(), r.leftJoinConditions(),
+				r.isUnique(), null, false, Relation.NO_LIMIT, Relation.NO_LIMIT, 0),
+				opD2RQ.getBindingMakers());
+	}
+}
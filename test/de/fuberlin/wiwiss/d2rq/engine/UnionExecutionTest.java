@@ -0,0 +1,112 @@
+package de.fuberlin.wiwiss.d2rq.engine;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.hp.hpl.jena.query.QueryFactory;
+import com.hp.hpl.jena.sparql.algebra.Algebra;
+import com.hp.hpl.jena.sparql.algebra.Op;
+import com.hp.hpl.jena.sparql.algebra.op.Op1;
+import com.hp.hpl.jena.sparql.algebra.op.OpUnion;
+
+import de.fuberlin.wiwiss.d2rq.GraphD2RQ;
+import de.fuberlin.wiwiss.d2rq.helpers.HSQLDatabase;
+import de.fuberlin.wiwiss.d2rq.optimizer.D2RQTreeOptimizer;
+import de.fuberlin.wiwiss.d2rq.sql.ExecutionStatistics;
+import de.fuberlin.wiwiss.d2rq.sql.ThreadPool;
+
+public class UnionExecutionTest extends TestCase {
+	private final static String PREFIX = "PREFIX ex: <http://example.org/> ";
+	private HSQLDatabase db;
+	private GraphD2RQ graph;
+
+	public void setUp() {
+		db = new HSQLDatabase("uniontest");
+		db.executeSQL("CREATE TABLE PERSON (ID INT PRIMARY KEY, NAME VARCHAR(50))");
+		db.executeSQL("CREATE TABLE CITY (ID INT PRIMARY KEY, NAME VARCHAR(50), POP INT)");
+		db.executeSQL("INSERT INTO PERSON VALUES (1, 'Alice')");
+		db.executeSQL("INSERT INTO PERSON VALUES (2, 'Bob')");
+		db.executeSQL("INSERT INTO CITY VALUES (1, 'Berlin', 3500000)");
+		graph = db.graph(db.mapping(
+				"map:Person a d2rq:ClassMap; d2rq:dataStorage map:db;\n" +
+				"    d2rq:uriPattern \"http://example.org/person/@@PERSON.ID@@\" .\n" +
+				"map:name a d2rq:PropertyBridge; d2rq:belongsToClassMap map:Person;\n" +
+				"    d2rq:property ex:name; d2rq:column \"PERSON.NAME\" .\n" +
+				"map:City a d2rq:ClassMap; d2rq:dataStorage map:db;\n" +
+				"    d2rq:uriPattern \"http://example.org/city/@@CITY.ID@@\" .\n" +
+				"map:cityName a d2rq:PropertyBridge; d2rq:belongsToClassMap map:City;\n" +
+				"    d2rq:property ex:cityName; d2rq:column \"CITY.NAME\" .\n" +
+				"map:pop a d2rq:PropertyBridge; d2rq:belongsToClassMap map:City;\n" +
+				"    d2rq:property ex:pop; d2rq:column \"CITY.POP\"; d2rq:datatype xsd:integer .\n"));
+	}
+
+	public void tearDown() {
+		graph.close();
+		db.close();
+	}
+
+	public void testEachRowComesFromItsBranch() {
+		String query = "SELECT ?x ?name ?pop ?cityName WHERE { " +
+				"{ ?x ex:name ?name } UNION { ?x ex:pop ?pop } UNION { ?x ex:cityName ?cityName } }";
+		assertTrue(isSingleUnion(query));
+		long before = ExecutionStatistics.global().sqlQueries();
+		assertEquals(Arrays.asList(new String[]{
+				"?x=http://example.org/city/1 ?cityName=Berlin",
+				"?x=http://example.org/city/1 ?pop=3500000",
+				"?x=http://example.org/person/1 ?name=Alice",
+				"?x=http://example.org/person/2 ?name=Bob"}), select(query));
+		assertEquals(1, ExecutionStatistics.global().sqlQueries() - before);
+	}
+
+	public void testBranchesWithSharedVariableOfDifferentColumns() {
+		String query = "SELECT ?x ?name WHERE { " +
+				"{ ?x ex:pop ?name } UNION { ?x ex:name ?name } }";
+		assertTrue(isSingleUnion(query));
+		assertEquals(Arrays.asList(new String[]{
+				"?x=http://example.org/city/1 ?name=3500000",
+				"?x=http://example.org/person/1 ?name=Alice",
+				"?x=http://example.org/person/2 ?name=Bob"}), select(query));
+	}
+
+	public void testUncombinedBranchesRunInParallel() {
+		db.executeSQL("INSERT INTO CITY VALUES (2, 'Galway', NULL)");
+		String query = "SELECT ?x ?name ?pop WHERE { " +
+				"{ ?x ex:cityName ?name OPTIONAL { ?x ex:pop ?pop } } UNION { ?x ex:name ?name } }";
+		Op op = D2RQTreeOptimizer.optimize(Algebra.compile(QueryFactory.create(PREFIX + query)), graph);
+		while (op instanceof Op1) {
+			op = ((Op1) op).getSubOp();
+		}
+		assertTrue(op instanceof OpUnion);
+		ThreadPool threads = ((OpD2RQ) ((OpUnion) op).getLeft()).getRelation().database().queryThreads();
+		List expected = select(query);
+		assertEquals(0, threads.size());
+		graph.getConfiguration().setParallelQueries(2);
+		assertEquals(expected, select(query));
+		assertTrue(threads.size() > 0);
+		assertEquals(Arrays.asList(new String[]{
+				"?x=http://example.org/city/1 ?name=Berlin ?pop=3500000",
+				"?x=http://example.org/city/2 ?name=Galway",
+				"?x=http://example.org/person/1 ?name=Alice",
+				"?x=http://example.org/person/2 ?name=Bob"}), expected);
+	}
+
+	private boolean isSingleUnion(String query) {
+		Op op = D2RQTreeOptimizer.optimize(Algebra.compile(QueryFactory.create(PREFIX + query)), graph);
+		while (op instanceof Op1) {
+			op = ((Op1) op).getSubOp();
+		}
+		return op instanceof OpD2RQUnion;
+	}
+
+	/**
+	 * @return The solutions in sorted order
+	 */
+	private List select(String query) {
+		List results = HSQLDatabase.select(graph, PREFIX + query);
+		Collections.sort(results);
+		return results;
+	}
+}
@@ -85,4 +85,17 @@ public class ExpressionTest extends TestCase {
 		assertEquals("Constant(42@alias.col1)", 
 				new Constant("42", attribute).renameAttributes(aliases).toString());
 	}
+	
+	public void testGreaterThanToSQL() {
+		Attribute attribute = SQL.parseAttribute("table.col1");
+		DummyDB db = new DummyDB();
+		db.setColumnType(attribute, ConnectedDB.NUMERIC_COLUMN);
+		assertEquals("\"table\".\"col1\" > 42", 
+				GreaterThan.createAttributeValue(attribute, "42").toSQL(db, AliasMap.NO_ALIASES));
+	}
+	
+	public void testGreaterThanOfEqualExpressionsIsFalse() {
+		Expression expr = new AttributeExpr(SQL.parseAttribute("table.col1"));
+		assertEquals(Expression.FALSE, GreaterThan.create(expr, expr));
+	}
 }
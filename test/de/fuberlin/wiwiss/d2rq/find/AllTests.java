@@ -8,6 +8,9 @@ public class AllTests {
 	public static Test suite() {
 		TestSuite suite = new TestSuite("Test for de.fuberlin.wiwiss.d2rq.find");
 		//$JUnit-BEGIN$
+		suite.addTestSuite(ClassMapInventoryTest.class);
+		suite.addTestSuite(DescribeQueryTest.class);
+		suite.addTestSuite(ParallelIteratorTest.class);
 		suite.addTestSuite(URIMakerRuleTest.class);
 		//$JUnit-END$
 		return suite;
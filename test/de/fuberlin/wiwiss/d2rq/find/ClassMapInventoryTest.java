@@ -0,0 +1,161 @@
+package de.fuberlin.wiwiss.d2rq.find;
+
+import java.io.StringReader;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.util.iterator.ExtendedIterator;
+import com.hp.hpl.jena.vocabulary.RDF;
+import com.hp.hpl.jena.vocabulary.RDFS;
+
+import de.fuberlin.wiwiss.d2rq.GraphD2RQ;
+import de.fuberlin.wiwiss.d2rq.ModelD2RQ;
+import de.fuberlin.wiwiss.d2rq.parser.MapParser;
+
+public class ClassMapInventoryTest extends TestCase {
+	private static final String HSQL_URL = "jdbc:hsqldb:mem:classmapinventorytest";
+	private static final String MAPPING =
+		"@prefix d2rq: <http://www.wiwiss.fu-berlin.de/suhl/bizer/D2RQ/0.1#> .\n" +
+		"@prefix ex: <http://example.org/> .\n" +
+		"@prefix map: <file:///map#> .\n" +
+		"map:db a d2rq:Database; d2rq:jdbcDriver \"org.hsqldb.jdbcDriver\";\n" +
+		"    d2rq:jdbcDSN \"" + HSQL_URL + "\"; d2rq:username \"sa\" .\n" +
+		"map:Person a d2rq:ClassMap; d2rq:dataStorage map:db;\n" +
+		"    d2rq:uriPattern \"http://example.org/person/@@PERSON.ID@@\"; d2rq:class ex:Person .\n" +
+		"map:name a d2rq:PropertyBridge; d2rq:belongsToClassMap map:Person;\n" +
+		"    d2rq:property <http://www.w3.org/2000/01/rdf-schema#label>; d2rq:column \"PERSON.NAME\" .\n" +
+		"map:Membership a d2rq:ClassMap; d2rq:dataStorage map:db;\n" +
+		"    d2rq:uriPattern \"http://example.org/membership/@@PERSON.ID@@/@@PERSON.GRP@@\";\n" +
+		"    d2rq:class ex:Membership .\n" +
+		"map:Event a d2rq:ClassMap; d2rq:dataStorage map:db;\n" +
+		"    d2rq:uriPattern \"http://example.org/event/@@EVENT.DAY@@\"; d2rq:class ex:Event .\n";
+
+	private GraphD2RQ graph;
+
+	public void setUp() throws Exception {
+		Class.forName("org.hsqldb.jdbcDriver");
+		Connection c = DriverManager.getConnection(HSQL_URL, "sa", "");
+		Statement s = c.createStatement();
+		s.execute("DROP TABLE PERSON IF EXISTS");
+		s.execute("CREATE TABLE PERSON (ID INT PRIMARY KEY, NAME VARCHAR(50), GRP INT)");
+		s.execute("INSERT INTO PERSON VALUES (1, 'Alice', 1)");
+		s.execute("INSERT INTO PERSON VALUES (2, 'Bob', 1)");
+		s.execute("INSERT INTO PERSON VALUES (3, NULL, 2)");
+		s.execute("INSERT INTO PERSON VALUES (10, 'Carol', 2)");
+		s.execute("INSERT INTO PERSON VALUES (11, 'Dave', 2)");
+		s.execute("DROP TABLE EVENT IF EXISTS");
+		s.execute("CREATE TABLE EVENT (DAY DATE PRIMARY KEY, NAME VARCHAR(50))");
+		s.execute("INSERT INTO EVENT VALUES ('2008-01-01', 'New Year')");
+		s.execute("INSERT INTO EVENT VALUES ('2008-05-01', 'May Day')");
+		s.close();
+		c.close();
+		Model m = ModelFactory.createDefaultModel();
+		m.read(new StringReader(MAPPING), "file:///map", "N3");
+		graph = (GraphD2RQ) new ModelD2RQ(
+				new MapParser(m, "http://example.org/").parse()).getGraph();
+		graph.initInventory("http://example.org/all/");
+	}
+
+	public void tearDown() {
+		graph.close();
+	}
+
+	public void testPagesFollowKeyOrder() {
+		ClassMapInventory.Page page = graph.classMapInventoryPage("Person", null, 2);
+		assertEquals(4, size(page.triples()));
+		assertEquals("2", page.nextKey());
+		page = graph.classMapInventoryPage("Person", "2", 2);
+		assertEquals(3, size(page.triples()));
+		assertEquals("10", page.nextKey());
+		page = graph.classMapInventoryPage("Person", "10", 2);
+		assertEquals(Node.createURI("http://example.org/person/11"),
+				((Triple) page.triples().next()).getSubject());
+		assertNull(page.nextKey());
+	}
+
+	public void testPageAfterLastKeyIsEmpty() {
+		ClassMapInventory.Page page = graph.classMapInventoryPage("Person", "11", 2);
+		assertEquals(0, size(page.triples()));
+		assertNull(page.nextKey());
+	}
+
+	public void testLastPageHasNoNextKey() {
+		ClassMapInventory.Page page = graph.classMapInventoryPage("Person", "3", 5);
+		assertEquals(4, size(page.triples()));
+		assertNull(page.nextKey());
+	}
+
+	public void testAllPagesGiveWholeInventory() {
+		Model all = graph.classMapInventory("Person");
+		Model paged = ModelFactory.createDefaultModel();
+		String after = null;
+		do {
+			ClassMapInventory.Page page = graph.classMapInventoryPage("Person", after, 2);
+			paged.getGraph().getBulkUpdateHandler().add(page.triples());
+			after = page.nextKey();
+		} while (after != null);
+		assertEquals(9, all.size());
+		assertTrue(all.isIsomorphicWith(paged));
+		assertEquals(5, paged.listStatements(null, RDF.type, (String) null).toList().size());
+		assertEquals(4, paged.listStatements(null, RDFS.label, (String) null).toList().size());
+	}
+
+	public void testCompoundKeyIsNotPaged() {
+		ClassMapInventory.Page page = graph.classMapInventoryPage("Membership", null, 2);
+		assertEquals(5, size(page.triples()));
+		assertNull(page.nextKey());
+	}
+
+	public void testDateKeyPages() {
+		ClassMapInventory.Page page = graph.classMapInventoryPage("Event", "2008-01-01", 2);
+		assertEquals(Node.createURI("http://example.org/event/2008-05-01"),
+				((Triple) page.triples().next()).getSubject());
+		assertNull(page.nextKey());
+	}
+
+	public void testMaliciousNumericKeyIsRejected() {
+		assertTrue(graph.isValidClassMapKey("Person", "10"));
+		assertTrue(graph.isValidClassMapKey("Person", "-1.5e3"));
+		assertFalse(graph.isValidClassMapKey("Person", "1 OR 1=1"));
+		try {
+			graph.classMapInventoryPage("Person", "1 OR 1=1", 2);
+			fail("Expected IllegalArgumentException");
+		} catch (IllegalArgumentException ex) {
+			// expected
+		}
+	}
+
+	public void testMaliciousDateKeyIsRejected() {
+		String after = "2008-01-01' OR '1'='1";
+		assertTrue(graph.isValidClassMapKey("Event", "2008-01-01"));
+		assertFalse(graph.isValidClassMapKey("Event", after));
+		assertFalse(graph.isValidClassMapKey("Event", "tomorrow"));
+		try {
+			graph.classMapInventoryPage("Event", after, 2);
+			fail("Expected IllegalArgumentException");
+		} catch (IllegalArgumentException ex) {
+			// expected
+		}
+	}
+
+	public void testUnknownClassMap() {
+		assertNull(graph.classMapInventoryPage("Foo", null, 2));
+	}
+
+	private int size(ExtendedIterator it) {
+		List result = new ArrayList();
+		while (it.hasNext()) {
+			result.add(it.next());
+		}
+		return result.size();
+	}
+}
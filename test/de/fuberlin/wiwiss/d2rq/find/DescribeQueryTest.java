@@ -0,0 +1,150 @@
+package de.fuberlin.wiwiss.d2rq.find;
+
+import java.io.StringReader;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.util.iterator.ExtendedIterator;
+import com.hp.hpl.jena.vocabulary.RDFS;
+
+import de.fuberlin.wiwiss.d2rq.GraphD2RQ;
+import de.fuberlin.wiwiss.d2rq.ModelD2RQ;
+import de.fuberlin.wiwiss.d2rq.parser.MapParser;
+
+/**
+ * Checks that {@link GraphD2RQ#describe(Node, boolean)} returns the same
+ * triples as a find for each of the triple patterns.
+ */
+public class DescribeQueryTest extends TestCase {
+	private static final String HSQL_URL = "jdbc:hsqldb:mem:describequerytest";
+	private static final String MAPPING =
+		"@prefix d2rq: <http://www.wiwiss.fu-berlin.de/suhl/bizer/D2RQ/0.1#> .\n" +
+		"@prefix ex: <http://example.org/> .\n" +
+		"@prefix map: <file:///map#> .\n" +
+		"map:db a d2rq:Database; d2rq:jdbcDriver \"org.hsqldb.jdbcDriver\";\n" +
+		"    d2rq:jdbcDSN \"" + HSQL_URL + "\"; d2rq:username \"sa\" .\n" +
+		"map:Person a d2rq:ClassMap; d2rq:dataStorage map:db;\n" +
+		"    d2rq:uriPattern \"http://example.org/person/@@PERSON.ID@@\"; d2rq:class ex:Person .\n" +
+		"map:name a d2rq:PropertyBridge; d2rq:belongsToClassMap map:Person;\n" +
+		"    d2rq:property <http://www.w3.org/2000/01/rdf-schema#label>; d2rq:column \"PERSON.NAME\" .\n" +
+		"map:Project a d2rq:ClassMap; d2rq:dataStorage map:db;\n" +
+		"    d2rq:uriPattern \"http://example.org/project/@@PROJECT.ID@@\"; d2rq:class ex:Project .\n" +
+		"map:title a d2rq:PropertyBridge; d2rq:belongsToClassMap map:Project;\n" +
+		"    d2rq:property ex:title; d2rq:column \"PROJECT.TITLE\" .\n" +
+		"map:lead a d2rq:PropertyBridge; d2rq:belongsToClassMap map:Project;\n" +
+		"    d2rq:property ex:lead; d2rq:refersToClassMap map:Person;\n" +
+		"    d2rq:join \"PROJECT.LEAD => PERSON.ID\" .\n";
+
+	private GraphD2RQ graph;
+
+	public void setUp() throws Exception {
+		Class.forName("org.hsqldb.jdbcDriver");
+		Connection c = DriverManager.getConnection(HSQL_URL, "sa", "");
+		Statement s = c.createStatement();
+		s.execute("DROP TABLE PROJECT IF EXISTS");
+		s.execute("DROP TABLE PERSON IF EXISTS");
+		s.execute("CREATE TABLE PERSON (ID INT PRIMARY KEY, NAME VARCHAR(50))");
+		s.execute("CREATE TABLE PROJECT (ID INT PRIMARY KEY, TITLE VARCHAR(50), LEAD INT)");
+		s.execute("INSERT INTO PERSON VALUES (1, 'Alice')");
+		s.execute("INSERT INTO PERSON VALUES (2, 'Bob')");
+		s.execute("INSERT INTO PERSON VALUES (3, NULL)");
+		s.execute("INSERT INTO PROJECT VALUES (1, 'D2RQ', 1)");
+		s.execute("INSERT INTO PROJECT VALUES (2, 'D2R Server', 1)");
+		s.execute("INSERT INTO PROJECT VALUES (3, 'Orphan', NULL)");
+		s.close();
+		c.close();
+		Model m = ModelFactory.createDefaultModel();
+		m.read(new StringReader(MAPPING), "file:///map", "N3");
+		graph = (GraphD2RQ) new ModelD2RQ(
+				new MapParser(m, "http://example.org/").parse()).getGraph();
+	}
+
+	public void tearDown() {
+		graph.close();
+	}
+
+	public void testResourceWithLiteralsAndIncomingLinks() {
+		Set description = describe("http://example.org/person/1", true);
+		assertEquals(find("http://example.org/person/1", true), description);
+		assertTrue(description.contains(new Triple(uri("http://example.org/person/1"),
+				RDFS.label.asNode(), Node.createLiteral("Alice"))));
+		assertTrue(description.contains(new Triple(uri("http://example.org/project/2"),
+				uri("http://example.org/lead"), uri("http://example.org/person/1"))));
+	}
+
+	public void testOutgoingTriplesOnly() {
+		Set description = describe("http://example.org/person/1", false);
+		assertEquals(find("http://example.org/person/1", false), description);
+		assertEquals(2, description.size());
+	}
+
+	public void testResourceWithURIObjects() {
+		Set description = describe("http://example.org/project/1", true);
+		assertEquals(find("http://example.org/project/1", true), description);
+		assertTrue(description.contains(new Triple(uri("http://example.org/project/1"),
+				uri("http://example.org/lead"), uri("http://example.org/person/1"))));
+	}
+
+	public void testResourceWithoutIncomingLinks() {
+		Set description = describe("http://example.org/person/2", true);
+		assertEquals(find("http://example.org/person/2", true), description);
+		assertEquals(2, description.size());
+	}
+
+	public void testPropertyUsedAsPredicate() {
+		Set description = describe("http://example.org/lead", true);
+		assertEquals(find("http://example.org/lead", true), description);
+		assertEquals(2, size(graph.find(Node.ANY, uri("http://example.org/lead"), Node.ANY)));
+		assertTrue(description.containsAll(toSet(
+				graph.find(Node.ANY, uri("http://example.org/lead"), Node.ANY))));
+	}
+
+	public void testResourceNotInDatabase() {
+		assertEquals(0, describe("http://example.org/person/99", true).size());
+		assertEquals(find("http://example.org/person/99", true), describe("http://example.org/person/99", true));
+	}
+
+	public void testResourceNotInMapping() {
+		assertEquals(0, describe("http://other.example.org/foo", true).size());
+		assertEquals(find("http://other.example.org/foo", true), describe("http://other.example.org/foo", true));
+	}
+
+	private Set describe(String uri, boolean includeIncoming) {
+		return toSet(graph.describe(uri(uri), includeIncoming));
+	}
+
+	private Set find(String uri, boolean includeIncoming) {
+		Set result = toSet(graph.find(uri(uri), Node.ANY, Node.ANY));
+		if (includeIncoming) {
+			result.addAll(toSet(graph.find(Node.ANY, Node.ANY, uri(uri))));
+			result.addAll(toSet(graph.find(Node.ANY, uri(uri), Node.ANY)));
+		}
+		return result;
+	}
+
+	private Node uri(String uri) {
+		return Node.createURI(uri);
+	}
+
+	private Set toSet(ExtendedIterator it) {
+		Set result = new HashSet();
+		while (it.hasNext()) {
+			result.add(it.next());
+		}
+		return result;
+	}
+
+	private int size(ExtendedIterator it) {
+		return toSet(it).size();
+	}
+}
@@ -0,0 +1,236 @@
+package de.fuberlin.wiwiss.d2rq.find;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.hp.hpl.jena.util.iterator.NiceIterator;
+
+import de.fuberlin.wiwiss.d2rq.D2RQException;
+import de.fuberlin.wiwiss.d2rq.sql.ConnectionPool;
+import de.fuberlin.wiwiss.d2rq.sql.ThreadPool;
+
+public class ParallelIteratorTest extends TestCase {
+	private List sources;
+	private ThreadPool threads;
+
+	public void setUp() {
+		sources = new ArrayList();
+		threads = new ThreadPool(4, "test");
+	}
+
+	public void tearDown() {
+		threads.close();
+	}
+
+	public void testEmpty() {
+		ParallelIterator it = new ParallelIterator(Collections.EMPTY_LIST, 4, threads);
+		assertFalse(it.hasNext());
+	}
+
+	public void testReturnsAllElements() {
+		addSource(new String[] {"a1", "a2", "a3"});
+		addSource(new String[] {});
+		addSource(new String[] {"c1"});
+		addSource(new String[] {"d1", "d2"});
+		List result = new ArrayList();
+		ParallelIterator it = new ParallelIterator(sources, 2, threads, 1);
+		while (it.hasNext()) {
+			result.add(it.next());
+		}
+		Collections.sort(result);
+		assertEquals(Arrays.asList(new String[] {"a1", "a2", "a3", "c1", "d1", "d2"}), result);
+		assertAllClosed();
+	}
+
+	public void testKeepsOrderWithinSource() {
+		addSource(new String[] {"1", "2", "3", "4", "5"});
+		addSource(new String[] {"a", "b", "c"});
+		List numbers = new ArrayList();
+		ParallelIterator it = new ParallelIterator(sources, 2, threads, 2);
+		while (it.hasNext()) {
+			String s = (String) it.next();
+			if (Character.isDigit(s.charAt(0))) {
+				numbers.add(s);
+			}
+		}
+		assertEquals(Arrays.asList(new String[] {"1", "2", "3", "4", "5"}), numbers);
+	}
+
+	public void testCloseClosesAllSources() {
+		addSource(new String[] {"a1", "a2", "a3", "a4"});
+		addSource(new String[] {"b1", "b2", "b3", "b4"});
+		addSource(new String[] {"c1", "c2", "c3", "c4"});
+		ParallelIterator it = new ParallelIterator(sources, 2, threads, 1);
+		assertTrue(it.hasNext());
+		it.next();
+		it.close();
+		assertFalse(it.hasNext());
+		assertAllClosed();
+	}
+
+	public void testCloseBeforeStart() {
+		addSource(new String[] {"a1"});
+		addSource(new String[] {"b1"});
+		new ParallelIterator(sources, 2, threads).close();
+		assertAllClosed();
+	}
+
+	public void testFailureIsThrownToCaller() {
+		addSource(new String[] {"a1", "a2"});
+		sources.add(new Source(new String[] {"b1"}) {
+			public Object next() {
+				throw new D2RQException("Broken");
+			}
+		});
+		ParallelIterator it = new ParallelIterator(sources, 2, threads);
+		try {
+			while (it.hasNext()) {
+				it.next();
+			}
+			fail("Expected exception");
+		} catch (D2RQException ex) {
+			assertTrue(ex.getMessage().startsWith("Broken"));
+		}
+		assertAllClosed();
+	}
+
+	public void testCallerReadsSourcesWithoutFreeThread() {
+		threads.close();
+		addSource(new String[] {"a1", "a2"});
+		addSource(new String[] {});
+		addSource(new String[] {"c1"});
+		List result = new ArrayList();
+		ParallelIterator it = new ParallelIterator(sources, 2, threads, 1);
+		while (it.hasNext()) {
+			result.add(it.next());
+		}
+		assertEquals(Arrays.asList(new String[] {"a1", "a2", "c1"}), result);
+		assertAllClosed();
+	}
+
+	public void testCallerFailureIsThrown() {
+		threads.close();
+		sources.add(new Source(new String[] {"a1"}) {
+			public Object next() {
+				throw new D2RQException("Broken");
+			}
+		});
+		addSource(new String[] {"b1"});
+		ParallelIterator it = new ParallelIterator(sources, 2, threads);
+		try {
+			it.hasNext();
+			fail("Expected exception");
+		} catch (D2RQException ex) {
+			assertTrue(ex.getMessage().startsWith("Broken"));
+		}
+		assertAllClosed();
+	}
+
+	public void testThreadsAreLimitedByPool() {
+		ThreadPool single = new ThreadPool(1, "test");
+		try {
+			for (int i = 0; i < 4; i++) {
+				addSource(new String[] {"x" + i});
+			}
+			ParallelIterator it = new ParallelIterator(sources, 4, single, 1);
+			int count = 0;
+			while (it.hasNext()) {
+				it.next();
+				count++;
+				assertTrue(single.size() <= 1);
+			}
+			assertEquals(4, count);
+			assertAllClosed();
+		} finally {
+			single.close();
+		}
+	}
+
+	public void testCallerReadsSourcesWithoutFreeConnection() throws Exception {
+		Class.forName("org.hsqldb.jdbcDriver");
+		ConnectionPool connections = new ConnectionPool(1, 0, ConnectionPool.NO_VALIDATION, "CALL 1") {
+			protected Connection createConnection() {
+				try {
+					return DriverManager.getConnection("jdbc:hsqldb:mem:paralleliteratortest", "sa", "");
+				} catch (SQLException ex) {
+					throw new D2RQException(ex);
+				}
+			}
+		};
+		Connection held = connections.checkOut();
+		try {
+			addSource(new String[] {"a1", "a2"});
+			addSource(new String[] {"b1"});
+			List result = new ArrayList();
+			ParallelIterator it = new ParallelIterator(sources, 2, threads, connections);
+			while (it.hasNext()) {
+				result.add(it.next());
+			}
+			assertEquals(Arrays.asList(new String[] {"a1", "a2", "b1"}), result);
+			assertAllClosed();
+			Iterator sourceIt = sources.iterator();
+			while (sourceIt.hasNext()) {
+				assertSame(Thread.currentThread(), ((Source) sourceIt.next()).reader);
+			}
+			assertEquals(1, connections.inUseCount());
+		} finally {
+			connections.checkIn(held);
+			connections.close();
+		}
+	}
+
+	public void testStalledWorkerStops() throws InterruptedException {
+		addSource(new String[] {"a1", "a2", "a3"});
+		ParallelIterator it = new ParallelIterator(sources, 1, threads, null, 1, 100);
+		assertTrue(it.hasNext());
+		long deadline = System.currentTimeMillis() + 5000;
+		while (!((Source) sources.get(0)).closed && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertAllClosed();
+		try {
+			it.hasNext();
+			fail("Expected exception");
+		} catch (D2RQException ex) {
+			assertTrue(ex.getMessage().startsWith("Query results were not read"));
+		}
+	}
+
+	private void addSource(String[] elements) {
+		sources.add(new Source(elements));
+	}
+
+	private void assertAllClosed() {
+		Iterator it = sources.iterator();
+		while (it.hasNext()) {
+			assertTrue(((Source) it.next()).closed);
+		}
+	}
+
+	private class Source extends NiceIterator {
+		private final Iterator elements;
+		boolean closed = false;
+		Thread reader = null;
+		Source(String[] elements) {
+			this.elements = Arrays.asList(elements).iterator();
+		}
+		public boolean hasNext() {
+			return !closed && elements.hasNext();
+		}
+		public Object next() {
+			reader = Thread.currentThread();
+			return elements.next();
+		}
+		public void close() {
+			closed = true;
+		}
+	}
+}
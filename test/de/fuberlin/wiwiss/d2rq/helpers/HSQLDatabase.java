@@ -0,0 +1,147 @@
+package de.fuberlin.wiwiss.d2rq.helpers;
+
+import java.io.StringReader;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import com.hp.hpl.jena.graph.Factory;
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.query.QueryExecution;
+import com.hp.hpl.jena.query.QueryExecutionFactory;
+import com.hp.hpl.jena.query.QueryFactory;
+import com.hp.hpl.jena.query.QuerySolution;
+import com.hp.hpl.jena.query.ResultSet;
+import com.hp.hpl.jena.query.Syntax;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+
+import de.fuberlin.wiwiss.d2rq.GraphD2RQ;
+import de.fuberlin.wiwiss.d2rq.ModelD2RQ;
+import de.fuberlin.wiwiss.d2rq.map.Mapping;
+import de.fuberlin.wiwiss.d2rq.parser.MapParser;
+
+/**
+ * An in-memory HSQLDB database for tests that execute SQL queries.
+ * Mappings are written in N3 and can refer to the database as
+ * <tt>map:db</tt>; the prefixes <tt>d2rq:</tt>, <tt>ex:</tt>,
+ * <tt>xsd:</tt> and <tt>map:</tt> are predefined.
+ */
+public class HSQLDatabase {
+	private final String jdbcURL;
+	private final Connection connection;
+
+	public HSQLDatabase(String name) {
+		this.jdbcURL = "jdbc:hsqldb:mem:" + name;
+		try {
+			Class.forName("org.hsqldb.jdbcDriver");
+			this.connection = DriverManager.getConnection(jdbcURL, "sa", "");
+		} catch (ClassNotFoundException ex) {
+			throw new RuntimeException(ex);
+		} catch (SQLException ex) {
+			throw new RuntimeException(ex);
+		}
+	}
+
+	public String jdbcURL() {
+		return jdbcURL;
+	}
+
+	public void executeSQL(String sql) {
+		try {
+			Statement s = connection.createStatement();
+			s.execute(sql);
+			s.close();
+		} catch (SQLException ex) {
+			throw new RuntimeException(sql + ": " + ex.getMessage());
+		}
+	}
+
+	/**
+	 * @param n3 Class maps and property bridges, without prefixes
+	 * @return The mapping, including a database <tt>map:db</tt>
+	 */
+	public Mapping mapping(String n3) {
+		Model m = ModelFactory.createDefaultModel();
+		m.read(new StringReader(
+				"@prefix d2rq: <http://www.wiwiss.fu-berlin.de/suhl/bizer/D2RQ/0.1#> .\n" +
+				"@prefix ex: <http://example.org/> .\n" +
+				"@prefix xsd: <http://www.w3.org/2001/XMLSchema#> .\n" +
+				"@prefix map: <file:///map#> .\n" +
+				"map:db a d2rq:Database; d2rq:jdbcDriver \"org.hsqldb.jdbcDriver\";\n" +
+				"    d2rq:jdbcDSN \"" + jdbcURL + "\"; d2rq:username \"sa\" .\n" +
+				n3), "file:///map", "N3");
+		return new MapParser(m, "http://example.org/").parse();
+	}
+
+	public GraphD2RQ graph(Mapping mapping) {
+		return (GraphD2RQ) new ModelD2RQ(mapping).getGraph();
+	}
+
+	/**
+	 * Runs a SELECT query, in ARQ syntax, against a D2RQ graph, or any other graph,
+	 * and writes each solution as a line of
+	 * <tt>?var=value</tt> pairs, in the order of the result variables.
+	 * Unbound variables are left out.
+	 * @return The solutions in the order returned by the query
+	 */
+	public static List select(Graph graph, String sparql) {
+		Model model = ModelFactory.createModelForGraph(graph);
+		QueryExecution qe = QueryExecutionFactory.create(
+				QueryFactory.create(sparql, Syntax.syntaxARQ), model);
+		List result = new ArrayList();
+		try {
+			ResultSet rs = qe.execSelect();
+			while (rs.hasNext()) {
+				QuerySolution solution = rs.nextSolution();
+				StringBuffer line = new StringBuffer();
+				for (int i = 0; i < rs.getResultVars().size(); i++) {
+					String var = (String) rs.getResultVars().get(i);
+					if (solution.get(var) == null) continue;
+					if (line.length() > 0) line.append(' ');
+					line.append('?');
+					line.append(var);
+					line.append('=');
+					line.append(solution.get(var).isLiteral()
+							? solution.getLiteral(var).getLexicalForm()
+							: solution.get(var).toString());
+				}
+				result.add(line.toString());
+			}
+		} finally {
+			qe.close();
+		}
+		return result;
+	}
+
+	/**
+	 * @return An in-memory copy of a graph, for running queries
+	 * 		without any D2RQ optimizations
+	 */
+	public static Graph copy(Graph graph) {
+		Graph result = Factory.createGraphMem();
+		Iterator it = graph.find(Node.ANY, Node.ANY, Node.ANY);
+		while (it.hasNext()) {
+			result.add((Triple) it.next());
+		}
+		return result;
+	}
+
+	/**
+	 * Drops all tables and closes the connection
+	 */
+	public void close() {
+		executeSQL("SHUTDOWN");
+		try {
+			connection.close();
+		} catch (SQLException ex) {
+			throw new RuntimeException(ex);
+		}
+	}
+}
@@ -49,6 +49,32 @@ public class MappingTest extends TestCase {
 		}
 	}
 	
+	public void testZeroConnectionPoolSizeCausesValidationError() {
+		Database db = new Database(database1);
+		db.setJDBCDSN("jdbc:mysql:///db");
+		db.setJDBCDriver("com.mysql.jdbc.Driver");
+		db.setConnectionPoolSize(0);
+		try {
+			db.validate();
+			fail();
+		} catch (D2RQException ex) {
+			assertEquals(D2RQException.DATABASE_INVALID_CONNECTION_POOL_SIZE, ex.errorCode());
+		}
+	}
+	
+	public void testNegativeConnectionPoolTimeoutCausesValidationError() {
+		Database db = new Database(database1);
+		db.setJDBCDSN("jdbc:mysql:///db");
+		db.setJDBCDriver("com.mysql.jdbc.Driver");
+		db.setConnectionPoolTimeout(-1);
+		try {
+			db.validate();
+			fail();
+		} catch (D2RQException ex) {
+			assertEquals(D2RQException.DATABASE_INVALID_CONNECTION_POOL_TIMEOUT, ex.errorCode());
+		}
+	}
+	
 	public void testReturnResourceFromNewClassMap() {
 		ClassMap c = new ClassMap(classMap1);
 		assertEquals(classMap1, c.resource());
@@ -11,6 +11,7 @@ public class AllTests {
 		//$JUnit-BEGIN$
 		suite.addTestSuite(NodeSetTest.class);
 		suite.addTestSuite(NodeMakerTest.class);
+		suite.addTestSuite(URIMakerIndexTest.class);
 		//$JUnit-END$
 		return suite;
 	}
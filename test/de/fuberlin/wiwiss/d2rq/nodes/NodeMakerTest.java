@@ -9,6 +9,7 @@ import com.hp.hpl.jena.graph.Node;
 import com.hp.hpl.jena.rdf.model.AnonId;
 
 import de.fuberlin.wiwiss.d2rq.algebra.Attribute;
+import de.fuberlin.wiwiss.d2rq.sql.ConnectedDB;
 import de.fuberlin.wiwiss.d2rq.values.BlankNodeID;
 import de.fuberlin.wiwiss.d2rq.values.Column;
 
@@ -56,4 +57,35 @@ public class NodeMakerTest extends TestCase {
 		NodeMaker u = new TypedNodeMaker(TypedNodeMaker.URI, new Column(table_col1), true);
 		assertEquals("URI(Column(table.col1))", u.toString());
 	}
+
+	public void testColumnOrder() {
+		Column col = new Column(table_col1);
+		assertFalse(new TypedNodeMaker(TypedNodeMaker.PLAIN_LITERAL, col, true)
+				.isOrderedLikeColumn(ConnectedDB.NUMERIC_COLUMN));
+		assertTrue(new TypedNodeMaker(TypedNodeMaker.typedLiteral(XSDDatatype.XSDint), col, true)
+				.isOrderedLikeColumn(ConnectedDB.NUMERIC_COLUMN));
+		assertFalse(new TypedNodeMaker(TypedNodeMaker.typedLiteral(XSDDatatype.XSDint), col, true)
+				.isOrderedLikeColumn(ConnectedDB.TEXT_COLUMN));
+		assertTrue(new TypedNodeMaker(TypedNodeMaker.XSD_DATE, col, true)
+				.isOrderedLikeColumn(ConnectedDB.DATE_COLUMN));
+		assertTrue(new TypedNodeMaker(TypedNodeMaker.XSD_DATETIME, col, true)
+				.isOrderedLikeColumn(ConnectedDB.TIMESTAMP_COLUMN));
+		assertFalse(new TypedNodeMaker(TypedNodeMaker.XSD_BOOLEAN, col, true)
+				.isOrderedLikeColumn(ConnectedDB.NUMERIC_COLUMN));
+		assertFalse(new TypedNodeMaker(TypedNodeMaker.BLANK, col, true)
+				.isOrderedLikeColumn(ConnectedDB.TEXT_COLUMN));
+	}
+
+	public void testTextColumnOrderDependsOnCollation() {
+		// e.g. MySQL sorts "apple" before "Banana", SPARQL after it
+		Column col = new Column(table_col1);
+		assertFalse(new TypedNodeMaker(TypedNodeMaker.PLAIN_LITERAL, col, true)
+				.isOrderedLikeColumn(ConnectedDB.TEXT_COLUMN));
+		assertFalse(new TypedNodeMaker(TypedNodeMaker.languageLiteral("en"), col, true)
+				.isOrderedLikeColumn(ConnectedDB.TEXT_COLUMN));
+		assertFalse(new TypedNodeMaker(TypedNodeMaker.typedLiteral(XSDDatatype.XSDstring), col, true)
+				.isOrderedLikeColumn(ConnectedDB.TEXT_COLUMN));
+		assertFalse(new TypedNodeMaker(TypedNodeMaker.URI, col, true)
+				.isOrderedLikeColumn(ConnectedDB.TEXT_COLUMN));
+	}
 }
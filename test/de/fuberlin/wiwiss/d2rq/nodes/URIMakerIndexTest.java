@@ -0,0 +1,83 @@
+package de.fuberlin.wiwiss.d2rq.nodes;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import junit.framework.TestCase;
+
+import com.hp.hpl.jena.graph.Node;
+
+import de.fuberlin.wiwiss.d2rq.algebra.Attribute;
+import de.fuberlin.wiwiss.d2rq.values.Column;
+import de.fuberlin.wiwiss.d2rq.values.Pattern;
+
+public class URIMakerIndexTest extends TestCase {
+	private final static Attribute table_col1 = new Attribute(null, "table", "col1");
+	private NodeMaker persons;
+	private NodeMaker personPages;
+	private NodeMaker homepages;
+	private NodeMaker fixed;
+	private NodeMaker names;
+	private URIMakerIndex index;
+
+	public void setUp() {
+		persons = new TypedNodeMaker(TypedNodeMaker.URI,
+				new Pattern("http://test/person/@@table.col1@@"), true);
+		personPages = new TypedNodeMaker(TypedNodeMaker.URI,
+				new Pattern("http://test/person/@@table.col1@@.html"), true);
+		homepages = new TypedNodeMaker(TypedNodeMaker.URI, new Column(table_col1), false);
+		fixed = new FixedNodeMaker(Node.createURI("http://test/person/all"), false);
+		names = new TypedNodeMaker(TypedNodeMaker.PLAIN_LITERAL, new Column(table_col1), false);
+		index = new URIMakerIndex();
+		index.add(persons, "persons");
+		index.add(personPages, "personPages");
+		index.add(homepages, "homepages");
+		index.add(fixed, "fixed");
+		index.add(names, "names");
+	}
+
+	public void testCandidatesAreInOrderOfAdding() {
+		assertEquals(Arrays.asList(new String[]{"persons", "personPages", "homepages"}),
+				index.candidates("http://test/person/1.html"));
+	}
+
+	public void testLastLiteralPartMustMatch() {
+		assertEquals(Arrays.asList(new String[]{"persons", "homepages"}),
+				index.candidates("http://test/person/1"));
+	}
+
+	public void testFixedURIMustMatchExactly() {
+		assertEquals(Arrays.asList(new String[]{"persons", "homepages", "fixed"}),
+				index.candidates("http://test/person/all"));
+	}
+
+	public void testOtherPrefixOnlyFindsUnindexed() {
+		assertEquals(Collections.singletonList("homepages"),
+				index.candidates("http://example.org/"));
+	}
+
+	public void testMatchesRunsNodeMakers() {
+		assertEquals(Arrays.asList(new String[]{"persons", "personPages", "homepages"}),
+				index.matches(Node.createURI("http://test/person/1.html")));
+		assertTrue(index.matches(Node.createLiteral("http://test/person/1")).isEmpty());
+	}
+
+	public void testMightProduce() {
+		assertTrue(URIMakerIndex.mightProduce(personPages, "http://test/person/1.html"));
+		assertFalse(URIMakerIndex.mightProduce(personPages, "http://test/person/1"));
+		assertFalse(URIMakerIndex.mightProduce(personPages, "http://test/person/.htm"));
+		assertTrue(URIMakerIndex.mightProduce(homepages, "http://example.org/"));
+		assertFalse(URIMakerIndex.mightProduce(names, "http://example.org/"));
+	}
+
+	public void testPrefixTrie() {
+		URIPrefixTrie trie = new URIPrefixTrie();
+		trie.put("http://a/", "a");
+		trie.put("http://a/b/", "ab");
+		trie.put("", "all");
+		trie.put("http://b/", "b");
+		assertEquals(Arrays.asList(new String[]{"all", "a", "ab"}), trie.prefixesOf("http://a/b/c"));
+		assertEquals(Arrays.asList(new String[]{"all"}), trie.prefixesOf("http://c/"));
+		assertEquals(4, trie.size());
+	}
+}
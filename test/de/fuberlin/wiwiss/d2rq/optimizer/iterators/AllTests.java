@@ -0,0 +1,17 @@
+package de.fuberlin.wiwiss.d2rq.optimizer.iterators;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+public class AllTests {
+
+	public static Test suite() {
+		TestSuite suite = new TestSuite(
+				"Test for de.fuberlin.wiwiss.d2rq.optimizer.iterators");
+		//$JUnit-BEGIN$
+		suite.addTestSuite(RelationToBindingsD2RQIteratorTest.class);
+		//$JUnit-END$
+		return suite;
+	}
+
+}
@@ -0,0 +1,182 @@
+package de.fuberlin.wiwiss.d2rq.optimizer.iterators;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.sparql.core.Var;
+import com.hp.hpl.jena.sparql.engine.ExecutionContext;
+import com.hp.hpl.jena.sparql.engine.QueryIterator;
+import com.hp.hpl.jena.sparql.engine.binding.Binding;
+import com.hp.hpl.jena.sparql.engine.binding.BindingMap;
+import com.hp.hpl.jena.sparql.engine.iterator.QueryIterPlainWrapper;
+import com.hp.hpl.jena.sparql.util.Context;
+
+import de.fuberlin.wiwiss.d2rq.GraphD2RQ;
+import de.fuberlin.wiwiss.d2rq.engine.BindingMaker;
+import de.fuberlin.wiwiss.d2rq.engine.GraphPatternTranslator;
+import de.fuberlin.wiwiss.d2rq.engine.NodeRelation;
+import de.fuberlin.wiwiss.d2rq.engine.OpExecutorD2RQ;
+import de.fuberlin.wiwiss.d2rq.engine.QueryEngineD2RQ;
+import de.fuberlin.wiwiss.d2rq.helpers.HSQLDatabase;
+import de.fuberlin.wiwiss.d2rq.sql.ExecutionStatistics;
+
+public class RelationToBindingsD2RQIteratorTest extends TestCase {
+	private final static int BATCH_SIZE = 2;
+	private final static Var p = Var.alloc("p");
+	private final static Var name = Var.alloc("name");
+
+	private HSQLDatabase db;
+	private GraphD2RQ graph;
+	private NodeRelation nameRelation;
+	private ExecutionStatistics statistics;
+	private ExecutionContext context;
+
+	public void setUp() {
+		db = new HSQLDatabase("bindjointest");
+		db.executeSQL("CREATE TABLE PERSON (ID INT PRIMARY KEY, NAME VARCHAR(50))");
+		db.executeSQL("INSERT INTO PERSON VALUES (1, 'Alice')");
+		db.executeSQL("INSERT INTO PERSON VALUES (2, 'Bob')");
+		db.executeSQL("INSERT INTO PERSON VALUES (3, 'Carol')");
+		db.executeSQL("INSERT INTO PERSON VALUES (4, 'Dave')");
+		graph = db.graph(db.mapping(
+				"map:Person a d2rq:ClassMap; d2rq:dataStorage map:db;\n" +
+				"    d2rq:uriPattern \"http://example.org/person/@@PERSON.ID@@\" .\n" +
+				"map:name a d2rq:PropertyBridge; d2rq:belongsToClassMap map:Person;\n" +
+				"    d2rq:property ex:name; d2rq:column \"PERSON.NAME\" .\n"));
+		List rels = new GraphPatternTranslator(Collections.singletonList(Triple.create(
+				p, Node.createURI("http://example.org/name"), name)),
+				graph.tripleRelations(), true).translate();
+		assertEquals(1, rels.size());
+		nameRelation = (NodeRelation) rels.get(0);
+		statistics = new ExecutionStatistics("test");
+		Context cxt = new Context();
+		cxt.set(QueryEngineD2RQ.STATISTICS, statistics);
+		context = new ExecutionContext(cxt, graph, null, OpExecutorD2RQ.FACTORY);
+	}
+
+	public void tearDown() {
+		graph.close();
+		db.close();
+	}
+
+	public void testSingleParentIsStreamed() {
+		List results = run(Collections.singletonList(person(2)), false);
+		assertEquals(Collections.singletonList("2 Bob"), results);
+		assertEquals(1, statistics.sqlQueries());
+	}
+
+	public void testSingleEmptyParentReturnsAllRows() {
+		QueryIterator it = iterator(Collections.singletonList(new BindingMap()), false);
+		assertTrue(it.hasNext());
+		it.nextBinding();
+		// The result set is still open, so the rows have not been buffered
+		assertEquals(0, statistics.sqlQueries());
+		List results = new ArrayList();
+		while (it.hasNext()) {
+			results.add(it.nextBinding());
+		}
+		it.close();
+		assertEquals(3, results.size());
+		assertEquals(1, statistics.sqlQueries());
+	}
+
+	public void testBatchIsBuffered() {
+		QueryIterator it = iterator(Arrays.asList(new Binding[]{new BindingMap(), person(1)}), false);
+		assertTrue(it.hasNext());
+		assertEquals(1, statistics.sqlQueries());
+		it.close();
+	}
+
+	public void testExactlyOneBatch() {
+		List results = run(Arrays.asList(new Binding[]{person(1), person(2)}), false);
+		assertEquals(Arrays.asList(new String[]{"1 Alice", "2 Bob"}), results);
+		assertEquals(1, statistics.sqlQueries());
+	}
+
+	public void testBatchSizePlusOne() {
+		List results = run(Arrays.asList(new Binding[]{person(1), person(2), person(3)}), false);
+		assertEquals(Arrays.asList(new String[]{"1 Alice", "2 Bob", "3 Carol"}), results);
+		assertEquals(2, statistics.sqlQueries());
+	}
+
+	public void testRowsAreCorrelatedToTheirParents() {
+		List results = run(Arrays.asList(new Binding[]{person(4), person(1), person(4), person(3)}), false);
+		assertEquals(Arrays.asList(new String[]{"4 Dave", "1 Alice", "4 Dave", "3 Carol"}), results);
+		assertEquals(2, statistics.sqlQueries());
+	}
+
+	public void testParentWithoutSharedVariableGetsAllRows() {
+		Binding parent = new BindingMap();
+		parent.add(Var.alloc("other"), Node.createLiteral("x"));
+		List results = run(Arrays.asList(new Binding[]{person(3), parent}), false);
+		assertEquals(Arrays.asList(new String[]{"3 Carol", "1 Alice", "2 Bob", "3 Carol", "4 Dave"}),
+				sortAfterFirst(results));
+	}
+
+	public void testParentThatConflictsWithRowIsDropped() {
+		Binding conflicting = person(1);
+		conflicting.add(name, Node.createLiteral("Bob"));
+		Binding matching = person(2);
+		matching.add(name, Node.createLiteral("Bob"));
+		List results = run(Arrays.asList(new Binding[]{conflicting, matching}), false);
+		assertEquals(Collections.singletonList("2 Bob"), results);
+	}
+
+	public void testSingleParentThatConflictsWithRowIsDropped() {
+		Binding conflicting = person(1);
+		conflicting.add(name, Node.createLiteral("Bob"));
+		assertEquals(Collections.EMPTY_LIST, run(Collections.singletonList(conflicting), false));
+	}
+
+	public void testOptionalPassesThroughUnmatchedParents() {
+		Binding conflicting = person(1);
+		conflicting.add(name, Node.createLiteral("Bob"));
+		List results = run(Arrays.asList(new Binding[]{person(5), conflicting, person(2)}), true);
+		assertEquals(Arrays.asList(new String[]{"5 -", "1 Bob", "2 Bob"}), results);
+	}
+
+	private Binding person(int id) {
+		Binding result = new BindingMap();
+		result.add(p, Node.createURI("http://example.org/person/" + id));
+		return result;
+	}
+
+	private QueryIterator iterator(List parents, boolean optional) {
+		return new RelationToBindingsD2RQIterator(
+				Collections.singletonList(nameRelation.baseRelation()),
+				Collections.singletonList(Collections.singleton(new BindingMaker(nameRelation))),
+				new QueryIterPlainWrapper(parents.iterator(), context),
+				optional, null, BATCH_SIZE, context);
+	}
+
+	/**
+	 * @return One string per result, the person's number and name
+	 */
+	private List run(List parents, boolean optional) {
+		QueryIterator it = iterator(parents, optional);
+		List result = new ArrayList();
+		while (it.hasNext()) {
+			Binding b = it.nextBinding();
+			String uri = b.get(p).getURI();
+			result.add(uri.substring(uri.lastIndexOf('/') + 1) + " " +
+					(b.get(name) == null ? "-" : b.get(name).getLiteralLexicalForm()));
+		}
+		it.close();
+		return result;
+	}
+
+	private List sortAfterFirst(List results) {
+		List rest = new ArrayList(results.subList(1, results.size()));
+		Collections.sort(rest);
+		List sorted = new ArrayList();
+		sorted.add(results.get(0));
+		sorted.addAll(rest);
+		return sorted;
+	}
+}
@@ -107,6 +107,24 @@ public class ParserTest extends TestCase {
 		}
 	}
 	
+	public void testParseCacheConfiguration() {
+		Resource config = this.model.createResource(D2RQ.Configuration);
+		config.addLiteral(D2RQ.cacheMaxTriples, 500);
+		config.addLiteral(D2RQ.cacheMaxEntryTriples, 50);
+		config.addLiteral(D2RQ.cacheTimeToLive, 60);
+		Mapping mapping = new MapParser(this.model, null).parse();
+		assertEquals(500, mapping.configuration().getCacheMaxTriples());
+		assertEquals(50, mapping.configuration().getCacheMaxEntryTriples());
+		assertEquals(60, mapping.configuration().getCacheTimeToLive());
+	}
+	
+	public void testParsePlanCacheSize() {
+		Resource config = this.model.createResource(D2RQ.Configuration);
+		config.addLiteral(D2RQ.planCacheSize, 0);
+		Mapping mapping = new MapParser(this.model, null).parse();
+		assertEquals(0, mapping.configuration().getPlanCacheSize());
+	}
+	
 	private MapParser parse(String testFileName) {
 		Model m = ModelFactory.createDefaultModel();
 		m.read(D2RQTestSuite.DIRECTORY_URL + testFileName, "N3");
@@ -0,0 +1,20 @@
+package de.fuberlin.wiwiss.d2rq.server;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+public class AllTests {
+
+	public static Test suite() {
+		TestSuite suite = new TestSuite("Test for de.fuberlin.wiwiss.d2rq.server");
+		//$JUnit-BEGIN$
+		suite.addTestSuite(AutoReloadableDatasetTest.class);
+		suite.addTestSuite(ResponseCacheTest.class);
+		suite.addTestSuite(TripleStreamWriterTest.class);
+		suite.addTestSuite(RequestMetricsTest.class);
+		suite.addTestSuite(MetricsServletTest.class);
+		//$JUnit-END$
+		return suite;
+	}
+
+}
@@ -0,0 +1,145 @@
+package de.fuberlin.wiwiss.d2rq.server;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.hp.hpl.jena.sparql.core.describe.DescribeHandlerFactory;
+import com.hp.hpl.jena.sparql.core.describe.DescribeHandlerRegistry;
+
+import de.fuberlin.wiwiss.d2rq.GraphD2RQ;
+import de.fuberlin.wiwiss.d2rq.helpers.HSQLDatabase;
+
+public class AutoReloadableDatasetTest extends TestCase {
+	private final static String QUERY = "SELECT ?name WHERE { ?x <http://example.org/name> ?name }";
+	private final static String URI = "http://localhost:2020/page/person/1";
+	private final static String RDF = "application/rdf+xml";
+	private HSQLDatabase db;
+	private File mappingFile;
+	private D2RServer server;
+	private AutoReloadableDataset dataset;
+	private List describeHandlers;
+
+	public void setUp() throws IOException {
+		// D2RServer.start() replaces the global describe handlers
+		describeHandlers = new ArrayList();
+		Iterator it = DescribeHandlerRegistry.get().handlers();
+		while (it.hasNext()) {
+			describeHandlers.add(it.next());
+		}
+		db = new HSQLDatabase("reloadtest");
+		db.executeSQL("CREATE TABLE PERSON (ID INT PRIMARY KEY, NAME VARCHAR(50))");
+		db.executeSQL("INSERT INTO PERSON VALUES (1, 'Alice')");
+		mappingFile = File.createTempFile("d2r-mapping", ".n3");
+		writeMapping("PERSON.NAME");
+		server = new D2RServer();
+		server.setConfigFile(mappingFile.toURI().toString());
+		server.start();
+		dataset = server.dataset();
+	}
+
+	public void tearDown() {
+		server.shutdown();
+		mappingFile.delete();
+		db.close();
+		DescribeHandlerRegistry.get().clear();
+		Iterator it = describeHandlers.iterator();
+		while (it.hasNext()) {
+			DescribeHandlerRegistry.get().add((DescribeHandlerFactory) it.next());
+		}
+	}
+
+	public void testPinnedSnapshotStaysOpenDuringReload() throws IOException {
+		assertTrue(dataset.beginRequest());
+		GraphD2RQ old = server.currentGraph();
+		writeMapping("PERSON.ID");
+		dataset.forceReload();
+		assertSame(old, server.currentGraph());
+		assertFalse(old.isClosed());
+		assertEquals(Collections.singletonList("?name=Alice"), HSQLDatabase.select(old, QUERY));
+		dataset.endRequest();
+		assertTrue(old.isClosed());
+		assertNotSame(old, server.currentGraph());
+		assertEquals(Collections.singletonList("?name=1"),
+				HSQLDatabase.select(server.currentGraph(), QUERY));
+	}
+
+	public void testUnpinnedSnapshotIsClosedOnReload() {
+		GraphD2RQ old = server.currentGraph();
+		dataset.forceReload();
+		assertTrue(old.isClosed());
+		assertFalse(server.currentGraph().isClosed());
+	}
+
+	public void testFailedReloadKeepsOldMapping() throws IOException {
+		GraphD2RQ old = server.currentGraph();
+		Writer out = new FileWriter(mappingFile);
+		out.write("this is not N3 {");
+		out.close();
+		try {
+			dataset.forceReload();
+			fail("Expected reload to fail");
+		} catch (RuntimeException ex) {
+			// expected
+		}
+		assertSame(old, server.currentGraph());
+		assertFalse(old.isClosed());
+		assertEquals(Collections.singletonList("?name=Alice"),
+				HSQLDatabase.select(server.currentGraph(), QUERY));
+	}
+
+	public void testFailedReloadRefreshesStatistics() throws IOException {
+		GraphD2RQ graph = server.currentGraph();
+		HSQLDatabase.select(graph, QUERY);
+		assertEquals(1, graph.planCache().size());
+		long version = graph.statisticsVersion();
+		Writer out = new FileWriter(mappingFile);
+		out.write("this is not N3 {");
+		out.close();
+		try {
+			dataset.forceReload();
+			fail("Expected reload to fail");
+		} catch (RuntimeException ex) {
+			// expected
+		}
+		assertEquals(0, graph.planCache().size());
+		assertTrue(graph.statisticsVersion() > version);
+	}
+
+	public void testResponseCacheIsClearedWhenOldSnapshotCloses() throws IOException {
+		ResponseCache cache = server.responseCache();
+		cache.put(URI, RDF, "before".getBytes());
+		assertTrue(dataset.beginRequest());
+		dataset.forceReload();
+		assertEquals(0, cache.size());
+		// A request pinned to the old snapshot renders a stale document
+		cache.put(URI, RDF, "stale".getBytes());
+		assertEquals(1, cache.size());
+		dataset.endRequest();
+		assertEquals(0, cache.size());
+		assertNull(cache.get(URI, RDF));
+	}
+
+	private void writeMapping(String nameColumn) throws IOException {
+		Writer out = new FileWriter(mappingFile);
+		out.write("@prefix d2r: <http://sites.wiwiss.fu-berlin.de/suhl/bizer/d2r-server/config.rdf#> .\n" +
+				"@prefix d2rq: <http://www.wiwiss.fu-berlin.de/suhl/bizer/D2RQ/0.1#> .\n" +
+				"@prefix map: <#> .\n" +
+				"<> a d2r:Server; d2r:port 2020; d2r:autoReloadMapping false;\n" +
+				"    d2r:responseCacheMaxBytes 100000 .\n" +
+				"map:db a d2rq:Database; d2rq:jdbcDriver \"org.hsqldb.jdbcDriver\";\n" +
+				"    d2rq:jdbcDSN \"" + db.jdbcURL() + "\"; d2rq:username \"sa\" .\n" +
+				"map:Person a d2rq:ClassMap; d2rq:dataStorage map:db;\n" +
+				"    d2rq:uriPattern \"person/@@PERSON.ID@@\" .\n" +
+				"map:name a d2rq:PropertyBridge; d2rq:belongsToClassMap map:Person;\n" +
+				"    d2rq:property <http://example.org/name>; d2rq:column \"" + nameColumn + "\" .\n");
+		out.close();
+	}
+}
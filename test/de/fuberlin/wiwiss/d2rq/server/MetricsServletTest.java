@@ -0,0 +1,174 @@
+package de.fuberlin.wiwiss.d2rq.server;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import junit.framework.TestCase;
+
+import com.hp.hpl.jena.sparql.core.describe.DescribeHandlerFactory;
+import com.hp.hpl.jena.sparql.core.describe.DescribeHandlerRegistry;
+
+import de.fuberlin.wiwiss.d2rq.helpers.HSQLDatabase;
+
+public class MetricsServletTest extends TestCase {
+	private HSQLDatabase db;
+	private File configFile;
+	private D2RServer server;
+	private List describeHandlers;
+
+	public void setUp() {
+		// D2RServer.start() replaces the global describe handlers
+		describeHandlers = new ArrayList();
+		Iterator it = DescribeHandlerRegistry.get().handlers();
+		while (it.hasNext()) {
+			describeHandlers.add(it.next());
+		}
+		db = new HSQLDatabase("metricstest");
+		db.executeSQL("CREATE TABLE PERSON (ID INT PRIMARY KEY, NAME VARCHAR(50))");
+	}
+
+	public void tearDown() {
+		if (server != null) {
+			server.shutdown();
+		}
+		if (configFile != null) {
+			configFile.delete();
+		}
+		db.close();
+		DescribeHandlerRegistry.get().clear();
+		Iterator it = describeHandlers.iterator();
+		while (it.hasNext()) {
+			DescribeHandlerRegistry.get().add((DescribeHandlerFactory) it.next());
+		}
+	}
+
+	public void testNotFoundByDefault() throws Exception {
+		startServer("");
+		MockResponse response = get();
+		assertEquals(404, response.status);
+		assertEquals("", response.body.toString());
+	}
+
+	public void testNotFoundIfDisabled() throws Exception {
+		startServer("d2r:enableMetrics false;");
+		assertEquals(404, get().status);
+	}
+
+	public void testServedIfEnabled() throws Exception {
+		startServer("d2r:enableMetrics true;");
+		server.metrics().add("page", 3000000);
+		MockResponse response = get();
+		assertEquals(200, response.status);
+		assertEquals("text/plain; charset=utf-8", response.contentType);
+		String body = response.body.toString();
+		assertTrue(body, body.indexOf("\nrequests.page.count 1\n") >= 0);
+		assertTrue(body, body.indexOf("\nrequests.page.p50_ms 3\n") >= 0);
+		assertTrue(body, body.indexOf("\npool.1.max ") >= 0);
+		assertTrue(body, body.indexOf("\npool.1.in_use ") >= 0);
+	}
+
+	/**
+	 * @return A servlet context that holds the server, as set up
+	 * 		by {@link WebappInitListener}
+	 */
+	static ServletContext servletContext(D2RServer server) {
+		final Map attributes = new HashMap();
+		ServletContext result = (ServletContext) Proxy.newProxyInstance(
+				MetricsServletTest.class.getClassLoader(),
+				new Class[]{ServletContext.class}, new InvocationHandler() {
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				if (method.getName().equals("getAttribute")) {
+					return attributes.get(args[0]);
+				}
+				if (method.getName().equals("setAttribute")) {
+					attributes.put(args[0], args[1]);
+				}
+				return null;
+			}
+		});
+		server.putIntoServletContext(result);
+		return result;
+	}
+
+	private void startServer(String properties) throws IOException {
+		configFile = File.createTempFile("d2r-config", ".n3");
+		Writer out = new FileWriter(configFile);
+		out.write("@prefix d2r: <http://sites.wiwiss.fu-berlin.de/suhl/bizer/d2r-server/config.rdf#> .\n" +
+				"@prefix d2rq: <http://www.wiwiss.fu-berlin.de/suhl/bizer/D2RQ/0.1#> .\n" +
+				"@prefix map: <#> .\n" +
+				"<> a d2r:Server; " + properties + " d2r:port 2020; d2r:autoReloadMapping false .\n" +
+				"map:db a d2rq:Database; d2rq:jdbcDriver \"org.hsqldb.jdbcDriver\";\n" +
+				"    d2rq:jdbcDSN \"" + db.jdbcURL() + "\"; d2rq:username \"sa\" .\n" +
+				"map:Person a d2rq:ClassMap; d2rq:dataStorage map:db;\n" +
+				"    d2rq:uriPattern \"person/@@PERSON.ID@@\"; d2rq:class <http://example.org/Person> .\n");
+		out.close();
+		server = new D2RServer();
+		server.setConfigFile(configFile.toURI().toString());
+		server.start();
+	}
+
+	private MockResponse get() throws ServletException, IOException {
+		final ServletContext context = servletContext(server);
+		MetricsServlet servlet = new MetricsServlet();
+		servlet.init((ServletConfig) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class[]{ServletConfig.class}, new InvocationHandler() {
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				if (method.getName().equals("getServletContext")) {
+					return context;
+				}
+				return null;
+			}
+		}));
+		HttpServletRequest request = (HttpServletRequest) Proxy.newProxyInstance(
+				getClass().getClassLoader(), new Class[]{HttpServletRequest.class},
+				new InvocationHandler() {
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				return null;
+			}
+		});
+		MockResponse response = new MockResponse();
+		servlet.doGet(request, response.proxy());
+		return response;
+	}
+
+	private class MockResponse implements InvocationHandler {
+		int status = 200;
+		String contentType = null;
+		StringWriter body = new StringWriter();
+
+		HttpServletResponse proxy() {
+			return (HttpServletResponse) Proxy.newProxyInstance(getClass().getClassLoader(),
+					new Class[]{HttpServletResponse.class}, this);
+		}
+
+		public Object invoke(Object proxy, Method method, Object[] args) {
+			String name = method.getName();
+			if (name.equals("sendError") || name.equals("setStatus")) {
+				status = ((Integer) args[0]).intValue();
+			} else if (name.equals("setContentType")) {
+				contentType = (String) args[0];
+			} else if (name.equals("getWriter")) {
+				return new PrintWriter(body);
+			}
+			return null;
+		}
+	}
+}
@@ -0,0 +1,126 @@
+package de.fuberlin.wiwiss.d2rq.server;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+
+import junit.framework.TestCase;
+
+import de.fuberlin.wiwiss.d2rq.sql.LatencyHistogram;
+
+public class RequestMetricsTest extends TestCase {
+	private static final long MS = 1000000;
+	private RequestMetrics metrics;
+
+	public void setUp() {
+		metrics = new RequestMetrics();
+	}
+
+	public void testNoServicesInitially() {
+		assertTrue(metrics.services().isEmpty());
+		assertTrue(metrics.startTime() <= System.currentTimeMillis());
+	}
+
+	public void testPercentilesPerService() {
+		for (int i = 0; i < 99; i++) {
+			metrics.add("page", 3 * MS);
+		}
+		metrics.add("page", 800 * MS);
+		metrics.add("sparql", 40 * MS);
+		LatencyHistogram page = (LatencyHistogram) metrics.services().get("page");
+		assertEquals(100, page.count());
+		assertEquals(5, page.percentileMillis(50));
+		assertEquals(5, page.percentileMillis(99));
+		assertEquals(800, page.percentileMillis(100));
+		assertEquals(800, page.maxMillis());
+		LatencyHistogram sparql = (LatencyHistogram) metrics.services().get("sparql");
+		assertEquals(1, sparql.count());
+		assertEquals(40, sparql.percentileMillis(50));
+	}
+
+	public void testServicesAreSortedByName() {
+		metrics.add("sparql", MS);
+		metrics.add("data", MS);
+		metrics.add("page", MS);
+		assertEquals(Arrays.asList(new String[]{"data", "page", "sparql"}),
+				new ArrayList(metrics.services().keySet()));
+	}
+
+	public void testServicesIsACopy() {
+		metrics.add("page", MS);
+		Map services = metrics.services();
+		metrics.add("data", MS);
+		assertEquals(1, services.size());
+		assertEquals(2, metrics.services().size());
+	}
+
+	public void testFilterCountsRequestsByService() throws Exception {
+		D2RServer server = new D2RServer();
+		MetricsFilter filter = new MetricsFilter();
+		filter.init(filterConfig(server));
+		FilterChain chain = new FilterChain() {
+			public void doFilter(ServletRequest request, ServletResponse response) {}
+		};
+		filter.doFilter(request("/page"), null, chain);
+		filter.doFilter(request("/vocab/page"), null, chain);
+		filter.doFilter(request("/sparql"), null, chain);
+		filter.destroy();
+		Map services = server.metrics().services();
+		assertEquals(Arrays.asList(new String[]{"page", "sparql"}),
+				new ArrayList(services.keySet()));
+		assertEquals(2, ((LatencyHistogram) services.get("page")).count());
+		assertEquals(1, ((LatencyHistogram) services.get("sparql")).count());
+	}
+
+	public void testFilterCountsFailedRequests() throws Exception {
+		D2RServer server = new D2RServer();
+		MetricsFilter filter = new MetricsFilter();
+		filter.init(filterConfig(server));
+		try {
+			filter.doFilter(request("/data"), null, new FilterChain() {
+				public void doFilter(ServletRequest request, ServletResponse response) {
+					throw new RuntimeException("Expected by test");
+				}
+			});
+			fail("Expected RuntimeException");
+		} catch (RuntimeException ex) {
+			// expected
+		}
+		assertEquals(1, ((LatencyHistogram) server.metrics().services().get("data")).count());
+	}
+
+	private HttpServletRequest request(final String servletPath) {
+		return (HttpServletRequest) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class[]{HttpServletRequest.class}, new InvocationHandler() {
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				if (method.getName().equals("getServletPath")) {
+					return servletPath;
+				}
+				return null;
+			}
+		});
+	}
+
+	private FilterConfig filterConfig(D2RServer server) {
+		final ServletContext context = MetricsServletTest.servletContext(server);
+		return (FilterConfig) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class[]{FilterConfig.class}, new InvocationHandler() {
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				if (method.getName().equals("getServletContext")) {
+					return context;
+				}
+				return null;
+			}
+		});
+	}
+}
@@ -0,0 +1,190 @@
+package de.fuberlin.wiwiss.d2rq.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import junit.framework.TestCase;
+
+public class ResponseCacheTest extends TestCase {
+	private final static String URI = "http://localhost:2020/data/person/1";
+	private final static String RDF = "application/rdf+xml";
+	private ResponseCache cache;
+
+	public void setUp() {
+		cache = new ResponseCache(100, 60);
+	}
+
+	public void testCacheIsDisabledByDefault() throws IOException {
+		assertEquals(0, loadConfig("").getResponseCacheMaxBytes());
+	}
+
+	public void testCacheIsEnabledByMaxBytes() throws IOException {
+		ConfigLoader config = loadConfig("d2r:responseCacheMaxBytes 5000000; d2r:responseCacheTimeToLive 30;");
+		assertEquals(5000000, config.getResponseCacheMaxBytes());
+		assertEquals(30, config.getResponseCacheTimeToLive());
+	}
+
+	public void testDisabledCacheKeepsNothing() {
+		cache = new ResponseCache(0, 60);
+		cache.put(URI, RDF, bytes("content"));
+		assertNull(cache.get(URI, RDF));
+		assertEquals(0, cache.size());
+	}
+
+	public void testGetReturnsDocumentForURIAndMediaType() {
+		cache.put(URI, RDF, bytes("content"));
+		assertEquals("content", new String(cache.get(URI, RDF).content()));
+		assertNull(cache.get(URI, "text/html"));
+		assertNull(cache.get(URI + "2", RDF));
+	}
+
+	public void testETagIsQuotedHashOfContent() {
+		String etag = cache.put(URI, RDF, bytes("content")).etag();
+		assertTrue(etag, etag.matches("\"[0-9a-f]{32}\""));
+		assertEquals(etag, cache.put(URI + "2", RDF, bytes("content")).etag());
+		assertFalse(etag.equals(cache.put(URI + "3", RDF, bytes("other")).etag()));
+	}
+
+	public void testServesDocumentWithETag() throws IOException {
+		ResponseCache.Entry entry = cache.put(URI, RDF, bytes("content"));
+		MockResponse response = new MockResponse();
+		entry.serve(request(null), response.proxy());
+		assertEquals(200, response.status);
+		assertEquals(entry.etag(), response.headers.get("ETag"));
+		assertEquals("no-cache", response.headers.get("Cache-Control"));
+		assertEquals(RDF, response.contentType);
+		assertEquals("content", response.body.toString());
+	}
+
+	public void testMatchingIfNoneMatchGivesNotModified() throws IOException {
+		ResponseCache.Entry entry = cache.put(URI, RDF, bytes("content"));
+		MockResponse response = new MockResponse();
+		entry.serve(request("\"other\", " + entry.etag()), response.proxy());
+		assertEquals(304, response.status);
+		assertEquals(entry.etag(), response.headers.get("ETag"));
+		assertEquals(0, response.body.size());
+	}
+
+	public void testWeakAndWildcardETagsMatch() {
+		ResponseCache.Entry entry = cache.put(URI, RDF, bytes("content"));
+		assertTrue(entry.isNotModified(request("W/" + entry.etag())));
+		assertTrue(entry.isNotModified(request("*")));
+		assertFalse(entry.isNotModified(request("\"other\"")));
+		assertFalse(entry.isNotModified(request(null)));
+	}
+
+	public void testExpiredDocumentIsDropped() {
+		cache = new ResponseCache(100, 0);
+		cache.put(URI, RDF, bytes("content"));
+		assertNull(cache.get(URI, RDF));
+		assertEquals(0, cache.size());
+		assertEquals(0, cache.bytes());
+	}
+
+	public void testLeastRecentlyUsedDocumentsAreDroppedWhenFull() {
+		cache = new ResponseCache(10, 60);
+		cache.put(URI + "1", RDF, bytes("1234"));
+		cache.put(URI + "2", RDF, bytes("1234"));
+		cache.get(URI + "1", RDF);
+		cache.put(URI + "3", RDF, bytes("1234"));
+		assertNotNull(cache.get(URI + "1", RDF));
+		assertNull(cache.get(URI + "2", RDF));
+		assertNotNull(cache.get(URI + "3", RDF));
+		assertEquals(8, cache.bytes());
+	}
+
+	public void testDocumentLargerThanCacheIsNotKept() {
+		cache = new ResponseCache(10, 60);
+		cache.put(URI + "1", RDF, bytes("1234"));
+		assertNotNull(cache.put(URI + "2", RDF, bytes("12345678901")));
+		assertNull(cache.get(URI + "2", RDF));
+		assertNotNull(cache.get(URI + "1", RDF));
+	}
+
+	public void testReplacingDocumentUpdatesSize() {
+		cache.put(URI, RDF, bytes("1234"));
+		cache.put(URI, RDF, bytes("12"));
+		assertEquals(1, cache.size());
+		assertEquals(2, cache.bytes());
+	}
+
+	public void testClear() {
+		cache.put(URI, RDF, bytes("content"));
+		cache.clear();
+		assertNull(cache.get(URI, RDF));
+		assertEquals(0, cache.bytes());
+	}
+
+	private ConfigLoader loadConfig(String properties) throws IOException {
+		File file = File.createTempFile("d2r-config", ".n3");
+		try {
+			Writer out = new FileWriter(file);
+			out.write("@prefix d2r: <http://sites.wiwiss.fu-berlin.de/suhl/bizer/d2r-server/config.rdf#> .\n" +
+					"<> a d2r:Server; " + properties + " d2r:port 2020 .\n");
+			out.close();
+			ConfigLoader result = new ConfigLoader(file.toURI().toString());
+			result.load();
+			return result;
+		} finally {
+			file.delete();
+		}
+	}
+
+	private byte[] bytes(String s) {
+		return s.getBytes();
+	}
+
+	private HttpServletRequest request(final String ifNoneMatch) {
+		return (HttpServletRequest) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class[]{HttpServletRequest.class}, new InvocationHandler() {
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				if (method.getName().equals("getHeader") && "If-None-Match".equals(args[0])) {
+					return ifNoneMatch;
+				}
+				return null;
+			}
+		});
+	}
+
+	private class MockResponse implements InvocationHandler {
+		int status = 200;
+		String contentType = null;
+		Map headers = new HashMap();
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+		HttpServletResponse proxy() {
+			return (HttpServletResponse) Proxy.newProxyInstance(getClass().getClassLoader(),
+					new Class[]{HttpServletResponse.class}, this);
+		}
+
+		public Object invoke(Object proxy, Method method, Object[] args) {
+			String name = method.getName();
+			if (name.equals("setHeader") || name.equals("addHeader")) {
+				headers.put(args[0], args[1]);
+			} else if (name.equals("setStatus")) {
+				status = ((Integer) args[0]).intValue();
+			} else if (name.equals("setContentType")) {
+				contentType = (String) args[0];
+			} else if (name.equals("getOutputStream")) {
+				return new ServletOutputStream() {
+					public void write(int b) {
+						body.write(b);
+					}
+				};
+			}
+			return null;
+		}
+	}
+}
@@ -0,0 +1,127 @@
+package de.fuberlin.wiwiss.d2rq.server;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.UnsupportedEncodingException;
+
+import junit.framework.TestCase;
+
+import com.hp.hpl.jena.datatypes.xsd.XSDDatatype;
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.shared.PrefixMapping;
+
+public class TripleStreamWriterTest extends TestCase {
+	private final static String EX = "http://example.org/";
+	private final static String TURTLE = "application/x-turtle";
+	private final static String NTRIPLES = "text/plain";
+	private Model expected;
+	private PrefixMapping prefixes;
+
+	public void setUp() {
+		expected = ModelFactory.createDefaultModel();
+		prefixes = PrefixMapping.Factory.create();
+		prefixes.setNsPrefix("ex", EX);
+		prefixes.setNsPrefix("", EX + "default/");
+		prefixes.setNsPrefix("bad.name", EX + "bad/");
+	}
+
+	public void testCanStream() {
+		assertTrue(TripleStreamWriter.canStream(NTRIPLES));
+		assertTrue(TripleStreamWriter.canStream(TURTLE));
+		assertTrue(TripleStreamWriter.canStream("text/rdf+n3;charset=utf-8"));
+		assertFalse(TripleStreamWriter.canStream("application/rdf+xml"));
+	}
+
+	public void testNTriplesRoundTrip() {
+		addTriples();
+		String output = write(NTRIPLES);
+		assertEquals(-1, output.indexOf("@prefix"));
+		assertEquals(-1, output.indexOf("ex:"));
+		assertRoundTrip(output, "N-TRIPLE");
+	}
+
+	public void testTurtleRoundTrip() {
+		addTriples();
+		assertRoundTrip(write(TURTLE), "TURTLE");
+	}
+
+	public void testN3RoundTrip() {
+		addTriples();
+		assertRoundTrip(write("text/rdf+n3;charset=utf-8"), "N3");
+	}
+
+	public void testTurtleAbbreviatesURIs() {
+		add(uri(EX + "a"), uri(EX + "name"), uri(EX + "default/b"));
+		String output = write(TURTLE);
+		assertTrue(output, output.indexOf("@prefix ex: <" + EX + "> .") >= 0);
+		assertTrue(output, output.indexOf("ex:a ex:name :b .") >= 0);
+		assertRoundTrip(output, "TURTLE");
+	}
+
+	public void testTurtleWritesFullURIWhereNoPrefixedNameIsPossible() {
+		add(uri(EX + "123"), uri(EX + "path/name"), uri(EX + "bad/x"));
+		add(uri(EX + "a.b"), uri(EX + "name"), uri(EX));
+		String output = write(TURTLE);
+		assertEquals(output, -1, output.indexOf("bad.name"));
+		assertTrue(output, output.indexOf("<" + EX + "123> <" + EX + "path/name> <" + EX + "bad/x> .") >= 0);
+		assertTrue(output, output.indexOf("<" + EX + "a.b> ex:name <" + EX + "> .") >= 0);
+		assertRoundTrip(output, "TURTLE");
+	}
+
+	public void testLiteralsAreEscaped() {
+		add(uri(EX + "a"), uri(EX + "label"), Node.createLiteral("quote \" backslash \\ end"));
+		add(uri(EX + "a"), uri(EX + "label"), Node.createLiteral("line\nbreak\ttab\rreturn"));
+		add(uri(EX + "a"), uri(EX + "label"), Node.createLiteral("B\u00e4r \u65e5\u672c", "de", false));
+		String ntriples = write(NTRIPLES);
+		assertTrue(ntriples, ntriples.indexOf("\"quote \\\" backslash \\\\ end\"") >= 0);
+		assertTrue(ntriples, ntriples.indexOf("\"line\\nbreak\\ttab\\rreturn\"") >= 0);
+		assertRoundTrip(ntriples, "N-TRIPLE");
+		assertRoundTrip(write(TURTLE), "TURTLE");
+	}
+
+	private void addTriples() {
+		Node blank = Node.createAnon();
+		add(uri(EX + "a"), uri(EX + "name"), Node.createLiteral("Alice"));
+		add(uri(EX + "a"), uri(EX + "age"), Node.createLiteral("34", null, XSDDatatype.XSDinteger));
+		add(uri(EX + "a"), uri(EX + "label"), Node.createLiteral("Alice \"A\"\n", "en", false));
+		add(uri(EX + "a"), uri(EX + "knows"), blank);
+		add(blank, uri(EX + "name"), Node.createLiteral("Bob"));
+		add(uri(EX + "default/b"), uri(EX + "path/x"), uri(EX + "123"));
+	}
+
+	private void add(Node s, Node p, Node o) {
+		expected.getGraph().add(new Triple(s, p, o));
+	}
+
+	private Node uri(String uri) {
+		return Node.createURI(uri);
+	}
+
+	private String write(String mediaType) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		TripleStreamWriter writer = new TripleStreamWriter(out, mediaType, prefixes);
+		writer.write(expected.getGraph().find(Triple.ANY));
+		writer.flush();
+		try {
+			return out.toString("utf-8");
+		} catch (UnsupportedEncodingException ex) {
+			throw new RuntimeException(ex);
+		}
+	}
+
+	private void assertRoundTrip(String output, String language) {
+		Model actual = ModelFactory.createDefaultModel();
+		try {
+			actual.read(new ByteArrayInputStream(output.getBytes("utf-8")), EX, language);
+		} catch (UnsupportedEncodingException ex) {
+			throw new RuntimeException(ex);
+		}
+		Graph graph = actual.getGraph();
+		assertEquals(output, expected.size(), actual.size());
+		assertTrue(output, graph.isIsomorphicWith(expected.getGraph()));
+	}
+}
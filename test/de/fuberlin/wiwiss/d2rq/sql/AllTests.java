@@ -11,6 +11,10 @@ public class AllTests {
 		suite.addTestSuite(SQLBuildingTest.class);
 		suite.addTestSuite(ResultRowTest.class);
 		suite.addTestSuite(SQLSyntaxTest.class);
+		suite.addTestSuite(ConnectionPoolTest.class);
+		suite.addTestSuite(ExecutionStatisticsTest.class);
+		suite.addTestSuite(ThreadPoolTest.class);
+		suite.addTestSuite(LatencyHistogramTest.class);
 		//$JUnit-END$
 		return suite;
 	}
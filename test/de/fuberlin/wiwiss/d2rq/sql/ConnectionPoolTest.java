@@ -0,0 +1,255 @@
+package de.fuberlin.wiwiss.d2rq.sql;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+import de.fuberlin.wiwiss.d2rq.D2RQException;
+import de.fuberlin.wiwiss.d2rq.algebra.Attribute;
+import de.fuberlin.wiwiss.d2rq.helpers.HSQLDatabase;
+import de.fuberlin.wiwiss.d2rq.map.Database;
+
+public class ConnectionPoolTest extends TestCase {
+	private static final String HSQL_URL = "jdbc:hsqldb:mem:connectionpooltest";
+
+	private static class HSQLPool extends ConnectionPool {
+		int created = 0;
+		HSQLPool(int maxSize, int timeout, int validationInterval) {
+			super(maxSize, timeout, validationInterval, "CALL 1");
+		}
+		protected Connection createConnection() {
+			try {
+				created++;
+				return DriverManager.getConnection(HSQL_URL, "sa", "");
+			} catch (SQLException ex) {
+				throw new D2RQException(ex);
+			}
+		}
+	}
+
+	public void setUp() throws Exception {
+		Class.forName("org.hsqldb.jdbcDriver");
+	}
+
+	public void testConnectionsAreOpenedOnDemand() throws InterruptedException {
+		HSQLPool pool = new HSQLPool(3, 1, ConnectionPool.NO_VALIDATION);
+		assertEquals(0, pool.size());
+		Holder holder = new Holder(pool);
+		Connection c1 = holder.connection();
+		Connection c2 = pool.checkOut();
+		assertNotSame(c1, c2);
+		assertEquals(2, pool.size());
+		assertEquals(0, pool.idleCount());
+		assertEquals(2, pool.inUseCount());
+		holder.finish();
+		pool.close();
+	}
+
+	public void testThreadSharesItsConnection() {
+		HSQLPool pool = new HSQLPool(1, 0, ConnectionPool.NO_VALIDATION);
+		Connection c1 = pool.checkOut();
+		assertSame(c1, pool.checkOut(this));
+		assertSame(c1, pool.tryCheckOut());
+		assertEquals(1, pool.created);
+		pool.checkIn(c1, this);
+		pool.checkIn(c1);
+		assertEquals(0, pool.idleCount());
+		pool.checkIn(c1);
+		assertEquals(1, pool.idleCount());
+		assertEquals(0, pool.inUseCount());
+		pool.close();
+	}
+
+	public void testReturnedConnectionIsReused() {
+		HSQLPool pool = new HSQLPool(3, 1, ConnectionPool.NO_VALIDATION);
+		Connection c1 = pool.checkOut();
+		pool.checkIn(c1);
+		assertEquals(1, pool.idleCount());
+		assertSame(c1, pool.checkOut());
+		assertEquals(1, pool.created);
+		pool.close();
+	}
+
+	public void testTimeoutWhenPoolExhausted() throws InterruptedException {
+		HSQLPool pool = new HSQLPool(1, 0, ConnectionPool.NO_VALIDATION);
+		Holder holder = new Holder(pool);
+		holder.connection();
+		try {
+			pool.checkOut();
+			fail("Expected timeout");
+		} catch (D2RQException ex) {
+			assertEquals(D2RQException.D2RQ_DB_CONNECTION_TIMEOUT, ex.errorCode());
+		}
+		holder.finish();
+		pool.close();
+	}
+
+	public void testTryCheckOutDoesNotWait() throws InterruptedException {
+		HSQLPool pool = new HSQLPool(1, 10, ConnectionPool.NO_VALIDATION);
+		Holder holder = new Holder(pool);
+		Connection c1 = holder.connection();
+		long start = System.currentTimeMillis();
+		assertNull(pool.tryCheckOut());
+		assertTrue(System.currentTimeMillis() - start < 1000);
+		pool.checkIn(c1);
+		assertSame(c1, pool.tryCheckOut());
+		holder.finish();
+		pool.close();
+	}
+
+	public void testWaitingThreadGetsReturnedConnection() throws Exception {
+		final HSQLPool pool = new HSQLPool(1, 10, ConnectionPool.NO_VALIDATION);
+		Holder holder = new Holder(pool);
+		final Connection c1 = holder.connection();
+		Thread returner = new Thread() {
+			public void run() {
+				try { Thread.sleep(100); } catch (InterruptedException ignore) {}
+				pool.checkIn(c1);
+			}
+		};
+		returner.start();
+		assertSame(c1, pool.checkOut());
+		returner.join();
+		holder.finish();
+		pool.close();
+	}
+
+	public void testConnectionOfDeadThreadIsReclaimed() throws Exception {
+		HSQLPool pool = new HSQLPool(1, 0, ConnectionPool.NO_VALIDATION);
+		Holder holder = new Holder(pool);
+		Connection c1 = holder.connection();
+		holder.finish();
+		holder.join();
+		Connection c2 = pool.checkOut();
+		assertNotSame(c1, c2);
+		assertTrue(c1.isClosed());
+		assertEquals(1, pool.size());
+		pool.checkIn(c1);
+		assertEquals(1, pool.inUseCount());
+		pool.close();
+	}
+
+	public void testConnectionOfCollectedOwnerIsReclaimed() throws Exception {
+		HSQLPool pool = new HSQLPool(1, 5, ConnectionPool.NO_VALIDATION);
+		Connection c1 = pool.checkOut(new Object());
+		System.gc();
+		Holder holder = new Holder(pool);
+		Connection c2 = holder.connection();
+		assertNotSame(c1, c2);
+		assertTrue(c1.isClosed());
+		holder.finish();
+		pool.close();
+	}
+
+	public void testConnectionWithUnclosedOwnerIsClosedOnReturn() throws Exception {
+		HSQLPool pool = new HSQLPool(1, 0, ConnectionPool.NO_VALIDATION);
+		Connection c1 = pool.checkOut();
+		pool.checkOut(new Object());
+		System.gc();
+		pool.checkIn(c1);
+		assertTrue(c1.isClosed());
+		assertEquals(0, pool.size());
+		pool.close();
+	}
+
+	public void testBrokenIdleConnectionIsReplaced() throws SQLException {
+		HSQLPool pool = new HSQLPool(1, 1, 0);
+		Connection c1 = pool.checkOut();
+		pool.checkIn(c1);
+		c1.close();
+		Connection c2 = pool.checkOut();
+		assertNotSame(c1, c2);
+		assertFalse(c2.isClosed());
+		assertEquals(1, pool.size());
+		pool.close();
+	}
+
+	public void testCloseClosesIdleConnections() throws Exception {
+		HSQLPool pool = new HSQLPool(2, 1, ConnectionPool.NO_VALIDATION);
+		Holder holder = new Holder(pool);
+		Connection c1 = pool.checkOut();
+		Connection c2 = holder.connection();
+		pool.checkIn(c1);
+		pool.close();
+		assertTrue(c1.isClosed());
+		assertFalse(c2.isClosed());
+		pool.checkIn(c2);
+		assertTrue(c2.isClosed());
+		assertEquals(0, pool.size());
+		holder.finish();
+	}
+
+	public void testNestedQueriesShareConnection() {
+		HSQLDatabase hsql = new HSQLDatabase("connectionpooltest2");
+		hsql.executeSQL("CREATE TABLE T (ID INT PRIMARY KEY)");
+		hsql.executeSQL("INSERT INTO T VALUES (1)");
+		hsql.executeSQL("INSERT INTO T VALUES (2)");
+		ConnectedDB db = new ConnectedDB(hsql.jdbcURL(), "sa", "", true,
+				Collections.EMPTY_SET, Collections.EMPTY_SET, Collections.EMPTY_SET, Collections.EMPTY_SET,
+				Database.NO_LIMIT, Database.NO_FETCH_SIZE, null, 1, 0, 10);
+		try {
+			String sql = "SELECT T.ID FROM T WHERE T.ID > ?";
+			List parameters = Collections.singletonList(StatementParameter.create("0", ConnectedDB.NUMERIC_COLUMN));
+			List columns = Collections.singletonList(new Attribute(null, "T", "ID"));
+			QueryExecutionIterator outer = new QueryExecutionIterator(sql, parameters, columns, db);
+			int rows = 0;
+			while (outer.hasNext()) {
+				outer.next();
+				QueryExecutionIterator inner = new QueryExecutionIterator(sql, parameters, columns, db);
+				while (inner.hasNext()) {
+					inner.next();
+					rows++;
+				}
+				assertEquals(1, db.pool().inUseCount());
+			}
+			assertEquals(4, rows);
+			assertEquals(1, db.pool().size());
+			assertEquals(0, db.pool().inUseCount());
+		} finally {
+			db.close();
+			hsql.close();
+		}
+	}
+
+	/**
+	 * A thread that checks out a connection and stays alive until
+	 * {@link #finish()} is called
+	 */
+	private static class Holder extends Thread {
+		private final ConnectionPool pool;
+		private Connection connection = null;
+		private boolean finished = false;
+		Holder(ConnectionPool pool) {
+			this.pool = pool;
+			setDaemon(true);
+			start();
+		}
+		public void run() {
+			Connection c = pool.checkOut();
+			synchronized (this) {
+				connection = c;
+				notifyAll();
+				while (!finished) {
+					try {
+						wait();
+					} catch (InterruptedException ex) {
+						return;
+					}
+				}
+			}
+		}
+		synchronized Connection connection() throws InterruptedException {
+			while (connection == null) {
+				wait();
+			}
+			return connection;
+		}
+		synchronized void finish() {
+			finished = true;
+			notifyAll();
+		}
+	}
+}
@@ -1,7 +1,10 @@
 package de.fuberlin.wiwiss.d2rq.sql;
 
+import java.sql.Types;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 import de.fuberlin.wiwiss.d2rq.algebra.Attribute;
 import de.fuberlin.wiwiss.d2rq.map.Database;
@@ -9,6 +12,7 @@ import de.fuberlin.wiwiss.d2rq.map.Database;
 public class DummyDB extends ConnectedDB {
 	private final String type;
 	private final Map columnTypes = new HashMap();
+	private final Set nonCharacterColumns = new HashSet();
 	private int limit = Database.NO_LIMIT;
 	
 	public DummyDB() {
@@ -24,6 +28,13 @@ public class DummyDB extends ConnectedDB {
 		columnTypes.put(attribute, new Integer(type));
 	}
 
+	/**
+	 * Makes a text column behave like a binary or <tt>uuid</tt> column.
+	 */
+	public void setNonCharacterColumn(Attribute attribute) {
+		nonCharacterColumns.add(attribute);
+	}
+
 	public void setLimit(int newLimit) {
 		limit = newLimit;
 	}
@@ -39,6 +50,23 @@ public class DummyDB extends ConnectedDB {
 		return super.columnType(attribute);
 	}
 	
+	public boolean isCharacterColumn(Attribute attribute) {
+		if (columnTypes.containsKey(attribute)) {
+			return columnType(attribute) == TEXT_COLUMN
+					&& !nonCharacterColumns.contains(attribute);
+		}
+		return super.isCharacterColumn(attribute);
+	}
+	
+	public String typedNull(Attribute attribute) {
+		switch (columnTypes.containsKey(attribute) ? columnType(attribute) : TEXT_COLUMN) {
+			case NUMERIC_COLUMN: return getSyntax().getNullExpression(Types.INTEGER, "INTEGER");
+			case DATE_COLUMN: return getSyntax().getNullExpression(Types.DATE, "DATE");
+			case TIMESTAMP_COLUMN: return getSyntax().getNullExpression(Types.TIMESTAMP, "TIMESTAMP");
+			default: return getSyntax().getNullExpression(Types.VARCHAR, "VARCHAR");
+		}
+	}
+	
 	public int limit() {
 		return limit;
 	}
@@ -0,0 +1,111 @@
+package de.fuberlin.wiwiss.d2rq.sql;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class ExecutionStatisticsTest extends TestCase {
+
+	public void testNewStatisticsAreEmpty() {
+		ExecutionStatistics stats = new ExecutionStatistics("query");
+		assertEquals("query", stats.description());
+		assertEquals(0, stats.sqlQueries());
+		assertEquals(0, stats.rows());
+		assertEquals(0, stats.fields());
+		assertEquals(0, stats.sqlMillis());
+		assertEquals(0, stats.discardedRows());
+	}
+
+	public void testAddSQLQuery() {
+		ExecutionStatistics stats = new ExecutionStatistics("query");
+		stats.addSQLQuery(10, 30, 2000000);
+		stats.addSQLQuery(5, 15, 1000000);
+		assertEquals(2, stats.sqlQueries());
+		assertEquals(15, stats.rows());
+		assertEquals(45, stats.fields());
+		assertEquals(3, stats.sqlMillis());
+	}
+
+	public void testAddNodeConstruction() {
+		ExecutionStatistics stats = new ExecutionStatistics("query");
+		stats.addNodeConstruction(4000000, 3);
+		assertEquals(4, stats.nodeConstructionMillis());
+		assertEquals(3, stats.discardedRows());
+	}
+
+	public void testQueriesAreAddedToGlobalStatistics() {
+		ExecutionStatistics global = ExecutionStatistics.global();
+		long queries = global.sqlQueries();
+		long rows = global.rows();
+		long discarded = global.discardedRows();
+		ExecutionStatistics stats = new ExecutionStatistics("query");
+		stats.addSQLQuery(7, 14, 0);
+		stats.addNodeConstruction(0, 2);
+		assertTrue(global.sqlQueries() >= queries + 1);
+		assertTrue(global.rows() >= rows + 7);
+		assertTrue(global.discardedRows() >= discarded + 2);
+	}
+
+	public void testQueriesAreAddedToBeanCounterTotals() {
+		BeanCounter start = BeanCounter.instance();
+		new ExecutionStatistics("query").addSQLQuery(7, 14, 0);
+		BeanCounter diff = BeanCounter.instanceMinus(start);
+		assertTrue(diff.numberOfExecutedSQLQueries >= 1);
+		assertTrue(diff.numberOfReturnedRows >= 7);
+		assertTrue(diff.numberOfReturnedFields >= 14);
+	}
+
+	public void testConcurrentUpdatesAreNotLost() throws InterruptedException {
+		final ExecutionStatistics stats = new ExecutionStatistics("query");
+		Thread[] threads = new Thread[4];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread() {
+				public void run() {
+					for (int j = 0; j < 1000; j++) {
+						stats.addSQLQuery(1, 2, 0);
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (int i = 0; i < threads.length; i++) {
+			threads[i].join();
+		}
+		assertEquals(4000, stats.sqlQueries());
+		assertEquals(4000, stats.rows());
+		assertEquals(8000, stats.fields());
+	}
+
+	public void testSQLLatencyHistogram() {
+		ExecutionStatistics stats = new ExecutionStatistics("query");
+		for (int i = 0; i < 9; i++) {
+			stats.addSQLQuery(1, 1, 3000000);
+		}
+		stats.addSQLQuery(1, 1, 700000000);
+		LatencyHistogram histogram = stats.sqlLatency();
+		assertEquals(10, histogram.count());
+		assertEquals(5, histogram.percentileMillis(50));
+		assertEquals(5, histogram.percentileMillis(90));
+		assertEquals(700, histogram.percentileMillis(99));
+		assertEquals(700, histogram.maxMillis());
+		assertEquals(727, histogram.totalMillis());
+	}
+
+	public void testEmptyHistogramPercentileIsZero() {
+		assertEquals(0, new LatencyHistogram().percentileMillis(99));
+	}
+
+	public void testSlowQueryLogKeepsSlowestFirst() {
+		SlowQueryLog log = new SlowQueryLog(2);
+		log.add("SELECT 1", "q1", 1, 1000000);
+		log.add("SELECT 2", "q2", 2, 3000000);
+		log.add("SELECT 3", null, 3, 2000000);
+		List entries = log.entries();
+		assertEquals(2, entries.size());
+		assertEquals("SELECT 2", ((SlowQueryLog.Entry) entries.get(0)).sql());
+		assertEquals("q2", ((SlowQueryLog.Entry) entries.get(0)).origin());
+		assertEquals(3, ((SlowQueryLog.Entry) entries.get(0)).millis());
+		assertEquals("SELECT 3", ((SlowQueryLog.Entry) entries.get(1)).sql());
+		assertNull(((SlowQueryLog.Entry) entries.get(1)).origin());
+	}
+}
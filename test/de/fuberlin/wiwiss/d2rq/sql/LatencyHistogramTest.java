@@ -0,0 +1,67 @@
+package de.fuberlin.wiwiss.d2rq.sql;
+
+import junit.framework.TestCase;
+
+public class LatencyHistogramTest extends TestCase {
+	private static final long MS = 1000000;
+	private LatencyHistogram histogram;
+
+	public void setUp() {
+		histogram = new LatencyHistogram();
+	}
+
+	public void testEmptyHistogram() {
+		assertEquals(0, histogram.count());
+		assertEquals(0, histogram.totalMillis());
+		assertEquals(0, histogram.maxMillis());
+		assertEquals(0, histogram.percentileMillis(50));
+	}
+
+	public void testValueOnBoundGoesToNextBucket() {
+		histogram.add(1 * MS);
+		histogram.add(3 * MS);
+		assertEquals(2, histogram.percentileMillis(50));
+		histogram = new LatencyHistogram();
+		histogram.add(10 * MS);
+		histogram.add(15 * MS);
+		assertEquals(15, histogram.percentileMillis(50));
+	}
+
+	public void testSubMillisecondValuesGoToFirstBucket() {
+		histogram.add(MS / 2);
+		histogram.add(5 * MS);
+		assertEquals(1, histogram.percentileMillis(50));
+	}
+
+	public void testPercentileIsBucketBoundCappedByMax() {
+		histogram.add(120 * MS);
+		assertEquals(120, histogram.percentileMillis(50));
+		histogram.add(450 * MS);
+		assertEquals(200, histogram.percentileMillis(50));
+		assertEquals(450, histogram.percentileMillis(99));
+	}
+
+	public void testPercentilesOfHundredValues() {
+		for (int i = 1; i <= 100; i++) {
+			histogram.add(i * MS);
+		}
+		assertEquals(100, histogram.count());
+		assertEquals(5050, histogram.totalMillis());
+		assertEquals(100, histogram.maxMillis());
+		// 50th value is 50ms, which is in the bucket up to 100ms
+		assertEquals(100, histogram.percentileMillis(50));
+		// 19 values are below 20ms, so the 19th is in the bucket up to 20ms
+		assertEquals(20, histogram.percentileMillis(19));
+		assertEquals(50, histogram.percentileMillis(49));
+	}
+
+	public void testValuesAboveLastBoundAreCounted() {
+		histogram.add(2 * MS);
+		histogram.add(90000 * MS);
+		histogram.add(120000 * MS);
+		assertEquals(3, histogram.count());
+		assertEquals(120000, histogram.percentileMillis(50));
+		assertEquals(120000, histogram.percentileMillis(99));
+		assertEquals(5, histogram.percentileMillis(33));
+	}
+}
@@ -1,5 +1,7 @@
 package de.fuberlin.wiwiss.d2rq.sql;
 
+import java.sql.SQLException;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
@@ -40,4 +42,27 @@ public class ResultRowTest extends TestCase {
 		// columns sorted alphabetically
 		assertEquals("{@@foo.col1@@ => 'value1', @@foo.col2@@ => 'value2'}", new ResultRowMap(m).toString());
 	}
+	
+	public void testArrayRowGetColumnReturnsValue() throws SQLException {
+		ResultRowArray.Layout layout = new ResultRowArray.Layout(Arrays.asList(new Attribute[]{col2, col1}), null);
+		ResultRow r = new ResultRowArray(layout, new String[]{"value2", "value1"});
+		assertEquals("value1", r.get(col1));
+		assertEquals("value2", r.get(col2));
+		assertNull(r.get(new Attribute(null, "foo", "col3")));
+	}
+	
+	public void testArrayRowToString() throws SQLException {
+		ResultRowArray.Layout layout = new ResultRowArray.Layout(Arrays.asList(new Attribute[]{col2, col1}), null);
+		assertEquals("{@@foo.col1@@ => 'value1', @@foo.col2@@ => 'value2'}",
+				new ResultRowArray(layout, new String[]{"value2", "value1"}).toString());
+	}
+	
+	public void testSlotCacheResolvesPerLayout() throws SQLException {
+		SlotCache cache = new SlotCache(Arrays.asList(new Attribute[]{col1, col2}));
+		ResultRowArray.Layout layout1 = new ResultRowArray.Layout(Arrays.asList(new Attribute[]{col2, col1}), null);
+		ResultRowArray.Layout layout2 = new ResultRowArray.Layout(Collections.singletonList(col2), null);
+		assertTrue(Arrays.equals(new int[]{1, 0}, cache.slots(layout1)));
+		assertTrue(Arrays.equals(new int[]{-1, 0}, cache.slots(layout2)));
+		assertTrue(Arrays.equals(new int[]{1, 0}, cache.slots(layout1)));
+	}
 }
@@ -1,9 +1,23 @@
 package de.fuberlin.wiwiss.d2rq.sql;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+
 import junit.framework.TestCase;
+import de.fuberlin.wiwiss.d2rq.algebra.Aggregate;
+import de.fuberlin.wiwiss.d2rq.algebra.AliasMap;
 import de.fuberlin.wiwiss.d2rq.algebra.Attribute;
+import de.fuberlin.wiwiss.d2rq.algebra.ExpressionProjectionSpec;
+import de.fuberlin.wiwiss.d2rq.algebra.LeftJoin;
 import de.fuberlin.wiwiss.d2rq.algebra.Relation;
+import de.fuberlin.wiwiss.d2rq.algebra.RelationImpl;
 import de.fuberlin.wiwiss.d2rq.algebra.RelationName;
+import de.fuberlin.wiwiss.d2rq.expr.Equality;
+import de.fuberlin.wiwiss.d2rq.expr.Expression;
+import de.fuberlin.wiwiss.d2rq.expr.SQLExpression;
 
 /**
  * @author Richard Cyganiak (richard@cyganiak.de)
@@ -124,4 +138,197 @@ public class SQLBuildingTest extends TestCase {
 		assertEquals("SELECT DISTINCT \"table\".\"foo\" FROM \"table\" WHERE (ROWNUM <= 100)",
 				new SelectStatementBuilder(r).getSQLStatement());
 	}
+	
+	public void testOffset() {
+		DummyDB db = new DummyDB();
+		db.setLimit(100);
+		Relation r = Relation.createSimpleRelation(db, new Attribute[]{foo});
+		r = new RelationImpl(db, r.aliases(), r.condition(), r.joinConditions(), r.projections(),
+				r.leftJoinConditions(), false, foo, true, 10, Relation.NO_LIMIT, 20);
+		assertEquals("SELECT DISTINCT \"table\".\"foo\" FROM \"table\" ORDER BY \"table\".\"foo\" DESC  LIMIT 10 OFFSET 20",
+				new SelectStatementBuilder(r).getSQLStatement());
+	}
+	
+	public void testNoOffsetOracle() {
+		assertNull(new DummyDB(ConnectedDB.Oracle).getSyntax().getOffsetAsQueryAppendage(20));
+		assertEquals("", new DummyDB(ConnectedDB.Oracle).getSyntax().getOffsetAsQueryAppendage(0));
+	}
+	
+	public void testParameterizedCondition() {
+		DummyDB db = new DummyDB();
+		db.setColumnType(foo, ConnectedDB.NUMERIC_COLUMN);
+		Relation r = Relation.createSimpleRelation(db, new Attribute[]{foo}).select(
+				Equality.createAttributeValue(foo, "42"));
+		SelectStatementBuilder select = new SelectStatementBuilder(r);
+		assertEquals("SELECT DISTINCT \"table\".\"foo\" FROM \"table\" WHERE \"table\".\"foo\" = ?",
+				select.getParameterizedSQLStatement());
+		assertEquals(Collections.singletonList(StatementParameter.create("42", ConnectedDB.NUMERIC_COLUMN)),
+				select.getParameters());
+		assertEquals("SELECT DISTINCT \"table\".\"foo\" FROM \"table\" WHERE \"table\".\"foo\" = 42",
+				select.getSQLStatement());
+	}
+	
+	public void testUnparseableDateIsNotParameterized() {
+		DummyDB db = new DummyDB();
+		db.setColumnType(foo, ConnectedDB.DATE_COLUMN);
+		Relation r = Relation.createSimpleRelation(db, new Attribute[]{foo}).select(
+				Equality.createAttributeValue(foo, "not a date"));
+		SelectStatementBuilder select = new SelectStatementBuilder(r);
+		assertTrue(select.getParameters().isEmpty());
+		assertEquals(select.getSQLStatement(), select.getParameterizedSQLStatement());
+	}
+
+	public void testUnparseableDateIsEscaped() {
+		DummyDB db = new DummyDB();
+		db.setColumnType(foo, ConnectedDB.DATE_COLUMN);
+		Relation r = Relation.createSimpleRelation(db, new Attribute[]{foo}).select(
+				Equality.createAttributeValue(foo, "2011-01-01' OR '1'='1"));
+		assertEquals("SELECT DISTINCT \"table\".\"foo\" FROM \"table\" WHERE \"table\".\"foo\" = DATE '2011-01-01'' OR ''1''=''1'",
+				new SelectStatementBuilder(r).getParameterizedSQLStatement());
+	}
+
+	public void testTimestampIsEscaped() {
+		ConnectedDB db = new DummyDB();
+		assertEquals("TIMESTAMP 'x'' OR 1=1 --'", db.quoteValue("x' OR 1=1 --", ConnectedDB.TIMESTAMP_COLUMN));
+	}
+
+	public void testNonCharacterTextColumnIsNotParameterized() {
+		DummyDB db = new DummyDB();
+		db.setColumnType(foo, ConnectedDB.TEXT_COLUMN);
+		db.setNonCharacterColumn(foo);
+		Relation r = Relation.createSimpleRelation(db, new Attribute[]{foo}).select(
+				Equality.createAttributeValue(foo, "a0eebc99-9c0b-4ef8-bb6d-6bb9bd380a11"));
+		SelectStatementBuilder select = new SelectStatementBuilder(r);
+		assertTrue(select.getParameters().isEmpty());
+		assertEquals("SELECT DISTINCT \"table\".\"foo\" FROM \"table\" WHERE \"table\".\"foo\" = 'a0eebc99-9c0b-4ef8-bb6d-6bb9bd380a11'",
+				select.getParameterizedSQLStatement());
+	}
+
+	public void testCharacterColumnIsParameterized() {
+		DummyDB db = new DummyDB();
+		db.setColumnType(foo, ConnectedDB.TEXT_COLUMN);
+		Relation r = Relation.createSimpleRelation(db, new Attribute[]{foo}).select(
+				Equality.createAttributeValue(foo, "bar"));
+		SelectStatementBuilder select = new SelectStatementBuilder(r);
+		assertEquals(Collections.singletonList(StatementParameter.create("bar", ConnectedDB.TEXT_COLUMN)),
+				select.getParameters());
+	}
+
+	public void testLeftOuterJoin() {
+		DummyDB db = new DummyDB();
+		Attribute paperID = new Attribute(null, "papers", "id");
+		Attribute authorPaper = new Attribute(null, "authors", "paper");
+		Relation optional = Relation.createSimpleRelation(db, new Attribute[]{authorPaper});
+		RelationName alias = new RelationName(null, "OPT1");
+		Attribute outerPaper = (Attribute) LeftJoin.outerAttributes(alias, optional.projections()).get(authorPaper);
+		LeftJoin leftJoin = new LeftJoin(alias, optional, 
+				Equality.createAttributeEquality(paperID, outerPaper));
+		assertEquals(new RelationName(null, "papers"), leftJoin.anchor());
+		Relation r = new RelationImpl(db, AliasMap.NO_ALIASES, Expression.TRUE,
+				Collections.EMPTY_SET, Collections.singleton(outerPaper), 
+				Collections.singleton(leftJoin), false, null, false, 
+				Relation.NO_LIMIT, Relation.NO_LIMIT);
+		assertEquals("SELECT DISTINCT \"OPT1\".\"c0\" FROM \"papers\" " +
+				"LEFT OUTER JOIN (SELECT DISTINCT \"authors\".\"paper\" AS \"c0\" " +
+				"FROM \"authors\") AS \"OPT1\" " +
+				"ON (\"OPT1\".\"c0\" = \"papers\".\"id\")",
+				new SelectStatementBuilder(r).getSQLStatement());
+	}
+
+	public void testOuterAttributesDontCollide() {
+		Attribute a_b_c = new Attribute(null, "a_b", "c");
+		Attribute a_bc = new Attribute(null, "a", "b_c");
+		Attribute longName = new Attribute("a_rather_long_schema_name", 
+				"a_rather_long_table_name", "a_rather_long_column_name");
+		RelationName alias = new RelationName(null, "OPT1");
+		Map outer = LeftJoin.outerAttributes(alias, Arrays.asList(new Attribute[]{a_b_c, a_bc, longName}));
+		assertEquals(3, new HashSet(outer.values()).size());
+		Iterator it = outer.values().iterator();
+		while (it.hasNext()) {
+			Attribute attribute = (Attribute) it.next();
+			assertEquals(alias, attribute.relationName());
+			assertTrue(attribute.attributeName().length() <= 3);
+		}
+		assertEquals(outer, LeftJoin.outerAttributes(alias, Arrays.asList(new Attribute[]{longName, a_bc, a_b_c})));
+	}
+
+	public void testAggregate() {
+		DummyDB db = new DummyDB();
+		Attribute authorPaper = new Attribute(null, "authors", "paper");
+		Attribute authorPerson = new Attribute(null, "authors", "person");
+		Relation r = Relation.createSimpleRelation(db, new Attribute[]{authorPaper, authorPerson});
+		RelationName alias = new RelationName(null, "GROUPED");
+		Attribute groupedPaper = (Attribute) LeftJoin.outerAttributes(alias, r.projections()).get(authorPaper);
+		SelectStatementBuilder builder = new SelectStatementBuilder(r, alias, 
+				Collections.singletonList(groupedPaper), 
+				Arrays.asList(new Object[]{Aggregate.count(), Aggregate.count()}));
+		assertEquals("SELECT \"GROUPED\".\"c0\", COUNT(*) AS \"a0\", COUNT(*) AS \"a1\" " +
+				"FROM (SELECT DISTINCT \"authors\".\"paper\" AS \"c0\", " +
+				"\"authors\".\"person\" AS \"c1\" FROM \"authors\") AS \"GROUPED\" " +
+				"GROUP BY \"GROUPED\".\"c0\"",
+				builder.getSQLStatement());
+		assertEquals(Arrays.asList(new Object[]{groupedPaper,
+				SelectStatementBuilder.aggregateColumn(0), SelectStatementBuilder.aggregateColumn(1)}),
+				builder.getColumnSpecs());
+	}
+
+	public void testUnionAll() {
+		DummyDB db = new DummyDB();
+		Attribute paperTitle = new Attribute(null, "papers", "title");
+		Attribute authorName = new Attribute(null, "authors", "name");
+		Relation papers = Relation.createSimpleRelation(db, new Attribute[]{paperTitle});
+		Relation authors = Relation.createSimpleRelation(db, new Attribute[]{authorName});
+		UnionStatementBuilder union = new UnionStatementBuilder(
+				Arrays.asList(new Object[]{papers, authors, papers}));
+		assertEquals(Arrays.asList(new Object[]{UnionStatementBuilder.BRANCH, paperTitle, authorName}),
+				union.getColumnSpecs());
+		assertEquals("SELECT DISTINCT 0, \"papers\".\"title\", CAST(NULL AS VARCHAR) FROM \"papers\" " +
+				"UNION ALL SELECT DISTINCT 1, CAST(NULL AS VARCHAR), \"authors\".\"name\" FROM \"authors\" " +
+				"UNION ALL SELECT DISTINCT 2, \"papers\".\"title\", CAST(NULL AS VARCHAR) FROM \"papers\"",
+				union.getSQLStatement());
+	}
+
+	public void testUnionNullsHaveTheColumnType() {
+		DummyDB db = new DummyDB();
+		Attribute paperYear = new Attribute(null, "papers", "year");
+		Attribute authorName = new Attribute(null, "authors", "name");
+		db.setColumnType(paperYear, ConnectedDB.NUMERIC_COLUMN);
+		Relation papers = Relation.createSimpleRelation(db, new Attribute[]{paperYear});
+		Relation authors = Relation.createSimpleRelation(db, new Attribute[]{authorName});
+		assertEquals("SELECT DISTINCT 0, \"papers\".\"year\", CAST(NULL AS VARCHAR) FROM \"papers\" " +
+				"UNION ALL SELECT DISTINCT 1, CAST(NULL AS INTEGER), \"authors\".\"name\" FROM \"authors\"",
+				new UnionStatementBuilder(Arrays.asList(new Object[]{papers, authors})).getSQLStatement());
+	}
+
+	public void testUnionNullsOnMySQLAreUntyped() {
+		DummyDB db = new DummyDB(ConnectedDB.MySQL);
+		Attribute paperYear = new Attribute(null, "papers", "year");
+		Attribute authorName = new Attribute(null, "authors", "name");
+		db.setColumnType(paperYear, ConnectedDB.NUMERIC_COLUMN);
+		Relation papers = Relation.createSimpleRelation(db, new Attribute[]{paperYear});
+		Relation authors = Relation.createSimpleRelation(db, new Attribute[]{authorName});
+		assertEquals("SELECT DISTINCT 0, `papers`.`year`, NULL FROM `papers` " +
+				"UNION ALL SELECT DISTINCT 1, NULL, `authors`.`name` FROM `authors`",
+				new UnionStatementBuilder(Arrays.asList(new Object[]{papers, authors})).getSQLStatement());
+	}
+
+	public void testNoUnionWithUntypedColumn() {
+		DummyDB db = new DummyDB();
+		Relation papers = Relation.createSimpleRelation(db, new Attribute[]{foo});
+		Relation expression = new RelationImpl(db, AliasMap.NO_ALIASES, Expression.TRUE,
+				Collections.EMPTY_SET, Collections.singleton(new ExpressionProjectionSpec(
+						SQLExpression.create("1 + 1"))), false, null, false, Relation.NO_LIMIT, Relation.NO_LIMIT);
+		assertTrue(UnionStatementBuilder.canCombine(Arrays.asList(new Object[]{expression, expression})));
+		assertFalse(UnionStatementBuilder.canCombine(Arrays.asList(new Object[]{papers, expression})));
+	}
+
+	public void testNoUnionWithLimit() {
+		DummyDB db = new DummyDB();
+		Relation r = Relation.createSimpleRelation(db, new Attribute[]{foo});
+		Relation limited = new RelationImpl(db, AliasMap.NO_ALIASES, Expression.TRUE,
+				Collections.EMPTY_SET, Collections.singleton(foo), false, null, false, 10, Relation.NO_LIMIT);
+		assertTrue(UnionStatementBuilder.canCombine(Arrays.asList(new Object[]{r, r})));
+		assertFalse(UnionStatementBuilder.canCombine(Arrays.asList(new Object[]{r, limited})));
+		assertFalse(UnionStatementBuilder.canCombine(Collections.singletonList(r)));
+	}
 }
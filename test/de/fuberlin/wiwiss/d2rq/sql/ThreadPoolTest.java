@@ -0,0 +1,124 @@
+package de.fuberlin.wiwiss.d2rq.sql;
+
+import junit.framework.TestCase;
+
+public class ThreadPoolTest extends TestCase {
+	private ThreadPool pool;
+	private final Object lock = new Object();
+	private boolean released;
+
+	public void setUp() {
+		pool = new ThreadPool(2, "test");
+		released = false;
+	}
+
+	public void tearDown() {
+		release();
+		pool.close();
+	}
+
+	public void testRefusesTaskWhenAllThreadsAreBusy() {
+		assertTrue(pool.tryExecute(new Blocker()));
+		assertTrue(pool.tryExecute(new Blocker()));
+		assertFalse(pool.tryExecute(new Blocker()));
+		assertEquals(2, pool.size());
+	}
+
+	public void testReusesIdleThread() throws InterruptedException {
+		final Thread[] ran = new Thread[2];
+		runAndWait(new Runnable() {
+			public void run() { ran[0] = Thread.currentThread(); }
+		});
+		runAndWait(new Runnable() {
+			public void run() { ran[1] = Thread.currentThread(); }
+		});
+		assertSame(ran[0], ran[1]);
+		assertEquals(1, pool.size());
+	}
+
+	public void testClosedPoolRefusesTasks() {
+		pool.close();
+		assertFalse(pool.tryExecute(new Blocker()));
+	}
+
+	public void testFailedTaskDoesNotKillThePool() throws InterruptedException {
+		runAndWait(new Runnable() {
+			public void run() { throw new RuntimeException("Expected by test"); }
+		});
+		final boolean[] ran = {false};
+		runAndWait(new Runnable() {
+			public void run() { ran[0] = true; }
+		});
+		assertTrue(ran[0]);
+	}
+
+	public void testErrorInTaskFreesTheThread() throws InterruptedException {
+		final boolean[] done = {false};
+		assertTrue(pool.tryExecute(new Runnable() {
+			public void run() {
+				synchronized (done) {
+					done[0] = true;
+					done.notifyAll();
+				}
+				throw new Error("Expected by test");
+			}
+		}));
+		synchronized (done) {
+			while (!done[0]) {
+				done.wait();
+			}
+		}
+		while (pool.size() > 0) {
+			Thread.sleep(10);
+		}
+		assertTrue(pool.tryExecute(new Blocker()));
+		assertTrue(pool.tryExecute(new Blocker()));
+		assertFalse(pool.tryExecute(new Blocker()));
+	}
+
+	private void runAndWait(final Runnable task) throws InterruptedException {
+		final boolean[] done = {false};
+		assertTrue(pool.tryExecute(new Runnable() {
+			public void run() {
+				try {
+					task.run();
+				} finally {
+					synchronized (done) {
+						done[0] = true;
+						done.notifyAll();
+					}
+				}
+			}
+		}));
+		synchronized (done) {
+			while (!done[0]) {
+				done.wait();
+			}
+		}
+		// Wait until the worker is back in the idle list
+		while (pool.idleSize() < pool.size()) {
+			Thread.sleep(10);
+		}
+	}
+
+	private void release() {
+		synchronized (lock) {
+			released = true;
+			lock.notifyAll();
+		}
+	}
+
+	private class Blocker implements Runnable {
+		public void run() {
+			synchronized (lock) {
+				while (!released) {
+					try {
+						lock.wait();
+					} catch (InterruptedException ex) {
+						return;
+					}
+				}
+			}
+		}
+	}
+}
@@ -1,5 +1,7 @@
 package de.fuberlin.wiwiss.d2rq.values;
 
+import java.sql.SQLException;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -15,6 +17,7 @@ import de.fuberlin.wiwiss.d2rq.expr.Constant;
 import de.fuberlin.wiwiss.d2rq.expr.Equality;
 import de.fuberlin.wiwiss.d2rq.expr.Expression;
 import de.fuberlin.wiwiss.d2rq.sql.ResultRow;
+import de.fuberlin.wiwiss.d2rq.sql.ResultRowArray;
 import de.fuberlin.wiwiss.d2rq.sql.ResultRowMap;
 import de.fuberlin.wiwiss.d2rq.sql.SQL;
 
@@ -158,6 +161,26 @@ public class PatternTest extends TestCase {
 		assertFalse(matches(p, "foo1-2baz3"));
 	}
 
+	public void testMatchesThreeColumnPatternWithRepeatedLiterals() {
+		Pattern p = new Pattern("a@@table.col1@@b@@table.col2@@b@@table.col3@@b");
+		Map map = new HashMap();
+		map.put("table.col1", "");
+		map.put("table.col2", "");
+		map.put("table.col3", "bb");
+		assertPatternValues(p, "abbbbb", map);
+		assertFalse(matches(p, "abb"));
+		assertFalse(matches(p, "abbba"));
+	}
+
+	public void testMatchesAdjacentColumns() {
+		Pattern p = new Pattern("foo@@table.col1@@@@table.col2@@bar");
+		Map map = new HashMap();
+		map.put("table.col1", "");
+		map.put("table.col2", "12");
+		assertPatternValues(p, "foo12bar", map);
+		assertFalse(matches(p, "foo12ba"));
+	}
+
 	public void testMatchesPatternStartingWithColumn() {
 		Pattern p = new Pattern("@@table.col1@@bar@@table.col2@@baz");
 		Map map = new HashMap();
@@ -330,6 +353,11 @@ public class PatternTest extends TestCase {
 		assertPatternValues(p, "aaax+ybbb", Collections.singletonMap("table.col1", "x y"));
 	}
 	
+	public void testPatternURLEncodeWithoutEscapes() {
+		Pattern p = new Pattern("aaa@@table.col1|urlencode@@bbb");
+		assertPatternValues(p, "aaaxybbb", Collections.singletonMap("table.col1", "xy"));
+	}
+	
 	public void testPatternURLEncodeIllegal() {
 		Pattern p = new Pattern("@@table.col1|urlencode@@");
 		assertFalse(matches(p, "%"));
@@ -393,6 +421,13 @@ public class PatternTest extends TestCase {
 		return !valueMaker.valueExpression(value).isFalse();
 	}
 
+	public void testMakeValueFromArrayRow() throws SQLException {
+		Pattern pattern = new Pattern("http://example.org/@@table.col1@@/@@table.col2@@");
+		ResultRowArray.Layout layout = new ResultRowArray.Layout(Arrays.asList(new Attribute[]{col2, col1}), null);
+		assertEquals("http://example.org/a/b", pattern.makeValue(new ResultRowArray(layout, new String[]{"b", "a"})));
+		assertNull(pattern.makeValue(new ResultRowArray(layout, new String[]{null, "a"})));
+	}
+
 	private ResultRow row(String spec) {
 		String[] parts = spec.split("\\|", -1);
 		Attribute[] columns = {col1, col2, col3, col4, col5};